@@ -0,0 +1,92 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import interpreter.Interpreter;
+import interpreter.command.Command;
+import lexical.LexicalAnalysis;
+import syntatic.SyntaticAnalysis;
+
+// Runs arithmetic-heavy loops with the tree engine and reports the best
+// time and the collections made during that run, so the cost of boxing
+// Int and Float results shows up both as time and as garbage. Only the
+// interpreter entry points are used, so the same file can be compiled
+// against older builds to compare them.
+//
+//   java -cp <classes> bench.ArithmeticBench [iterations] [runs]
+public class ArithmeticBench {
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 3000000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        String arithmetic =
+            "var i : Int = 0\n" +
+            "var s : Int = 0\n" +
+            "var f : Float = 0.0\n" +
+            "while i < " + iterations + " {\n" +
+            "  s = s + i * 2 - s / 7\n" +
+            "  if s > 1000000 { s = s - 1000000 }\n" +
+            "  f = f + 0.5\n" +
+            "  i = i + 1\n" +
+            "}\n" +
+            "println(s)\n" +
+            "println(f)\n";
+
+        String reads =
+            "var a : Array<Int> = Array<Int>(1, 2, 3, 4, 5, 6, 7, 8)\n" +
+            "var str : String = \"abcdefgh\"\n" +
+            "var i : Int = 0\n" +
+            "var s : Int = 0\n" +
+            "while i < " + iterations + " {\n" +
+            "  s = s + a[i - i / 8 * 8] + toInt(str[i - i / 8 * 8])\n" +
+            "  i = i + 1\n" +
+            "}\n" +
+            "println(s)\n";
+
+        measure("arithmetic", arithmetic, runs);
+        measure("reads", reads, runs);
+    }
+
+    private static void measure(String name, String program, int runs) {
+        byte[] bytes = program.getBytes(StandardCharsets.UTF_8);
+        PrintStream out = System.out;
+
+        long best = Long.MAX_VALUE;
+        long collections = 0;
+        for (int r = 0; r < runs; r++) {
+            Command cmd = new SyntaticAnalysis(new LexicalAnalysis(new ByteArrayInputStream(bytes))).process();
+
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            long before = collections();
+            long start = System.nanoTime();
+            try {
+                new Interpreter().interpret(cmd);
+            } finally {
+                System.setOut(out);
+            }
+
+            long time = System.nanoTime() - start;
+            if (time < best) {
+                best = time;
+                collections = collections() - before;
+            }
+        }
+
+        System.out.printf("%-10s %8.0f ms %6d collections%n", name, best / 1e6, collections);
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(gc.getCollectionCount(), 0);
+
+        return count;
+    }
+
+}
@@ -0,0 +1,126 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lexical.Keywords;
+import lexical.LexicalAnalysis;
+import lexical.SourceBuffer;
+import lexical.Token;
+
+// Times the classification of the words of examples/ and cases/ as keywords
+// or names, once the way the lexer used to do it (slicing the lexeme and
+// looking it up in a map) and once with Keywords.classify.
+//
+//   java -cp <classes> bench.KeywordBench [copies] [passes]
+public class KeywordBench {
+
+    private static final Map<String, Token.Type> keywords = new HashMap<String, Token.Type>();
+
+    static {
+        for (Token.Type type : Token.Type.values()) {
+            if (type.spelling != null && !type.spelling.isEmpty()
+                    && Character.isLetter(type.spelling.charAt(0)))
+                keywords.put(type.spelling, type);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        List<String> words = new ArrayList<String>();
+        for (Path path : sources(Paths.get("examples"), Paths.get("cases")))
+            collect(path, words);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] offsets = new int[words.size() * copies];
+        int[] lengths = new int[offsets.length];
+        int n = 0;
+        for (int c = 0; c < copies; c++) {
+            for (String word : words) {
+                byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+                offsets[n] = out.size();
+                lengths[n++] = bytes.length;
+                out.write(bytes);
+                out.write(' ');
+            }
+        }
+
+        SourceBuffer source = SourceBuffer.read(new ByteArrayInputStream(out.toByteArray()));
+        for (int i = 0; i < n; i++) {
+            if (map(source, offsets[i], lengths[i]) != Keywords.classify(source, offsets[i], lengths[i]))
+                throw new IllegalStateException("Mismatch on " + source.slice(offsets[i], lengths[i]));
+        }
+
+        System.out.printf("%d words%n", n);
+        long bestMap = Long.MAX_VALUE;
+        long bestTree = Long.MAX_VALUE;
+        int sink = 0;
+        for (int p = 0; p < passes; p++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                sink += map(source, offsets[i], lengths[i]).ordinal();
+            bestMap = Math.min(bestMap, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                sink += Keywords.classify(source, offsets[i], lengths[i]).ordinal();
+            bestTree = Math.min(bestTree, System.nanoTime() - start);
+        }
+
+        System.out.printf("map:  %.1f ms%n", bestMap / 1e6);
+        System.out.printf("tree: %.1f ms%n", bestTree / 1e6);
+        if (sink == 42)
+            System.out.println();
+    }
+
+    private static Token.Type map(SourceBuffer source, int offset, int length) {
+        String lexeme = source.slice(offset, length);
+        return keywords.containsKey(lexeme) ? keywords.get(lexeme) : Token.Type.NAME;
+    }
+
+    private static List<Path> sources(Path... dirs) throws IOException {
+        List<Path> paths = new ArrayList<Path>();
+        for (Path dir : dirs) {
+            List<Path> found = new ArrayList<Path>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.mswift")) {
+                for (Path file : files)
+                    found.add(file);
+            }
+
+            Collections.sort(found);
+            paths.addAll(found);
+        }
+
+        return paths;
+    }
+
+    private static void collect(Path path, List<String> words) {
+        LexicalAnalysis lex = new LexicalAnalysis(path);
+        try {
+            Token token;
+            while ((token = lex.nextToken()).type != Token.Type.END_OF_FILE) {
+                if (token.type == Token.Type.UNEXPECTED_EOF || token.type == Token.Type.INVALID_TOKEN)
+                    break;
+
+                if (token.type == Token.Type.NAME || keywords.containsKey(token.type.spelling))
+                    words.add(token.getLexeme());
+            }
+        } finally {
+            lex.close();
+        }
+    }
+
+}
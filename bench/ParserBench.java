@@ -0,0 +1,53 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import interpreter.Environment;
+import lexical.LexicalAnalysis;
+import syntatic.SyntaticAnalysis;
+
+// Times lexing and parsing a large generated script: every statement
+// declares a variable, updates an accumulator and branches on it, so the
+// parser sees declarations, arithmetic, calls and string literals.
+//
+//   java -cp <classes> bench.ParserBench [statements] [passes]
+public class ParserBench {
+
+    public static void main(String[] args) {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : 45000;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+
+        byte[] bytes = generate(statements);
+        System.out.printf("%.1f MB%n", bytes.length / 1e6);
+
+        long best = Long.MAX_VALUE;
+        for (int p = 0; p < passes; p++) {
+            long start = System.nanoTime();
+            SyntaticAnalysis s = new SyntaticAnalysis(
+                new LexicalAnalysis(new ByteArrayInputStream(bytes)), new Environment());
+            s.process();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.printf("parse: %.1f ms%n", best / 1e6);
+    }
+
+    private static byte[] generate(int statements) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("var acc : Int = 0;\n");
+        sb.append("var s : String = \"\";\n");
+        for (int i = 0; i < statements; i++) {
+            sb.append("var v").append(i).append(" : Int = ").append(i)
+                .append(" * 2 + (acc - ").append(i % 7).append(") / 3;\n");
+            sb.append("acc = acc + v").append(i).append(" - toInt(toFloat(")
+                .append(i).append(") * 1.5);\n");
+            sb.append("if (acc > ").append(i).append(") { s = \"a long string literal number ")
+                .append(i).append(" with some padding text\"; } else { s = s; }\n");
+        }
+        sb.append("println(acc);\n");
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -12,7 +12,7 @@ cmd=$@;
 base="$(dirname $0)";
 [[ "${base}" =~ ^\/ ]] || base="$(pwd)/${base}";
 
-for n in {0{1..9},{10..15}}; do
+for n in {0{1..9},{10..21}}; do
     source=${base}/case${n}-???.mswift;
     input=${base}/case${n}-???.in;
     output=${base}/case${n}-???.out;
@@ -30,7 +30,10 @@ for n in {0{1..9},{10..15}}; do
     echo "--- Executed output ---";
     (
       cd "${dir}";
-      if [ -f ${input} ]; then
+      # A -rep case is typed at the prompt.
+      if [ -f ${base}/case${n}-rep.mswift ]; then
+        timeout 5 ${cmd} < ${source} 1>${result} 2>&1;
+      elif [ -f ${input} ]; then
         timeout 5 ${cmd} ${source} < ${input} 1>${result} 2>&1;
       else
         timeout 5 ${cmd} ${source} 1>${result} 2>&1;
@@ -13,7 +13,8 @@ public class LanguageException extends RuntimeException {
         UnitializedVariable("Variável não inicializada [%s]", 1),
         ConstantAssignment("Atribuição em variável constante [%s]", 1),
         InvalidType("Tipo inválido [%s]", 1),
-        InvalidOperation("Operação inválida", 0);
+        InvalidOperation("Operação inválida", 0),
+        TooDeep("Aninhamento muito profundo", 0);
 
         public final String msg;
         public final int args;
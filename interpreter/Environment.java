@@ -15,6 +15,7 @@ public class Environment {
 
     private final Environment enclosing;
     private final Map<String, Variable> memory = new HashMap<>();
+    private int size;
 
     public Environment() {
         this(null);
@@ -22,26 +23,53 @@ public class Environment {
 
     public Environment(Environment enclosing) {
         this.enclosing = enclosing;
+        this.size = 0;
     }
 
-    public Variable declare(Token name, Type type, boolean constant) {
-        if (memory.containsKey(name.lexeme))
-            throw LanguageException.instance(name.line, AlreadyDeclaredVariable, name.lexeme);
+    // An outermost environment whose first variable takes the given slot.
+    protected Environment(int size) {
+        this.enclosing = null;
+        this.size = size;
+    }
+
+    public Variable declare(Token name, int line, Type type, boolean constant) {
+        if (memory.containsKey(name.getLexeme()))
+            throw LanguageException.instance(line, AlreadyDeclaredVariable, name.getLexeme());
 
-        Variable var = new Variable(name, type, constant);
-        memory.put(name.lexeme, var);
+        Variable var = create(line, name.getLexeme(), type, constant);
+        memory.put(name.getLexeme(), var);
 
         return var;
     }
 
-    public Variable get(Token name) {
-        if (memory.containsKey(name.lexeme))
-            return memory.get(name.lexeme);
+    public void define(Variable var) {
+        memory.put(var.getName(), var);
+    }
+
+    public Variable get(Token name, int line) {
+        if (memory.containsKey(name.getLexeme()))
+            return memory.get(name.getLexeme());
 
         if (enclosing != null)
-            return enclosing.get(name);
+            return enclosing.get(name, line);
+
+        throw LanguageException.instance(line, UndeclaredVariable, name.getLexeme());
+    }
+
+    // Number of frame slots handed out so far, nested scopes included.
+    public int size() {
+        return enclosing != null ? enclosing.size() : size;
+    }
+
+    protected Variable create(int line, String name, Type type, boolean constant) {
+        return new Variable(line, name, type, constant, allocate());
+    }
 
-        throw LanguageException.instance(name.line, UndeclaredVariable, name.lexeme);
+    // Every variable of a program gets its own slot in one frame: scopes
+    // only control visibility, and there are no functions to give frames of
+    // their own.
+    private int allocate() {
+        return enclosing != null ? enclosing.allocate() : size++;
     }
 
 }
@@ -0,0 +1,84 @@
+package interpreter;
+
+import java.util.Arrays;
+
+import interpreter.type.Type;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.Value;
+
+// The values of the variables of one run of a program, indexed by the slot
+// each variable got when it was declared. Grows when the prompt declares
+// more variables between runs.
+//
+// Int, Float and Bool values can also be stored unboxed, as the bits of
+// an int (a Float as its raw bits, a Bool as 0 or 1) along with their
+// type. Such a slot only gets a Value when it is read as one.
+public class Frame {
+
+    private Value[] values;
+    private Type[] rawTypes;
+    private int[] raw;
+
+    public Frame(int size) {
+        this.values = new Value[Math.max(size, 16)];
+        this.rawTypes = new Type[values.length];
+        this.raw = new int[values.length];
+    }
+
+    public Value get(int slot) {
+        if (slot >= values.length)
+            return null;
+
+        Value value = values[slot];
+        if (value == null && rawTypes[slot] != null) {
+            value = box(rawTypes[slot], raw[slot]);
+            values[slot] = value;
+        }
+
+        return value;
+    }
+
+    public void set(int slot, Value value) {
+        ensure(slot);
+        values[slot] = value;
+        rawTypes[slot] = null;
+    }
+
+    // The type of the unboxed value in a slot, or null if it holds a Value
+    // or nothing.
+    public Type getRawType(int slot) {
+        return slot < rawTypes.length ? rawTypes[slot] : null;
+    }
+
+    public int getRaw(int slot) {
+        return raw[slot];
+    }
+
+    public void setRaw(int slot, Type type, int bits) {
+        ensure(slot);
+        values[slot] = null;
+        rawTypes[slot] = type;
+        raw[slot] = bits;
+    }
+
+    private void ensure(int slot) {
+        if (slot >= values.length) {
+            int size = Math.max(slot + 1, values.length * 2);
+            values = Arrays.copyOf(values, size);
+            rawTypes = Arrays.copyOf(rawTypes, size);
+            raw = Arrays.copyOf(raw, size);
+        }
+    }
+
+    private static Value box(Type type, int bits) {
+        if (type == IntType.instance())
+            return new Value(type, bits);
+        else if (type == FloatType.instance())
+            return new Value(type, Float.intBitsToFloat(bits));
+        else
+            return new Value(BoolType.instance(), bits != 0);
+    }
+
+}
@@ -1,26 +1,77 @@
 package interpreter;
 
+import interpreter.bytecode.Compiler;
+import interpreter.bytecode.Unsure;
+import interpreter.bytecode.VirtualMachine;
+import interpreter.closure.ClosureCompiler;
 import interpreter.command.Command;
 import interpreter.expr.Expr;
+import interpreter.ir.Builder;
+import interpreter.ir.Machine;
 import interpreter.value.Value;
 
+// One run of a program. Variables are resolved against the globals while
+// parsing and hold their values in the frame, so the same tree can be run
+// again by another interpreter. Not by two threads at once, though: nodes
+// specialize themselves and loops count their iterations for the JIT as
+// they run, without any synchronization.
 public class Interpreter {
 
-    public final static Environment globals;
+    public static enum Engine {
+        Tree,
+        Bytecode,
+        Closure,
+        Ir
+    }
+
+    private final Engine engine;
+    private final Environment globals;
+    private final Frame frame;
+    private final Unsure unsure;
+
+    public Interpreter() {
+        this(Engine.Tree);
+    }
+
+    public Interpreter(Engine engine) {
+        this.engine = engine;
+        this.globals = new Environment();
+        this.frame = new Frame(0);
+        this.unsure = new Unsure();
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
 
-    static {
-        globals = new Environment();
+    public Environment getGlobals() {
+        return globals;
     }
 
-    private Interpreter() {
+    public Frame getFrame() {
+        return frame;
     }
 
-    public static void interpret(Command cmd) {
-        cmd.execute();
+    public void interpret(Command cmd) {
+        switch (engine) {
+            case Bytecode:
+                if (!new VirtualMachine(frame).run(Compiler.compile(cmd, true, unsure)))
+                    new VirtualMachine(frame).run(Compiler.compile(cmd, false, unsure));
+                break;
+            case Closure:
+                ClosureCompiler.compile(cmd).run(frame);
+                break;
+            case Ir:
+                new Machine(frame).run(Builder.build(cmd));
+                break;
+            default:
+                cmd.execute(frame);
+                break;
+        }
     }
 
-    public static void interpret(Expr expr) {
-        Value v = expr.expr();
+    public void interpret(Expr expr) {
+        Value v = expr.expr(frame);
         System.out.println(v);
     }
 
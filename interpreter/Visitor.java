@@ -0,0 +1,48 @@
+package interpreter;
+
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.DumpCommand;
+import interpreter.command.ForCommand;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.PrintCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+
+public interface Visitor<R> {
+
+    // Commands.
+    R visit(AssignCommand cmd);
+    R visit(BlocksCommand cmd);
+    R visit(DumpCommand cmd);
+    R visit(ForCommand cmd);
+    R visit(IfCommand cmd);
+    R visit(InitializeCommand cmd);
+    R visit(PrintCommand cmd);
+    R visit(WhileCommand cmd);
+
+    // Expressions.
+    R visit(AccessExpr expr);
+    R visit(ActionExpr expr);
+    R visit(ArrayExpr expr);
+    R visit(BinaryExpr expr);
+    R visit(CastExpr expr);
+    R visit(ConditionalExpr expr);
+    R visit(ConstExpr expr);
+    R visit(DictExpr expr);
+    R visit(FunctionExpr expr);
+    R visit(UnaryExpr expr);
+    R visit(Variable expr);
+
+}
@@ -0,0 +1,214 @@
+package interpreter.aot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import error.InternalException;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.expr.Variable;
+import interpreter.jit.GeneratedClass;
+import interpreter.jit.LoopCompiler;
+import syntatic.TreeWriter;
+
+// Turns a parsed program into a runnable jar. The top-level commands are
+// split into segments: runs of commands LoopCompiler handles, each compiled
+// into a class with its variables in JVM locals, and runs of the others,
+// which the interpreter bundled in the jar executes. The tree is stored
+// already parsed, so Launcher neither lexes nor parses anything.
+//
+// The program resource holds a magic number, the length of the tree and
+// the tree as written by TreeWriter, followed by the segments: how many
+// commands each covers and, for compiled ones, the class and its variables.
+public class AotCompiler {
+
+    static final String PROGRAM = "/program.bin";
+    static final int MAGIC = 0x4d534341; // "MSCA"
+
+    private static final String PACKAGE = "program/";
+    private static final String[] RUNTIME = { "error/", "interpreter/", "lexical/", "syntatic/" };
+
+    private static class Segment {
+        List<Command> commands;
+        GeneratedClass generated;
+
+        Segment(Command cmd, GeneratedClass generated) {
+            this.commands = new ArrayList<Command>();
+            this.commands.add(cmd);
+            this.generated = generated;
+        }
+    }
+
+    public static void compile(Command program, Path jar) throws IOException {
+        List<Command> commands = program instanceof BlocksCommand
+                ? ((BlocksCommand) program).getCommands()
+                : Collections.singletonList(program);
+        List<Segment> segments = split(commands);
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, Launcher.class.getName());
+
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+            copyRuntime(out);
+
+            for (Segment segment : segments) {
+                if (segment.generated != null) {
+                    String name = segment.generated.getName().replace('.', '/') + ".class";
+                    entry(out, name, segment.generated.getBytes());
+                }
+            }
+
+            entry(out, PROGRAM.substring(1), resource(program, segments));
+        }
+    }
+
+    // Each command joins the segment before it when both are compiled, as
+    // long as the code still fits in one method, or both are interpreted.
+    private static List<Segment> split(List<Command> commands) {
+        List<Segment> segments = new ArrayList<Segment>();
+        Segment current = null;
+
+        for (Command cmd : commands) {
+            if (current != null && current.generated != null) {
+                List<Command> joined = new ArrayList<Command>(current.commands);
+                joined.add(cmd);
+                GeneratedClass generated = generate(joined, segments.size());
+                if (generated != null) {
+                    current.commands = joined;
+                    current.generated = generated;
+                    continue;
+                }
+            }
+
+            GeneratedClass generated = generate(Collections.singletonList(cmd), segments.size() + 1);
+            if (generated == null && current != null && current.generated == null) {
+                current.commands.add(cmd);
+            } else {
+                current = new Segment(cmd, generated);
+                segments.add(current);
+            }
+        }
+
+        return segments;
+    }
+
+    private static GeneratedClass generate(List<Command> commands, int index) {
+        Command cmd = commands.size() == 1
+                ? commands.get(0)
+                : new BlocksCommand(commands.get(0).getLine(), commands);
+        return LoopCompiler.generate(cmd, PACKAGE + "Segment" + index);
+    }
+
+    private static byte[] resource(Command program, List<Segment> segments) throws IOException {
+        ByteArrayOutputStream tree = new ByteArrayOutputStream();
+        new TreeWriter(new DataOutputStream(tree)).write(program);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(tree.size());
+        tree.writeTo(out);
+
+        out.writeInt(segments.size());
+        for (Segment segment : segments) {
+            out.writeInt(segment.commands.size());
+            if (segment.generated == null) {
+                out.writeUTF("");
+                continue;
+            }
+
+            out.writeUTF(segment.generated.getName());
+            Variable[] variables = segment.generated.getVariables();
+            out.writeInt(variables.length);
+            for (Variable var : variables) {
+                out.writeInt(var.getLine());
+                out.writeUTF(var.getName());
+                out.writeByte(var.getType().getCategory().ordinal());
+                out.writeBoolean(var.isConstant());
+                out.writeInt(var.getSlot());
+            }
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // The classes of the interpreter come from wherever this one was loaded:
+    // the build directory or the jar msc runs from.
+    private static void copyRuntime(JarOutputStream out) throws IOException {
+        Path source;
+        try {
+            source = Paths.get(AotCompiler.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException | NullPointerException e) {
+            throw new InternalException("Unable to locate the runtime classes");
+        }
+
+        if (Files.isDirectory(source)) {
+            for (String prefix : RUNTIME) {
+                Path dir = source.resolve(prefix);
+                if (Files.isDirectory(dir))
+                    copyDirectory(out, dir, prefix);
+            }
+        } else {
+            try (JarFile jar = new JarFile(source.toFile())) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && isRuntime(entry.getName())) {
+                        try (InputStream in = jar.getInputStream(entry)) {
+                            entry(out, entry.getName(), in.readAllBytes());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void copyDirectory(JarOutputStream out, Path dir, String prefix) throws IOException {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+            for (Path child : children) {
+                String name = prefix + child.getFileName();
+                if (Files.isDirectory(child))
+                    copyDirectory(out, child, name + "/");
+                else if (name.endsWith(".class"))
+                    entry(out, name, Files.readAllBytes(child));
+            }
+        }
+    }
+
+    private static boolean isRuntime(String name) {
+        if (!name.endsWith(".class"))
+            return false;
+
+        for (String prefix : RUNTIME) {
+            if (name.startsWith(prefix))
+                return true;
+        }
+
+        return false;
+    }
+
+    private static void entry(JarOutputStream out, String name, byte[] bytes) throws IOException {
+        out.putNextEntry(new JarEntry(name));
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+}
@@ -0,0 +1,124 @@
+package interpreter.aot;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import error.InternalException;
+import error.LanguageException;
+import interpreter.Frame;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.expr.Variable;
+import interpreter.jit.CompiledLoop;
+import interpreter.jit.LoopCode;
+import interpreter.type.Type;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import syntatic.TreeReader;
+
+// The entry point of a jar made by msc. Runs the segments of the program in
+// order on one frame: compiled ones through their class, the others through
+// the tree. A compiled segment that finds a variable holding data of another
+// type, which a for loop can leave behind, is interpreted as well.
+public class Launcher {
+
+    private static class Segment {
+        List<Command> commands;
+        CompiledLoop code;
+    }
+
+    public static void main(String[] args) {
+        try {
+            run();
+        } catch (Exception e) {
+            System.err.println("Internal error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void run() throws Exception {
+        byte[] bytes;
+        try (InputStream in = Launcher.class.getResourceAsStream(AotCompiler.PROGRAM)) {
+            if (in == null)
+                throw new InternalException("Missing program");
+
+            bytes = in.readAllBytes();
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        if (bytes.length < 8 || header.getInt() != AotCompiler.MAGIC)
+            throw new InternalException("Malformed program");
+
+        int treeLength = header.getInt();
+        Command program = new TreeReader(ByteBuffer.wrap(bytes, 8, treeLength)).read();
+        List<Command> commands = program instanceof BlocksCommand
+                ? ((BlocksCommand) program).getCommands()
+                : Collections.singletonList(program);
+
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes, 8 + treeLength, bytes.length - 8 - treeLength));
+        Segment[] segments = new Segment[in.readInt()];
+        int first = 0;
+        for (int i = 0; i < segments.length; i++) {
+            Segment segment = new Segment();
+            int count = in.readInt();
+            segment.commands = commands.subList(first, first + count);
+            first += count;
+
+            String name = in.readUTF();
+            if (!name.isEmpty())
+                segment.code = load(name, in);
+
+            segments[i] = segment;
+        }
+
+        Frame frame = new Frame(0);
+        try {
+            for (Segment segment : segments) {
+                if (segment.code != null && segment.code.run(frame))
+                    continue;
+
+                for (Command cmd : segment.commands)
+                    cmd.execute(frame);
+            }
+        } catch (LanguageException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static CompiledLoop load(String name, DataInputStream in) throws Exception {
+        Variable[] variables = new Variable[in.readInt()];
+        for (int i = 0; i < variables.length; i++) {
+            int line = in.readInt();
+            String varName = in.readUTF();
+            Type type = type(in.readByte());
+            boolean constant = in.readBoolean();
+            int slot = in.readInt();
+            variables[i] = new Variable(line, varName, type, constant, slot);
+        }
+
+        LoopCode code = (LoopCode) Class.forName(name).getDeclaredConstructor().newInstance();
+        return new CompiledLoop(code, variables);
+    }
+
+    // Compiled code only has Int, Float and Bool variables.
+    private static Type type(int category) {
+        switch (Type.Category.values()[category]) {
+            case Int:
+                return IntType.instance();
+            case Float:
+                return FloatType.instance();
+            case Bool:
+                return BoolType.instance();
+            default:
+                throw new InternalException("Malformed program");
+        }
+    }
+
+}
@@ -0,0 +1,813 @@
+package interpreter.bytecode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import interpreter.Visitor;
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.DumpCommand;
+import interpreter.command.ForCommand;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.PrintCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.DictItem;
+import interpreter.expr.Expr;
+import interpreter.expr.ExprTypes;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.SetExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.composed.ArrayType;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.CharType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.type.primitive.StringType;
+import interpreter.value.Value;
+
+// Translates a syntax tree into a Program. Expressions leave their value on
+// the operand stack and commands leave it as they found it. Operands are
+// evaluated in the same order as the tree-walker evaluates them, so side
+// effects and errors happen in the same order too.
+//
+// The type of most expressions is known here, from ExprTypes. Operators whose
+// operands are known to share a primitive type are compiled to unboxed
+// instructions; everything else is left to the checks done at run time.
+public class Compiler implements Visitor<Void> {
+
+    private int[] code;
+    private int size;
+    private List<Object> pool;
+    private Map<Object, Integer> indexes;
+    private ExprTypes types;
+    private Map<Variable, Integer> registers;
+    private Set<Variable> boxed;
+    private Unsure unsure;
+    private boolean useRegisters;
+    private int depth;
+    private int maxDepth;
+    private int primitiveDepth;
+    private int maxPrimitiveDepth;
+
+    private static final Type BOOL = BoolType.instance();
+    private static final Type INT = IntType.instance();
+    private static final Type FLOAT = FloatType.instance();
+
+    // The constants && and || on Values are settled with.
+    private static final Value TRUE = new Value(BOOL, true);
+    private static final Value FALSE = new Value(BOOL, false);
+
+    // Stands for an expression whose type is only known at run time.
+    private static final Type UNKNOWN = null;
+
+    private Compiler() {
+        this.code = new int[64];
+        this.size = 0;
+        this.pool = new ArrayList<Object>();
+        this.indexes = new IdentityHashMap<Object, Integer>();
+        this.types = new ExprTypes();
+        this.registers = new IdentityHashMap<Variable, Integer>();
+        this.boxed = Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+        this.unsure = new Unsure();
+        this.useRegisters = true;
+        this.depth = 0;
+        this.maxDepth = 0;
+        this.primitiveDepth = 0;
+        this.maxPrimitiveDepth = 0;
+    }
+
+    public static Program compile(Command cmd) {
+        return compile(cmd, true, new Unsure());
+    }
+
+    // Without registers every variable stays in the frame, for a frame that
+    // holds data of another type than a variable's own, which a for loop
+    // can leave behind. What the command may leave so is added to unsure.
+    public static Program compile(Command cmd, boolean useRegisters, Unsure unsure) {
+        Compiler compiler = new Compiler();
+        compiler.useRegisters = useRegisters;
+        compiler.unsure = unsure;
+        compiler.boxed.addAll(unsure.variables);
+        compiler.boxedVariables(cmd);
+        cmd.accept(compiler);
+        Variable[] registers = new Variable[compiler.registers.size()];
+        for (Map.Entry<Variable, Integer> entry : compiler.registers.entrySet())
+            registers[entry.getValue()] = entry.getKey();
+
+        return new Program(Arrays.copyOf(compiler.code, compiler.size), compiler.pool.toArray(), registers,
+                compiler.maxDepth, compiler.maxPrimitiveDepth);
+    }
+
+    public Void visit(AssignCommand cmd) {
+        if (cmd.getLhs() instanceof Variable) {
+            Variable var = (Variable) cmd.getLhs();
+            int r = register(var);
+            if (r >= 0 && !var.isConstant() && typeOf(cmd.getRhs()) == var.getType()) {
+                unboxed(cmd.getRhs());
+                emit(Opcode.RSTORE, 0, -1, r);
+                return null;
+            }
+        }
+
+        cmd.getRhs().accept(this);
+        if (cmd.getLhs() == null)
+            emit(Opcode.POP, -1, 0);
+        else
+            store(cmd.getLhs());
+
+        return null;
+    }
+
+    public Void visit(BlocksCommand cmd) {
+        for (Command c : cmd.getCommands())
+            c.accept(this);
+
+        return null;
+    }
+
+    public Void visit(DumpCommand cmd) {
+        cmd.getExpr().accept(this);
+        emit(Opcode.DUMP, -1, 0);
+        return null;
+    }
+
+    // The iterator stays on the stack while the body runs. The loop variable
+    // has no register, see boxedVariables.
+    public Void visit(ForCommand cmd) {
+        cmd.getExpr().accept(this);
+        emit(Opcode.FOR_INIT, 0, 0, cmd.getLine(), constant(cmd.getVariable()));
+
+        int loop = size;
+        emit(Opcode.FOR_NEXT, 0, 0, constant(cmd.getVariable()), 0);
+        int exit = size - 1;
+
+        cmd.getBody().accept(this);
+        emit(Opcode.JUMP, 0, 0, loop);
+
+        patch(exit);
+        depth--;
+        return null;
+    }
+
+    public Void visit(IfCommand cmd) {
+        List<Integer> otherwise = condition(cmd.getExpr(), cmd.getLine());
+
+        cmd.getThen().accept(this);
+        if (cmd.getElse() == null) {
+            patch(otherwise);
+        } else {
+            emit(Opcode.JUMP, 0, 0, 0);
+            int end = size - 1;
+
+            patch(otherwise);
+            cmd.getElse().accept(this);
+            patch(end);
+        }
+
+        return null;
+    }
+
+    public Void visit(InitializeCommand cmd) {
+        Variable var = cmd.getVariable();
+        int r = register(var);
+        if (r >= 0 && typeOf(cmd.getExpr()) == var.getType()) {
+            unboxed(cmd.getExpr());
+            emit(Opcode.RSTORE, 0, -1, r);
+        } else {
+            cmd.getExpr().accept(this);
+            if (r >= 0)
+                emit(Opcode.RINIT_VALUE, -1, 0, r);
+            else
+                emit(Opcode.INIT, -1, 0, constant(var));
+        }
+
+        return null;
+    }
+
+    public Void visit(PrintCommand cmd) {
+        cmd.getExpr().accept(this);
+        emit(cmd.isNewline() ? Opcode.PRINTLN : Opcode.PRINT, -1, 0);
+        return null;
+    }
+
+    public Void visit(WhileCommand cmd) {
+        int loop = size;
+        List<Integer> exit = condition(cmd.getExpr(), cmd.getLine());
+
+        cmd.getBody().accept(this);
+        emit(Opcode.JUMP, 0, 0, loop);
+
+        patch(exit);
+        return null;
+    }
+
+    public Void visit(AccessExpr expr) {
+        expr.getBase().accept(this);
+        expr.getIndex().accept(this);
+        emit(expr.isInBounds() ? Opcode.GET_IN_BOUNDS : Opcode.GET, -1, 0, expr.getLine());
+        return null;
+    }
+
+    public Void visit(ActionExpr expr) {
+        emit(Opcode.ACTION, 1, 0, expr.getOp().ordinal());
+        return null;
+    }
+
+    public Void visit(ArrayExpr expr) {
+        emit(Opcode.NEW_ARRAY, 1, 0, constant(expr.getType()));
+        for (Expr item : expr.getItems()) {
+            item.accept(this);
+            emit(Opcode.ARRAY_ADD, -1, 0, expr.getLine());
+        }
+
+        return null;
+    }
+
+    public Void visit(BinaryExpr expr) {
+        if (primitive(expr) != UNKNOWN) {
+            unboxed(expr);
+            box(typeOf(expr));
+            return null;
+        }
+
+        BinaryExpr.Op op = expr.getOp();
+        expr.getLeft().accept(this);
+        if (op == BinaryExpr.Op.And || op == BinaryExpr.Op.Or) {
+            logical(expr);
+            return null;
+        }
+
+        expr.getRight().accept(this);
+        emit(Opcode.AND + op.ordinal(), -1, 0, expr.getLine());
+        return null;
+    }
+
+    // The rest of && or || on Values, with the left operand on the stack.
+    // SELECT checks it as andOp and orOp would; the right operand is only
+    // evaluated when the left one is true for && or false for ||, and the
+    // operator then checks it against that constant.
+    private void logical(BinaryExpr expr) {
+        boolean and = expr.getOp() == BinaryExpr.Op.And;
+        emit(Opcode.SELECT, -1, 0, expr.getLine(), 0);
+        int settled = size - 1;
+
+        emit(Opcode.CONST, 1, 0, constant(TRUE));
+        if (and) {
+            expr.getRight().accept(this);
+            emit(Opcode.AND, -1, 0, expr.getLine());
+        }
+        emit(Opcode.JUMP, 0, 0, 0);
+        int end = size - 1;
+
+        depth--;
+        patch(settled);
+        emit(Opcode.CONST, 1, 0, constant(FALSE));
+        if (!and) {
+            expr.getRight().accept(this);
+            emit(Opcode.OR, -1, 0, expr.getLine());
+        }
+        patch(end);
+    }
+
+    public Void visit(CastExpr expr) {
+        expr.getExpr().accept(this);
+        emit(Opcode.CAST, 0, 0, expr.getOp().ordinal());
+        return null;
+    }
+
+    // Both branches start from the depth the condition left behind.
+    public Void visit(ConditionalExpr expr) {
+        List<Integer> otherwise;
+        if (typeOf(expr.getCond()) == BOOL) {
+            otherwise = condition(expr.getCond(), expr.getLine());
+        } else {
+            expr.getCond().accept(this);
+            emit(Opcode.SELECT, -1, 0, expr.getLine(), 0);
+            otherwise = Collections.singletonList(size - 1);
+        }
+
+        expr.getTrueExpr().accept(this);
+        emit(Opcode.JUMP, 0, 0, 0);
+        int end = size - 1;
+
+        depth--;
+        patch(otherwise);
+        expr.getFalseExpr().accept(this);
+        patch(end);
+        return null;
+    }
+
+    public Void visit(ConstExpr expr) {
+        emit(Opcode.CONST, 1, 0, constant(expr.getValue()));
+        return null;
+    }
+
+    public Void visit(DictExpr expr) {
+        emit(Opcode.NEW_DICT, 1, 0, constant(expr.getType()));
+        for (DictItem item : expr.getItems()) {
+            item.key.accept(this);
+            item.value.accept(this);
+            emit(Opcode.DICT_PUT, -2, 0, expr.getLine());
+        }
+
+        return null;
+    }
+
+    public Void visit(FunctionExpr expr) {
+        expr.getExpr().accept(this);
+        if (expr.getArg() == null) {
+            emit(Opcode.FUNCTION, 0, 0, expr.getLine(), expr.getOp().ordinal(), 0);
+        } else {
+            expr.getArg().accept(this);
+            emit(Opcode.FUNCTION, -1, 0, expr.getLine(), expr.getOp().ordinal(), 1);
+        }
+
+        return null;
+    }
+
+    public Void visit(UnaryExpr expr) {
+        if (primitive(expr) != UNKNOWN) {
+            unboxed(expr);
+            box(typeOf(expr));
+            return null;
+        }
+
+        expr.getExpr().accept(this);
+        emit(expr.getOp() == UnaryExpr.Op.Not ? Opcode.NOT : Opcode.NEG, 0, 0, expr.getLine());
+        return null;
+    }
+
+    public Void visit(Variable var) {
+        int r = register(var);
+        if (r >= 0)
+            emit(Opcode.RBOX, 1, 0, r);
+        else
+            emit(Opcode.LOAD, 1, 0, constant(var));
+
+        return null;
+    }
+
+    // Stores the value on top of the stack. An element of a string is written
+    // by building a new string and storing it into the base in turn, so SET
+    // either jumps over that store or leaves the new string for it.
+    private void store(SetExpr lhs) {
+        if (lhs instanceof Variable) {
+            int r = register((Variable) lhs);
+            if (r >= 0)
+                emit(Opcode.RSTORE_VALUE, -1, 0, r);
+            else
+                emit(Opcode.STORE, -1, 0, constant(lhs));
+        } else {
+            AccessExpr access = (AccessExpr) lhs;
+            access.getBase().accept(this);
+            access.getIndex().accept(this);
+            emit(Opcode.SET, -2, 0, access.getLine(), 0);
+            int end = size - 1;
+
+            store(access.getBase());
+            patch(end);
+        }
+    }
+
+    // Jumps over the instructions that follow when the condition is false,
+    // and returns where the targets of those jumps are, for patch. && and ||
+    // on Bools become chains of jumps, one per operand, so no Bool is made
+    // for them.
+    private List<Integer> condition(Expr expr, int line) {
+        List<Integer> jumps = new ArrayList<Integer>();
+        if (isLogical(expr, BinaryExpr.Op.And)) {
+            jumps.addAll(condition(((BinaryExpr) expr).getLeft(), line));
+            jumps.addAll(condition(((BinaryExpr) expr).getRight(), line));
+        } else if (isLogical(expr, BinaryExpr.Op.Or)) {
+            List<Integer> taken = jumpIf(((BinaryExpr) expr).getLeft(), line);
+            jumps.addAll(condition(((BinaryExpr) expr).getRight(), line));
+            patch(taken);
+        } else if (expr instanceof BinaryExpr && primitive(expr) == INT && isComparison(((BinaryExpr) expr).getOp())) {
+            // An Int comparison is negated exactly, so it jumps on the opposite.
+            jumps.add(compare((BinaryExpr) expr, negate(((BinaryExpr) expr).getOp())));
+        } else if (typeOf(expr) == BOOL) {
+            unboxed(expr);
+            emit(Opcode.JUMP_ZERO, 0, -1, 0);
+            jumps.add(size - 1);
+        } else {
+            expr.accept(this);
+            emit(Opcode.JUMP_FALSE, -1, 0, line, 0);
+            jumps.add(size - 1);
+        }
+
+        return jumps;
+    }
+
+    // The other way round: jumps when the Bool expression is true.
+    private List<Integer> jumpIf(Expr expr, int line) {
+        List<Integer> jumps = new ArrayList<Integer>();
+        if (isLogical(expr, BinaryExpr.Op.And)) {
+            List<Integer> skipped = condition(((BinaryExpr) expr).getLeft(), line);
+            jumps.addAll(jumpIf(((BinaryExpr) expr).getRight(), line));
+            patch(skipped);
+        } else if (isLogical(expr, BinaryExpr.Op.Or)) {
+            jumps.addAll(jumpIf(((BinaryExpr) expr).getLeft(), line));
+            jumps.addAll(jumpIf(((BinaryExpr) expr).getRight(), line));
+        } else if (expr instanceof BinaryExpr && primitive(expr) == INT && isComparison(((BinaryExpr) expr).getOp())) {
+            jumps.add(compare((BinaryExpr) expr, ((BinaryExpr) expr).getOp()));
+        } else {
+            unboxed(expr);
+            emit(Opcode.JUMP_NONZERO, 0, -1, 0);
+            jumps.add(size - 1);
+        }
+
+        return jumps;
+    }
+
+    // An Int comparison fused with a jump taken when op holds between its
+    // operands. Returns where the target goes.
+    private int compare(BinaryExpr binary, BinaryExpr.Op op) {
+        int opcode = Opcode.IF_IEQ + op.ordinal() - BinaryExpr.Op.Equal.ordinal();
+        Expr left = binary.getLeft();
+        Expr right = binary.getRight();
+        if (left instanceof Variable && register((Variable) left) >= 0 && right instanceof ConstExpr) {
+            emit(opcode + (Opcode.IF_IEQ_RK - Opcode.IF_IEQ), 0, 0, register((Variable) left),
+                    bits((ConstExpr) right), 0);
+        } else {
+            unboxed(left);
+            unboxed(right);
+            emit(opcode, 0, -2, 0);
+        }
+
+        return size - 1;
+    }
+
+    // Leaves the value of an Int, Float or Bool expression on the stack of
+    // unboxed values.
+    private void unboxed(Expr expr) {
+        Type type = typeOf(expr);
+        if (expr instanceof ConstExpr) {
+            emit(Opcode.ICONST, 0, 1, bits((ConstExpr) expr));
+        } else if (expr instanceof Variable && register((Variable) expr) >= 0) {
+            emit(Opcode.RLOAD, 0, 1, register((Variable) expr));
+        } else if (expr instanceof Variable) {
+            int var = constant(expr);
+            if (type == INT)
+                emit(Opcode.ILOAD, 0, 1, var);
+            else if (type == FLOAT)
+                emit(Opcode.FLOAD, 0, 1, var);
+            else
+                emit(Opcode.BLOAD, 0, 1, var);
+        } else if (isLogical(expr, BinaryExpr.Op.And) || isLogical(expr, BinaryExpr.Op.Or)) {
+            // The jumps of a condition, landing on a 1 or a 0.
+            List<Integer> otherwise = condition(expr, expr.getLine());
+            emit(Opcode.ICONST, 0, 1, 1);
+            emit(Opcode.JUMP, 0, 0, 0);
+            int end = size - 1;
+
+            primitiveDepth--;
+            patch(otherwise);
+            emit(Opcode.ICONST, 0, 1, 0);
+            patch(end);
+        } else if (primitive(expr) != UNKNOWN && expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            int opcode = binaryOpcode(primitive(expr), binary.getOp());
+            Expr left = binary.getLeft();
+            Expr right = binary.getRight();
+            if (primitive(expr) != BOOL && left instanceof Variable && register((Variable) left) >= 0
+                    && right instanceof ConstExpr) {
+                emit(opcode + (Opcode.IEQ_RK - Opcode.IEQ), 0, 1, register((Variable) left),
+                        bits((ConstExpr) right));
+            } else {
+                unboxed(left);
+                unboxed(right);
+                emit(opcode, 0, -1);
+            }
+        } else if (primitive(expr) != UNKNOWN && expr instanceof UnaryExpr) {
+            unboxed(((UnaryExpr) expr).getExpr());
+            if (type == INT)
+                emit(Opcode.INEG, 0, 0);
+            else if (type == FLOAT)
+                emit(Opcode.FNEG, 0, 0);
+            else
+                emit(Opcode.BNOT, 0, 0);
+        } else {
+            expr.accept(this);
+            if (type == INT)
+                emit(Opcode.IUNBOX, -1, 1);
+            else if (type == FLOAT)
+                emit(Opcode.FUNBOX, -1, 1);
+            else
+                emit(Opcode.BUNBOX, -1, 1);
+        }
+    }
+
+    private static int bits(ConstExpr expr) {
+        Object data = expr.getValue().data;
+        if (data instanceof Integer)
+            return ((Integer) data).intValue();
+        else if (data instanceof Float)
+            return Float.floatToRawIntBits(((Float) data).floatValue());
+        else
+            return ((Boolean) data).booleanValue() ? 1 : 0;
+    }
+
+    private void box(Type type) {
+        if (type == INT)
+            emit(Opcode.IBOX, 1, -1);
+        else if (type == FLOAT)
+            emit(Opcode.FBOX, 1, -1);
+        else
+            emit(Opcode.BBOX, 1, -1);
+    }
+
+    // Whether the expression is && or || done on Bools.
+    private boolean isLogical(Expr expr, BinaryExpr.Op op) {
+        return expr instanceof BinaryExpr && ((BinaryExpr) expr).getOp() == op && primitive(expr) == BOOL;
+    }
+
+    private static boolean isComparison(BinaryExpr.Op op) {
+        return op.ordinal() >= BinaryExpr.Op.Equal.ordinal() && op.ordinal() <= BinaryExpr.Op.GreaterEqual.ordinal();
+    }
+
+    private static BinaryExpr.Op negate(BinaryExpr.Op op) {
+        switch (op) {
+            case Equal:
+                return BinaryExpr.Op.NotEqual;
+            case NotEqual:
+                return BinaryExpr.Op.Equal;
+            case LowerThan:
+                return BinaryExpr.Op.GreaterEqual;
+            case LowerEqual:
+                return BinaryExpr.Op.GreaterThan;
+            case GreaterThan:
+                return BinaryExpr.Op.LowerEqual;
+            default:
+                return BinaryExpr.Op.LowerThan;
+        }
+    }
+
+    // Bool equality compares 0 and 1 the same way as Int.
+    private static int binaryOpcode(Type type, BinaryExpr.Op op) {
+        return (type == FLOAT ? Opcode.FEQ : Opcode.IEQ) + op.ordinal() - BinaryExpr.Op.Equal.ordinal();
+    }
+
+    // The primitive type shared by the operands of an operator that can be
+    // done unboxed, or UNKNOWN when it has to go through the checked path.
+    private Type primitive(Expr expr) {
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            Type type = typeOf(binary.getLeft());
+            if (type != typeOf(binary.getRight()))
+                return UNKNOWN;
+
+            switch (binary.getOp()) {
+                case And:
+                case Or:
+                    return type == BOOL ? type : UNKNOWN;
+                case Equal:
+                case NotEqual:
+                    return type == BOOL || type == INT || type == FLOAT ? type : UNKNOWN;
+                default:
+                    return type == INT || type == FLOAT ? type : UNKNOWN;
+            }
+        } else if (expr instanceof UnaryExpr) {
+            UnaryExpr unary = (UnaryExpr) expr;
+            Type type = typeOf(unary.getExpr());
+            if (unary.getOp() == UnaryExpr.Op.Not)
+                return type == BOOL ? type : UNKNOWN;
+            else
+                return type == INT || type == FLOAT ? type : UNKNOWN;
+        } else {
+            return UNKNOWN;
+        }
+    }
+
+    // A variable without a register, or an expression whose data may not suit
+    // its type, is read through the checked path, like an expression of
+    // unknown type.
+    private Type typeOf(Expr expr) {
+        if (expr instanceof Variable && boxed.contains(expr))
+            return UNKNOWN;
+
+        if (isUnsure(expr))
+            return UNKNOWN;
+
+        return types.typeOf(expr);
+    }
+
+    // Whether the data of a value of expr may not suit its type: toFloat of a
+    // value that is not a number gives data that is no float, and a loop
+    // variable can hold an element of another type.
+    private boolean isUnsure(Expr expr) {
+        if (expr instanceof Variable) {
+            return unsure.variables.contains(expr);
+        } else if (expr instanceof CastExpr) {
+            CastExpr cast = (CastExpr) expr;
+            if (cast.getOp() != CastExpr.Op.ToFloat)
+                return false;
+
+            Type type = types.typeOf(cast.getExpr());
+            return type != INT && type != FLOAT && type != CharType.instance();
+        } else if (expr instanceof ConditionalExpr) {
+            ConditionalExpr cond = (ConditionalExpr) expr;
+            return isUnsure(cond.getTrueExpr()) || isUnsure(cond.getFalseExpr());
+        } else if (expr instanceof AccessExpr) {
+            // The characters of a string are made as they are read.
+            return unsure.elements && types.typeOf(((AccessExpr) expr).getBase()) != StringType.instance();
+        } else {
+            return false;
+        }
+    }
+
+    // The variables never given a register: those of the for loops, whose
+    // elements are not checked against their type, and those that may be
+    // given data that does not suit their type. Once an array or a dict may
+    // hold such data, no element read is sure either. Repeated until nothing
+    // changes, as one may reach another; all are known before the first
+    // register is given, as a read before the loop would give the variable
+    // one.
+    private void boxedVariables(Command cmd) {
+        int count;
+        boolean before;
+        do {
+            count = boxed.size() + unsure.variables.size();
+            before = unsure.elements;
+            scan(cmd);
+        } while (count != boxed.size() + unsure.variables.size() || before != unsure.elements);
+    }
+
+    private void scan(Command cmd) {
+        if (cmd instanceof BlocksCommand) {
+            for (Command c : ((BlocksCommand) cmd).getCommands())
+                scan(c);
+        } else if (cmd instanceof IfCommand) {
+            IfCommand ifCmd = (IfCommand) cmd;
+            scan(ifCmd.getExpr());
+            scan(ifCmd.getThen());
+            if (ifCmd.getElse() != null)
+                scan(ifCmd.getElse());
+        } else if (cmd instanceof WhileCommand) {
+            scan(((WhileCommand) cmd).getExpr());
+            scan(((WhileCommand) cmd).getBody());
+        } else if (cmd instanceof ForCommand) {
+            ForCommand forCmd = (ForCommand) cmd;
+            Variable var = forCmd.getVariable();
+            scan(forCmd.getExpr());
+            boxed.add(var);
+
+            Type collection = types.typeOf(forCmd.getExpr());
+            Type element = UNKNOWN;
+            if (collection instanceof ArrayType)
+                element = ((ArrayType) collection).getInnerType();
+            else if (collection == StringType.instance())
+                element = CharType.instance();
+
+            if (element == UNKNOWN || !var.getType().match(element) || unsure.elements)
+                taint(var);
+
+            scan(forCmd.getBody());
+        } else if (cmd instanceof AssignCommand) {
+            AssignCommand assign = (AssignCommand) cmd;
+            scan(assign.getRhs());
+            SetExpr lhs = assign.getLhs();
+            if (lhs instanceof AccessExpr) {
+                scan(((AccessExpr) lhs).getBase());
+                scan(((AccessExpr) lhs).getIndex());
+                if (isUnsure(assign.getRhs()))
+                    unsure.elements = true;
+            } else if (lhs instanceof Variable && isUnsure(assign.getRhs())) {
+                taint((Variable) lhs);
+            }
+        } else if (cmd instanceof InitializeCommand) {
+            InitializeCommand init = (InitializeCommand) cmd;
+            scan(init.getExpr());
+            if (isUnsure(init.getExpr()))
+                taint(init.getVariable());
+        } else if (cmd instanceof PrintCommand) {
+            scan(((PrintCommand) cmd).getExpr());
+        } else if (cmd instanceof DumpCommand) {
+            scan(((DumpCommand) cmd).getExpr());
+        }
+    }
+
+    private void scan(Expr expr) {
+        if (expr instanceof BinaryExpr) {
+            scan(((BinaryExpr) expr).getLeft());
+            scan(((BinaryExpr) expr).getRight());
+        } else if (expr instanceof UnaryExpr) {
+            scan(((UnaryExpr) expr).getExpr());
+        } else if (expr instanceof CastExpr) {
+            scan(((CastExpr) expr).getExpr());
+        } else if (expr instanceof ConditionalExpr) {
+            ConditionalExpr cond = (ConditionalExpr) expr;
+            scan(cond.getCond());
+            scan(cond.getTrueExpr());
+            scan(cond.getFalseExpr());
+        } else if (expr instanceof AccessExpr) {
+            scan(((AccessExpr) expr).getBase());
+            scan(((AccessExpr) expr).getIndex());
+        } else if (expr instanceof FunctionExpr) {
+            FunctionExpr function = (FunctionExpr) expr;
+            scan(function.getExpr());
+            if (function.getArg() != null) {
+                scan(function.getArg());
+                if (function.getOp() == FunctionExpr.Op.Append && isUnsure(function.getArg()))
+                    unsure.elements = true;
+            }
+        } else if (expr instanceof ArrayExpr) {
+            for (Expr item : ((ArrayExpr) expr).getItems()) {
+                scan(item);
+                if (isUnsure(item))
+                    unsure.elements = true;
+            }
+        } else if (expr instanceof DictExpr) {
+            for (DictItem item : ((DictExpr) expr).getItems()) {
+                scan(item.key);
+                scan(item.value);
+                if (isUnsure(item.key) || isUnsure(item.value))
+                    unsure.elements = true;
+            }
+        }
+    }
+
+    // An array or a dict that may hold data of another type makes its
+    // elements unsure.
+    private void taint(Variable var) {
+        boxed.add(var);
+        unsure.variables.add(var);
+
+        Type.Category category = var.getType().getCategory();
+        if (category == Type.Category.Array || category == Type.Category.Dict)
+            unsure.elements = true;
+    }
+
+    // The register of an Int, Float or Bool variable, or -1 for the variables
+    // that stay in the frame.
+    private int register(Variable var) {
+        Integer r = registers.get(var);
+        if (r != null)
+            return r;
+
+        Type type = var.getType();
+        if ((type != INT && type != FLOAT && type != BOOL) || boxed.contains(var) || !useRegisters)
+            return -1;
+
+        r = registers.size();
+        registers.put(var, r);
+        return r;
+    }
+
+    private int constant(Object value) {
+        Integer index = indexes.get(value);
+        if (index == null) {
+            index = pool.size();
+            pool.add(value);
+            indexes.put(value, index);
+        }
+
+        return index;
+    }
+
+    // Points the jump operand at the given offset to the next instruction.
+    private void patch(int operand) {
+        code[operand] = size;
+    }
+
+    private void patch(List<Integer> operands) {
+        for (int operand : operands)
+            patch(operand);
+    }
+
+    // Effects are how many entries the instruction adds to the stack of
+    // Values and to the stack of unboxed values.
+    private void emit(int opcode, int effect, int primitiveEffect, int... operands) {
+        if (size + operands.length + 1 > code.length)
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + operands.length + 1));
+
+        code[size++] = opcode;
+        for (int operand : operands)
+            code[size++] = operand;
+
+        depth += effect;
+        if (depth > maxDepth)
+            maxDepth = depth;
+
+        primitiveDepth += primitiveEffect;
+        if (primitiveDepth > maxPrimitiveDepth)
+            maxPrimitiveDepth = primitiveDepth;
+    }
+
+}
@@ -0,0 +1,150 @@
+package interpreter.bytecode;
+
+// The instructions of a Program. Each one is an opcode followed by a fixed
+// number of int operands: a line for the instructions that can fail, an index
+// into the pool, an enum ordinal or the code offset of a jump target.
+//
+// Most instructions work on Values. The ones from ICONST on work on a second
+// stack of raw ints, used for expressions whose type the compiler knows to be
+// Int, Float (stored as its bits) or Bool (0 or 1), so they need no boxing.
+// Variables of those types live in registers of the same form while the
+// program runs and go back to the frame as Values when it stops.
+public class Opcode {
+
+    // Stack and variables.
+    public static final int CONST = 0;          // k
+    public static final int LOAD = 1;           // k(variable)
+    public static final int STORE = 2;          // k(variable)
+    public static final int INIT = 3;           // k(variable)
+    public static final int POP = 4;
+
+    // Binary operators, in the order of BinaryExpr.Op.
+    public static final int AND = 5;            // line
+    public static final int OR = 6;             // line
+    public static final int EQ = 7;             // line
+    public static final int NE = 8;             // line
+    public static final int LT = 9;             // line
+    public static final int LE = 10;            // line
+    public static final int GT = 11;            // line
+    public static final int GE = 12;            // line
+    public static final int ADD = 13;           // line
+    public static final int SUB = 14;           // line
+    public static final int MUL = 15;           // line
+    public static final int DIV = 16;           // line
+
+    // Other expressions.
+    public static final int NOT = 17;           // line
+    public static final int NEG = 18;           // line
+    public static final int CAST = 19;          // op
+    public static final int FUNCTION = 20;      // line op argc
+    public static final int ACTION = 21;        // op
+    public static final int GET = 22;           // line
+    public static final int SET = 23;           // line target
+    public static final int NEW_ARRAY = 24;     // k(type)
+    public static final int ARRAY_ADD = 25;     // line
+    public static final int NEW_DICT = 26;      // k(type)
+    public static final int DICT_PUT = 27;      // line
+
+    // Control flow.
+    public static final int JUMP = 28;          // target
+    public static final int JUMP_FALSE = 29;    // line target
+    public static final int SELECT = 30;        // line target
+    public static final int FOR_INIT = 31;      // line k(variable)
+    public static final int FOR_NEXT = 32;      // k(variable) target
+
+    // Output.
+    public static final int PRINT = 33;
+    public static final int PRINTLN = 34;
+    public static final int DUMP = 35;
+
+    // Unboxed values.
+    public static final int ICONST = 36;        // n
+    public static final int ILOAD = 37;         // k(variable)
+    public static final int FLOAD = 38;         // k(variable)
+    public static final int BLOAD = 39;         // k(variable)
+    public static final int IUNBOX = 40;
+    public static final int FUNBOX = 41;
+    public static final int BUNBOX = 42;
+    public static final int IBOX = 43;
+    public static final int FBOX = 44;
+    public static final int BBOX = 45;
+
+    // Unboxed operators. Each group follows BinaryExpr.Op from Equal on.
+    public static final int IEQ = 46;
+    public static final int INE = 47;
+    public static final int ILT = 48;
+    public static final int ILE = 49;
+    public static final int IGT = 50;
+    public static final int IGE = 51;
+    public static final int IADD = 52;
+    public static final int ISUB = 53;
+    public static final int IMUL = 54;
+    public static final int IDIV = 55;
+    public static final int FEQ = 56;
+    public static final int FNE = 57;
+    public static final int FLT = 58;
+    public static final int FLE = 59;
+    public static final int FGT = 60;
+    public static final int FGE = 61;
+    public static final int FADD = 62;
+    public static final int FSUB = 63;
+    public static final int FMUL = 64;
+    public static final int FDIV = 65;
+    public static final int INEG = 66;
+    public static final int FNEG = 67;
+    public static final int BNOT = 68;
+    public static final int JUMP_ZERO = 69;     // target
+    public static final int JUMP_NONZERO = 70;  // target
+
+    // Variables kept unboxed in registers for the length of a run.
+    public static final int RLOAD = 71;         // r
+    public static final int RSTORE = 72;        // r
+    public static final int RBOX = 73;          // r
+    public static final int RSTORE_VALUE = 74;  // r
+    public static final int RINIT_VALUE = 75;   // r
+
+    // The unboxed operators again, for a register on the left and a constant
+    // on the right, which saves two dispatches on things like i < n or i + 1.
+    public static final int IEQ_RK = 76;        // r n
+    public static final int INE_RK = 77;        // r n
+    public static final int ILT_RK = 78;        // r n
+    public static final int ILE_RK = 79;        // r n
+    public static final int IGT_RK = 80;        // r n
+    public static final int IGE_RK = 81;        // r n
+    public static final int IADD_RK = 82;       // r n
+    public static final int ISUB_RK = 83;       // r n
+    public static final int IMUL_RK = 84;       // r n
+    public static final int IDIV_RK = 85;       // r n
+    public static final int FEQ_RK = 86;        // r n
+    public static final int FNE_RK = 87;        // r n
+    public static final int FLT_RK = 88;        // r n
+    public static final int FLE_RK = 89;        // r n
+    public static final int FGT_RK = 90;        // r n
+    public static final int FGE_RK = 91;        // r n
+    public static final int FADD_RK = 92;       // r n
+    public static final int FSUB_RK = 93;       // r n
+    public static final int FMUL_RK = 94;       // r n
+    public static final int FDIV_RK = 95;       // r n
+
+    // Int comparisons fused with the jump of an if or a while, taken when
+    // the comparison holds, in the same order as IEQ to IGE.
+    public static final int IF_IEQ = 96;        // target
+    public static final int IF_INE = 97;        // target
+    public static final int IF_ILT = 98;        // target
+    public static final int IF_ILE = 99;        // target
+    public static final int IF_IGT = 100;       // target
+    public static final int IF_IGE = 101;       // target
+    public static final int IF_IEQ_RK = 102;    // r n target
+    public static final int IF_INE_RK = 103;    // r n target
+    public static final int IF_ILT_RK = 104;    // r n target
+    public static final int IF_ILE_RK = 105;    // r n target
+    public static final int IF_IGT_RK = 106;    // r n target
+    public static final int IF_IGE_RK = 107;    // r n target
+
+    // GET for an index known to be in bounds, read without checking it.
+    public static final int GET_IN_BOUNDS = 108; // line
+
+    private Opcode() {
+    }
+
+}
@@ -0,0 +1,44 @@
+package interpreter.bytecode;
+
+import interpreter.expr.Variable;
+
+// A compiled command: the instructions, the pool their operands refer to
+// (constant values, variables and types), the variables that get a register
+// and the deepest each of the operand stacks gets while running them.
+public class Program {
+
+    private final int[] code;
+    private final Object[] pool;
+    private final Variable[] registers;
+    private final int maxStack;
+    private final int maxPrimitiveStack;
+
+    public Program(int[] code, Object[] pool, Variable[] registers, int maxStack, int maxPrimitiveStack) {
+        this.code = code;
+        this.pool = pool;
+        this.registers = registers;
+        this.maxStack = maxStack;
+        this.maxPrimitiveStack = maxPrimitiveStack;
+    }
+
+    public int[] getCode() {
+        return code;
+    }
+
+    public Object[] getPool() {
+        return pool;
+    }
+
+    public Variable[] getRegisters() {
+        return registers;
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    public int getMaxPrimitiveStack() {
+        return maxPrimitiveStack;
+    }
+
+}
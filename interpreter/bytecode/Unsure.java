@@ -0,0 +1,23 @@
+package interpreter.bytecode;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import interpreter.expr.Variable;
+
+// What the commands compiled for a frame may have left in it that does not
+// suit its type: the variables that may hold such data, and whether an array
+// or a dict may. Commands run one after another in the same frame, as the
+// lines of the prompt are, should be compiled with the same one.
+public class Unsure {
+
+    final Set<Variable> variables;
+    boolean elements;
+
+    public Unsure() {
+        this.variables = Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+        this.elements = false;
+    }
+
+}
@@ -0,0 +1,805 @@
+package interpreter.bytecode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import error.LanguageException;
+import interpreter.Frame;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.Type.Category;
+import interpreter.type.composed.ArrayType;
+import interpreter.type.composed.DictType;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.Value;
+
+// Runs a Program against a frame with a single dispatch loop. Operators on
+// Int, Float and Bool operands are done inline; anything else goes through
+// the same code the tree nodes use, so results and errors do not depend on
+// the engine.
+public class VirtualMachine {
+
+    private static final BinaryExpr.Op[] BINARY_OPS = BinaryExpr.Op.values();
+    private static final CastExpr.Op[] CAST_OPS = CastExpr.Op.values();
+    private static final FunctionExpr.Op[] FUNCTION_OPS = FunctionExpr.Op.values();
+    private static final ActionExpr.Op[] ACTION_OPS = ActionExpr.Op.values();
+
+    private static final Type BOOL = BoolType.instance();
+    private static final Type INT = IntType.instance();
+    private static final Type FLOAT = FloatType.instance();
+
+    private final Frame frame;
+
+    public VirtualMachine(Frame frame) {
+        this.frame = frame;
+    }
+
+    // Registers start from the values the frame already has, from an earlier
+    // line of the prompt for instance, and are written back even when the
+    // program stops on an error. Returns false without running anything when
+    // one of those values holds data of another type than its variable's,
+    // which a for loop can leave behind; the caller then compiles the
+    // command without registers.
+    public boolean run(Program program) {
+        Variable[] registers = program.getRegisters();
+        int[] locals = new int[registers.length];
+        boolean[] defined = new boolean[registers.length];
+        for (int r = 0; r < registers.length; r++) {
+            int slot = registers[r].getSlot();
+            if (frame.getRawType(slot) != null) {
+                locals[r] = frame.getRaw(slot);
+                defined[r] = true;
+            } else {
+                Value value = frame.get(slot);
+                if (value != null) {
+                    if (value.type != registers[r].getType() || !fits(value))
+                        return false;
+
+                    locals[r] = unbox(value);
+                    defined[r] = true;
+                }
+            }
+        }
+
+        try {
+            execute(program, locals, defined);
+        } finally {
+            for (int r = 0; r < registers.length; r++) {
+                if (defined[r])
+                    frame.setRaw(registers[r].getSlot(), registers[r].getType(), locals[r]);
+            }
+        }
+
+        return true;
+    }
+
+    private void execute(Program program, int[] locals, boolean[] defined) {
+        Variable[] registers = program.getRegisters();
+        int[] code = program.getCode();
+        Object[] pool = program.getPool();
+        Object[] stack = new Object[program.getMaxStack()];
+        int[] ints = new int[program.getMaxPrimitiveStack()];
+        int sp = 0;
+        int ip = 0;
+        int pc = 0;
+
+        while (pc < code.length) {
+            switch (code[pc]) {
+                case Opcode.CONST:
+                    stack[sp++] = pool[code[pc + 1]];
+                    pc += 2;
+                    break;
+                case Opcode.LOAD:
+                    stack[sp++] = ((Variable) pool[code[pc + 1]]).expr(frame);
+                    pc += 2;
+                    break;
+                case Opcode.STORE:
+                    ((Variable) pool[code[pc + 1]]).setValue(frame, (Value) stack[--sp]);
+                    stack[sp] = null;
+                    pc += 2;
+                    break;
+                case Opcode.INIT:
+                    ((Variable) pool[code[pc + 1]]).initialize(frame, (Value) stack[--sp]);
+                    stack[sp] = null;
+                    pc += 2;
+                    break;
+                case Opcode.POP:
+                    stack[--sp] = null;
+                    pc += 1;
+                    break;
+                case Opcode.EQ:
+                case Opcode.NE:
+                    stack[sp - 2] = binary(code[pc], code[pc + 1], (Value) stack[sp - 2], (Value) stack[sp - 1]);
+                    stack[--sp] = null;
+                    pc += 2;
+                    break;
+                case Opcode.AND:
+                case Opcode.OR: {
+                    Value r = (Value) stack[--sp];
+                    Value l = (Value) stack[sp - 1];
+                    if (l.type == BOOL && r.type == BOOL) {
+                        boolean bl = ((Boolean) l.data).booleanValue();
+                        boolean br = ((Boolean) r.data).booleanValue();
+                        stack[sp - 1] = new Value(BOOL, code[pc] == Opcode.AND ? bl && br : bl || br);
+                    } else {
+                        stack[sp - 1] = binary(code[pc], code[pc + 1], l, r);
+                    }
+                    stack[sp] = null;
+                    pc += 2;
+                    break;
+                }
+                case Opcode.LT:
+                case Opcode.LE:
+                case Opcode.GT:
+                case Opcode.GE: {
+                    Value r = (Value) stack[--sp];
+                    Value l = (Value) stack[sp - 1];
+                    if (l.type == INT && r.type == INT)
+                        stack[sp - 1] = new Value(BOOL, compare(code[pc],
+                                ((Integer) l.data).intValue(), ((Integer) r.data).intValue()));
+                    else if (l.type == FLOAT && r.type == FLOAT)
+                        stack[sp - 1] = new Value(BOOL, compare(code[pc],
+                                ((Float) l.data).floatValue(), ((Float) r.data).floatValue()));
+                    else
+                        stack[sp - 1] = binary(code[pc], code[pc + 1], l, r);
+                    stack[sp] = null;
+                    pc += 2;
+                    break;
+                }
+                case Opcode.ADD:
+                case Opcode.SUB:
+                case Opcode.MUL:
+                case Opcode.DIV: {
+                    Value r = (Value) stack[--sp];
+                    Value l = (Value) stack[sp - 1];
+                    if (l.type == INT && r.type == INT)
+                        stack[sp - 1] = new Value(INT, arithmetic(code[pc],
+                                ((Integer) l.data).intValue(), ((Integer) r.data).intValue()));
+                    else if (l.type == FLOAT && r.type == FLOAT)
+                        stack[sp - 1] = new Value(FLOAT, arithmetic(code[pc],
+                                ((Float) l.data).floatValue(), ((Float) r.data).floatValue()));
+                    else
+                        stack[sp - 1] = binary(code[pc], code[pc + 1], l, r);
+                    stack[sp] = null;
+                    pc += 2;
+                    break;
+                }
+                case Opcode.NOT:
+                    stack[sp - 1] = UnaryExpr.apply(code[pc + 1], UnaryExpr.Op.Not, (Value) stack[sp - 1]);
+                    pc += 2;
+                    break;
+                case Opcode.NEG:
+                    stack[sp - 1] = UnaryExpr.apply(code[pc + 1], UnaryExpr.Op.Neg, (Value) stack[sp - 1]);
+                    pc += 2;
+                    break;
+                case Opcode.CAST:
+                    stack[sp - 1] = CastExpr.apply(CAST_OPS[code[pc + 1]], (Value) stack[sp - 1]);
+                    pc += 2;
+                    break;
+                case Opcode.FUNCTION: {
+                    Value arg = null;
+                    if (code[pc + 3] != 0) {
+                        arg = (Value) stack[--sp];
+                        stack[sp] = null;
+                    }
+                    stack[sp - 1] = FunctionExpr.apply(code[pc + 1], FUNCTION_OPS[code[pc + 2]],
+                            (Value) stack[sp - 1], arg);
+                    pc += 4;
+                    break;
+                }
+                case Opcode.ACTION:
+                    stack[sp++] = ActionExpr.apply(ACTION_OPS[code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case Opcode.GET: {
+                    Value index = (Value) stack[--sp];
+                    stack[sp] = null;
+                    stack[sp - 1] = AccessExpr.get(code[pc + 1], (Value) stack[sp - 1], index);
+                    pc += 2;
+                    break;
+                }
+                case Opcode.GET_IN_BOUNDS: {
+                    Value index = (Value) stack[--sp];
+                    stack[sp] = null;
+                    Value ret = AccessExpr.getInBounds((Value) stack[sp - 1], index);
+                    stack[sp - 1] = ret != null ? ret : AccessExpr.get(code[pc + 1], (Value) stack[sp - 1], index);
+                    pc += 2;
+                    break;
+                }
+                case Opcode.SET: {
+                    Value index = (Value) stack[--sp];
+                    Value base = (Value) stack[--sp];
+                    Value value = (Value) stack[--sp];
+                    stack[sp + 1] = null;
+                    stack[sp + 2] = null;
+
+                    Value str = AccessExpr.set(code[pc + 1], base, index, value);
+                    if (str != null) {
+                        stack[sp++] = str;
+                        pc += 3;
+                    } else {
+                        stack[sp] = null;
+                        pc = code[pc + 2];
+                    }
+                    break;
+                }
+                case Opcode.NEW_ARRAY:
+                    stack[sp++] = new Value((Type) pool[code[pc + 1]], new ArrayList<Object>());
+                    pc += 2;
+                    break;
+                case Opcode.ARRAY_ADD: {
+                    Value item = (Value) stack[--sp];
+                    stack[sp] = null;
+                    Value array = (Value) stack[sp - 1];
+                    if (!item.type.getCategory().equals(((ArrayType) array.type).getInnerType().getCategory()))
+                        throw LanguageException.instance(code[pc + 1], LanguageException.Error.InvalidType,
+                                item.type.toString());
+
+                    ((List<Object>) array.data).add(item.data);
+                    pc += 2;
+                    break;
+                }
+                case Opcode.NEW_DICT:
+                    stack[sp++] = new Value((Type) pool[code[pc + 1]], new HashMap<Object, Object>());
+                    pc += 2;
+                    break;
+                case Opcode.DICT_PUT: {
+                    Value value = (Value) stack[--sp];
+                    Value key = (Value) stack[--sp];
+                    stack[sp] = null;
+                    stack[sp + 1] = null;
+                    Value dict = (Value) stack[sp - 1];
+                    DictType type = (DictType) dict.type;
+                    if (!key.type.equals(type.getKeyType()))
+                        throw LanguageException.instance(code[pc + 1], LanguageException.Error.InvalidType,
+                                key.type.toString());
+
+                    if (!value.type.equals(type.getValueType()))
+                        throw LanguageException.instance(code[pc + 1], LanguageException.Error.InvalidType,
+                                value.type.toString());
+
+                    ((Map<Object, Object>) dict.data).put(key.data, value.data);
+                    pc += 2;
+                    break;
+                }
+                case Opcode.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case Opcode.JUMP_FALSE: {
+                    Value value = (Value) stack[--sp];
+                    stack[sp] = null;
+                    if (value.type != BOOL)
+                        throw LanguageException.instance(code[pc + 1], LanguageException.Error.InvalidType,
+                                value.type.toString());
+
+                    pc = ((Boolean) value.data).booleanValue() ? pc + 3 : code[pc + 2];
+                    break;
+                }
+                case Opcode.SELECT: {
+                    Value value = (Value) stack[--sp];
+                    stack[sp] = null;
+                    if (value.type != BOOL)
+                        throw LanguageException.instance(code[pc + 1], LanguageException.Error.InvalidOperation);
+
+                    pc = ((Boolean) value.data).booleanValue() ? pc + 3 : code[pc + 2];
+                    break;
+                }
+                case Opcode.FOR_INIT:
+                    stack[sp - 1] = iterate(code[pc + 1], (Variable) pool[code[pc + 2]], (Value) stack[sp - 1]);
+                    pc += 3;
+                    break;
+                case Opcode.FOR_NEXT: {
+                    Iterator<?> it = (Iterator<?>) stack[sp - 1];
+                    if (it.hasNext()) {
+                        Variable var = (Variable) pool[code[pc + 1]];
+                        Value value = new Value(var.getType(), it.next());
+                        if (var.isConstant())
+                            var.initialize(frame, value);
+                        else
+                            var.setValue(frame, value);
+                        pc += 3;
+                    } else {
+                        stack[--sp] = null;
+                        pc = code[pc + 2];
+                    }
+                    break;
+                }
+                case Opcode.PRINT:
+                    System.out.print(((Value) stack[--sp]).data);
+                    stack[sp] = null;
+                    pc += 1;
+                    break;
+                case Opcode.PRINTLN:
+                    System.out.print(((Value) stack[--sp]).data);
+                    System.out.println();
+                    stack[sp] = null;
+                    pc += 1;
+                    break;
+                case Opcode.DUMP:
+                    System.out.println(stack[--sp]);
+                    stack[sp] = null;
+                    pc += 1;
+                    break;
+                case Opcode.ICONST:
+                    ints[ip++] = code[pc + 1];
+                    pc += 2;
+                    break;
+                case Opcode.ILOAD:
+                    ints[ip++] = ((Integer) ((Variable) pool[code[pc + 1]]).expr(frame).data).intValue();
+                    pc += 2;
+                    break;
+                case Opcode.FLOAD:
+                    ints[ip++] = Float.floatToRawIntBits(
+                            ((Float) ((Variable) pool[code[pc + 1]]).expr(frame).data).floatValue());
+                    pc += 2;
+                    break;
+                case Opcode.BLOAD:
+                    ints[ip++] = ((Boolean) ((Variable) pool[code[pc + 1]]).expr(frame).data).booleanValue() ? 1 : 0;
+                    pc += 2;
+                    break;
+                case Opcode.IUNBOX:
+                    ints[ip++] = ((Integer) ((Value) stack[--sp]).data).intValue();
+                    stack[sp] = null;
+                    pc += 1;
+                    break;
+                case Opcode.FUNBOX:
+                    ints[ip++] = Float.floatToRawIntBits(((Float) ((Value) stack[--sp]).data).floatValue());
+                    stack[sp] = null;
+                    pc += 1;
+                    break;
+                case Opcode.BUNBOX:
+                    ints[ip++] = ((Boolean) ((Value) stack[--sp]).data).booleanValue() ? 1 : 0;
+                    stack[sp] = null;
+                    pc += 1;
+                    break;
+                case Opcode.IBOX:
+                    stack[sp++] = new Value(INT, ints[--ip]);
+                    pc += 1;
+                    break;
+                case Opcode.FBOX:
+                    stack[sp++] = new Value(FLOAT, Float.intBitsToFloat(ints[--ip]));
+                    pc += 1;
+                    break;
+                case Opcode.BBOX:
+                    stack[sp++] = new Value(BOOL, ints[--ip] != 0);
+                    pc += 1;
+                    break;
+                case Opcode.IADD:
+                    ip--;
+                    ints[ip - 1] = ints[ip - 1] + ints[ip];
+                    pc += 1;
+                    break;
+                case Opcode.ISUB:
+                    ip--;
+                    ints[ip - 1] = ints[ip - 1] - ints[ip];
+                    pc += 1;
+                    break;
+                case Opcode.IMUL:
+                    ip--;
+                    ints[ip - 1] = ints[ip - 1] * ints[ip];
+                    pc += 1;
+                    break;
+                case Opcode.IDIV:
+                    ip--;
+                    ints[ip - 1] = ints[ip - 1] / ints[ip];
+                    pc += 1;
+                    break;
+                case Opcode.INEG:
+                    ints[ip - 1] = -ints[ip - 1];
+                    pc += 1;
+                    break;
+                case Opcode.IEQ:
+                    ip--;
+                    ints[ip - 1] = ints[ip - 1] == ints[ip] ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.INE:
+                    ip--;
+                    ints[ip - 1] = ints[ip - 1] != ints[ip] ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.ILT:
+                    ip--;
+                    ints[ip - 1] = ints[ip - 1] < ints[ip] ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.ILE:
+                    ip--;
+                    ints[ip - 1] = ints[ip - 1] <= ints[ip] ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.IGT:
+                    ip--;
+                    ints[ip - 1] = ints[ip - 1] > ints[ip] ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.IGE:
+                    ip--;
+                    ints[ip - 1] = ints[ip - 1] >= ints[ip] ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.FADD:
+                    ip--;
+                    ints[ip - 1] = Float.floatToRawIntBits(
+                            Float.intBitsToFloat(ints[ip - 1]) + Float.intBitsToFloat(ints[ip]));
+                    pc += 1;
+                    break;
+                case Opcode.FSUB:
+                    ip--;
+                    ints[ip - 1] = Float.floatToRawIntBits(
+                            Float.intBitsToFloat(ints[ip - 1]) - Float.intBitsToFloat(ints[ip]));
+                    pc += 1;
+                    break;
+                case Opcode.FMUL:
+                    ip--;
+                    ints[ip - 1] = Float.floatToRawIntBits(
+                            Float.intBitsToFloat(ints[ip - 1]) * Float.intBitsToFloat(ints[ip]));
+                    pc += 1;
+                    break;
+                case Opcode.FDIV:
+                    ip--;
+                    ints[ip - 1] = Float.floatToRawIntBits(
+                            Float.intBitsToFloat(ints[ip - 1]) / Float.intBitsToFloat(ints[ip]));
+                    pc += 1;
+                    break;
+                case Opcode.FNEG:
+                    ints[ip - 1] = Float.floatToRawIntBits(-Float.intBitsToFloat(ints[ip - 1]));
+                    pc += 1;
+                    break;
+                case Opcode.FEQ:
+                    // Float.equals compares the canonical bits, not the values.
+                    ip--;
+                    ints[ip - 1] = Float.floatToIntBits(Float.intBitsToFloat(ints[ip - 1]))
+                            == Float.floatToIntBits(Float.intBitsToFloat(ints[ip])) ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.FNE:
+                    ip--;
+                    ints[ip - 1] = Float.floatToIntBits(Float.intBitsToFloat(ints[ip - 1]))
+                            != Float.floatToIntBits(Float.intBitsToFloat(ints[ip])) ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.FLT:
+                    ip--;
+                    ints[ip - 1] = Float.intBitsToFloat(ints[ip - 1]) < Float.intBitsToFloat(ints[ip]) ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.FLE:
+                    ip--;
+                    ints[ip - 1] = Float.intBitsToFloat(ints[ip - 1]) <= Float.intBitsToFloat(ints[ip]) ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.FGT:
+                    ip--;
+                    ints[ip - 1] = Float.intBitsToFloat(ints[ip - 1]) > Float.intBitsToFloat(ints[ip]) ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.FGE:
+                    ip--;
+                    ints[ip - 1] = Float.intBitsToFloat(ints[ip - 1]) >= Float.intBitsToFloat(ints[ip]) ? 1 : 0;
+                    pc += 1;
+                    break;
+                case Opcode.BNOT:
+                    ints[ip - 1] = ints[ip - 1] ^ 1;
+                    pc += 1;
+                    break;
+                case Opcode.JUMP_ZERO:
+                    pc = ints[--ip] != 0 ? pc + 2 : code[pc + 1];
+                    break;
+                case Opcode.JUMP_NONZERO:
+                    pc = ints[--ip] != 0 ? code[pc + 1] : pc + 2;
+                    break;
+                case Opcode.RLOAD:
+                    ints[ip++] = read(locals, defined, registers, code[pc + 1]);
+                    pc += 2;
+                    break;
+                case Opcode.RSTORE: {
+                    int r = code[pc + 1];
+                    locals[r] = ints[--ip];
+                    defined[r] = true;
+                    pc += 2;
+                    break;
+                }
+                case Opcode.RBOX:
+                    stack[sp++] = box(registers[code[pc + 1]].getType(),
+                            read(locals, defined, registers, code[pc + 1]));
+                    pc += 2;
+                    break;
+                case Opcode.RSTORE_VALUE:
+                case Opcode.RINIT_VALUE: {
+                    // Same checks as Variable.setValue and Variable.initialize.
+                    int r = code[pc + 1];
+                    Variable var = registers[r];
+                    Value value = (Value) stack[--sp];
+                    stack[sp] = null;
+                    if (code[pc] == Opcode.RSTORE_VALUE && var.isConstant())
+                        throw LanguageException.instance(var.getLine(), LanguageException.Error.ConstantAssignment,
+                                var.getName());
+
+                    if (!var.getType().match(value.type))
+                        throw LanguageException.instance(var.getLine(), LanguageException.Error.InvalidType,
+                                value.type.toString());
+
+                    locals[r] = unbox(value);
+                    defined[r] = true;
+                    pc += 2;
+                    break;
+                }
+                case Opcode.IEQ_RK:
+                    ints[ip++] = read(locals, defined, registers, code[pc + 1]) == code[pc + 2] ? 1 : 0;
+                    pc += 3;
+                    break;
+                case Opcode.INE_RK:
+                    ints[ip++] = read(locals, defined, registers, code[pc + 1]) != code[pc + 2] ? 1 : 0;
+                    pc += 3;
+                    break;
+                case Opcode.ILT_RK:
+                    ints[ip++] = read(locals, defined, registers, code[pc + 1]) < code[pc + 2] ? 1 : 0;
+                    pc += 3;
+                    break;
+                case Opcode.ILE_RK:
+                    ints[ip++] = read(locals, defined, registers, code[pc + 1]) <= code[pc + 2] ? 1 : 0;
+                    pc += 3;
+                    break;
+                case Opcode.IGT_RK:
+                    ints[ip++] = read(locals, defined, registers, code[pc + 1]) > code[pc + 2] ? 1 : 0;
+                    pc += 3;
+                    break;
+                case Opcode.IGE_RK:
+                    ints[ip++] = read(locals, defined, registers, code[pc + 1]) >= code[pc + 2] ? 1 : 0;
+                    pc += 3;
+                    break;
+                case Opcode.IADD_RK:
+                    ints[ip++] = read(locals, defined, registers, code[pc + 1]) + code[pc + 2];
+                    pc += 3;
+                    break;
+                case Opcode.ISUB_RK:
+                    ints[ip++] = read(locals, defined, registers, code[pc + 1]) - code[pc + 2];
+                    pc += 3;
+                    break;
+                case Opcode.IMUL_RK:
+                    ints[ip++] = read(locals, defined, registers, code[pc + 1]) * code[pc + 2];
+                    pc += 3;
+                    break;
+                case Opcode.IDIV_RK:
+                    ints[ip++] = read(locals, defined, registers, code[pc + 1]) / code[pc + 2];
+                    pc += 3;
+                    break;
+                case Opcode.FEQ_RK: {
+                    float a = Float.intBitsToFloat(read(locals, defined, registers, code[pc + 1]));
+                    float b = Float.intBitsToFloat(code[pc + 2]);
+                    ints[ip++] = Float.floatToIntBits(a) == Float.floatToIntBits(b) ? 1 : 0;
+                    pc += 3;
+                    break;
+                }
+                case Opcode.FNE_RK: {
+                    float a = Float.intBitsToFloat(read(locals, defined, registers, code[pc + 1]));
+                    float b = Float.intBitsToFloat(code[pc + 2]);
+                    ints[ip++] = Float.floatToIntBits(a) != Float.floatToIntBits(b) ? 1 : 0;
+                    pc += 3;
+                    break;
+                }
+                case Opcode.FLT_RK: {
+                    float a = Float.intBitsToFloat(read(locals, defined, registers, code[pc + 1]));
+                    ints[ip++] = a < Float.intBitsToFloat(code[pc + 2]) ? 1 : 0;
+                    pc += 3;
+                    break;
+                }
+                case Opcode.FLE_RK: {
+                    float a = Float.intBitsToFloat(read(locals, defined, registers, code[pc + 1]));
+                    ints[ip++] = a <= Float.intBitsToFloat(code[pc + 2]) ? 1 : 0;
+                    pc += 3;
+                    break;
+                }
+                case Opcode.FGT_RK: {
+                    float a = Float.intBitsToFloat(read(locals, defined, registers, code[pc + 1]));
+                    ints[ip++] = a > Float.intBitsToFloat(code[pc + 2]) ? 1 : 0;
+                    pc += 3;
+                    break;
+                }
+                case Opcode.FGE_RK: {
+                    float a = Float.intBitsToFloat(read(locals, defined, registers, code[pc + 1]));
+                    ints[ip++] = a >= Float.intBitsToFloat(code[pc + 2]) ? 1 : 0;
+                    pc += 3;
+                    break;
+                }
+                case Opcode.FADD_RK: {
+                    float a = Float.intBitsToFloat(read(locals, defined, registers, code[pc + 1]));
+                    ints[ip++] = Float.floatToRawIntBits(a + Float.intBitsToFloat(code[pc + 2]));
+                    pc += 3;
+                    break;
+                }
+                case Opcode.FSUB_RK: {
+                    float a = Float.intBitsToFloat(read(locals, defined, registers, code[pc + 1]));
+                    ints[ip++] = Float.floatToRawIntBits(a - Float.intBitsToFloat(code[pc + 2]));
+                    pc += 3;
+                    break;
+                }
+                case Opcode.FMUL_RK: {
+                    float a = Float.intBitsToFloat(read(locals, defined, registers, code[pc + 1]));
+                    ints[ip++] = Float.floatToRawIntBits(a * Float.intBitsToFloat(code[pc + 2]));
+                    pc += 3;
+                    break;
+                }
+                case Opcode.FDIV_RK: {
+                    float a = Float.intBitsToFloat(read(locals, defined, registers, code[pc + 1]));
+                    ints[ip++] = Float.floatToRawIntBits(a / Float.intBitsToFloat(code[pc + 2]));
+                    pc += 3;
+                    break;
+                }
+                case Opcode.IF_IEQ:
+                    ip -= 2;
+                    pc = ints[ip] == ints[ip + 1] ? code[pc + 1] : pc + 2;
+                    break;
+                case Opcode.IF_INE:
+                    ip -= 2;
+                    pc = ints[ip] != ints[ip + 1] ? code[pc + 1] : pc + 2;
+                    break;
+                case Opcode.IF_ILT:
+                    ip -= 2;
+                    pc = ints[ip] < ints[ip + 1] ? code[pc + 1] : pc + 2;
+                    break;
+                case Opcode.IF_ILE:
+                    ip -= 2;
+                    pc = ints[ip] <= ints[ip + 1] ? code[pc + 1] : pc + 2;
+                    break;
+                case Opcode.IF_IGT:
+                    ip -= 2;
+                    pc = ints[ip] > ints[ip + 1] ? code[pc + 1] : pc + 2;
+                    break;
+                case Opcode.IF_IGE:
+                    ip -= 2;
+                    pc = ints[ip] >= ints[ip + 1] ? code[pc + 1] : pc + 2;
+                    break;
+                case Opcode.IF_IEQ_RK:
+                    pc = read(locals, defined, registers, code[pc + 1]) == code[pc + 2] ? code[pc + 3] : pc + 4;
+                    break;
+                case Opcode.IF_INE_RK:
+                    pc = read(locals, defined, registers, code[pc + 1]) != code[pc + 2] ? code[pc + 3] : pc + 4;
+                    break;
+                case Opcode.IF_ILT_RK:
+                    pc = read(locals, defined, registers, code[pc + 1]) < code[pc + 2] ? code[pc + 3] : pc + 4;
+                    break;
+                case Opcode.IF_ILE_RK:
+                    pc = read(locals, defined, registers, code[pc + 1]) <= code[pc + 2] ? code[pc + 3] : pc + 4;
+                    break;
+                case Opcode.IF_IGT_RK:
+                    pc = read(locals, defined, registers, code[pc + 1]) > code[pc + 2] ? code[pc + 3] : pc + 4;
+                    break;
+                case Opcode.IF_IGE_RK:
+                    pc = read(locals, defined, registers, code[pc + 1]) >= code[pc + 2] ? code[pc + 3] : pc + 4;
+                    break;
+                default:
+                    throw new InternalError("unreachable");
+            }
+        }
+    }
+
+    private static int read(int[] locals, boolean[] defined, Variable[] registers, int r) {
+        if (!defined[r]) {
+            Variable var = registers[r];
+            throw LanguageException.instance(var.getLine(), LanguageException.Error.UnitializedVariable,
+                    var.getName());
+        }
+
+        return locals[r];
+    }
+
+    private static boolean fits(Value value) {
+        if (value.type == INT)
+            return value.data instanceof Integer;
+        else if (value.type == FLOAT)
+            return value.data instanceof Float;
+        else
+            return value.data instanceof Boolean;
+    }
+
+    private static int unbox(Value value) {
+        if (value.type == INT)
+            return ((Integer) value.data).intValue();
+        else if (value.type == FLOAT)
+            return Float.floatToRawIntBits(((Float) value.data).floatValue());
+        else
+            return ((Boolean) value.data).booleanValue() ? 1 : 0;
+    }
+
+    private static Value box(Type type, int bits) {
+        if (type == INT)
+            return new Value(INT, bits);
+        else if (type == FLOAT)
+            return new Value(FLOAT, Float.intBitsToFloat(bits));
+        else
+            return new Value(BOOL, bits != 0);
+    }
+
+    private static Value binary(int opcode, int line, Value l, Value r) {
+        return BinaryExpr.apply(line, BINARY_OPS[opcode - Opcode.AND], l, r);
+    }
+
+    private static boolean compare(int opcode, int l, int r) {
+        switch (opcode) {
+            case Opcode.LT:
+                return l < r;
+            case Opcode.LE:
+                return l <= r;
+            case Opcode.GT:
+                return l > r;
+            default:
+                return l >= r;
+        }
+    }
+
+    private static boolean compare(int opcode, float l, float r) {
+        switch (opcode) {
+            case Opcode.LT:
+                return l < r;
+            case Opcode.LE:
+                return l <= r;
+            case Opcode.GT:
+                return l > r;
+            default:
+                return l >= r;
+        }
+    }
+
+    private static int arithmetic(int opcode, int l, int r) {
+        switch (opcode) {
+            case Opcode.ADD:
+                return l + r;
+            case Opcode.SUB:
+                return l - r;
+            case Opcode.MUL:
+                return l * r;
+            default:
+                return l / r;
+        }
+    }
+
+    private static float arithmetic(int opcode, float l, float r) {
+        switch (opcode) {
+            case Opcode.ADD:
+                return l + r;
+            case Opcode.SUB:
+                return l - r;
+            case Opcode.MUL:
+                return l * r;
+            default:
+                return l / r;
+        }
+    }
+
+    // Same checks as ForCommand. A string is copied first, an array is walked
+    // in place, so changing it from the body fails the same way. Also called
+    // by the IR machine.
+    public static Iterator<?> iterate(int line, Variable var, Value value) {
+        Category category = value.type.getCategory();
+        if (category != Category.Array && category != Category.String)
+            throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
+
+        if (category == Category.String) {
+            Type varType = var.getType();
+            if (!varType.getCategory().equals(Category.Char))
+                throw LanguageException.instance(line, LanguageException.Error.InvalidType, varType.toString());
+
+            List<Object> chars = new ArrayList<Object>();
+            for (char c : ((String) value.data).toCharArray())
+                chars.add(c);
+
+            return chars.iterator();
+        }
+
+        return ((List<?>) value.data).iterator();
+    }
+
+}
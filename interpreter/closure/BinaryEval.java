@@ -0,0 +1,734 @@
+package interpreter.closure;
+
+import interpreter.Frame;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.Expr;
+import interpreter.type.Type;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.UnexpectedValueException;
+import interpreter.value.Value;
+
+// A binary operator, bound when it is compiled along with the type of its
+// operands where they are known to be Int, Float or Bool.
+//
+// The generic form calls the checked operator of BinaryExpr directly. The
+// unboxed forms wrap it: when an operand turns out to be something else,
+// which only a loop variable holding an element of another type can cause,
+// that evaluation is finished by the generic form.
+abstract class BinaryEval extends Eval {
+
+    private static final Type BOOL = BoolType.instance();
+    private static final Type INT = IntType.instance();
+    private static final Type FLOAT = FloatType.instance();
+
+    final int line;
+    final Eval left;
+    final Eval right;
+
+    BinaryEval(int line, Eval left, Eval right) {
+        this.line = line;
+        this.left = left;
+        this.right = right;
+    }
+
+    abstract Value apply(Value leftValue, Value rightValue);
+
+    Value eval(Frame frame) {
+        return finish(frame, left.eval(frame));
+    }
+
+    // The rest of an evaluation whose left operand is known.
+    Value finish(Frame frame, Value leftValue) {
+        return apply(leftValue, right.eval(frame));
+    }
+
+    // The operands type is the primitive type both operands share, or null.
+    static Eval of(int line, BinaryExpr.Op op, Eval left, Eval right, Type operands) {
+        BinaryEval generic = generic(line, op, left, right);
+        if (operands == INT)
+            return intForm(op, generic);
+        else if (operands == FLOAT)
+            return floatForm(op, generic);
+        else if (operands == BOOL)
+            return boolForm(op, generic);
+        else
+            return generic;
+    }
+
+    private static Eval intForm(BinaryExpr.Op op, BinaryEval generic) {
+        switch (op) {
+            case Add:
+                return new IntAdd(generic);
+            case Sub:
+                return new IntSub(generic);
+            case Mul:
+                return new IntMul(generic);
+            case Div:
+                return new IntDiv(generic);
+            case Equal:
+                return new IntEqual(generic);
+            case NotEqual:
+                return new IntNotEqual(generic);
+            case LowerThan:
+                return new IntLowerThan(generic);
+            case LowerEqual:
+                return new IntLowerEqual(generic);
+            case GreaterThan:
+                return new IntGreaterThan(generic);
+            case GreaterEqual:
+                return new IntGreaterEqual(generic);
+            default:
+                return generic;
+        }
+    }
+
+    private static Eval floatForm(BinaryExpr.Op op, BinaryEval generic) {
+        switch (op) {
+            case Add:
+                return new FloatAdd(generic);
+            case Sub:
+                return new FloatSub(generic);
+            case Mul:
+                return new FloatMul(generic);
+            case Div:
+                return new FloatDiv(generic);
+            case Equal:
+                return new FloatEqual(generic);
+            case NotEqual:
+                return new FloatNotEqual(generic);
+            case LowerThan:
+                return new FloatLowerThan(generic);
+            case LowerEqual:
+                return new FloatLowerEqual(generic);
+            case GreaterThan:
+                return new FloatGreaterThan(generic);
+            case GreaterEqual:
+                return new FloatGreaterEqual(generic);
+            default:
+                return generic;
+        }
+    }
+
+    private static Eval boolForm(BinaryExpr.Op op, BinaryEval generic) {
+        switch (op) {
+            case And:
+                return new BoolAnd(generic);
+            case Or:
+                return new BoolOr(generic);
+            case Equal:
+                return new BoolEqual(generic);
+            case NotEqual:
+                return new BoolNotEqual(generic);
+            default:
+                return generic;
+        }
+    }
+
+    private static BinaryEval generic(int line, BinaryExpr.Op op, Eval left, Eval right) {
+        switch (op) {
+            case And:
+                return new And(line, left, right);
+            case Or:
+                return new Or(line, left, right);
+            case Equal:
+                return new Equal(line, left, right);
+            case NotEqual:
+                return new NotEqual(line, left, right);
+            case LowerThan:
+                return new LowerThan(line, left, right);
+            case LowerEqual:
+                return new LowerEqual(line, left, right);
+            case GreaterThan:
+                return new GreaterThan(line, left, right);
+            case GreaterEqual:
+                return new GreaterEqual(line, left, right);
+            case Add:
+                return new Add(line, left, right);
+            case Sub:
+                return new Sub(line, left, right);
+            case Mul:
+                return new Mul(line, left, right);
+            default:
+                return new Div(line, left, right);
+        }
+    }
+
+    private static final class And extends BinaryEval {
+        And(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value finish(Frame frame, Value leftValue) {
+            if (BinaryExpr.settles(line, BinaryExpr.Op.And, leftValue))
+                return leftValue;
+
+            return apply(leftValue, right.eval(frame));
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.andOp(line, leftValue, rightValue);
+        }
+    }
+
+    private static final class Or extends BinaryEval {
+        Or(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value finish(Frame frame, Value leftValue) {
+            if (BinaryExpr.settles(line, BinaryExpr.Op.Or, leftValue))
+                return leftValue;
+
+            return apply(leftValue, right.eval(frame));
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.orOp(line, leftValue, rightValue);
+        }
+    }
+
+    private static final class Equal extends BinaryEval {
+        Equal(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.equalOp(line, leftValue, rightValue);
+        }
+    }
+
+    private static final class NotEqual extends BinaryEval {
+        NotEqual(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.notEqualOp(line, leftValue, rightValue);
+        }
+    }
+
+    private static final class LowerThan extends BinaryEval {
+        LowerThan(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.lowerThanOp(line, leftValue, rightValue);
+        }
+    }
+
+    private static final class LowerEqual extends BinaryEval {
+        LowerEqual(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.lowerEqualOp(line, leftValue, rightValue);
+        }
+    }
+
+    private static final class GreaterThan extends BinaryEval {
+        GreaterThan(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.greaterThanOp(line, leftValue, rightValue);
+        }
+    }
+
+    private static final class GreaterEqual extends BinaryEval {
+        GreaterEqual(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.greaterEqualOp(line, leftValue, rightValue);
+        }
+    }
+
+    private static final class Add extends BinaryEval {
+        Add(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.addOp(line, leftValue, rightValue);
+        }
+    }
+
+    private static final class Sub extends BinaryEval {
+        Sub(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.subOp(line, leftValue, rightValue);
+        }
+    }
+
+    private static final class Mul extends BinaryEval {
+        Mul(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.mulOp(line, leftValue, rightValue);
+        }
+    }
+
+    private static final class Div extends BinaryEval {
+        Div(int line, Eval left, Eval right) {
+            super(line, left, right);
+        }
+
+        Value apply(Value leftValue, Value rightValue) {
+            return BinaryExpr.divOp(line, leftValue, rightValue);
+        }
+    }
+
+    // The unboxed forms. Each base evaluates the operands and hands them to
+    // the operator of its subclass.
+
+    private abstract static class IntArith extends Eval {
+        private final BinaryEval generic;
+
+        IntArith(BinaryEval generic) {
+            this.generic = generic;
+        }
+
+        abstract int apply(int l, int r);
+
+        Value eval(Frame frame) {
+            try {
+                return new Value(INT, evalInt(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        int evalInt(Frame frame) throws UnexpectedValueException {
+            int l, r;
+            try {
+                l = generic.left.evalInt(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.intOf(generic.finish(frame, e.getValue()));
+            }
+            try {
+                r = generic.right.evalInt(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.intOf(generic.apply(new Value(INT, l), e.getValue()));
+            }
+
+            return apply(l, r);
+        }
+    }
+
+    private abstract static class FloatArith extends Eval {
+        private final BinaryEval generic;
+
+        FloatArith(BinaryEval generic) {
+            this.generic = generic;
+        }
+
+        abstract float apply(float l, float r);
+
+        Value eval(Frame frame) {
+            try {
+                return new Value(FLOAT, evalFloat(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        float evalFloat(Frame frame) throws UnexpectedValueException {
+            float l, r;
+            try {
+                l = generic.left.evalFloat(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.floatOf(generic.finish(frame, e.getValue()));
+            }
+            try {
+                r = generic.right.evalFloat(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.floatOf(generic.apply(new Value(FLOAT, l), e.getValue()));
+            }
+
+            return apply(l, r);
+        }
+    }
+
+    private abstract static class IntCompare extends Eval {
+        private final BinaryEval generic;
+
+        IntCompare(BinaryEval generic) {
+            this.generic = generic;
+        }
+
+        abstract boolean apply(int l, int r);
+
+        Value eval(Frame frame) {
+            try {
+                return new Value(BOOL, evalBool(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        boolean evalBool(Frame frame) throws UnexpectedValueException {
+            int l, r;
+            try {
+                l = generic.left.evalInt(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.boolOf(generic.finish(frame, e.getValue()));
+            }
+            try {
+                r = generic.right.evalInt(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.boolOf(generic.apply(new Value(INT, l), e.getValue()));
+            }
+
+            return apply(l, r);
+        }
+    }
+
+    private abstract static class FloatCompare extends Eval {
+        private final BinaryEval generic;
+
+        FloatCompare(BinaryEval generic) {
+            this.generic = generic;
+        }
+
+        abstract boolean apply(float l, float r);
+
+        Value eval(Frame frame) {
+            try {
+                return new Value(BOOL, evalBool(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        boolean evalBool(Frame frame) throws UnexpectedValueException {
+            float l, r;
+            try {
+                l = generic.left.evalFloat(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.boolOf(generic.finish(frame, e.getValue()));
+            }
+            try {
+                r = generic.right.evalFloat(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.boolOf(generic.apply(new Value(FLOAT, l), e.getValue()));
+            }
+
+            return apply(l, r);
+        }
+    }
+
+    private abstract static class BoolCompare extends Eval {
+        private final BinaryEval generic;
+
+        BoolCompare(BinaryEval generic) {
+            this.generic = generic;
+        }
+
+        abstract boolean apply(boolean l, boolean r);
+
+        Value eval(Frame frame) {
+            try {
+                return new Value(BOOL, evalBool(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        boolean evalBool(Frame frame) throws UnexpectedValueException {
+            boolean l, r;
+            try {
+                l = generic.left.evalBool(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.boolOf(generic.finish(frame, e.getValue()));
+            }
+            try {
+                r = generic.right.evalBool(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.boolOf(generic.apply(new Value(BOOL, l), e.getValue()));
+            }
+
+            return apply(l, r);
+        }
+    }
+
+    // && and || leave the right operand alone when the left one settles
+    // them, and are that operand otherwise.
+    private abstract static class BoolLazy extends Eval {
+        private final BinaryEval generic;
+        private final boolean settling;
+
+        BoolLazy(BinaryEval generic, boolean settling) {
+            this.generic = generic;
+            this.settling = settling;
+        }
+
+        Value eval(Frame frame) {
+            try {
+                return new Value(BOOL, evalBool(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        boolean evalBool(Frame frame) throws UnexpectedValueException {
+            boolean l;
+            try {
+                l = generic.left.evalBool(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.boolOf(generic.finish(frame, e.getValue()));
+            }
+            if (l == settling)
+                return l;
+            try {
+                return generic.right.evalBool(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.boolOf(generic.apply(new Value(BOOL, l), e.getValue()));
+            }
+        }
+    }
+
+    private static final class IntAdd extends IntArith {
+        IntAdd(BinaryEval generic) {
+            super(generic);
+        }
+
+        int apply(int l, int r) {
+            return l + r;
+        }
+    }
+
+    private static final class IntSub extends IntArith {
+        IntSub(BinaryEval generic) {
+            super(generic);
+        }
+
+        int apply(int l, int r) {
+            return l - r;
+        }
+    }
+
+    private static final class IntMul extends IntArith {
+        IntMul(BinaryEval generic) {
+            super(generic);
+        }
+
+        int apply(int l, int r) {
+            return l * r;
+        }
+    }
+
+    private static final class IntDiv extends IntArith {
+        IntDiv(BinaryEval generic) {
+            super(generic);
+        }
+
+        int apply(int l, int r) {
+            return l / r;
+        }
+    }
+
+    private static final class FloatAdd extends FloatArith {
+        FloatAdd(BinaryEval generic) {
+            super(generic);
+        }
+
+        float apply(float l, float r) {
+            return l + r;
+        }
+    }
+
+    private static final class FloatSub extends FloatArith {
+        FloatSub(BinaryEval generic) {
+            super(generic);
+        }
+
+        float apply(float l, float r) {
+            return l - r;
+        }
+    }
+
+    private static final class FloatMul extends FloatArith {
+        FloatMul(BinaryEval generic) {
+            super(generic);
+        }
+
+        float apply(float l, float r) {
+            return l * r;
+        }
+    }
+
+    private static final class FloatDiv extends FloatArith {
+        FloatDiv(BinaryEval generic) {
+            super(generic);
+        }
+
+        float apply(float l, float r) {
+            return l / r;
+        }
+    }
+
+    private static final class IntEqual extends IntCompare {
+        IntEqual(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(int l, int r) {
+            return l == r;
+        }
+    }
+
+    private static final class IntNotEqual extends IntCompare {
+        IntNotEqual(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(int l, int r) {
+            return l != r;
+        }
+    }
+
+    private static final class IntLowerThan extends IntCompare {
+        IntLowerThan(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(int l, int r) {
+            return l < r;
+        }
+    }
+
+    private static final class IntLowerEqual extends IntCompare {
+        IntLowerEqual(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(int l, int r) {
+            return l <= r;
+        }
+    }
+
+    private static final class IntGreaterThan extends IntCompare {
+        IntGreaterThan(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(int l, int r) {
+            return l > r;
+        }
+    }
+
+    private static final class IntGreaterEqual extends IntCompare {
+        IntGreaterEqual(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(int l, int r) {
+            return l >= r;
+        }
+    }
+
+    // Equality follows Float.equals, as in BinaryExpr.
+    private static final class FloatEqual extends FloatCompare {
+        FloatEqual(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(float l, float r) {
+            return Float.floatToIntBits(l) == Float.floatToIntBits(r);
+        }
+    }
+
+    private static final class FloatNotEqual extends FloatCompare {
+        FloatNotEqual(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(float l, float r) {
+            return Float.floatToIntBits(l) != Float.floatToIntBits(r);
+        }
+    }
+
+    private static final class FloatLowerThan extends FloatCompare {
+        FloatLowerThan(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(float l, float r) {
+            return l < r;
+        }
+    }
+
+    private static final class FloatLowerEqual extends FloatCompare {
+        FloatLowerEqual(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(float l, float r) {
+            return l <= r;
+        }
+    }
+
+    private static final class FloatGreaterThan extends FloatCompare {
+        FloatGreaterThan(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(float l, float r) {
+            return l > r;
+        }
+    }
+
+    private static final class FloatGreaterEqual extends FloatCompare {
+        FloatGreaterEqual(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(float l, float r) {
+            return l >= r;
+        }
+    }
+
+    private static final class BoolAnd extends BoolLazy {
+        BoolAnd(BinaryEval generic) {
+            super(generic, false);
+        }
+    }
+
+    private static final class BoolOr extends BoolLazy {
+        BoolOr(BinaryEval generic) {
+            super(generic, true);
+        }
+    }
+
+    private static final class BoolEqual extends BoolCompare {
+        BoolEqual(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(boolean l, boolean r) {
+            return l == r;
+        }
+    }
+
+    private static final class BoolNotEqual extends BoolCompare {
+        BoolNotEqual(BinaryEval generic) {
+            super(generic);
+        }
+
+        boolean apply(boolean l, boolean r) {
+            return l != r;
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package interpreter.closure;
+
+import interpreter.Frame;
+import interpreter.expr.CastExpr;
+import interpreter.expr.Expr;
+import interpreter.type.Type;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.UnexpectedValueException;
+import interpreter.value.Value;
+
+// A cast bound to its target type. Int to Float and Float to Int run
+// unboxed when the operand is known to have the type they convert from.
+abstract class CastEval extends Eval {
+
+    private static final Type INT = IntType.instance();
+    private static final Type FLOAT = FloatType.instance();
+
+    final Eval operand;
+
+    CastEval(Eval operand) {
+        this.operand = operand;
+    }
+
+    abstract Value apply(Value value);
+
+    Value eval(Frame frame) {
+        return apply(operand.eval(frame));
+    }
+
+    static Eval of(CastExpr.Op op, Eval operand, Type type) {
+        switch (op) {
+            case ToBool:
+                return new ToBool(operand);
+            case ToInt:
+                return type == FLOAT ? new FloatToInt(new ToInt(operand)) : new ToInt(operand);
+            case ToFloat:
+                return type == INT ? new IntToFloat(new ToFloat(operand)) : new ToFloat(operand);
+            case ToChar:
+                return new ToChar(operand);
+            default:
+                return new ToString(operand);
+        }
+    }
+
+    private static final class ToBool extends CastEval {
+        ToBool(Eval operand) {
+            super(operand);
+        }
+
+        Value apply(Value value) {
+            return CastExpr.toBoolOp(value);
+        }
+    }
+
+    private static final class ToInt extends CastEval {
+        ToInt(Eval operand) {
+            super(operand);
+        }
+
+        Value apply(Value value) {
+            return CastExpr.toIntOp(value);
+        }
+    }
+
+    private static final class ToFloat extends CastEval {
+        ToFloat(Eval operand) {
+            super(operand);
+        }
+
+        Value apply(Value value) {
+            return CastExpr.toFloatOp(value);
+        }
+    }
+
+    private static final class ToChar extends CastEval {
+        ToChar(Eval operand) {
+            super(operand);
+        }
+
+        Value apply(Value value) {
+            return CastExpr.toCharOp(value);
+        }
+    }
+
+    private static final class ToString extends CastEval {
+        ToString(Eval operand) {
+            super(operand);
+        }
+
+        Value apply(Value value) {
+            return CastExpr.toStringOp(value);
+        }
+    }
+
+    private static final class FloatToInt extends Eval {
+        private final CastEval generic;
+
+        FloatToInt(CastEval generic) {
+            this.generic = generic;
+        }
+
+        Value eval(Frame frame) {
+            try {
+                return new Value(INT, evalInt(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        int evalInt(Frame frame) throws UnexpectedValueException {
+            try {
+                return (int) generic.operand.evalFloat(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.intOf(generic.apply(e.getValue()));
+            }
+        }
+    }
+
+    private static final class IntToFloat extends Eval {
+        private final CastEval generic;
+
+        IntToFloat(CastEval generic) {
+            this.generic = generic;
+        }
+
+        Value eval(Frame frame) {
+            try {
+                return new Value(FLOAT, evalFloat(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        float evalFloat(Frame frame) throws UnexpectedValueException {
+            try {
+                return (float) generic.operand.evalInt(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.floatOf(generic.apply(e.getValue()));
+            }
+        }
+    }
+
+}
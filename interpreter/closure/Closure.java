@@ -0,0 +1,315 @@
+package interpreter.closure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import error.LanguageException;
+import interpreter.Frame;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.Type.Category;
+import interpreter.type.primitive.BoolType;
+import interpreter.value.UnexpectedValueException;
+import interpreter.value.Value;
+
+// A command compiled by ClosureCompiler. Each one does what the execute
+// method of its command does, with the same checks in the same order.
+public abstract class Closure {
+
+    public abstract void run(Frame frame);
+
+    static final class Blocks extends Closure {
+        private final Closure[] cmds;
+
+        Blocks(Closure[] cmds) {
+            this.cmds = cmds;
+        }
+
+        public void run(Frame frame) {
+            for (Closure cmd : cmds)
+                cmd.run(frame);
+        }
+    }
+
+    // An assignment or an initialization of an Int, Float or Bool variable,
+    // which is written without a Value.
+    static final class WriteInt extends Closure {
+        private final Variable var;
+        private final Eval expr;
+        private final boolean initialize;
+
+        WriteInt(Variable var, Eval expr, boolean initialize) {
+            this.var = var;
+            this.expr = expr;
+            this.initialize = initialize;
+        }
+
+        public void run(Frame frame) {
+            int n;
+            try {
+                n = expr.evalInt(frame);
+            } catch (UnexpectedValueException e) {
+                write(var, frame, e.getValue(), initialize);
+                return;
+            }
+
+            var.writeInt(frame, n, initialize);
+        }
+    }
+
+    static final class WriteFloat extends Closure {
+        private final Variable var;
+        private final Eval expr;
+        private final boolean initialize;
+
+        WriteFloat(Variable var, Eval expr, boolean initialize) {
+            this.var = var;
+            this.expr = expr;
+            this.initialize = initialize;
+        }
+
+        public void run(Frame frame) {
+            float f;
+            try {
+                f = expr.evalFloat(frame);
+            } catch (UnexpectedValueException e) {
+                write(var, frame, e.getValue(), initialize);
+                return;
+            }
+
+            var.writeFloat(frame, f, initialize);
+        }
+    }
+
+    static final class WriteBool extends Closure {
+        private final Variable var;
+        private final Eval expr;
+        private final boolean initialize;
+
+        WriteBool(Variable var, Eval expr, boolean initialize) {
+            this.var = var;
+            this.expr = expr;
+            this.initialize = initialize;
+        }
+
+        public void run(Frame frame) {
+            boolean b;
+            try {
+                b = expr.evalBool(frame);
+            } catch (UnexpectedValueException e) {
+                write(var, frame, e.getValue(), initialize);
+                return;
+            }
+
+            var.writeBool(frame, b, initialize);
+        }
+    }
+
+    static final class Write extends Closure {
+        private final Variable var;
+        private final Eval expr;
+        private final boolean initialize;
+
+        Write(Variable var, Eval expr, boolean initialize) {
+            this.var = var;
+            this.expr = expr;
+            this.initialize = initialize;
+        }
+
+        public void run(Frame frame) {
+            write(var, frame, expr.eval(frame), initialize);
+        }
+    }
+
+    private static void write(Variable var, Frame frame, Value value, boolean initialize) {
+        if (initialize)
+            var.initialize(frame, value);
+        else
+            var.setValue(frame, value);
+    }
+
+    // An assignment to an element, or with no target at all.
+    static final class Assign extends Closure {
+        private final Eval rhs;
+        private final Store lhs;
+
+        Assign(Eval rhs, Store lhs) {
+            this.rhs = rhs;
+            this.lhs = lhs;
+        }
+
+        public void run(Frame frame) {
+            Value value = rhs.eval(frame);
+            if (lhs != null)
+                lhs.store(frame, value);
+        }
+    }
+
+    // Where an assignment writes to. An element of a string is written by
+    // storing the changed string into its base in turn.
+    abstract static class Store {
+        abstract void store(Frame frame, Value value);
+    }
+
+    static final class VariableStore extends Store {
+        private final Variable var;
+
+        VariableStore(Variable var) {
+            this.var = var;
+        }
+
+        void store(Frame frame, Value value) {
+            var.setValue(frame, value);
+        }
+    }
+
+    static final class ElementStore extends Store {
+        private final int line;
+        private final Eval base;
+        private final Store baseStore;
+        private final Eval index;
+
+        ElementStore(int line, Eval base, Store baseStore, Eval index) {
+            this.line = line;
+            this.base = base;
+            this.baseStore = baseStore;
+            this.index = index;
+        }
+
+        void store(Frame frame, Value value) {
+            Value baseValue = base.eval(frame);
+            Value indexValue = index.eval(frame);
+
+            Value str = AccessExpr.set(line, baseValue, indexValue, value);
+            if (str != null)
+                baseStore.store(frame, str);
+        }
+    }
+
+    static final class If extends Closure {
+        private final int line;
+        private final Eval cond;
+        private final Closure thenCmds;
+        private final Closure elseCmds;
+
+        If(int line, Eval cond, Closure thenCmds, Closure elseCmds) {
+            this.line = line;
+            this.cond = cond;
+            this.thenCmds = thenCmds;
+            this.elseCmds = elseCmds;
+        }
+
+        public void run(Frame frame) {
+            if (test(line, cond, frame))
+                thenCmds.run(frame);
+            else if (elseCmds != null)
+                elseCmds.run(frame);
+        }
+    }
+
+    static final class While extends Closure {
+        private final int line;
+        private final Eval cond;
+        private final Closure body;
+
+        While(int line, Eval cond, Closure body) {
+            this.line = line;
+            this.cond = cond;
+            this.body = body;
+        }
+
+        public void run(Frame frame) {
+            while (test(line, cond, frame))
+                body.run(frame);
+        }
+    }
+
+    // The condition of an if or a while, with the check of their commands.
+    private static boolean test(int line, Eval cond, Frame frame) {
+        Value value;
+        try {
+            return cond.evalBool(frame);
+        } catch (UnexpectedValueException e) {
+            value = e.getValue();
+        }
+
+        if (!value.type.match(BoolType.instance()))
+            throw LanguageException.instance(line, LanguageException.Error.InvalidType, value.type.toString());
+
+        return (Boolean) value.data;
+    }
+
+    static final class For extends Closure {
+        private final int line;
+        private final Variable variable;
+        private final Eval expr;
+        private final Closure body;
+
+        For(int line, Variable variable, Eval expr, Closure body) {
+            this.line = line;
+            this.variable = variable;
+            this.expr = expr;
+            this.body = body;
+        }
+
+        public void run(Frame frame) {
+            List<Category> allowedCategories = Arrays.asList(Category.Array, Category.String);
+
+            Value exprValue = expr.eval(frame);
+
+            if (!allowedCategories.contains(exprValue.type.getCategory()))
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
+
+            Type varType = variable.getType();
+
+            if (exprValue.type.getCategory() == Category.String) {
+                if (!varType.getCategory().equals(Category.Char))
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
+                            varType.toString());
+
+                for (char c : ((String) exprValue.data).toCharArray()) {
+                    write(variable, frame, new Value(varType, c), variable.isConstant());
+                    body.run(frame);
+                }
+            } else {
+                for (Object it : (ArrayList<Object>) exprValue.data) {
+                    write(variable, frame, new Value(varType, it), variable.isConstant());
+                    body.run(frame);
+                }
+            }
+        }
+    }
+
+    static final class Print extends Closure {
+        private final Eval expr;
+        private final boolean newline;
+
+        Print(Eval expr, boolean newline) {
+            this.expr = expr;
+            this.newline = newline;
+        }
+
+        public void run(Frame frame) {
+            Value value = expr.eval(frame);
+            System.out.print(value.data);
+            if (newline)
+                System.out.println();
+        }
+    }
+
+    static final class Dump extends Closure {
+        private final Eval expr;
+
+        Dump(Eval expr) {
+            this.expr = expr;
+        }
+
+        public void run(Frame frame) {
+            Value value = expr.eval(frame);
+            System.out.println(value);
+        }
+    }
+
+}
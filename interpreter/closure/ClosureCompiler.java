@@ -0,0 +1,193 @@
+package interpreter.closure;
+
+import java.util.List;
+
+import interpreter.Visitor;
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.DumpCommand;
+import interpreter.command.ForCommand;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.PrintCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.Expr;
+import interpreter.expr.ExprTypes;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.SetExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+
+// Turns a syntax tree into a tree of Closures and Evals in one pass. The
+// operator of each node and, where ExprTypes knows it, the primitive type of
+// its operands are decided here, so evaluating a node does not dispatch on
+// them again. Commands return a Closure and expressions an Eval.
+public class ClosureCompiler implements Visitor<Object> {
+
+    private static final Type BOOL = BoolType.instance();
+    private static final Type INT = IntType.instance();
+    private static final Type FLOAT = FloatType.instance();
+
+    private ExprTypes types;
+
+    private ClosureCompiler() {
+        this.types = new ExprTypes();
+    }
+
+    public static Closure compile(Command cmd) {
+        return new ClosureCompiler().command(cmd);
+    }
+
+    private Closure command(Command cmd) {
+        return cmd == null ? null : (Closure) cmd.accept(this);
+    }
+
+    private Eval expr(Expr expr) {
+        return (Eval) expr.accept(this);
+    }
+
+    public Object visit(AssignCommand cmd) {
+        Eval rhs = expr(cmd.getRhs());
+        if (cmd.getLhs() instanceof Variable)
+            return write((Variable) cmd.getLhs(), rhs, false);
+
+        return new Closure.Assign(rhs, cmd.getLhs() == null ? null : store(cmd.getLhs()));
+    }
+
+    public Object visit(BlocksCommand cmd) {
+        List<Command> cmds = cmd.getCommands();
+        Closure[] closures = new Closure[cmds.size()];
+        for (int i = 0; i < closures.length; i++)
+            closures[i] = command(cmds.get(i));
+
+        return new Closure.Blocks(closures);
+    }
+
+    public Object visit(DumpCommand cmd) {
+        return new Closure.Dump(expr(cmd.getExpr()));
+    }
+
+    public Object visit(ForCommand cmd) {
+        return new Closure.For(cmd.getLine(), cmd.getVariable(), expr(cmd.getExpr()), command(cmd.getBody()));
+    }
+
+    public Object visit(IfCommand cmd) {
+        return new Closure.If(cmd.getLine(), expr(cmd.getExpr()), command(cmd.getThen()), command(cmd.getElse()));
+    }
+
+    public Object visit(InitializeCommand cmd) {
+        return write(cmd.getVariable(), expr(cmd.getExpr()), true);
+    }
+
+    public Object visit(PrintCommand cmd) {
+        return new Closure.Print(expr(cmd.getExpr()), cmd.isNewline());
+    }
+
+    public Object visit(WhileCommand cmd) {
+        return new Closure.While(cmd.getLine(), expr(cmd.getExpr()), command(cmd.getBody()));
+    }
+
+    public Object visit(AccessExpr expr) {
+        if (expr.isInBounds())
+            return new Eval.GetInBounds(expr.getLine(), expr(expr.getBase()), expr(expr.getIndex()));
+
+        return new Eval.Get(expr.getLine(), expr(expr.getBase()), expr(expr.getIndex()));
+    }
+
+    public Object visit(ActionExpr expr) {
+        return new Eval.Action(expr.getOp());
+    }
+
+    public Object visit(ArrayExpr expr) {
+        List<Expr> items = expr.getItems();
+        Eval[] evals = new Eval[items.size()];
+        for (int i = 0; i < evals.length; i++)
+            evals[i] = expr(items.get(i));
+
+        return new Eval.NewArray(expr.getLine(), expr.getType(), evals);
+    }
+
+    public Object visit(BinaryExpr expr) {
+        Type left = types.typeOf(expr.getLeft());
+        Type right = types.typeOf(expr.getRight());
+        Type operands = left == right && (left == INT || left == FLOAT || left == BOOL) ? left : null;
+
+        return BinaryEval.of(expr.getLine(), expr.getOp(), expr(expr.getLeft()), expr(expr.getRight()), operands);
+    }
+
+    public Object visit(CastExpr expr) {
+        return CastEval.of(expr.getOp(), expr(expr.getExpr()), types.typeOf(expr.getExpr()));
+    }
+
+    public Object visit(ConditionalExpr expr) {
+        return new Eval.Conditional(expr.getLine(), expr(expr.getCond()), expr(expr.getTrueExpr()),
+                expr(expr.getFalseExpr()));
+    }
+
+    public Object visit(ConstExpr expr) {
+        return new Eval.Const(expr.getValue());
+    }
+
+    public Object visit(DictExpr expr) {
+        int size = expr.getItems().size();
+        Eval[] keys = new Eval[size];
+        Eval[] values = new Eval[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = expr(expr.getItems().get(i).key);
+            values[i] = expr(expr.getItems().get(i).value);
+        }
+
+        return new Eval.NewDict(expr.getLine(), expr.getType(), keys, values);
+    }
+
+    public Object visit(FunctionExpr expr) {
+        Eval base = expr(expr.getExpr());
+        Eval arg = expr.getArg() == null ? null : expr(expr.getArg());
+        return FunctionEval.of(expr.getLine(), expr.getOp(), base, arg);
+    }
+
+    public Object visit(UnaryExpr expr) {
+        return UnaryEval.of(expr.getLine(), expr.getOp(), expr(expr.getExpr()), types.typeOf(expr.getExpr()));
+    }
+
+    public Object visit(Variable var) {
+        return new Eval.Load(var);
+    }
+
+    // Int, Float and Bool variables are written unboxed, whatever the type
+    // of the expression, as AssignCommand and InitializeCommand do.
+    private Closure write(Variable var, Eval expr, boolean initialize) {
+        Type type = var.getType();
+        if (type == INT)
+            return new Closure.WriteInt(var, expr, initialize);
+        else if (type == FLOAT)
+            return new Closure.WriteFloat(var, expr, initialize);
+        else if (type == BOOL)
+            return new Closure.WriteBool(var, expr, initialize);
+        else
+            return new Closure.Write(var, expr, initialize);
+    }
+
+    private Closure.Store store(SetExpr lhs) {
+        if (lhs instanceof Variable)
+            return new Closure.VariableStore((Variable) lhs);
+
+        AccessExpr access = (AccessExpr) lhs;
+        return new Closure.ElementStore(access.getLine(), expr(access.getBase()), store(access.getBase()),
+                expr(access.getIndex()));
+    }
+
+}
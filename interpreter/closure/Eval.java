@@ -0,0 +1,272 @@
+package interpreter.closure;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import error.LanguageException;
+import interpreter.Frame;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.Expr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.composed.ArrayType;
+import interpreter.type.composed.DictType;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.UnexpectedValueException;
+import interpreter.value.Value;
+
+// An expression compiled by ClosureCompiler. The unboxed methods follow the
+// contract of the ones in Expr: a result of another type is thrown back in
+// an UnexpectedValueException, so the caller can go on with the Value.
+//
+// The simple expressions are here; operators have their own files.
+abstract class Eval {
+
+    abstract Value eval(Frame frame);
+
+    int evalInt(Frame frame) throws UnexpectedValueException {
+        return Expr.intOf(eval(frame));
+    }
+
+    float evalFloat(Frame frame) throws UnexpectedValueException {
+        return Expr.floatOf(eval(frame));
+    }
+
+    boolean evalBool(Frame frame) throws UnexpectedValueException {
+        return Expr.boolOf(eval(frame));
+    }
+
+    static final class Const extends Eval {
+        private final Value value;
+        // The type of the value when it can be given unboxed, as bits.
+        private final Type unboxed;
+        private final int bits;
+
+        Const(Value value) {
+            this.value = value;
+            if (value.type == IntType.instance() && value.data instanceof Integer) {
+                this.unboxed = value.type;
+                this.bits = ((Integer) value.data).intValue();
+            } else if (value.type == FloatType.instance() && value.data instanceof Float) {
+                this.unboxed = value.type;
+                this.bits = Float.floatToRawIntBits(((Float) value.data).floatValue());
+            } else if (value.type == BoolType.instance() && value.data instanceof Boolean) {
+                this.unboxed = value.type;
+                this.bits = ((Boolean) value.data).booleanValue() ? 1 : 0;
+            } else {
+                this.unboxed = null;
+                this.bits = 0;
+            }
+        }
+
+        Value eval(Frame frame) {
+            return value;
+        }
+
+        int evalInt(Frame frame) throws UnexpectedValueException {
+            if (unboxed != IntType.instance())
+                throw new UnexpectedValueException(value);
+
+            return bits;
+        }
+
+        float evalFloat(Frame frame) throws UnexpectedValueException {
+            if (unboxed != FloatType.instance())
+                throw new UnexpectedValueException(value);
+
+            return Float.intBitsToFloat(bits);
+        }
+
+        boolean evalBool(Frame frame) throws UnexpectedValueException {
+            if (unboxed != BoolType.instance())
+                throw new UnexpectedValueException(value);
+
+            return bits != 0;
+        }
+    }
+
+    // The variable already reads its slot unboxed when it can.
+    static final class Load extends Eval {
+        private final Variable var;
+
+        Load(Variable var) {
+            this.var = var;
+        }
+
+        Value eval(Frame frame) {
+            return var.expr(frame);
+        }
+
+        int evalInt(Frame frame) throws UnexpectedValueException {
+            return var.exprInt(frame);
+        }
+
+        float evalFloat(Frame frame) throws UnexpectedValueException {
+            return var.exprFloat(frame);
+        }
+
+        boolean evalBool(Frame frame) throws UnexpectedValueException {
+            return var.exprBool(frame);
+        }
+    }
+
+    static final class Get extends Eval {
+        private final int line;
+        private final Eval base;
+        private final Eval index;
+
+        Get(int line, Eval base, Eval index) {
+            this.line = line;
+            this.base = base;
+            this.index = index;
+        }
+
+        Value eval(Frame frame) {
+            Value baseValue = base.eval(frame);
+            Value indexValue = index.eval(frame);
+            return AccessExpr.get(line, baseValue, indexValue);
+        }
+    }
+
+    static final class GetInBounds extends Eval {
+        private final int line;
+        private final Eval base;
+        private final Eval index;
+
+        GetInBounds(int line, Eval base, Eval index) {
+            this.line = line;
+            this.base = base;
+            this.index = index;
+        }
+
+        Value eval(Frame frame) {
+            Value baseValue = base.eval(frame);
+            Value indexValue = index.eval(frame);
+            Value ret = AccessExpr.getInBounds(baseValue, indexValue);
+            return ret != null ? ret : AccessExpr.get(line, baseValue, indexValue);
+        }
+    }
+
+    static final class Action extends Eval {
+        private final ActionExpr.Op op;
+
+        Action(ActionExpr.Op op) {
+            this.op = op;
+        }
+
+        Value eval(Frame frame) {
+            return ActionExpr.apply(op);
+        }
+    }
+
+    // The branches keep the unboxed path, since only one of them runs.
+    static final class Conditional extends Eval {
+        private final int line;
+        private final Eval cond;
+        private final Eval trueEval;
+        private final Eval falseEval;
+
+        Conditional(int line, Eval cond, Eval trueEval, Eval falseEval) {
+            this.line = line;
+            this.cond = cond;
+            this.trueEval = trueEval;
+            this.falseEval = falseEval;
+        }
+
+        Value eval(Frame frame) {
+            return test(frame) ? trueEval.eval(frame) : falseEval.eval(frame);
+        }
+
+        int evalInt(Frame frame) throws UnexpectedValueException {
+            return test(frame) ? trueEval.evalInt(frame) : falseEval.evalInt(frame);
+        }
+
+        float evalFloat(Frame frame) throws UnexpectedValueException {
+            return test(frame) ? trueEval.evalFloat(frame) : falseEval.evalFloat(frame);
+        }
+
+        boolean evalBool(Frame frame) throws UnexpectedValueException {
+            return test(frame) ? trueEval.evalBool(frame) : falseEval.evalBool(frame);
+        }
+
+        private boolean test(Frame frame) {
+            Value condValue;
+            try {
+                return cond.evalBool(frame);
+            } catch (UnexpectedValueException e) {
+                condValue = e.getValue();
+            }
+
+            if (condValue.type.getCategory() != Type.Category.Bool)
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
+
+            return ((Boolean) condValue.data).booleanValue();
+        }
+    }
+
+    static final class NewArray extends Eval {
+        private final int line;
+        private final ArrayType type;
+        private final Eval[] items;
+
+        NewArray(int line, ArrayType type, Eval[] items) {
+            this.line = line;
+            this.type = type;
+            this.items = items;
+        }
+
+        Value eval(Frame frame) {
+            List<Object> returnItems = new ArrayList<>();
+            for (Eval item : items) {
+                Value itemValue = item.eval(frame);
+                if (!itemValue.type.getCategory().equals(type.getInnerType().getCategory()))
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
+                            itemValue.type.toString());
+
+                returnItems.add(itemValue.data);
+            }
+
+            return new Value(type, returnItems);
+        }
+    }
+
+    static final class NewDict extends Eval {
+        private final int line;
+        private final DictType type;
+        private final Eval[] keys;
+        private final Eval[] values;
+
+        NewDict(int line, DictType type, Eval[] keys, Eval[] values) {
+            this.line = line;
+            this.type = type;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        Value eval(Frame frame) {
+            Map<Object, Object> returnItems = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                Value keyValue = keys[i].eval(frame);
+                Value valueValue = values[i].eval(frame);
+
+                if (!keyValue.type.equals(type.getKeyType()))
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
+                            keyValue.type.toString());
+
+                if (!valueValue.type.equals(type.getValueType()))
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
+                            valueValue.type.toString());
+
+                returnItems.put(keyValue.data, valueValue.data);
+            }
+
+            return new Value(type, returnItems);
+        }
+    }
+
+}
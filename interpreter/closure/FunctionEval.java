@@ -0,0 +1,106 @@
+package interpreter.closure;
+
+import interpreter.Frame;
+import interpreter.expr.FunctionExpr;
+import interpreter.value.Value;
+
+// A function of an array or a dict, bound to the one it calls.
+abstract class FunctionEval extends Eval {
+
+    final int line;
+    final Eval base;
+
+    FunctionEval(int line, Eval base) {
+        this.line = line;
+        this.base = base;
+    }
+
+    // The argument is null for the functions that take none.
+    static Eval of(int line, FunctionExpr.Op op, Eval base, Eval arg) {
+        switch (op) {
+            case Count:
+                return new Count(line, base);
+            case Empty:
+                return new Empty(line, base);
+            case Keys:
+                return new Keys(line, base);
+            case Values:
+                return new Values(line, base);
+            case Append:
+                return new Append(line, base, arg);
+            default:
+                return new Contains(line, base, arg);
+        }
+    }
+
+    private static final class Count extends FunctionEval {
+        Count(int line, Eval base) {
+            super(line, base);
+        }
+
+        Value eval(Frame frame) {
+            return FunctionExpr.countOp(line, base.eval(frame));
+        }
+    }
+
+    private static final class Empty extends FunctionEval {
+        Empty(int line, Eval base) {
+            super(line, base);
+        }
+
+        Value eval(Frame frame) {
+            return FunctionExpr.emptyOp(line, base.eval(frame));
+        }
+    }
+
+    private static final class Keys extends FunctionEval {
+        Keys(int line, Eval base) {
+            super(line, base);
+        }
+
+        Value eval(Frame frame) {
+            return FunctionExpr.keysOp(line, base.eval(frame));
+        }
+    }
+
+    private static final class Values extends FunctionEval {
+        Values(int line, Eval base) {
+            super(line, base);
+        }
+
+        Value eval(Frame frame) {
+            return FunctionExpr.valuesOp(line, base.eval(frame));
+        }
+    }
+
+    private static final class Append extends FunctionEval {
+        private final Eval arg;
+
+        Append(int line, Eval base, Eval arg) {
+            super(line, base);
+            this.arg = arg;
+        }
+
+        Value eval(Frame frame) {
+            Value baseValue = base.eval(frame);
+            Value argValue = arg.eval(frame);
+            return FunctionExpr.appendOp(line, baseValue, argValue);
+        }
+    }
+
+    private static final class Contains extends FunctionEval {
+        private final Eval arg;
+
+        Contains(int line, Eval base, Eval arg) {
+            super(line, base);
+            this.arg = arg;
+        }
+
+        Value eval(Frame frame) {
+            Value baseValue = base.eval(frame);
+            Value argValue = arg.eval(frame);
+            return FunctionExpr.containsOp(line, baseValue, argValue);
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package interpreter.closure;
+
+import interpreter.Frame;
+import interpreter.expr.Expr;
+import interpreter.expr.UnaryExpr;
+import interpreter.type.Type;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.UnexpectedValueException;
+import interpreter.value.Value;
+
+// Negation and not, compiled the same way as BinaryEval: a generic form per
+// operator, and an unboxed one when the operand type is known.
+abstract class UnaryEval extends Eval {
+
+    private static final Type BOOL = BoolType.instance();
+    private static final Type INT = IntType.instance();
+    private static final Type FLOAT = FloatType.instance();
+
+    final int line;
+    final Eval operand;
+
+    UnaryEval(int line, Eval operand) {
+        this.line = line;
+        this.operand = operand;
+    }
+
+    abstract Value apply(Value value);
+
+    Value eval(Frame frame) {
+        return apply(operand.eval(frame));
+    }
+
+    static Eval of(int line, UnaryExpr.Op op, Eval operand, Type type) {
+        if (op == UnaryExpr.Op.Not) {
+            Not generic = new Not(line, operand);
+            return type == BOOL ? new BoolNot(generic) : generic;
+        } else {
+            Neg generic = new Neg(line, operand);
+            if (type == INT)
+                return new IntNeg(generic);
+            else if (type == FLOAT)
+                return new FloatNeg(generic);
+            else
+                return generic;
+        }
+    }
+
+    private static final class Not extends UnaryEval {
+        Not(int line, Eval operand) {
+            super(line, operand);
+        }
+
+        Value apply(Value value) {
+            return UnaryExpr.notOp(line, value);
+        }
+    }
+
+    private static final class Neg extends UnaryEval {
+        Neg(int line, Eval operand) {
+            super(line, operand);
+        }
+
+        Value apply(Value value) {
+            return UnaryExpr.negOp(line, value);
+        }
+    }
+
+    private static final class IntNeg extends Eval {
+        private final UnaryEval generic;
+
+        IntNeg(UnaryEval generic) {
+            this.generic = generic;
+        }
+
+        Value eval(Frame frame) {
+            try {
+                return new Value(INT, evalInt(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        int evalInt(Frame frame) throws UnexpectedValueException {
+            try {
+                return -generic.operand.evalInt(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.intOf(generic.apply(e.getValue()));
+            }
+        }
+    }
+
+    private static final class FloatNeg extends Eval {
+        private final UnaryEval generic;
+
+        FloatNeg(UnaryEval generic) {
+            this.generic = generic;
+        }
+
+        Value eval(Frame frame) {
+            try {
+                return new Value(FLOAT, evalFloat(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        float evalFloat(Frame frame) throws UnexpectedValueException {
+            try {
+                return -generic.operand.evalFloat(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.floatOf(generic.apply(e.getValue()));
+            }
+        }
+    }
+
+    private static final class BoolNot extends Eval {
+        private final UnaryEval generic;
+
+        BoolNot(UnaryEval generic) {
+            this.generic = generic;
+        }
+
+        Value eval(Frame frame) {
+            try {
+                return new Value(BOOL, evalBool(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        boolean evalBool(Frame frame) throws UnexpectedValueException {
+            try {
+                return !generic.operand.evalBool(frame);
+            } catch (UnexpectedValueException e) {
+                return Expr.boolOf(generic.apply(e.getValue()));
+            }
+        }
+    }
+
+}
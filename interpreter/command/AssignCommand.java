@@ -1,7 +1,15 @@
 package interpreter.command;
 
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.expr.Expr;
 import interpreter.expr.SetExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.UnexpectedValueException;
 import interpreter.value.Value;
 
 public class AssignCommand extends Command {
@@ -16,10 +24,45 @@ public class AssignCommand extends Command {
     }
 
     @Override
-    public void execute() {
-        Value v = rhs.expr();
+    public void execute(Frame frame) {
+        if (lhs instanceof Variable) {
+            Variable var = (Variable) lhs;
+            Type type = var.getType();
+
+            // Int, Float and Bool variables are assigned without a Value.
+            try {
+                if (type == IntType.instance()) {
+                    var.writeInt(frame, rhs.exprInt(frame), false);
+                    return;
+                } else if (type == FloatType.instance()) {
+                    var.writeFloat(frame, rhs.exprFloat(frame), false);
+                    return;
+                } else if (type == BoolType.instance()) {
+                    var.writeBool(frame, rhs.exprBool(frame), false);
+                    return;
+                }
+            } catch (UnexpectedValueException e) {
+                var.setValue(frame, e.getValue());
+                return;
+            }
+        }
+
+        Value v = rhs.expr(frame);
         if (lhs != null)
-            lhs.setValue(v);
+            lhs.setValue(frame, v);
+    }
+
+    public Expr getRhs() {
+        return rhs;
+    }
+
+    public SetExpr getLhs() {
+        return lhs;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
     }
 
 }
@@ -2,6 +2,9 @@ package interpreter.command;
 
 import java.util.List;
 
+import interpreter.Frame;
+import interpreter.Visitor;
+
 public class BlocksCommand extends Command {
 
     private List<Command> cmds;
@@ -12,9 +15,18 @@ public class BlocksCommand extends Command {
     }
 
     @Override
-    public void execute() {
+    public void execute(Frame frame) {
         for (Command cmd : cmds)
-            cmd.execute();
+            cmd.execute(frame);
+    }
+
+    public List<Command> getCommands() {
+        return cmds;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
     }
 
 }
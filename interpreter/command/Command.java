@@ -1,5 +1,8 @@
 package interpreter.command;
 
+import interpreter.Frame;
+import interpreter.Visitor;
+
 public abstract class Command {
 
     private int line;
@@ -12,6 +15,12 @@ public abstract class Command {
         return line;
     }
 
-    public abstract void execute();
+    public void shiftLine(int delta) {
+        line += delta;
+    }
+
+    public abstract void execute(Frame frame);
+
+    public abstract <R> R accept(Visitor<R> visitor);
 
 }
@@ -1,5 +1,7 @@
 package interpreter.command;
 
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.expr.Expr;
 import interpreter.value.Value;
 
@@ -13,9 +15,18 @@ public class DumpCommand extends Command {
     }
 
     @Override
-    public void execute() {
-        Value value = expr.expr();
+    public void execute(Frame frame) {
+        Value value = expr.expr(frame);
         System.out.println(value);
     }
-    
+
+    public Expr getExpr() {
+        return expr;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
@@ -5,6 +5,8 @@ import java.util.Arrays;
 import java.util.List;
 
 import error.LanguageException;
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.expr.Expr;
 import interpreter.expr.Variable;
 import interpreter.type.Type;
@@ -24,11 +26,11 @@ public class ForCommand extends Command {
     }
 
     @Override
-    public void execute() {
+    public void execute(Frame frame) {
 
         List<Category> allowedCategories = Arrays.asList(Category.Array, Category.String);
 
-        Value exprValue = expr.expr();
+        Value exprValue = expr.expr(frame);
 
         if (!allowedCategories.contains(exprValue.type.getCategory()))
             throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
@@ -46,10 +48,10 @@ public class ForCommand extends Command {
                 String dataString = (String) exprValue.data;
                 for (char c : dataString.toCharArray()) {
                     if(variable.isConstant())
-                        variable.initialize(new Value(varType, c));
+                        variable.initialize(frame, new Value(varType, c));
                     else 
-                        variable.setValue(new Value(varType, c));
-                    cmds.execute();
+                        variable.setValue(frame, new Value(varType, c));
+                    cmds.execute(frame);
                 }   
                      
                 break;
@@ -60,10 +62,10 @@ public class ForCommand extends Command {
                 
                 for (Object it : listData) {
                     if(variable.isConstant())
-                        variable.initialize(new Value(varType, it));
+                        variable.initialize(frame, new Value(varType, it));
                     else 
-                        variable.setValue(new Value(varType, it));
-                    cmds.execute();
+                        variable.setValue(frame, new Value(varType, it));
+                    cmds.execute(frame);
                 }      
 
                 break;
@@ -72,4 +74,22 @@ public class ForCommand extends Command {
                 throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
         }
     }
+
+    public Variable getVariable() {
+        return variable;
+    }
+
+    public Expr getExpr() {
+        return expr;
+    }
+
+    public Command getBody() {
+        return cmds;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
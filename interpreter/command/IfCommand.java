@@ -1,8 +1,11 @@
 package interpreter.command;
 
 import error.LanguageException;
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.expr.Expr;
 import interpreter.type.primitive.BoolType;
+import interpreter.value.UnexpectedValueException;
 import interpreter.value.Value;
 
 public class IfCommand extends Command {
@@ -25,20 +28,45 @@ public class IfCommand extends Command {
     }
 
     @Override
-    public void execute() {
+    public void execute(Frame frame) {
 
-        Value value = expr.expr();
+        boolean conditional;
+        try {
+            conditional = expr.exprBool(frame);
+        } catch (UnexpectedValueException e) {
+            conditional = test(e.getValue());
+        }
 
+        if (conditional)
+            thenCmds.execute(frame);
+        else if (elseCmds != null)
+            elseCmds.execute(frame);
+
+    }
+
+    private boolean test(Value value) {
         if (!value.type.match(BoolType.instance()))
             throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
                     value.type.toString());
 
-        boolean conditional = (Boolean) value.data;
+        return (Boolean) value.data;
+    }
 
-        if (conditional)
-            thenCmds.execute();
-        else if (elseCmds != null)
-            elseCmds.execute();
+    public Expr getExpr() {
+        return expr;
+    }
+
+    public Command getThen() {
+        return thenCmds;
+    }
 
+    public Command getElse() {
+        return elseCmds;
     }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
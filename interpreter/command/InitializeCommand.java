@@ -1,7 +1,14 @@
 package interpreter.command;
 
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.expr.Expr;
 import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.UnexpectedValueException;
 import interpreter.value.Value;
 
 public class InitializeCommand extends Command {
@@ -16,9 +23,41 @@ public class InitializeCommand extends Command {
     }
 
     @Override
-    public void execute() {
-        Value v = expr.expr();
-        var.initialize(v);
+    public void execute(Frame frame) {
+        Type type = var.getType();
+
+        // As in AssignCommand, without a Value for Int, Float and Bool.
+        try {
+            if (type == IntType.instance()) {
+                var.writeInt(frame, expr.exprInt(frame), true);
+                return;
+            } else if (type == FloatType.instance()) {
+                var.writeFloat(frame, expr.exprFloat(frame), true);
+                return;
+            } else if (type == BoolType.instance()) {
+                var.writeBool(frame, expr.exprBool(frame), true);
+                return;
+            }
+        } catch (UnexpectedValueException e) {
+            var.initialize(frame, e.getValue());
+            return;
+        }
+
+        Value v = expr.expr(frame);
+        var.initialize(frame, v);
+    }
+
+    public Variable getVariable() {
+        return var;
+    }
+
+    public Expr getExpr() {
+        return expr;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
     }
 
 }
@@ -1,5 +1,7 @@
 package interpreter.command;
 
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.expr.Expr;
 import interpreter.value.Value;
 
@@ -15,11 +17,24 @@ public class PrintCommand extends Command {
     }
 
     @Override
-    public void execute() {
-        Value value = expr.expr();
+    public void execute(Frame frame) {
+        Value value = expr.expr(frame);
         System.out.print(value.data);
         if (newline)
             System.out.println();
     }
-    
+
+    public Expr getExpr() {
+        return expr;
+    }
+
+    public boolean isNewline() {
+        return newline;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
@@ -1,8 +1,13 @@
 package interpreter.command;
 
 import error.LanguageException;
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.expr.Expr;
+import interpreter.jit.CompiledLoop;
+import interpreter.jit.LoopCompiler;
 import interpreter.type.primitive.BoolType;
+import interpreter.value.UnexpectedValueException;
 import interpreter.value.Value;
 
 public class WhileCommand extends Command {
@@ -10,6 +15,11 @@ public class WhileCommand extends Command {
     private Expr expr;
     private Command cmds;
 
+    // Iterations run in the tree, counted up to the threshold at which the
+    // loop is compiled to JVM bytecode, and the result if it could be.
+    private int iterations;
+    private CompiledLoop compiled;
+
     public WhileCommand(int line, Expr expr, Command cmds) {
         super(line);
         this.expr = expr;
@@ -17,21 +27,52 @@ public class WhileCommand extends Command {
     }
 
     @Override
-    public void execute() {
+    public void execute(Frame frame) {
+        if (compiled != null && compiled.run(frame))
+            return;
+
         do {
-            Value value = expr.expr();
-            
-            BoolType boolType = BoolType.instance();
-            if (!boolType.match(value.type))
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
-                        value.type.toString());
-
-            boolean conditional = (Boolean) value.data;
+            boolean conditional;
+            try {
+                conditional = expr.exprBool(frame);
+            } catch (UnexpectedValueException e) {
+                conditional = test(e.getValue());
+            }
+
             if (!conditional)
                 break;
 
-            cmds.execute();
+            cmds.execute(frame);
+
+            // Goes on from the next condition in the compiled loop.
+            if (iterations < LoopCompiler.THRESHOLD && ++iterations == LoopCompiler.THRESHOLD) {
+                compiled = LoopCompiler.compile(this);
+                if (compiled != null && compiled.run(frame))
+                    return;
+            }
         } while (true);
     }
 
+    private boolean test(Value value) {
+        BoolType boolType = BoolType.instance();
+        if (!boolType.match(value.type))
+            throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    value.type.toString());
+
+        return (Boolean) value.data;
+    }
+
+    public Expr getExpr() {
+        return expr;
+    }
+
+    public Command getBody() {
+        return cmds;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
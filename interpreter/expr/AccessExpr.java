@@ -6,6 +6,8 @@ import java.util.List;
 import java.util.Map;
 
 import error.LanguageException;
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.type.Type;
 import interpreter.type.composed.ArrayType;
 import interpreter.type.composed.DictType;
@@ -18,23 +20,58 @@ public class AccessExpr extends SetExpr {
     private SetExpr base;
     private Expr index;
 
+    // Set by the optimizer when the index of a read is known to be within the
+    // string or array it reads, which then goes unchecked.
+    private boolean inBounds;
+
+    // Set the same way as in BinaryExpr; only reads are specialized.
+    private AccessSpecialization specialization;
+    private boolean profiled;
+
     public AccessExpr(int line, SetExpr base, Expr index) {
+        this(line, base, index, false);
+    }
+
+    public AccessExpr(int line, SetExpr base, Expr index, boolean inBounds) {
         super(line);
         this.base = base;
         this.index = index;
+        this.inBounds = inBounds;
     }
 
-    public Value expr() {
+    public Value expr(Frame frame) {
+
+        Value baseValue = base.expr(frame);
+        Value indexValue = index.expr(frame);
 
-        Value baseValue = base.expr();
-        Value indexValue = index.expr();
+        if (specialization != null) {
+            Value ret = specialization.apply(super.getLine(), baseValue, indexValue);
+            if (ret != null)
+                return ret;
+
+            specialization = null;
+        }
+
+        Value ret = get(super.getLine(), baseValue, indexValue);
+
+        if (!profiled) {
+            specialization = AccessSpecialization.of(baseValue.type, indexValue.type, inBounds);
+            profiled = true;
+        }
+
+        return ret;
+    }
+
+    // Element read and write are split from the evaluation of base and index
+    // so the bytecode VM can reuse them.
+    public static Value get(int line, Value baseValue, Value indexValue) {
 
         switch (baseValue.type.getCategory()) {
 
             case String:
 
                 if (!(indexValue.type.match(IntType.instance())))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             indexValue.type.toString());
 
                 String str = (String) baseValue.data;
@@ -42,14 +79,14 @@ public class AccessExpr extends SetExpr {
                 int sindex = (int) indexValue.data;
 
                 if (sindex < 0 || str.length() <= sindex)
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 return new Value(CharType.instance(), str.charAt((int) indexValue.data));
 
             case Array:
 
                 if (!(indexValue.type.match(IntType.instance())))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             indexValue.type.toString());
 
                 List<Object> arr = ((ArrayList<Object>) baseValue.data);
@@ -57,14 +94,14 @@ public class AccessExpr extends SetExpr {
                 int aindex = (int) indexValue.data;
 
                 if (aindex < 0 || arr.size() <= aindex)
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 return new Value(((ArrayType) baseValue.type).getInnerType(), arr.get((int) indexValue.data));
 
             case Dict:
 
                 if (!(indexValue.type.match(((DictType) baseValue.type).getKeyType())))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             indexValue.type.toString());
 
                 Map<Object, Object> dict = ((HashMap<Object, Object>) baseValue.data);
@@ -72,18 +109,44 @@ public class AccessExpr extends SetExpr {
                 Object key = indexValue.data;
 
                 if (!dict.containsKey(key))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 return new Value(((DictType) baseValue.type).getValueType(), dict.get(indexValue.data));
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    public void setValue(Value value) {
-        Value baseValue = base.expr();
-        Value indexValue = index.expr();
+    // A character or an element read without checking the index, for a node
+    // in bounds; null for a base or an index of any other type, which get()
+    // then reads.
+    public static Value getInBounds(Value baseValue, Value indexValue) {
+        if (indexValue.type != IntType.instance())
+            return null;
+
+        int i = ((Integer) indexValue.data).intValue();
+        if (baseValue.type == StringType.instance())
+            return new Value(CharType.instance(), ((String) baseValue.data).charAt(i));
+
+        if (baseValue.type instanceof ArrayType)
+            return new Value(((ArrayType) baseValue.type).getInnerType(), ((ArrayList<Object>) baseValue.data).get(i));
+
+        return null;
+    }
+
+    public void setValue(Frame frame, Value value) {
+        Value baseValue = base.expr(frame);
+        Value indexValue = index.expr(frame);
+
+        Value str = set(super.getLine(), baseValue, indexValue, value);
+        if (str != null)
+            base.setValue(frame, str);
+    }
+
+    // Strings are immutable, so the changed string is returned for the caller
+    // to store back into the base; other writes return null.
+    public static Value set(int line, Value baseValue, Value indexValue, Value value) {
         int index;
 
         switch (baseValue.type.getCategory()) {
@@ -91,11 +154,11 @@ public class AccessExpr extends SetExpr {
             case String:
 
                 if (!(indexValue.type.match(IntType.instance())))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             indexValue.type.toString());
 
                 if (!(value.type.match(CharType.instance())))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             value.type.toString());
 
                 String str = (String) baseValue.data;
@@ -103,33 +166,31 @@ public class AccessExpr extends SetExpr {
                 index = (int) indexValue.data;
 
                 if (index < 0 || str.length() <= index)
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 char[] charArray = str.toCharArray();
                 charArray[index] = (Character) value.data;
                 str = new String(charArray);
 
-                base.setValue(new Value(StringType.instance(), str));
-
-                break;
+                return new Value(StringType.instance(), str);
 
             case Array:
 
                 if (!(indexValue.type.match(IntType.instance())))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             indexValue.type.toString());
 
                 Type innerType = ((ArrayType) baseValue.type).getInnerType();
 
                 if (!(value.type.match(innerType)))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 List<Object> arr = ((ArrayList<Object>) baseValue.data);
 
                 index = (int) indexValue.data;
 
                 if (index < 0 || arr.size() <= index)
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 arr.set(index, value.data);
 
@@ -138,7 +199,7 @@ public class AccessExpr extends SetExpr {
             case Dict:
 
                 if (!(indexValue.type.match(((DictType) baseValue.type).getKeyType())))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             indexValue.type.toString());
 
                 Map<Object, Object> mp = ((HashMap<Object, Object>) baseValue.data);
@@ -146,7 +207,7 @@ public class AccessExpr extends SetExpr {
                 Type innerValueType = ((DictType) baseValue.type).getValueType();
 
                 if (!(value.type.match(innerValueType)))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 Object key = indexValue.data;
 
@@ -155,8 +216,28 @@ public class AccessExpr extends SetExpr {
                 break;
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
         }
+
+        return null;
+    }
+
+    public SetExpr getBase() {
+        return base;
+    }
+
+    public Expr getIndex() {
+        return index;
+    }
+
+    public boolean isInBounds() {
+        return inBounds;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
     }
+
 }
@@ -0,0 +1,97 @@
+package interpreter.expr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import error.LanguageException;
+import interpreter.type.Type;
+import interpreter.type.composed.ArrayType;
+import interpreter.type.primitive.CharType;
+import interpreter.type.primitive.IntType;
+import interpreter.type.primitive.StringType;
+import interpreter.value.Value;
+
+// The form a read through an AccessExpr takes once it has seen a string or
+// an array indexed by an Int. The bounds are still checked on every read,
+// unless the node is known to be in bounds; apply returns null when the base
+// or the index has changed type.
+abstract class AccessSpecialization {
+
+    abstract Value apply(int line, Value base, Value index);
+
+    static AccessSpecialization of(Type base, Type index, boolean inBounds) {
+        if (index != IntType.instance())
+            return null;
+
+        if (base == StringType.instance())
+            return inBounds ? new StringInBounds() : new StringIndex();
+
+        if (base instanceof ArrayType)
+            return inBounds ? new ArrayInBounds((ArrayType) base) : new ArrayIndex((ArrayType) base);
+
+        return null;
+    }
+
+    private static final class StringIndex extends AccessSpecialization {
+        Value apply(int line, Value base, Value index) {
+            if (base.type != StringType.instance() || index.type != IntType.instance())
+                return null;
+
+            String str = (String) base.data;
+            int i = ((Integer) index.data).intValue();
+
+            if (i < 0 || str.length() <= i)
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
+
+            return new Value(CharType.instance(), str.charAt(i));
+        }
+    }
+
+    // Array types are not shared, so the guard is on the one this node saw.
+    private static final class ArrayIndex extends AccessSpecialization {
+        private final ArrayType type;
+
+        ArrayIndex(ArrayType type) {
+            this.type = type;
+        }
+
+        Value apply(int line, Value base, Value index) {
+            if (base.type != type || index.type != IntType.instance())
+                return null;
+
+            List<Object> arr = (ArrayList<Object>) base.data;
+            int i = ((Integer) index.data).intValue();
+
+            if (i < 0 || arr.size() <= i)
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
+
+            return new Value(type.getInnerType(), arr.get(i));
+        }
+    }
+
+    private static final class StringInBounds extends AccessSpecialization {
+        Value apply(int line, Value base, Value index) {
+            if (base.type != StringType.instance() || index.type != IntType.instance())
+                return null;
+
+            return new Value(CharType.instance(), ((String) base.data).charAt(((Integer) index.data).intValue()));
+        }
+    }
+
+    private static final class ArrayInBounds extends AccessSpecialization {
+        private final ArrayType type;
+
+        ArrayInBounds(ArrayType type) {
+            this.type = type;
+        }
+
+        Value apply(int line, Value base, Value index) {
+            if (base.type != type || index.type != IntType.instance())
+                return null;
+
+            List<Object> arr = (ArrayList<Object>) base.data;
+            return new Value(type.getInnerType(), arr.get(((Integer) index.data).intValue()));
+        }
+    }
+
+}
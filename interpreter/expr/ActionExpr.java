@@ -4,6 +4,8 @@ import java.util.Random;
 import java.util.Scanner;
 
 import error.InternalException;
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.type.primitive.FloatType;
 import interpreter.type.primitive.StringType;
 import interpreter.value.Value;
@@ -25,7 +27,12 @@ public class ActionExpr extends Expr {
     }
 
     @Override
-    public Value expr() {
+    public Value expr(Frame frame) {
+        return apply(op);
+    }
+
+    // Also called by the bytecode VM.
+    public static Value apply(Op op) {
         switch (op) {
             case Read:
                 return new Value(StringType.instance(), in.nextLine().trim());
@@ -36,4 +43,13 @@ public class ActionExpr extends Expr {
         }
     }
 
+    public Op getOp() {
+        return op;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
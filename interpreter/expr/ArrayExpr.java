@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import error.LanguageException;
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.type.composed.ArrayType;
 import interpreter.value.Value;
 
@@ -18,13 +20,13 @@ public class ArrayExpr extends Expr {
     }
 
     @Override
-    public Value expr() {
+    public Value expr(Frame frame) {
 
         List<Object> returnItems = new ArrayList<>();
         
         for (Expr expr : items) {
 
-            Value exprValue = expr.expr();
+            Value exprValue = expr.expr(frame);
             if(!exprValue.type.getCategory().equals(type.getInnerType().getCategory()))
                 throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
                             exprValue.type.toString());
@@ -34,4 +36,18 @@ public class ArrayExpr extends Expr {
 
         return new Value(type, returnItems);
     }
+
+    public ArrayType getType() {
+        return type;
+    }
+
+    public List<Expr> getItems() {
+        return items;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
@@ -7,12 +7,16 @@ import java.util.List;
 import java.util.Map;
 
 import error.LanguageException;
+import interpreter.Frame;
+import interpreter.Visitor;
+import interpreter.type.Type;
 import interpreter.type.Type.Category;
 import interpreter.type.primitive.BoolType;
 import interpreter.type.primitive.CharType;
 import interpreter.type.primitive.FloatType;
 import interpreter.type.primitive.IntType;
 import interpreter.type.primitive.StringType;
+import interpreter.value.UnexpectedValueException;
 import interpreter.value.Value;
 
 public class BinaryExpr extends Expr {
@@ -36,6 +40,16 @@ public class BinaryExpr extends Expr {
     private Op op;
     private Expr right;
 
+    // Set from the operand types the semantic analysis found or, failing
+    // that, the first evaluation saw, and dropped for good the first time an
+    // operand has another type. When both operands were Int, Float or Bool
+    // the node runs unboxed: operands is that type and result the type of
+    // the result. Otherwise it may get a specialization on boxed Values.
+    private Type operands;
+    private Type result;
+    private BinarySpecialization specialization;
+    private boolean profiled;
+
     public BinaryExpr(int line, Expr left, Op op, Expr right) {
         super(line);
         this.left = left;
@@ -44,48 +58,290 @@ public class BinaryExpr extends Expr {
     }
 
     @Override
-    public Value expr() {
+    public Value expr(Frame frame) {
+
+        if (result != null) {
+            try {
+                if (result == IntType.instance())
+                    return new Value(result, exprInt(frame));
+                else if (result == FloatType.instance())
+                    return new Value(result, exprFloat(frame));
+                else
+                    return new Value(result, exprBool(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        return boxed(frame, left.expr(frame));
+    }
+
+    @Override
+    public int exprInt(Frame frame) throws UnexpectedValueException {
+        if (result != IntType.instance())
+            return super.exprInt(frame);
+
+        int l, r;
+        try {
+            l = left.exprInt(frame);
+        } catch (UnexpectedValueException e) {
+            return intOf(despecialize(frame, e.getValue()));
+        }
+        try {
+            r = right.exprInt(frame);
+        } catch (UnexpectedValueException e) {
+            return intOf(despecialize(new Value(IntType.instance(), l), e.getValue()));
+        }
+
+        switch (op) {
+            case Add:
+                return l + r;
+            case Sub:
+                return l - r;
+            case Mul:
+                return l * r;
+            default:
+                return l / r;
+        }
+    }
+
+    @Override
+    public float exprFloat(Frame frame) throws UnexpectedValueException {
+        if (result != FloatType.instance())
+            return super.exprFloat(frame);
+
+        float l, r;
+        try {
+            l = left.exprFloat(frame);
+        } catch (UnexpectedValueException e) {
+            return floatOf(despecialize(frame, e.getValue()));
+        }
+        try {
+            r = right.exprFloat(frame);
+        } catch (UnexpectedValueException e) {
+            return floatOf(despecialize(new Value(FloatType.instance(), l), e.getValue()));
+        }
+
+        switch (op) {
+            case Add:
+                return l + r;
+            case Sub:
+                return l - r;
+            case Mul:
+                return l * r;
+            default:
+                return l / r;
+        }
+    }
+
+    @Override
+    public boolean exprBool(Frame frame) throws UnexpectedValueException {
+        if (result != BoolType.instance())
+            return super.exprBool(frame);
+
+        if (operands == IntType.instance()) {
+            int l, r;
+            try {
+                l = left.exprInt(frame);
+            } catch (UnexpectedValueException e) {
+                return boolOf(despecialize(frame, e.getValue()));
+            }
+            try {
+                r = right.exprInt(frame);
+            } catch (UnexpectedValueException e) {
+                return boolOf(despecialize(new Value(IntType.instance(), l), e.getValue()));
+            }
+
+            switch (op) {
+                case Equal:
+                    return l == r;
+                case NotEqual:
+                    return l != r;
+                case LowerThan:
+                    return l < r;
+                case LowerEqual:
+                    return l <= r;
+                case GreaterThan:
+                    return l > r;
+                default:
+                    return l >= r;
+            }
+        } else if (operands == FloatType.instance()) {
+            float l, r;
+            try {
+                l = left.exprFloat(frame);
+            } catch (UnexpectedValueException e) {
+                return boolOf(despecialize(frame, e.getValue()));
+            }
+            try {
+                r = right.exprFloat(frame);
+            } catch (UnexpectedValueException e) {
+                return boolOf(despecialize(new Value(FloatType.instance(), l), e.getValue()));
+            }
+
+            // Equality follows Float.equals, like the boxed path.
+            switch (op) {
+                case Equal:
+                    return Float.floatToIntBits(l) == Float.floatToIntBits(r);
+                case NotEqual:
+                    return Float.floatToIntBits(l) != Float.floatToIntBits(r);
+                case LowerThan:
+                    return l < r;
+                case LowerEqual:
+                    return l <= r;
+                case GreaterThan:
+                    return l > r;
+                default:
+                    return l >= r;
+            }
+        } else {
+            boolean l, r;
+            try {
+                l = left.exprBool(frame);
+            } catch (UnexpectedValueException e) {
+                return boolOf(despecialize(frame, e.getValue()));
+            }
+            if (op == Op.And && !l)
+                return false;
+            if (op == Op.Or && l)
+                return true;
+            try {
+                r = right.exprBool(frame);
+            } catch (UnexpectedValueException e) {
+                return boolOf(despecialize(new Value(BoolType.instance(), l), e.getValue()));
+            }
+
+            // Past the checks above, && and || are their right operand.
+            switch (op) {
+                case And:
+                case Or:
+                    return r;
+                case Equal:
+                    return l == r;
+                default:
+                    return l != r;
+            }
+        }
+    }
+
+    // An operand of an unboxed node came back with another type: the node
+    // goes back to the boxed path, finishing this evaluation there.
+    private Value despecialize(Frame frame, Value leftValue) {
+        result = null;
+        return boxed(frame, leftValue);
+    }
+
+    private Value despecialize(Value leftValue, Value rightValue) {
+        result = null;
+        return boxed(leftValue, rightValue);
+    }
+
+    // The right operand is left alone when the left one settles && or ||.
+    private Value boxed(Frame frame, Value leftValue) {
+        if ((op == Op.And || op == Op.Or) && settles(super.getLine(), op, leftValue))
+            return leftValue;
+
+        return boxed(leftValue, right.expr(frame));
+    }
+
+    private Value boxed(Value leftValue, Value rightValue) {
+
+        if (specialization != null) {
+            Value ret = specialization.apply(leftValue, rightValue);
+            if (ret != null)
+                return ret;
+
+            specialization = null;
+        }
+
+        Value ret = apply(super.getLine(), op, leftValue, rightValue);
+
+        if (!profiled) {
+            profile(leftValue.type, rightValue.type);
+            profiled = true;
+        }
+
+        return ret;
+    }
+
+    // Called by the semantic analysis with the operand types it found, in
+    // place of the profile of the first evaluation.
+    public void specialize(Type leftType, Type rightType) {
+        if (!profiled) {
+            profile(leftType, rightType);
+            profiled = true;
+        }
+    }
+
+    private void profile(Type leftType, Type rightType) {
+        boolean number = leftType == IntType.instance() || leftType == FloatType.instance();
+
+        if (leftType == rightType && number) {
+            boolean comparison = op.compareTo(Op.Equal) >= 0 && op.compareTo(Op.GreaterEqual) <= 0;
+            operands = leftType;
+            result = comparison ? BoolType.instance() : leftType;
+        } else if (leftType == rightType && leftType == BoolType.instance()) {
+            if (op == Op.And || op == Op.Or || op == Op.Equal || op == Op.NotEqual) {
+                operands = leftType;
+                result = leftType;
+            }
+        } else {
+            specialization = BinarySpecialization.of(op, leftType, rightType);
+        }
+    }
+
+    // Whether the left operand of && or || gives the result alone: false for
+    // && and true for ||. It is checked as andOp and orOp check it. Also
+    // called by the other engines and the constant folding.
+    public static boolean settles(int line, Op op, Value leftValue) {
+        if (leftValue.type.getCategory() != Category.Bool)
+            throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
+
+        boolean l = ((Boolean) leftValue.data).booleanValue();
+        return op == Op.And ? !l : l;
+    }
+
+    // Also called by the bytecode VM, which has no node to evaluate.
+    public static Value apply(int line, Op op, Value leftValue, Value rightValue) {
 
-        Value leftValue = left.expr();
-        Value rightValue = right.expr();
         Value ret = null;
 
         switch (op) {
             case And:
-                ret = andOp(leftValue, rightValue);
+                ret = andOp(line, leftValue, rightValue);
                 break;
             case Or:
-                ret = orOp(leftValue, rightValue);
+                ret = orOp(line, leftValue, rightValue);
                 break;
             case Equal:
-                ret = equalOp(leftValue, rightValue);
+                ret = equalOp(line, leftValue, rightValue);
                 break;
             case NotEqual:
-                ret = notEqualOp(leftValue, rightValue);
+                ret = notEqualOp(line, leftValue, rightValue);
                 break;
             case LowerThan:
-                ret = lowerThanOp(leftValue, rightValue);
+                ret = lowerThanOp(line, leftValue, rightValue);
                 break;
             case LowerEqual:
-                ret = lowerEqualOp(leftValue, rightValue);
+                ret = lowerEqualOp(line, leftValue, rightValue);
                 break;
             case GreaterThan:
-                ret = greaterThanOp(leftValue, rightValue);
+                ret = greaterThanOp(line, leftValue, rightValue);
                 break;
             case GreaterEqual:
-                ret = greaterEqualOp(leftValue, rightValue);
+                ret = greaterEqualOp(line, leftValue, rightValue);
                 break;
             case Add:
-                ret = addOp(leftValue, rightValue);
+                ret = addOp(line, leftValue, rightValue);
                 break;
             case Sub:
-                ret = subOp(leftValue, rightValue);
+                ret = subOp(line, leftValue, rightValue);
                 break;
             case Mul:
-                ret = mulOp(leftValue, rightValue);
+                ret = mulOp(line, leftValue, rightValue);
                 break;
             case Div:
-                ret = divOp(leftValue, rightValue);
+                ret = divOp(line, leftValue, rightValue);
                 break;
             default:
                 throw new InternalError("unreachable");
@@ -94,7 +350,9 @@ public class BinaryExpr extends Expr {
         return ret;
     }
 
-    private Value andOp(Value leftValue, Value rightValue) {
+    // Each operator on its own, for the closure engine, which picks one when
+    // it compiles the node instead of on every evaluation.
+    public static Value andOp(int line, Value leftValue, Value rightValue) {
 
         List<Category> allowedCategories = Arrays.asList(Category.Bool);
 
@@ -102,10 +360,10 @@ public class BinaryExpr extends Expr {
             case Bool:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 boolean il = ((Boolean) leftValue.data).booleanValue();
@@ -114,11 +372,11 @@ public class BinaryExpr extends Expr {
                 return new Value(BoolType.instance(), il && ir);
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    private Value orOp(Value leftValue, Value rightValue) {
+    public static Value orOp(int line, Value leftValue, Value rightValue) {
 
         List<Category> allowedCategories = Arrays.asList(Category.Bool);
 
@@ -126,10 +384,10 @@ public class BinaryExpr extends Expr {
             case Bool:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 boolean il = ((Boolean) leftValue.data).booleanValue();
@@ -138,29 +396,29 @@ public class BinaryExpr extends Expr {
                 return new Value(BoolType.instance(), il || ir);
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    private Value equalOp(Value leftValue, Value rightValue) {
+    public static Value equalOp(int line, Value leftValue, Value rightValue) {
 
         if (!leftValue.type.match(rightValue.type))
-            throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+            throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                     rightValue.type.toString());
 
         return new Value(BoolType.instance(), leftValue.data.equals(rightValue.data));
     }
 
-    private Value notEqualOp(Value leftValue, Value rightValue) {
+    public static Value notEqualOp(int line, Value leftValue, Value rightValue) {
 
         if (!leftValue.type.match(rightValue.type))
-            throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+            throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                     rightValue.type.toString());
 
         return new Value(BoolType.instance(), !leftValue.data.equals(rightValue.data));
     }
 
-    private Value lowerThanOp(Value leftValue, Value rightValue) {
+    public static Value lowerThanOp(int line, Value leftValue, Value rightValue) {
 
         List<Category> allowedCategories = Arrays.asList(Category.Int, Category.Float, Category.Char, Category.String);
 
@@ -168,10 +426,10 @@ public class BinaryExpr extends Expr {
             case Int:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 int il = ((Integer) leftValue.data).intValue();
@@ -182,10 +440,10 @@ public class BinaryExpr extends Expr {
             case Float:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 float fl = ((Float) leftValue.data).floatValue();
@@ -196,10 +454,10 @@ public class BinaryExpr extends Expr {
             case Char:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 char cl = ((Character) leftValue.data).charValue();
@@ -210,10 +468,10 @@ public class BinaryExpr extends Expr {
             case String:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 String sl = ((String) leftValue.data);
@@ -222,12 +480,12 @@ public class BinaryExpr extends Expr {
                 return new Value(BoolType.instance(), sl.length() < sr.length());
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                         leftValue.type.toString());
         }
     }
 
-    private Value lowerEqualOp(Value leftValue, Value rightValue) {
+    public static Value lowerEqualOp(int line, Value leftValue, Value rightValue) {
 
         List<Category> allowedCategories = Arrays.asList(Category.Int, Category.Float, Category.Char, Category.String);
 
@@ -235,10 +493,10 @@ public class BinaryExpr extends Expr {
             case Int:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 int il = ((Integer) leftValue.data).intValue();
@@ -249,10 +507,10 @@ public class BinaryExpr extends Expr {
             case Float:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 float fl = ((Float) leftValue.data).floatValue();
@@ -263,10 +521,10 @@ public class BinaryExpr extends Expr {
             case Char:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 char cl = ((Character) leftValue.data).charValue();
@@ -277,10 +535,10 @@ public class BinaryExpr extends Expr {
             case String:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 String sl = ((String) leftValue.data);
@@ -289,12 +547,12 @@ public class BinaryExpr extends Expr {
                 return new Value(BoolType.instance(), sl.length() <= sr.length());
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                         leftValue.type.toString());
         }
     }
 
-    private Value greaterThanOp(Value leftValue, Value rightValue) {
+    public static Value greaterThanOp(int line, Value leftValue, Value rightValue) {
 
         List<Category> allowedCategories = Arrays.asList(Category.Int, Category.Float, Category.Char, Category.String);
 
@@ -302,10 +560,10 @@ public class BinaryExpr extends Expr {
             case Int:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 int il = ((Integer) leftValue.data).intValue();
@@ -316,10 +574,10 @@ public class BinaryExpr extends Expr {
             case Float:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 float fl = ((Float) leftValue.data).floatValue();
@@ -330,10 +588,10 @@ public class BinaryExpr extends Expr {
             case Char:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 char cl = ((Character) leftValue.data).charValue();
@@ -344,10 +602,10 @@ public class BinaryExpr extends Expr {
             case String:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 String sl = ((String) leftValue.data);
@@ -356,11 +614,11 @@ public class BinaryExpr extends Expr {
                 return new Value(BoolType.instance(), sl.length() > sr.length());
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    private Value greaterEqualOp(Value leftValue, Value rightValue) {
+    public static Value greaterEqualOp(int line, Value leftValue, Value rightValue) {
 
         List<Category> allowedCategories = Arrays.asList(Category.Int, Category.Float, Category.Char, Category.String);
 
@@ -368,10 +626,10 @@ public class BinaryExpr extends Expr {
             case Int:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 int il = ((Integer) leftValue.data).intValue();
@@ -382,10 +640,10 @@ public class BinaryExpr extends Expr {
             case Float:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 float fl = ((Float) leftValue.data).floatValue();
@@ -396,10 +654,10 @@ public class BinaryExpr extends Expr {
             case Char:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 char cl = ((Character) leftValue.data).charValue();
@@ -410,10 +668,10 @@ public class BinaryExpr extends Expr {
             case String:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 String sl = ((String) leftValue.data);
@@ -422,11 +680,11 @@ public class BinaryExpr extends Expr {
                 return new Value(BoolType.instance(), sl.length() >= sr.length());
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    private Value addOp(Value leftValue, Value rightValue) {
+    public static Value addOp(int line, Value leftValue, Value rightValue) {
 
         List<Category> allowedCategories = Arrays.asList(Category.Int, Category.Float, Category.Char, Category.String,
                 Category.Array, Category.Dict);
@@ -436,10 +694,10 @@ public class BinaryExpr extends Expr {
             case Int:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 int il = ((Integer) leftValue.data).intValue();
@@ -450,10 +708,10 @@ public class BinaryExpr extends Expr {
             case Float:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 float fl = ((Float) leftValue.data).floatValue();
@@ -464,10 +722,10 @@ public class BinaryExpr extends Expr {
             case Char:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 char cl = ((Character) leftValue.data).charValue();
@@ -478,10 +736,10 @@ public class BinaryExpr extends Expr {
             case String:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 String sl = ((String) leftValue.data);
@@ -492,10 +750,10 @@ public class BinaryExpr extends Expr {
             case Array:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 List<Object> al = ((ArrayList<Object>) leftValue.data);
@@ -510,10 +768,10 @@ public class BinaryExpr extends Expr {
             case Dict:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 Map<Object, Object> ml = ((Map<Object, Object>) leftValue.data);
@@ -526,11 +784,11 @@ public class BinaryExpr extends Expr {
                 return new Value(leftValue.type, mResult);
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    private Value subOp(Value leftValue, Value rightValue) {
+    public static Value subOp(int line, Value leftValue, Value rightValue) {
 
         List<Category> allowedCategories = Arrays.asList(Category.Int, Category.Float);
 
@@ -538,10 +796,10 @@ public class BinaryExpr extends Expr {
             case Int:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 int il = ((Integer) leftValue.data).intValue();
@@ -552,10 +810,10 @@ public class BinaryExpr extends Expr {
             case Float:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 float fl = ((Float) leftValue.data).floatValue();
@@ -564,11 +822,11 @@ public class BinaryExpr extends Expr {
                 return new Value(FloatType.instance(), fl - fr);
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    private Value mulOp(Value leftValue, Value rightValue) {
+    public static Value mulOp(int line, Value leftValue, Value rightValue) {
 
         List<Category> allowedCategories = Arrays.asList(Category.Int, Category.Float);
 
@@ -576,10 +834,10 @@ public class BinaryExpr extends Expr {
             case Int:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 int il = ((Integer) leftValue.data).intValue();
@@ -590,10 +848,10 @@ public class BinaryExpr extends Expr {
             case Float:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 float fl = ((Float) leftValue.data).floatValue();
@@ -602,12 +860,12 @@ public class BinaryExpr extends Expr {
                 return new Value(FloatType.instance(), fl * fr);
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                         leftValue.type.toString());
         }
     }
 
-    private Value divOp(Value leftValue, Value rightValue) {
+    public static Value divOp(int line, Value leftValue, Value rightValue) {
 
         List<Category> allowedCategories = Arrays.asList(Category.Int, Category.Float);
 
@@ -615,10 +873,10 @@ public class BinaryExpr extends Expr {
             case Int:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 int il = ((Integer) leftValue.data).intValue();
@@ -629,10 +887,10 @@ public class BinaryExpr extends Expr {
             case Float:
 
                 if (!allowedCategories.contains(rightValue.type.getCategory()))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
 
                 if (!leftValue.type.match(rightValue.type))
-                    throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                    throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                             rightValue.type.toString());
 
                 float fl = ((Float) leftValue.data).floatValue();
@@ -641,9 +899,26 @@ public class BinaryExpr extends Expr {
                 return new Value(FloatType.instance(), fl / fr);
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                         leftValue.type.toString());
         }
     }
 
-}
\ No newline at end of file
+    public Expr getLeft() {
+        return left;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public Expr getRight() {
+        return right;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
+}
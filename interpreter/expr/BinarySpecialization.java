@@ -0,0 +1,76 @@
+package interpreter.expr;
+
+import interpreter.type.Type;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.StringType;
+import interpreter.value.Value;
+
+// The form a BinaryExpr takes once it has seen the types of its operands,
+// for the ones it cannot evaluate unboxed. Each handles a single operator on
+// a single type: it checks that the operands still have it and returns null
+// when they do not, leaving the node to fall back to BinaryExpr.apply.
+//
+// Types are compared by identity, which for the primitive ones, singletons,
+// makes the checks of the generic path redundant.
+abstract class BinarySpecialization {
+
+    abstract Value apply(Value left, Value right);
+
+    // The specialization for op on these operand types, or null if there is
+    // none and the node should stay generic.
+    static BinarySpecialization of(BinaryExpr.Op op, Type left, Type right) {
+        if (left != right)
+            return null;
+
+        if (op == BinaryExpr.Op.Equal)
+            return new Equal(left);
+        if (op == BinaryExpr.Op.NotEqual)
+            return new NotEqual(left);
+
+        if (left == StringType.instance() && op == BinaryExpr.Op.Add)
+            return new StringAdd();
+
+        return null;
+    }
+
+    // Any type, as long as both sides have the one seen first.
+    private static final class Equal extends BinarySpecialization {
+        private final Type type;
+
+        Equal(Type type) {
+            this.type = type;
+        }
+
+        Value apply(Value left, Value right) {
+            if (left.type != type || right.type != type)
+                return null;
+
+            return new Value(BoolType.instance(), left.data.equals(right.data));
+        }
+    }
+
+    private static final class NotEqual extends BinarySpecialization {
+        private final Type type;
+
+        NotEqual(Type type) {
+            this.type = type;
+        }
+
+        Value apply(Value left, Value right) {
+            if (left.type != type || right.type != type)
+                return null;
+
+            return new Value(BoolType.instance(), !left.data.equals(right.data));
+        }
+    }
+
+    private static final class StringAdd extends BinarySpecialization {
+        Value apply(Value left, Value right) {
+            if (left.type != StringType.instance() || right.type != StringType.instance())
+                return null;
+
+            return new Value(StringType.instance(), (String) left.data + (String) right.data);
+        }
+    }
+
+}
@@ -5,11 +5,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import interpreter.Frame;
+import interpreter.Visitor;
+import interpreter.type.Type;
 import interpreter.type.primitive.BoolType;
 import interpreter.type.primitive.CharType;
 import interpreter.type.primitive.FloatType;
 import interpreter.type.primitive.IntType;
 import interpreter.type.primitive.StringType;
+import interpreter.value.UnexpectedValueException;
 import interpreter.value.Value;
 
 public class CastExpr extends Expr {
@@ -25,6 +29,15 @@ public class CastExpr extends Expr {
     private Op op;
     private Expr expr;
 
+    // Set from the type of the operand, by the semantic analysis or on the
+    // first evaluation. An Int to Float or Float to Int cast then runs
+    // unboxed, with operand holding the type it converts from; the casts
+    // involving a Char get a specialization instead. Either is dropped when
+    // the operand has another type.
+    private Type operand;
+    private CastSpecialization specialization;
+    private boolean profiled;
+
     public CastExpr(int line, Op op, Expr expr) {
         super(line);
         this.op = op;
@@ -32,8 +45,86 @@ public class CastExpr extends Expr {
     }
 
     @Override
-    public Value expr() {
-        Value exprValue = expr.expr();
+    public Value expr(Frame frame) {
+
+        if (operand != null) {
+            try {
+                if (op == Op.ToInt)
+                    return new Value(IntType.instance(), exprInt(frame));
+                else
+                    return new Value(FloatType.instance(), exprFloat(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        return boxed(expr.expr(frame));
+    }
+
+    @Override
+    public int exprInt(Frame frame) throws UnexpectedValueException {
+        if (operand == null || op != Op.ToInt)
+            return super.exprInt(frame);
+
+        try {
+            return (int) expr.exprFloat(frame);
+        } catch (UnexpectedValueException e) {
+            return intOf(despecialize(e.getValue()));
+        }
+    }
+
+    @Override
+    public float exprFloat(Frame frame) throws UnexpectedValueException {
+        if (operand == null || op != Op.ToFloat)
+            return super.exprFloat(frame);
+
+        try {
+            return (float) expr.exprInt(frame);
+        } catch (UnexpectedValueException e) {
+            return floatOf(despecialize(e.getValue()));
+        }
+    }
+
+    private Value despecialize(Value exprValue) {
+        operand = null;
+        return boxed(exprValue);
+    }
+
+    private Value boxed(Value exprValue) {
+
+        if (specialization != null) {
+            Value ret = specialization.apply(exprValue);
+            if (ret != null)
+                return ret;
+
+            specialization = null;
+        }
+
+        Value ret = apply(op, exprValue);
+
+        if (!profiled)
+            specialize(exprValue.type);
+
+        return ret;
+    }
+
+    // Also called by the semantic analysis with the type it found for the
+    // operand, before the first evaluation.
+    public void specialize(Type type) {
+        if (profiled)
+            return;
+
+        if (op == Op.ToInt && type == FloatType.instance() || op == Op.ToFloat && type == IntType.instance())
+            operand = type;
+        else
+            specialization = CastSpecialization.of(op, type);
+
+        profiled = true;
+    }
+
+    // Also called by the bytecode VM.
+    public static Value apply(Op op, Value exprValue) {
+
         Value ret = null;
 
         switch (op) {
@@ -60,7 +151,8 @@ public class CastExpr extends Expr {
         return ret;
     }
 
-    private Value toBoolOp(Value exprValue) {
+    // One per target type; the closure engine calls them directly.
+    public static Value toBoolOp(Value exprValue) {
 
         switch (exprValue.type.getCategory()) {
             case Int:
@@ -94,7 +186,7 @@ public class CastExpr extends Expr {
 
     }
 
-    private Value toIntOp(Value exprValue) {
+    public static Value toIntOp(Value exprValue) {
 
         switch (exprValue.type.getCategory()) {
             case Int:
@@ -117,7 +209,7 @@ public class CastExpr extends Expr {
         }
     }
 
-    private Value toFloatOp(Value exprValue) {
+    public static Value toFloatOp(Value exprValue) {
 
         switch (exprValue.type.getCategory()) {
             case Int:
@@ -141,7 +233,7 @@ public class CastExpr extends Expr {
 
     }
 
-    private Value toCharOp(Value exprValue) {
+    public static Value toCharOp(Value exprValue) {
 
         switch (exprValue.type.getCategory()) {
             case Int:
@@ -159,9 +251,22 @@ public class CastExpr extends Expr {
         }
     }
 
-    private Value toStringOp(Value exprValue) {
+    public static Value toStringOp(Value exprValue) {
 
         return new Value(StringType.instance(), exprValue.data.toString());
     }
 
+    public Op getOp() {
+        return op;
+    }
+
+    public Expr getExpr() {
+        return expr;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
@@ -0,0 +1,44 @@
+package interpreter.expr;
+
+import interpreter.type.Type;
+import interpreter.type.primitive.CharType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.Value;
+
+// The form a CastExpr takes once it has seen the type it converts from, for
+// the conversions between Int and Char. apply returns null when the operand
+// no longer has that type.
+abstract class CastSpecialization {
+
+    abstract Value apply(Value value);
+
+    static CastSpecialization of(CastExpr.Op op, Type type) {
+        switch (op) {
+            case ToInt:
+                return type == CharType.instance() ? new CharToInt() : null;
+            case ToChar:
+                return type == IntType.instance() ? new IntToChar() : null;
+            default:
+                return null;
+        }
+    }
+
+    private static final class CharToInt extends CastSpecialization {
+        Value apply(Value value) {
+            if (value.type != CharType.instance())
+                return null;
+
+            return new Value(IntType.instance(), (int) ((Character) value.data).charValue());
+        }
+    }
+
+    private static final class IntToChar extends CastSpecialization {
+        Value apply(Value value) {
+            if (value.type != IntType.instance())
+                return null;
+
+            return new Value(CharType.instance(), (char) ((Integer) value.data).intValue());
+        }
+    }
+
+}
@@ -1,6 +1,9 @@
 package interpreter.expr;
 
 import error.LanguageException;
+import interpreter.Frame;
+import interpreter.Visitor;
+import interpreter.value.UnexpectedValueException;
 import interpreter.value.Value;
 
 public class ConditionalExpr extends Expr {
@@ -16,17 +19,43 @@ public class ConditionalExpr extends Expr {
         this.falseExpr = falseExpr;
     }
 
-    public Value expr() {
-        Value condValue = cond.expr();
+    public Value expr(Frame frame) {
+        boolean condition;
+        try {
+            condition = cond.exprBool(frame);
+        } catch (UnexpectedValueException e) {
+            condition = test(e.getValue());
+        }
+
+        return condition ? trueExpr.expr(frame) : falseExpr.expr(frame);
+    }
 
+    private boolean test(Value condValue) {
         switch (condValue.type.getCategory()) {
 
             case Bool:
-                return ((Boolean) condValue.data).booleanValue() ? trueExpr.expr() : falseExpr.expr();
+                return ((Boolean) condValue.data).booleanValue();
 
             default:
                 throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
         }
+    }
+
+    public Expr getCond() {
+        return cond;
+    }
 
+    public Expr getTrueExpr() {
+        return trueExpr;
     }
+
+    public Expr getFalseExpr() {
+        return falseExpr;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
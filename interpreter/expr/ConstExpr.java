@@ -1,5 +1,7 @@
 package interpreter.expr;
 
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.value.Value;
 
 public class ConstExpr extends Expr {
@@ -12,8 +14,17 @@ public class ConstExpr extends Expr {
     }
 
     @Override
-    public Value expr() {
+    public Value expr(Frame frame) {
         return value;
     }
-    
+
+    public Value getValue() {
+        return value;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
@@ -5,6 +5,8 @@ import java.util.List;
 import java.util.Map;
 
 import error.LanguageException;
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.type.composed.DictType;
 import interpreter.value.Value;
 
@@ -20,14 +22,14 @@ public class DictExpr extends Expr {
     }
 
     @Override
-    public Value expr() {
+    public Value expr(Frame frame) {
 
         Map<Object, Object> returnItems = new HashMap<>();
 
         for (DictItem dictItem : items) {
 
-            Value keyValue = dictItem.key.expr();
-            Value valueValue = dictItem.value.expr();
+            Value keyValue = dictItem.key.expr(frame);
+            Value valueValue = dictItem.value.expr(frame);
 
             if (!keyValue.type.equals(type.getKeyType()))
                 throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
@@ -42,4 +44,18 @@ public class DictExpr extends Expr {
 
         return new Value(type, returnItems);
     }
+
+    public DictType getType() {
+        return type;
+    }
+
+    public List<DictItem> getItems() {
+        return items;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
@@ -1,5 +1,11 @@
 package interpreter.expr;
 
+import interpreter.Frame;
+import interpreter.Visitor;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.UnexpectedValueException;
 import interpreter.value.Value;
 
 public abstract class Expr {
@@ -14,6 +20,50 @@ public abstract class Expr {
         return line;
     }
 
-    public abstract Value expr();
+    public void shiftLine(int delta) {
+        line += delta;
+    }
+
+    public abstract Value expr(Frame frame);
+
+    // Unboxed evaluation, for callers that expect an Int, Float or Bool. The
+    // nodes that can compute one without a Value override these; any other
+    // result is thrown back as an UnexpectedValueException.
+    public int exprInt(Frame frame) throws UnexpectedValueException {
+        return intOf(expr(frame));
+    }
+
+    public float exprFloat(Frame frame) throws UnexpectedValueException {
+        return floatOf(expr(frame));
+    }
+
+    public boolean exprBool(Frame frame) throws UnexpectedValueException {
+        return boolOf(expr(frame));
+    }
+
+    // The data is checked too, since a loop variable can hold an element of
+    // another type under its own.
+    public static int intOf(Value value) throws UnexpectedValueException {
+        if (value.type != IntType.instance() || !(value.data instanceof Integer))
+            throw new UnexpectedValueException(value);
+
+        return ((Integer) value.data).intValue();
+    }
+
+    public static float floatOf(Value value) throws UnexpectedValueException {
+        if (value.type != FloatType.instance() || !(value.data instanceof Float))
+            throw new UnexpectedValueException(value);
+
+        return ((Float) value.data).floatValue();
+    }
+
+    public static boolean boolOf(Value value) throws UnexpectedValueException {
+        if (value.type != BoolType.instance() || !(value.data instanceof Boolean))
+            throw new UnexpectedValueException(value);
+
+        return ((Boolean) value.data).booleanValue();
+    }
+
+    public abstract <R> R accept(Visitor<R> visitor);
 
 }
@@ -0,0 +1,152 @@
+package interpreter.expr;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import interpreter.type.Type;
+import interpreter.type.composed.ArrayType;
+import interpreter.type.composed.DictType;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.CharType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.type.primitive.StringType;
+
+// The type every value of an expression has, or UNKNOWN (null) when it is
+// only known at run time. Every value that reaches a variable has been
+// checked against its declared type, so the type of most expressions can be
+// told from the tree. Only the primitive types are compared by identity,
+// which is all the engines that run them unboxed need.
+//
+// A loop variable can hold an element of another type under its own, so the
+// data of a value of a known type still has to be checked where it matters.
+public class ExprTypes {
+
+    private static final Type BOOL = BoolType.instance();
+    private static final Type INT = IntType.instance();
+    private static final Type FLOAT = FloatType.instance();
+
+    public static final Type UNKNOWN = null;
+
+    private Map<Expr, Type> types;
+
+    public ExprTypes() {
+        this.types = new IdentityHashMap<Expr, Type>();
+    }
+
+    public Type typeOf(Expr expr) {
+        if (types.containsKey(expr))
+            return types.get(expr);
+
+        Type type = UNKNOWN;
+        if (expr instanceof ConstExpr) {
+            type = ((ConstExpr) expr).getValue().type;
+        } else if (expr instanceof Variable) {
+            type = ((Variable) expr).getType();
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            Type left = typeOf(binary.getLeft());
+            Type right = typeOf(binary.getRight());
+            if (left != UNKNOWN && right != UNKNOWN && left.match(right)) {
+                switch (binary.getOp()) {
+                    case And:
+                    case Or:
+                        type = left == BOOL ? BOOL : UNKNOWN;
+                        break;
+                    case Equal:
+                    case NotEqual:
+                        type = BOOL;
+                        break;
+                    case LowerThan:
+                    case LowerEqual:
+                    case GreaterThan:
+                    case GreaterEqual:
+                        type = left == INT || left == FLOAT || left == CharType.instance()
+                                || left == StringType.instance() ? BOOL : UNKNOWN;
+                        break;
+                    case Add:
+                        type = left;
+                        break;
+                    default:
+                        type = left == INT || left == FLOAT ? left : UNKNOWN;
+                        break;
+                }
+            }
+        } else if (expr instanceof UnaryExpr) {
+            UnaryExpr unary = (UnaryExpr) expr;
+            Type inner = typeOf(unary.getExpr());
+            if (unary.getOp() == UnaryExpr.Op.Not)
+                type = inner == BOOL ? BOOL : UNKNOWN;
+            else
+                type = inner == INT || inner == FLOAT ? inner : UNKNOWN;
+        } else if (expr instanceof CastExpr) {
+            CastExpr cast = (CastExpr) expr;
+            switch (cast.getOp()) {
+                case ToBool:
+                    type = BOOL;
+                    break;
+                case ToInt:
+                    type = INT;
+                    break;
+                case ToFloat:
+                    // Anything but a number or a character becomes a Double.
+                    Type inner = typeOf(cast.getExpr());
+                    type = inner == INT || inner == FLOAT || inner == CharType.instance() ? FLOAT : UNKNOWN;
+                    break;
+                case ToChar:
+                    type = CharType.instance();
+                    break;
+                default:
+                    type = StringType.instance();
+                    break;
+            }
+        } else if (expr instanceof FunctionExpr) {
+            FunctionExpr function = (FunctionExpr) expr;
+            Type base = typeOf(function.getExpr());
+            switch (function.getOp()) {
+                case Count:
+                    type = INT;
+                    break;
+                case Empty:
+                case Contains:
+                    type = BOOL;
+                    break;
+                case Keys:
+                    if (base instanceof DictType)
+                        type = ArrayType.instance(((DictType) base).getKeyType());
+                    break;
+                case Values:
+                    if (base instanceof DictType)
+                        type = ArrayType.instance(((DictType) base).getValueType());
+                    break;
+                default:
+                    type = base instanceof ArrayType ? base : UNKNOWN;
+                    break;
+            }
+        } else if (expr instanceof AccessExpr) {
+            Type base = typeOf(((AccessExpr) expr).getBase());
+            if (base == StringType.instance())
+                type = CharType.instance();
+            else if (base instanceof ArrayType)
+                type = ((ArrayType) base).getInnerType();
+            else if (base instanceof DictType)
+                type = ((DictType) base).getValueType();
+        } else if (expr instanceof ConditionalExpr) {
+            ConditionalExpr cond = (ConditionalExpr) expr;
+            Type trueType = typeOf(cond.getTrueExpr());
+            Type falseType = typeOf(cond.getFalseExpr());
+            if (trueType != UNKNOWN && falseType != UNKNOWN && trueType.match(falseType))
+                type = trueType;
+        } else if (expr instanceof ActionExpr) {
+            type = ((ActionExpr) expr).getOp() == ActionExpr.Op.Read ? StringType.instance() : FLOAT;
+        } else if (expr instanceof ArrayExpr) {
+            type = ((ArrayExpr) expr).getType();
+        } else if (expr instanceof DictExpr) {
+            type = ((DictExpr) expr).getType();
+        }
+
+        types.put(expr, type);
+        return type;
+    }
+
+}
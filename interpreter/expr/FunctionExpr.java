@@ -6,6 +6,8 @@ import java.util.List;
 import java.util.Map;
 
 import error.LanguageException;
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.type.composed.ArrayType;
 import interpreter.type.composed.DictType;
 import interpreter.type.primitive.BoolType;
@@ -42,30 +44,38 @@ public class FunctionExpr extends Expr {
     }
 
     @Override
-    public Value expr() {
+    public Value expr(Frame frame) {
+
+        Value exprValue = expr.expr(frame);
+        Value argValue = arg != null ? arg.expr(frame) : null;
+
+        return apply(super.getLine(), op, exprValue, argValue);
+    }
+
+    // Also called by the bytecode VM, with a null argument for the functions
+    // that take none.
+    public static Value apply(int line, Op op, Value exprValue, Value argValue) {
 
-        Value exprValue = expr.expr();
-        Value argValue = arg != null ? arg.expr() : null;
         Value ret = null;
 
         switch (op) {
             case Count:
-                ret = countOp(exprValue);
+                ret = countOp(line, exprValue);
                 break;
             case Empty:
-                ret = emptyOp(exprValue);
+                ret = emptyOp(line, exprValue);
                 break;
             case Keys:
-                ret = keysOp(exprValue);
+                ret = keysOp(line, exprValue);
                 break;
             case Values:
-                ret = valuesOp(exprValue);
+                ret = valuesOp(line, exprValue);
                 break;
             case Append:
-                ret = appendOp(exprValue, argValue);
+                ret = appendOp(line, exprValue, argValue);
                 break;
             case Contains:
-                ret = containsOp(exprValue, argValue);
+                ret = containsOp(line, exprValue, argValue);
                 break;
 
             default:
@@ -75,7 +85,7 @@ public class FunctionExpr extends Expr {
         return ret;
     }
 
-    public Value countOp(Value exprValue) {
+    public static Value countOp(int line, Value exprValue) {
 
         switch (exprValue.type.getCategory()) {
             case String:
@@ -89,11 +99,11 @@ public class FunctionExpr extends Expr {
                 return new Value(IntType.instance(), arr.size());
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    public Value emptyOp(Value exprValue) {
+    public static Value emptyOp(int line, Value exprValue) {
 
         switch (exprValue.type.getCategory()) {
             case String:
@@ -112,11 +122,11 @@ public class FunctionExpr extends Expr {
                 return new Value(BoolType.instance(), mp.isEmpty());
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    public Value keysOp(Value exprValue) {
+    public static Value keysOp(int line, Value exprValue) {
 
         switch (exprValue.type.getCategory()) {
     
@@ -129,11 +139,11 @@ public class FunctionExpr extends Expr {
                 return new Value(ArrayType.instance(((DictType)exprValue.type).getKeyType()), keysList);
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    public Value valuesOp(Value exprValue) {
+    public static Value valuesOp(int line, Value exprValue) {
 
         switch (exprValue.type.getCategory()) {
 
@@ -146,18 +156,18 @@ public class FunctionExpr extends Expr {
                 return new Value(ArrayType.instance(((DictType)exprValue.type).getValueType()), valuesList);
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    public Value appendOp(Value exprValue, Value argValue) {
+    public static Value appendOp(int line, Value exprValue, Value argValue) {
 
         switch (exprValue.type.getCategory()) {
 
             case Array:
 
                 if (!argValue.type.match(((ArrayType) exprValue.type).getInnerType()))
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                         argValue.type.toString());
 
                 List<Object> arr = ((ArrayList<Object>) exprValue.data);
@@ -167,18 +177,18 @@ public class FunctionExpr extends Expr {
                 return new Value(exprValue.type, arr);
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
 
-    public Value containsOp(Value exprValue, Value argValue) {
+    public static Value containsOp(int line, Value exprValue, Value argValue) {
 
         switch (exprValue.type.getCategory()) {
 
             case Array:
 
                 if (!argValue.type.match(((ArrayType) exprValue.type).getInnerType()))
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                         argValue.type.toString());
 
                 List<Object> arr = ((ArrayList<Object>) exprValue.data);
@@ -186,7 +196,25 @@ public class FunctionExpr extends Expr {
                 return new Value(BoolType.instance(), arr.contains(argValue.data));
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
         }
     }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public Expr getExpr() {
+        return expr;
+    }
+
+    public Expr getArg() {
+        return arg;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
@@ -1,5 +1,6 @@
 package interpreter.expr;
 
+import interpreter.Frame;
 import interpreter.value.Value;
 
 public abstract class SetExpr extends Expr {
@@ -8,7 +9,7 @@ public abstract class SetExpr extends Expr {
         super(line);
     }
 
-    public abstract Value expr();
-    public abstract void setValue(Value value);
+    public abstract Value expr(Frame frame);
+    public abstract void setValue(Frame frame, Value value);
     
 }
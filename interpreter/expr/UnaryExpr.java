@@ -1,7 +1,13 @@
 package interpreter.expr;
 
 import error.LanguageException;
+import interpreter.Frame;
+import interpreter.Visitor;
+import interpreter.type.Type;
 import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.UnexpectedValueException;
 import interpreter.value.Value;
 
 public class UnaryExpr extends Expr {
@@ -14,6 +20,12 @@ public class UnaryExpr extends Expr {
     private Expr expr;
     private Op op;
 
+    // Set, by the semantic analysis or on the first evaluation, when the
+    // operand is an Int or a Float for Neg or a Bool for Not, and dropped
+    // when it turns out otherwise: the node then runs unboxed on that type.
+    private Type unboxed;
+    private boolean profiled;
+
     public UnaryExpr(int line, Expr expr, Op op) {
         super(line);
         this.expr = expr;
@@ -21,17 +33,99 @@ public class UnaryExpr extends Expr {
     }
 
     @Override
-    public Value expr() {
+    public Value expr(Frame frame) {
+
+        if (unboxed != null) {
+            try {
+                if (unboxed == IntType.instance())
+                    return new Value(unboxed, exprInt(frame));
+                else if (unboxed == FloatType.instance())
+                    return new Value(unboxed, exprFloat(frame));
+                else
+                    return new Value(unboxed, exprBool(frame));
+            } catch (UnexpectedValueException e) {
+                return e.getValue();
+            }
+        }
+
+        return boxed(expr.expr(frame));
+    }
+
+    @Override
+    public int exprInt(Frame frame) throws UnexpectedValueException {
+        if (unboxed != IntType.instance())
+            return super.exprInt(frame);
+
+        try {
+            return -expr.exprInt(frame);
+        } catch (UnexpectedValueException e) {
+            return intOf(despecialize(e.getValue()));
+        }
+    }
+
+    @Override
+    public float exprFloat(Frame frame) throws UnexpectedValueException {
+        if (unboxed != FloatType.instance())
+            return super.exprFloat(frame);
+
+        try {
+            return -expr.exprFloat(frame);
+        } catch (UnexpectedValueException e) {
+            return floatOf(despecialize(e.getValue()));
+        }
+    }
+
+    @Override
+    public boolean exprBool(Frame frame) throws UnexpectedValueException {
+        if (unboxed != BoolType.instance())
+            return super.exprBool(frame);
+
+        try {
+            return !expr.exprBool(frame);
+        } catch (UnexpectedValueException e) {
+            return boolOf(despecialize(e.getValue()));
+        }
+    }
+
+    private Value despecialize(Value value) {
+        unboxed = null;
+        return boxed(value);
+    }
+
+    private Value boxed(Value value) {
+
+        Value ret = apply(super.getLine(), op, value);
+
+        if (!profiled)
+            specialize(value.type);
+
+        return ret;
+    }
+
+    // Also called by the semantic analysis with the type it found for the
+    // operand, before the first evaluation.
+    public void specialize(Type type) {
+        if (profiled)
+            return;
+
+        if (op == Op.Neg ? type == IntType.instance() || type == FloatType.instance()
+                : type == BoolType.instance())
+            unboxed = type;
+
+        profiled = true;
+    }
+
+    // Also called by the bytecode VM.
+    public static Value apply(int line, Op op, Value value) {
 
-        Value value = expr.expr();
         Value ret;
 
         switch (op) {
             case Not:
-                ret = notOp(value);
+                ret = notOp(line, value);
                 break;
             case Neg:
-                ret = negOp(value);
+                ret = negOp(line, value);
                 break;
             default:
                 throw new InternalError("unreachable");
@@ -40,12 +134,13 @@ public class UnaryExpr extends Expr {
         return ret;
     }
 
-    private Value notOp(Value value) {
+    // Public so the closure engine can bind the operator up front.
+    public static Value notOp(int line, Value value) {
 
         BoolType btype = BoolType.instance();
 
         if (!btype.match(value.type))
-            throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+            throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                     value.type.toString());
 
         boolean b = ((Boolean) value.data).booleanValue();
@@ -53,7 +148,7 @@ public class UnaryExpr extends Expr {
 
     }
 
-    private Value negOp(Value value) {
+    public static Value negOp(int line, Value value) {
 
         switch (value.type.getCategory()) {
 
@@ -66,9 +161,22 @@ public class UnaryExpr extends Expr {
                 return new Value(value.type, -f);
 
             default:
-                throw LanguageException.instance(super.getLine(), LanguageException.Error.InvalidType,
+                throw LanguageException.instance(line, LanguageException.Error.InvalidType,
                         value.type.toString());
         }
     }
 
+    public Expr getExpr() {
+        return expr;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
+    }
+
 }
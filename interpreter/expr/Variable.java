@@ -5,23 +5,28 @@ import static error.LanguageException.Error.InvalidType;
 import static error.LanguageException.Error.UnitializedVariable;
 
 import error.LanguageException;
+import interpreter.Frame;
+import interpreter.Visitor;
 import interpreter.type.Type;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.UnexpectedValueException;
 import interpreter.value.Value;
-import lexical.Token;
 
 public class Variable extends SetExpr {
 
     private String name;
     private Type type;
     private boolean constant;
-    private Value value;
+    private int slot;
 
-    public Variable(Token name, Type type, boolean constant) {
-        super(name.line);
-        this.name = name.lexeme;
+    public Variable(int line, String name, Type type, boolean constant, int slot) {
+        super(line);
+        this.name = name;
         this.type = type;
         this.constant = constant;
-        this.value = null;
+        this.slot = slot;
     }
 
     public String getName() {
@@ -36,22 +41,83 @@ public class Variable extends SetExpr {
         return this.constant;
     }
 
-    public void initialize(Value value) {
-        this.write(value, true);
+    // Index of the value of this variable in the frame of a run.
+    public int getSlot() {
+        return slot;
     }
 
-    public Value expr() {
-        if (this.value == null)
+    public void initialize(Frame frame, Value value) {
+        this.write(frame, value, true);
+    }
+
+    public Value expr(Frame frame) {
+        Value value = frame.get(slot);
+        if (value == null)
             throw LanguageException.instance(super.getLine(), UnitializedVariable, name);
 
-        return this.value;
+        return value;
+    }
+
+    @Override
+    public int exprInt(Frame frame) throws UnexpectedValueException {
+        if (frame.getRawType(slot) == IntType.instance())
+            return frame.getRaw(slot);
+
+        return super.exprInt(frame);
+    }
+
+    @Override
+    public float exprFloat(Frame frame) throws UnexpectedValueException {
+        if (frame.getRawType(slot) == FloatType.instance())
+            return Float.intBitsToFloat(frame.getRaw(slot));
+
+        return super.exprFloat(frame);
+    }
+
+    @Override
+    public boolean exprBool(Frame frame) throws UnexpectedValueException {
+        if (frame.getRawType(slot) == BoolType.instance())
+            return frame.getRaw(slot) != 0;
+
+        return super.exprBool(frame);
+    }
+
+    public void setValue(Frame frame, Value value) {
+        this.write(frame, value, false);
     }
 
-    public void setValue(Value value) {
-        this.write(value, false);
+    // Unboxed counterparts of initialize and setValue. Values that do not
+    // suit the variable take the boxed path to fail with the same errors.
+    public void writeInt(Frame frame, int n, boolean initialize) {
+        if (this.type != IntType.instance())
+            this.write(frame, new Value(IntType.instance(), n), initialize);
+        else
+            this.writeRaw(frame, n, initialize);
     }
 
-    private void write(Value value, boolean initialize) {
+    public void writeFloat(Frame frame, float f, boolean initialize) {
+        if (this.type != FloatType.instance())
+            this.write(frame, new Value(FloatType.instance(), f), initialize);
+        else
+            this.writeRaw(frame, Float.floatToRawIntBits(f), initialize);
+    }
+
+    public void writeBool(Frame frame, boolean b, boolean initialize) {
+        if (this.type != BoolType.instance())
+            this.write(frame, new Value(BoolType.instance(), b), initialize);
+        else
+            this.writeRaw(frame, b ? 1 : 0, initialize);
+    }
+
+    private void writeRaw(Frame frame, int bits, boolean initialize) {
+
+        if (!initialize && this.isConstant())
+            throw LanguageException.instance(super.getLine(), ConstantAssignment, name);
+
+        frame.setRaw(slot, type, bits);
+    }
+
+    private void write(Frame frame, Value value, boolean initialize) {
         
         if (!initialize && this.isConstant())
             throw LanguageException.instance(super.getLine(), ConstantAssignment, name);
@@ -59,7 +125,12 @@ public class Variable extends SetExpr {
         if (!this.type.match(value.type))
             throw LanguageException.instance(super.getLine(), InvalidType, value.type.toString());
 
-        this.value = value;
+        frame.set(slot, value);
+    }
+
+    @Override
+    public <R> R accept(Visitor<R> visitor) {
+        return visitor.visit(this);
     }
 
 }
@@ -0,0 +1,97 @@
+package interpreter.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// A basic block: its phis, then instructions that run one after the other up
+// to the last one, which leaves the block.
+public class Block {
+
+    private final int id;
+    private final List<Block> preds;
+    private final List<Instruction> phis;
+    private final List<Instruction> code;
+
+    Block(int id) {
+        this.id = id;
+        this.preds = new ArrayList<Block>();
+        this.phis = new ArrayList<Instruction>();
+        this.code = new ArrayList<Instruction>();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public List<Block> getPredecessors() {
+        return Collections.unmodifiableList(preds);
+    }
+
+    public List<Block> getSuccessors() {
+        return getTerminator().getTargets();
+    }
+
+    public List<Instruction> getPhis() {
+        return Collections.unmodifiableList(phis);
+    }
+
+    public List<Instruction> getCode() {
+        return Collections.unmodifiableList(code);
+    }
+
+    public Instruction getTerminator() {
+        return code.get(code.size() - 1);
+    }
+
+    void addPredecessor(Block pred) {
+        preds.add(pred);
+    }
+
+    void addPhi(Instruction phi) {
+        phi.setBlock(this);
+        phis.add(phi);
+    }
+
+    void append(Instruction instruction) {
+        instruction.setBlock(this);
+        code.add(instruction);
+    }
+
+    void insert(int index, Instruction instruction) {
+        instruction.setBlock(this);
+        code.add(index, instruction);
+    }
+
+    void remove(Instruction instruction) {
+        if (!phis.remove(instruction))
+            code.remove(instruction);
+
+        instruction.detach();
+        instruction.setBlock(null);
+    }
+
+    String name() {
+        return "b" + id;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name()).append(":");
+        String separator = " <- ";
+        for (Block pred : preds) {
+            sb.append(separator).append(pred.name());
+            separator = ", ";
+        }
+
+        sb.append("\n");
+        for (Instruction phi : phis)
+            sb.append("    ").append(phi).append("\n");
+
+        for (Instruction instruction : code)
+            sb.append("    ").append(instruction).append("\n");
+
+        return sb.toString();
+    }
+
+}
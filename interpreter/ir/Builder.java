@@ -0,0 +1,607 @@
+package interpreter.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import interpreter.Visitor;
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.DumpCommand;
+import interpreter.command.ForCommand;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.PrintCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.DictItem;
+import interpreter.expr.Expr;
+import interpreter.expr.ExprTypes;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.SetExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.StringType;
+
+// Lowers a checked tree into a Graph in SSA form, the way Braun et al. build
+// it in "Simple and Efficient Construction of Static Single Assignment Form".
+// A read of a variable takes the last value written to it in its block, or
+// else asks the predecessors, with a phi where they may differ. The header
+// of a loop is sealed once its body is built: until then its predecessors
+// are not all known, and the phis it needs are left to complete. A phi that
+// only ever merges one value is replaced by that value.
+//
+// Every write still goes to the frame, with the checks Variable makes, so
+// the prompt and the trees that follow in a stream find it there; reads
+// within the tree use the value written. A variable read before the tree
+// writes it is loaded from the frame when the run starts and may have no
+// value yet, so such reads are checked, unless every path to them writes it.
+//
+// Expressions are evaluated in the order the tree evaluates them, and each
+// instruction fails as the node it comes from does.
+public class Builder implements Visitor<Instruction> {
+
+    private final Graph graph;
+    private final ExprTypes types;
+    private final Map<Block, Map<Variable, Instruction>> defs;
+    private final Map<Block, Map<Variable, Instruction>> incomplete;
+    private final Set<Block> sealed;
+    private final Map<Instruction, Instruction> replaced;
+    private final Set<Instruction> completing;
+    private Block current;
+    private int loads;
+
+    private Builder() {
+        this.graph = new Graph();
+        this.types = new ExprTypes();
+        this.defs = new IdentityHashMap<Block, Map<Variable, Instruction>>();
+        this.incomplete = new IdentityHashMap<Block, Map<Variable, Instruction>>();
+        this.sealed = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+        this.replaced = new IdentityHashMap<Instruction, Instruction>();
+        this.completing = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        this.current = null;
+        this.loads = 0;
+    }
+
+    public static Graph build(Command cmd) {
+        Builder builder = new Builder();
+        builder.current = builder.graph.newBlock();
+        builder.sealed.add(builder.current);
+
+        cmd.accept(builder);
+        builder.emit(Instruction.Kind.Return, cmd.getLine(), null);
+
+        builder.removeChecks();
+        builder.simplifyAll();
+        builder.removeUnused();
+        builder.graph.number();
+        return builder.graph;
+    }
+
+    public Instruction visit(AssignCommand cmd) {
+        Instruction value = cmd.getRhs().accept(this);
+        if (cmd.getLhs() != null)
+            assign(cmd.getLhs(), value);
+
+        return null;
+    }
+
+    public Instruction visit(BlocksCommand cmd) {
+        for (Command c : cmd.getCommands())
+            c.accept(this);
+
+        return null;
+    }
+
+    public Instruction visit(DumpCommand cmd) {
+        emit(Instruction.Kind.Dump, cmd.getLine(), null, cmd.getExpr().accept(this));
+        return null;
+    }
+
+    // The iterator is made once, before the header; each pass through the
+    // body starts by taking the next element into the variable.
+    public Instruction visit(ForCommand cmd) {
+        Variable var = cmd.getVariable();
+        Instruction it = emit(Instruction.Kind.Iterate, cmd.getLine(), var, cmd.getExpr().accept(this));
+
+        Block header = graph.newBlock();
+        jump(header);
+        current = header;
+
+        Instruction more = emit(Instruction.Kind.HasNext, cmd.getLine(), null, it);
+        Block body = graph.newBlock();
+        Block exit = graph.newBlock();
+        branch(Instruction.Kind.Branch, cmd.getLine(), more, body, exit);
+
+        seal(body);
+        current = body;
+        Instruction element = emit(Instruction.Kind.Next, cmd.getLine(), var, it);
+        emit(var.isConstant() ? Instruction.Kind.Init : Instruction.Kind.Store, cmd.getLine(), var, element);
+        write(var, element);
+        cmd.getBody().accept(this);
+        jump(header);
+
+        seal(header);
+        seal(exit);
+        current = exit;
+        return null;
+    }
+
+    public Instruction visit(IfCommand cmd) {
+        Block then = graph.newBlock();
+        Block otherwise = cmd.getElse() != null ? graph.newBlock() : null;
+        Block end = graph.newBlock();
+        condition(Instruction.Kind.Branch, cmd.getLine(), cmd.getExpr(), then, otherwise != null ? otherwise : end);
+
+        seal(then);
+        current = then;
+        cmd.getThen().accept(this);
+        jump(end);
+
+        if (otherwise != null) {
+            seal(otherwise);
+            current = otherwise;
+            cmd.getElse().accept(this);
+            jump(end);
+        }
+
+        seal(end);
+        current = end;
+        return null;
+    }
+
+    public Instruction visit(InitializeCommand cmd) {
+        Instruction value = cmd.getExpr().accept(this);
+        emit(Instruction.Kind.Init, cmd.getLine(), cmd.getVariable(), value);
+        write(cmd.getVariable(), value);
+        return null;
+    }
+
+    public Instruction visit(PrintCommand cmd) {
+        Instruction value = cmd.getExpr().accept(this);
+        emit(cmd.isNewline() ? Instruction.Kind.Println : Instruction.Kind.Print, cmd.getLine(), null, value);
+        return null;
+    }
+
+    // The condition is evaluated in the header, as the loop comes back to it.
+    public Instruction visit(WhileCommand cmd) {
+        Block header = graph.newBlock();
+        jump(header);
+        current = header;
+
+        Block body = graph.newBlock();
+        Block exit = graph.newBlock();
+        condition(Instruction.Kind.Branch, cmd.getLine(), cmd.getExpr(), body, exit);
+
+        seal(body);
+        current = body;
+        cmd.getBody().accept(this);
+        jump(header);
+
+        seal(header);
+        seal(exit);
+        current = exit;
+        return null;
+    }
+
+    public Instruction visit(AccessExpr expr) {
+        Instruction base = expr.getBase().accept(this);
+        Instruction index = expr.getIndex().accept(this);
+        Instruction.Kind kind = expr.isInBounds() ? Instruction.Kind.GetInBounds : Instruction.Kind.Get;
+        return emit(kind, expr.getLine(), null, base, index);
+    }
+
+    public Instruction visit(ActionExpr expr) {
+        return emit(Instruction.Kind.Action, expr.getLine(), expr.getOp());
+    }
+
+    public Instruction visit(ArrayExpr expr) {
+        Instruction array = emit(Instruction.Kind.NewArray, expr.getLine(), expr.getType());
+        for (Expr item : expr.getItems())
+            emit(Instruction.Kind.ArrayAdd, expr.getLine(), null, array, item.accept(this));
+
+        return array;
+    }
+
+    // The right operand of && or || has a block of its own, entered when
+    // the left one is true for && or false for ||. The operator is then
+    // applied there, with the left operand, for its checks; the result is a
+    // phi of it and of the left operand, which settled it otherwise.
+    public Instruction visit(BinaryExpr expr) {
+        BinaryExpr.Op op = expr.getOp();
+        Instruction left = expr.getLeft().accept(this);
+        if (op != BinaryExpr.Op.And && op != BinaryExpr.Op.Or) {
+            Instruction right = expr.getRight().accept(this);
+            return emit(Instruction.Kind.Binary, expr.getLine(), op, left, right);
+        }
+
+        Block settled = current;
+        Block rest = graph.newBlock();
+        Block end = graph.newBlock();
+        if (op == BinaryExpr.Op.And)
+            branch(Instruction.Kind.Select, expr.getLine(), left, rest, end);
+        else
+            branch(Instruction.Kind.Select, expr.getLine(), left, end, rest);
+
+        seal(rest);
+        current = rest;
+        Instruction right = expr.getRight().accept(this);
+        Instruction value = emit(Instruction.Kind.Binary, expr.getLine(), op, left, right);
+        jump(end);
+
+        seal(end);
+        current = end;
+        Instruction phi = new Instruction(Instruction.Kind.Phi, expr.getLine(), null);
+        end.addPhi(phi);
+        for (Block pred : end.getPredecessors())
+            phi.addOperand(pred == settled ? left : value);
+
+        return simplify(phi);
+    }
+
+    public Instruction visit(CastExpr expr) {
+        return emit(Instruction.Kind.Cast, expr.getLine(), expr.getOp(), expr.getExpr().accept(this));
+    }
+
+    // Each branch computes its value in blocks of its own; a phi where they
+    // meet is the value of the one taken.
+    public Instruction visit(ConditionalExpr expr) {
+        Block yes = graph.newBlock();
+        Block no = graph.newBlock();
+        Block end = graph.newBlock();
+        condition(Instruction.Kind.Select, expr.getLine(), expr.getCond(), yes, no);
+
+        seal(yes);
+        current = yes;
+        Instruction a = expr.getTrueExpr().accept(this);
+        jump(end);
+
+        seal(no);
+        current = no;
+        Instruction b = expr.getFalseExpr().accept(this);
+        jump(end);
+
+        seal(end);
+        current = end;
+        Instruction phi = new Instruction(Instruction.Kind.Phi, expr.getLine(), null);
+        end.addPhi(phi);
+        phi.addOperand(a);
+        phi.addOperand(b);
+        return simplify(phi);
+    }
+
+    public Instruction visit(ConstExpr expr) {
+        return emit(Instruction.Kind.Const, expr.getLine(), expr.getValue());
+    }
+
+    public Instruction visit(DictExpr expr) {
+        Instruction dict = emit(Instruction.Kind.NewDict, expr.getLine(), expr.getType());
+        for (DictItem item : expr.getItems()) {
+            Instruction key = item.key.accept(this);
+            Instruction value = item.value.accept(this);
+            emit(Instruction.Kind.DictPut, expr.getLine(), null, dict, key, value);
+        }
+
+        return dict;
+    }
+
+    public Instruction visit(FunctionExpr expr) {
+        Instruction base = expr.getExpr().accept(this);
+        if (expr.getArg() == null)
+            return emit(Instruction.Kind.Function, expr.getLine(), expr.getOp(), base);
+
+        Instruction arg = expr.getArg().accept(this);
+        return emit(Instruction.Kind.Function, expr.getLine(), expr.getOp(), base, arg);
+    }
+
+    public Instruction visit(UnaryExpr expr) {
+        return emit(Instruction.Kind.Unary, expr.getLine(), expr.getOp(), expr.getExpr().accept(this));
+    }
+
+    // A value that may be missing is checked once; the reads after the check
+    // in the same block use what it let through.
+    public Instruction visit(Variable var) {
+        Instruction value = read(var, current);
+        if (value.getKind() != Instruction.Kind.Load && value.getKind() != Instruction.Kind.Phi)
+            return value;
+
+        Instruction checked = emit(Instruction.Kind.Check, var.getLine(), var, value);
+        write(var, checked);
+        return checked;
+    }
+
+    // An element of a string is written by making a new string, which is
+    // then written into the base in turn, evaluating its base and index
+    // again as the tree does.
+    private void assign(SetExpr lhs, Instruction value) {
+        if (lhs instanceof Variable) {
+            Variable var = (Variable) lhs;
+            emit(Instruction.Kind.Store, var.getLine(), var, value);
+            write(var, value);
+            return;
+        }
+
+        AccessExpr access = (AccessExpr) lhs;
+        Instruction base = access.getBase().accept(this);
+        Instruction index = access.getIndex().accept(this);
+        if (types.typeOf(access.getBase()) == StringType.instance()) {
+            Instruction str = emit(Instruction.Kind.SetChar, access.getLine(), null, base, index, value);
+            assign(access.getBase(), str);
+        } else {
+            emit(Instruction.Kind.Set, access.getLine(), null, base, index, value);
+        }
+    }
+
+    private Instruction emit(Instruction.Kind kind, int line, Object op, Instruction... operands) {
+        Instruction instruction = new Instruction(kind, line, op);
+        for (Instruction operand : operands)
+            instruction.addOperand(operand);
+
+        current.append(instruction);
+        return instruction;
+    }
+
+    private void jump(Block target) {
+        Instruction jump = emit(Instruction.Kind.Jump, 0, null);
+        jump.addTarget(target);
+        target.addPredecessor(current);
+    }
+
+    // Evaluates a condition and goes to then when it holds, else to
+    // otherwise; the kind is the branch for its checks. && and || on Bools
+    // become a branch per operand, each checked as the operator checks it,
+    // so the right operand only runs when the left one leaves the result
+    // open, and no Bool is made for them.
+    private void condition(Instruction.Kind kind, int line, Expr cond, Block then, Block otherwise) {
+        if (!isLogical(cond)) {
+            branch(kind, line, cond.accept(this), then, otherwise);
+            return;
+        }
+
+        BinaryExpr binary = (BinaryExpr) cond;
+        Block rest = graph.newBlock();
+        if (binary.getOp() == BinaryExpr.Op.And)
+            condition(Instruction.Kind.Select, binary.getLine(), binary.getLeft(), rest, otherwise);
+        else
+            condition(Instruction.Kind.Select, binary.getLine(), binary.getLeft(), then, rest);
+
+        seal(rest);
+        current = rest;
+        condition(Instruction.Kind.Select, binary.getLine(), binary.getRight(), then, otherwise);
+    }
+
+    private boolean isLogical(Expr expr) {
+        if (!(expr instanceof BinaryExpr))
+            return false;
+
+        BinaryExpr binary = (BinaryExpr) expr;
+        return (binary.getOp() == BinaryExpr.Op.And || binary.getOp() == BinaryExpr.Op.Or)
+                && types.typeOf(binary.getLeft()) == BoolType.instance()
+                && types.typeOf(binary.getRight()) == BoolType.instance();
+    }
+
+    // Goes to the first target when the condition holds, else to the second.
+    private void branch(Instruction.Kind kind, int line, Instruction cond, Block then, Block otherwise) {
+        Instruction branch = emit(kind, line, null, cond);
+        branch.addTarget(then);
+        branch.addTarget(otherwise);
+        then.addPredecessor(current);
+        otherwise.addPredecessor(current);
+    }
+
+    private void write(Variable var, Instruction value) {
+        write(var, current, value);
+    }
+
+    private void write(Variable var, Block block, Instruction value) {
+        Map<Variable, Instruction> values = defs.get(block);
+        if (values == null) {
+            values = new IdentityHashMap<Variable, Instruction>();
+            defs.put(block, values);
+        }
+
+        values.put(var, value);
+    }
+
+    private Instruction read(Variable var, Block block) {
+        Map<Variable, Instruction> values = defs.get(block);
+        if (values != null && values.containsKey(var))
+            return values.get(var);
+
+        Instruction value;
+        if (!sealed.contains(block)) {
+            value = phi(var, block);
+            Map<Variable, Instruction> phis = incomplete.get(block);
+            if (phis == null) {
+                phis = new LinkedHashMap<Variable, Instruction>();
+                incomplete.put(block, phis);
+            }
+
+            phis.put(var, value);
+        } else if (block == graph.getEntry()) {
+            value = new Instruction(Instruction.Kind.Load, var.getLine(), var);
+            block.insert(loads++, value);
+        } else if (block.getPredecessors().size() == 1) {
+            value = read(var, block.getPredecessors().get(0));
+        } else {
+            // Written first, so a loop that leads back here finds the phi.
+            value = phi(var, block);
+            write(var, block, value);
+            value = complete(var, value);
+        }
+
+        write(var, block, value);
+        return value;
+    }
+
+    private Instruction phi(Variable var, Block block) {
+        Instruction phi = new Instruction(Instruction.Kind.Phi, var.getLine(), var);
+        block.addPhi(phi);
+        return phi;
+    }
+
+    // A phi is only simplified once it has all its operands, even if a phi
+    // it uses is replaced while it gets them.
+    private Instruction complete(Variable var, Instruction phi) {
+        completing.add(phi);
+        for (Block pred : phi.getBlock().getPredecessors())
+            phi.addOperand(read(var, pred));
+
+        completing.remove(phi);
+        return resolve(simplify(phi));
+    }
+
+    // All the predecessors of the block are known: the phis left waiting
+    // for them can take their operands.
+    private void seal(Block block) {
+        sealed.add(block);
+        Map<Variable, Instruction> phis = incomplete.remove(block);
+        if (phis == null)
+            return;
+
+        for (Map.Entry<Variable, Instruction> entry : phis.entrySet())
+            complete(entry.getKey(), entry.getValue());
+    }
+
+    // Replaces a phi whose operands are all one value, or itself, by that
+    // value. The phis that used it may then be such phis too.
+    private Instruction simplify(Instruction phi) {
+        if (completing.contains(phi))
+            return phi;
+
+        Instruction same = null;
+        for (Instruction operand : phi.getOperands()) {
+            if (operand == same || operand == phi)
+                continue;
+
+            if (same != null)
+                return phi;
+
+            same = operand;
+        }
+
+        // Only a block no path reaches can have a phi of itself alone.
+        if (same == null)
+            return phi;
+
+        List<Instruction> users = new ArrayList<Instruction>(phi.getUsers());
+        replace(phi, same);
+
+        for (Instruction user : users) {
+            if (user != phi && user.getKind() == Instruction.Kind.Phi && user.getBlock() != null)
+                simplify(user);
+        }
+
+        return same;
+    }
+
+    private void replace(Instruction old, Instruction value) {
+        old.replaceBy(value);
+        for (Map<Variable, Instruction> values : defs.values()) {
+            for (Map.Entry<Variable, Instruction> entry : values.entrySet()) {
+                if (entry.getValue() == old)
+                    entry.setValue(value);
+            }
+        }
+
+        old.getBlock().remove(old);
+        replaced.put(old, value);
+    }
+
+    // What a value removed since it was returned was replaced by.
+    private Instruction resolve(Instruction value) {
+        while (replaced.containsKey(value))
+            value = replaced.get(value);
+
+        return value;
+    }
+
+    // Drops the checks of values that every path defines: all but the loads
+    // and the phis some load may reach.
+    private void removeChecks() {
+        Set<Instruction> missing = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        for (Instruction load : graph.getEntry().getCode()) {
+            if (load.getKind() == Instruction.Kind.Load)
+                missing.add(load);
+        }
+
+        boolean changed;
+        do {
+            changed = false;
+            for (Block block : graph.getBlocks()) {
+                for (Instruction phi : block.getPhis()) {
+                    if (missing.contains(phi))
+                        continue;
+
+                    for (Instruction operand : phi.getOperands()) {
+                        if (missing.contains(operand)) {
+                            changed |= missing.add(phi);
+                            break;
+                        }
+                    }
+                }
+            }
+        } while (changed);
+
+        for (Block block : graph.getBlocks()) {
+            for (Instruction check : new ArrayList<Instruction>(block.getCode())) {
+                if (check.getKind() == Instruction.Kind.Check && !missing.contains(check.getOperand(0))) {
+                    Instruction value = check.getOperand(0);
+                    check.replaceBy(value);
+                    block.remove(check);
+                }
+            }
+        }
+    }
+
+    // Removing checks can leave phis of one value, which were phis of
+    // different checks of it.
+    private void simplifyAll() {
+        for (Block block : graph.getBlocks()) {
+            for (Instruction phi : new ArrayList<Instruction>(block.getPhis())) {
+                if (phi.getBlock() != null)
+                    simplify(phi);
+            }
+        }
+    }
+
+    // Drops the loads and phis nothing uses but themselves.
+    private void removeUnused() {
+        boolean changed;
+        do {
+            changed = false;
+            for (Block block : graph.getBlocks()) {
+                List<Instruction> candidates = new ArrayList<Instruction>(block.getPhis());
+                for (Instruction instruction : block.getCode()) {
+                    if (instruction.getKind() == Instruction.Kind.Load)
+                        candidates.add(instruction);
+                }
+
+                for (Instruction instruction : candidates) {
+                    boolean used = false;
+                    for (Instruction user : instruction.getUsers())
+                        used |= user != instruction;
+
+                    if (!used) {
+                        block.remove(instruction);
+                        changed = true;
+                    }
+                }
+            }
+        } while (changed);
+    }
+
+}
@@ -0,0 +1,62 @@
+package interpreter.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// The control-flow graph of a command, in SSA form. The first block is the
+// entry; a run ends at the block that returns. Its text, one block after the
+// other, is what msi --dump-ir writes.
+public class Graph {
+
+    private final List<Block> blocks;
+    private int size;
+
+    Graph() {
+        this.blocks = new ArrayList<Block>();
+        this.size = 0;
+    }
+
+    public Block getEntry() {
+        return blocks.get(0);
+    }
+
+    public List<Block> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    // The number of values, each numbered below it.
+    public int size() {
+        return size;
+    }
+
+    Block newBlock() {
+        Block block = new Block(blocks.size());
+        blocks.add(block);
+        return block;
+    }
+
+    // Numbers the values in the order the blocks are written.
+    void number() {
+        size = 0;
+        for (Block block : blocks) {
+            for (Instruction phi : block.getPhis())
+                phi.setId(size++);
+
+            for (Instruction instruction : block.getCode()) {
+                if (instruction.getKind().hasValue())
+                    instruction.setId(size++);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Block block : blocks)
+            sb.append(block);
+
+        return sb.toString();
+    }
+
+}
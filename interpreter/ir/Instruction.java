@@ -0,0 +1,221 @@
+package interpreter.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import interpreter.expr.Variable;
+
+// One instruction of a Graph. An instruction that computes a value is that
+// value: its operands are the instructions whose values it uses, so every
+// value has a single definition, and its users are the instructions that use
+// it. What a kind needs besides its operands is its op: the operator of an
+// expression, the variable of a load or a store, the Value of a constant or
+// the type of a new array or dict.
+//
+// A phi takes one operand per predecessor of its block, in the same order,
+// and is the value of the one the block was entered from. The last
+// instruction of a block jumps to its targets or returns.
+public class Instruction {
+
+    public static enum Kind {
+        Const(true),
+        Load(true),
+        Check(true),
+        Store(false),
+        Init(false),
+        Binary(true),
+        Unary(true),
+        Cast(true),
+        Function(true),
+        Action(true),
+        Get(true),
+        GetInBounds(true),
+        Set(false),
+        SetChar(true),
+        NewArray(true),
+        ArrayAdd(false),
+        NewDict(true),
+        DictPut(false),
+        Iterate(true),
+        HasNext(true),
+        Next(true),
+        Print(false),
+        Println(false),
+        Dump(false),
+        Phi(true),
+        Jump(false),
+        Branch(false),
+        Select(false),
+        Return(false);
+
+        private final boolean value;
+
+        private Kind(boolean value) {
+            this.value = value;
+        }
+
+        public boolean hasValue() {
+            return value;
+        }
+    }
+
+    private final Kind kind;
+    private final int line;
+    private final Object op;
+    private final List<Instruction> operands;
+    private final List<Instruction> users;
+    private final List<Block> targets;
+    private Block block;
+    private int id;
+
+    Instruction(Kind kind, int line, Object op) {
+        this.kind = kind;
+        this.line = line;
+        this.op = op;
+        this.operands = new ArrayList<Instruction>();
+        this.users = new ArrayList<Instruction>();
+        this.targets = new ArrayList<Block>();
+        this.id = -1;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public Object getOp() {
+        return op;
+    }
+
+    public Variable getVariable() {
+        return (Variable) op;
+    }
+
+    public List<Instruction> getOperands() {
+        return Collections.unmodifiableList(operands);
+    }
+
+    public Instruction getOperand(int i) {
+        return operands.get(i);
+    }
+
+    public List<Instruction> getUsers() {
+        return Collections.unmodifiableList(users);
+    }
+
+    public List<Block> getTargets() {
+        return Collections.unmodifiableList(targets);
+    }
+
+    public Block getBlock() {
+        return block;
+    }
+
+    // Index of the value in a run, numbered by Graph; -1 without a value.
+    public int getId() {
+        return id;
+    }
+
+    public boolean isTerminator() {
+        return kind == Kind.Jump || kind == Kind.Branch || kind == Kind.Select || kind == Kind.Return;
+    }
+
+    void setBlock(Block block) {
+        this.block = block;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    void addOperand(Instruction operand) {
+        operands.add(operand);
+        operand.users.add(this);
+    }
+
+    void addTarget(Block target) {
+        targets.add(target);
+    }
+
+    // Makes every user of this instruction use another one instead.
+    void replaceBy(Instruction other) {
+        for (Instruction user : users) {
+            for (int i = 0; i < user.operands.size(); i++) {
+                if (user.operands.get(i) == this)
+                    user.operands.set(i, other);
+            }
+
+            other.users.add(user);
+        }
+
+        users.clear();
+    }
+
+    // Drops the operands, for an instruction taken out of its block.
+    void detach() {
+        for (Instruction operand : operands)
+            operand.users.remove(this);
+
+        operands.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (kind.hasValue())
+            sb.append(name()).append(" = ");
+
+        sb.append(mnemonic(kind));
+
+        if (op instanceof Variable)
+            sb.append(" ").append(((Variable) op).getName());
+        else if (op instanceof Enum<?>)
+            sb.append(" ").append(((Enum<?>) op).name().toLowerCase());
+        else if (op != null)
+            sb.append(" ").append(op);
+
+        String separator = " ";
+        if (kind == Kind.Phi) {
+            List<Block> preds = block.getPredecessors();
+            for (int i = 0; i < operands.size(); i++) {
+                sb.append(separator).append("[").append(preds.get(i).name()).append(": ")
+                        .append(operands.get(i).name()).append("]");
+                separator = ", ";
+            }
+        } else {
+            for (Instruction operand : operands) {
+                sb.append(separator).append(operand.name());
+                separator = ", ";
+            }
+        }
+
+        for (Block target : targets) {
+            sb.append(separator).append(target.name());
+            separator = ", ";
+        }
+
+        return sb.toString();
+    }
+
+    String name() {
+        return "%" + id;
+    }
+
+    // GetInBounds is written get_in_bounds.
+    private static String mnemonic(Kind kind) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : kind.name().toCharArray()) {
+            if (Character.isUpperCase(c) && sb.length() > 0)
+                sb.append('_');
+
+            sb.append(Character.toLowerCase(c));
+        }
+
+        return sb.toString();
+    }
+
+}
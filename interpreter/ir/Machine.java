@@ -0,0 +1,216 @@
+package interpreter.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import error.LanguageException;
+import interpreter.Frame;
+import interpreter.bytecode.VirtualMachine;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.Type.Category;
+import interpreter.type.composed.ArrayType;
+import interpreter.type.composed.DictType;
+import interpreter.type.primitive.BoolType;
+import interpreter.value.Value;
+
+// Runs a Graph against a frame, one block at a time. Each value is kept at
+// its number while the run lasts; the phis of a block take theirs together
+// on the way in, from the block left. Operators go through the same code the
+// tree nodes use, so results and errors do not depend on the engine.
+public class Machine {
+
+    private static final Type BOOL = BoolType.instance();
+
+    private final Frame frame;
+
+    public Machine(Frame frame) {
+        this.frame = frame;
+    }
+
+    public void run(Graph graph) {
+        Object[] values = new Object[graph.size()];
+        Block from = null;
+        Block block = graph.getEntry();
+        while (block != null) {
+            enter(block, from, values);
+            from = block;
+            block = execute(block, values);
+        }
+    }
+
+    private static void enter(Block block, Block from, Object[] values) {
+        List<Instruction> phis = block.getPhis();
+        if (phis.isEmpty())
+            return;
+
+        int pred = block.getPredecessors().indexOf(from);
+        Object[] incoming = new Object[phis.size()];
+        for (int i = 0; i < incoming.length; i++)
+            incoming[i] = values[phis.get(i).getOperand(pred).getId()];
+
+        for (int i = 0; i < incoming.length; i++)
+            values[phis.get(i).getId()] = incoming[i];
+    }
+
+    // Runs the code of a block and returns the block it goes to, or null
+    // when the run ends.
+    private Block execute(Block block, Object[] values) {
+        for (Instruction instruction : block.getCode()) {
+            int line = instruction.getLine();
+            Object result = null;
+            switch (instruction.getKind()) {
+                case Const:
+                    result = instruction.getOp();
+                    break;
+                case Load:
+                    result = frame.get(instruction.getVariable().getSlot());
+                    break;
+                case Check: {
+                    result = values[instruction.getOperand(0).getId()];
+                    Variable var = instruction.getVariable();
+                    if (result == null)
+                        throw LanguageException.instance(var.getLine(), LanguageException.Error.UnitializedVariable,
+                                var.getName());
+                    break;
+                }
+                case Store:
+                    instruction.getVariable().setValue(frame, value(instruction, 0, values));
+                    break;
+                case Init:
+                    instruction.getVariable().initialize(frame, value(instruction, 0, values));
+                    break;
+                case Binary:
+                    result = BinaryExpr.apply(line, (BinaryExpr.Op) instruction.getOp(),
+                            value(instruction, 0, values), value(instruction, 1, values));
+                    break;
+                case Unary:
+                    result = UnaryExpr.apply(line, (UnaryExpr.Op) instruction.getOp(), value(instruction, 0, values));
+                    break;
+                case Cast:
+                    result = CastExpr.apply((CastExpr.Op) instruction.getOp(), value(instruction, 0, values));
+                    break;
+                case Function: {
+                    Value arg = instruction.getOperands().size() > 1 ? value(instruction, 1, values) : null;
+                    result = FunctionExpr.apply(line, (FunctionExpr.Op) instruction.getOp(),
+                            value(instruction, 0, values), arg);
+                    break;
+                }
+                case Action:
+                    result = ActionExpr.apply((ActionExpr.Op) instruction.getOp());
+                    break;
+                case Get:
+                    result = AccessExpr.get(line, value(instruction, 0, values), value(instruction, 1, values));
+                    break;
+                case GetInBounds: {
+                    Value base = value(instruction, 0, values);
+                    Value index = value(instruction, 1, values);
+                    result = AccessExpr.getInBounds(base, index);
+                    if (result == null)
+                        result = AccessExpr.get(line, base, index);
+                    break;
+                }
+                case Set:
+                case SetChar:
+                    result = AccessExpr.set(line, value(instruction, 0, values), value(instruction, 1, values),
+                            value(instruction, 2, values));
+                    break;
+                case NewArray:
+                    result = new Value((Type) instruction.getOp(), new ArrayList<Object>());
+                    break;
+                case ArrayAdd: {
+                    Value array = value(instruction, 0, values);
+                    Value item = value(instruction, 1, values);
+                    if (!item.type.getCategory().equals(((ArrayType) array.type).getInnerType().getCategory()))
+                        throw LanguageException.instance(line, LanguageException.Error.InvalidType,
+                                item.type.toString());
+
+                    ((List<Object>) array.data).add(item.data);
+                    break;
+                }
+                case NewDict:
+                    result = new Value((Type) instruction.getOp(), new HashMap<Object, Object>());
+                    break;
+                case DictPut: {
+                    Value dict = value(instruction, 0, values);
+                    Value key = value(instruction, 1, values);
+                    Value value = value(instruction, 2, values);
+                    DictType type = (DictType) dict.type;
+                    if (!key.type.equals(type.getKeyType()))
+                        throw LanguageException.instance(line, LanguageException.Error.InvalidType,
+                                key.type.toString());
+
+                    if (!value.type.equals(type.getValueType()))
+                        throw LanguageException.instance(line, LanguageException.Error.InvalidType,
+                                value.type.toString());
+
+                    ((Map<Object, Object>) dict.data).put(key.data, value.data);
+                    break;
+                }
+                case Iterate:
+                    result = VirtualMachine.iterate(line, instruction.getVariable(), value(instruction, 0, values));
+                    break;
+                case HasNext:
+                    result = new Value(BOOL, ((Iterator<?>) values[instruction.getOperand(0).getId()]).hasNext());
+                    break;
+                case Next: {
+                    Iterator<?> it = (Iterator<?>) values[instruction.getOperand(0).getId()];
+                    result = new Value(instruction.getVariable().getType(), it.next());
+                    break;
+                }
+                case Print:
+                    System.out.print(value(instruction, 0, values).data);
+                    break;
+                case Println:
+                    System.out.print(value(instruction, 0, values).data);
+                    System.out.println();
+                    break;
+                case Dump:
+                    System.out.println(value(instruction, 0, values));
+                    break;
+                case Jump:
+                    return instruction.getTargets().get(0);
+                case Branch: {
+                    // Same checks as IfCommand and WhileCommand.
+                    Value cond = value(instruction, 0, values);
+                    if (!BOOL.match(cond.type))
+                        throw LanguageException.instance(line, LanguageException.Error.InvalidType,
+                                cond.type.toString());
+
+                    return instruction.getTargets().get(((Boolean) cond.data).booleanValue() ? 0 : 1);
+                }
+                case Select: {
+                    // Same check as ConditionalExpr.
+                    Value cond = value(instruction, 0, values);
+                    if (cond.type.getCategory() != Category.Bool)
+                        throw LanguageException.instance(line, LanguageException.Error.InvalidOperation);
+
+                    return instruction.getTargets().get(((Boolean) cond.data).booleanValue() ? 0 : 1);
+                }
+                case Return:
+                    return null;
+                default:
+                    throw new InternalError("unreachable");
+            }
+
+            if (instruction.getKind().hasValue())
+                values[instruction.getId()] = result;
+        }
+
+        throw new InternalError("unreachable");
+    }
+
+    private static Value value(Instruction instruction, int i, Object[] values) {
+        return (Value) values[instruction.getOperand(i).getId()];
+    }
+
+}
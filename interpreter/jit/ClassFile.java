@@ -0,0 +1,206 @@
+package interpreter.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import error.InternalException;
+
+// Just enough of the class file format for the classes LoopCompiler makes:
+// a constant pool, no fields and methods that only have a Code attribute.
+// They are written as version 49 (Java 5) so that the JVM infers the types
+// of the stack and locals itself and no StackMapTable is needed.
+class ClassFile {
+
+    static final int PUBLIC = 0x0001;
+    static final int FINAL = 0x0010;
+    static final int SUPER = 0x0020;
+
+    private ByteArrayOutputStream pool;
+    private DataOutputStream poolOut;
+    private int poolCount;
+    private Map<String, Integer> entries;
+    private List<byte[]> methods;
+
+    ClassFile() {
+        this.pool = new ByteArrayOutputStream();
+        this.poolOut = new DataOutputStream(pool);
+        this.poolCount = 1;
+        this.entries = new HashMap<String, Integer>();
+        this.methods = new ArrayList<byte[]>();
+    }
+
+    int utf8(String s) {
+        Integer index = entries.get("U" + s);
+        if (index != null)
+            return index;
+
+        try {
+            poolOut.writeByte(1);
+            poolOut.writeUTF(s);
+        } catch (IOException e) {
+            throw new InternalException(e.getMessage());
+        }
+
+        return add("U" + s);
+    }
+
+    int classRef(String name) {
+        String key = "C" + name;
+        Integer index = entries.get(key);
+        if (index != null)
+            return index;
+
+        int n = utf8(name);
+        write(7, n);
+        return add(key);
+    }
+
+    int intConst(int value) {
+        String key = "I" + value;
+        Integer index = entries.get(key);
+        if (index != null)
+            return index;
+
+        try {
+            poolOut.writeByte(3);
+            poolOut.writeInt(value);
+        } catch (IOException e) {
+            throw new InternalException(e.getMessage());
+        }
+
+        return add(key);
+    }
+
+    // Keyed by the bits, so that 0.0 and -0.0 or two NaNs stay apart.
+    int floatConst(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        String key = "F" + bits;
+        Integer index = entries.get(key);
+        if (index != null)
+            return index;
+
+        try {
+            poolOut.writeByte(4);
+            poolOut.writeInt(bits);
+        } catch (IOException e) {
+            throw new InternalException(e.getMessage());
+        }
+
+        return add(key);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = "M" + tag + owner + "." + name + descriptor;
+        Integer index = entries.get(key);
+        if (index != null)
+            return index;
+
+        int c = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        write(tag, c, nameAndType);
+        return add(key);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + descriptor;
+        Integer index = entries.get(key);
+        if (index != null)
+            return index;
+
+        int n = utf8(name);
+        int d = utf8(descriptor);
+        write(12, n, d);
+        return add(key);
+    }
+
+    // The exception table holds four entries per handler: start, end,
+    // handler and catch type, as in the class file.
+    void method(int access, String name, String descriptor, byte[] code, int maxStack, int maxLocals,
+            int[] exceptions) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int codeName = utf8("Code");
+        int n = utf8(name);
+        int d = utf8(descriptor);
+
+        try {
+            out.writeShort(access);
+            out.writeShort(n);
+            out.writeShort(d);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + code.length + exceptions.length * 2);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(exceptions.length / 4);
+            for (int e : exceptions)
+                out.writeShort(e);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new InternalException(e.getMessage());
+        }
+
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toBytes(int access, String name, String superName) {
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            out.write(pool.toByteArray());
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods)
+                out.write(method);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new InternalException(e.getMessage());
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private void write(int tag, int... indexes) {
+        try {
+            poolOut.writeByte(tag);
+            for (int index : indexes)
+                poolOut.writeShort(index);
+        } catch (IOException e) {
+            throw new InternalException(e.getMessage());
+        }
+    }
+
+    // Entries are added after they are written, so the index is the count.
+    private int add(String key) {
+        int index = poolCount++;
+        entries.put(key, index);
+        return index;
+    }
+
+}
@@ -0,0 +1,76 @@
+package interpreter.jit;
+
+import interpreter.Frame;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.Value;
+
+// Code compiled by LoopCompiler, a while loop or, for msc, a run of
+// commands, with the variables it uses.
+public class CompiledLoop {
+
+    private final LoopCode code;
+    private final Variable[] variables;
+
+    public CompiledLoop(LoopCode code, Variable[] variables) {
+        this.code = code;
+        this.variables = variables;
+    }
+
+    // Runs the code, a loop from its condition on. Returns false without running
+    // anything when a variable holds data of another type than its own,
+    // which a for loop can leave behind; the caller then interprets it.
+    public boolean run(Frame frame) {
+        int[] values = new int[variables.length];
+        boolean[] defined = new boolean[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            int slot = variables[i].getSlot();
+            Type type = variables[i].getType();
+            if (frame.getRawType(slot) == type) {
+                values[i] = frame.getRaw(slot);
+                defined[i] = true;
+            } else {
+                Value value = frame.get(slot);
+                if (value != null) {
+                    if (value.type != type || !fits(value))
+                        return false;
+
+                    values[i] = bits(value);
+                    defined[i] = true;
+                }
+            }
+        }
+
+        try {
+            code.run(values, defined, variables);
+        } finally {
+            for (int i = 0; i < variables.length; i++) {
+                if (defined[i])
+                    frame.setRaw(variables[i].getSlot(), variables[i].getType(), values[i]);
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean fits(Value value) {
+        if (value.type == IntType.instance())
+            return value.data instanceof Integer;
+        else if (value.type == FloatType.instance())
+            return value.data instanceof Float;
+        else
+            return value.data instanceof Boolean;
+    }
+
+    private static int bits(Value value) {
+        if (value.type == IntType.instance())
+            return ((Integer) value.data).intValue();
+        else if (value.type == FloatType.instance())
+            return Float.floatToRawIntBits(((Float) value.data).floatValue());
+        else
+            return ((Boolean) value.data).booleanValue() ? 1 : 0;
+    }
+
+}
@@ -0,0 +1,31 @@
+package interpreter.jit;
+
+import interpreter.expr.Variable;
+
+// A class made by LoopCompiler, before it is loaded: its binary name, its
+// bytes and the variables its run method takes, in order.
+public class GeneratedClass {
+
+    private final String name;
+    private final byte[] bytes;
+    private final Variable[] variables;
+
+    GeneratedClass(String name, byte[] bytes, Variable[] variables) {
+        this.name = name;
+        this.bytes = bytes;
+        this.variables = variables;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public Variable[] getVariables() {
+        return variables;
+    }
+
+}
@@ -0,0 +1,15 @@
+package interpreter.jit;
+
+// Defines one generated class. Each gets its own loader so that it can be
+// unloaded along with the tree of the loop it was compiled from.
+class Loader extends ClassLoader {
+
+    Loader() {
+        super(LoopCode.class.getClassLoader());
+    }
+
+    Class<?> define(String name, byte[] bytes) {
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+
+}
@@ -0,0 +1,21 @@
+package interpreter.jit;
+
+import static error.LanguageException.Error.UnitializedVariable;
+
+import error.LanguageException;
+import interpreter.expr.Variable;
+
+// The base of the classes LoopCompiler generates. run executes the loop
+// on the values of its variables, one int per variable (a Float as its raw
+// bits, a Bool as 0 or 1), and leaves their final values in the same
+// arrays, even when it stops on an error.
+public abstract class LoopCode {
+
+    public abstract void run(int[] values, boolean[] defined, Variable[] variables);
+
+    // Called by the generated code, which cannot build the error itself.
+    public static RuntimeException uninitialized(Variable var) {
+        return LanguageException.instance(var.getLine(), UnitializedVariable, var.getName());
+    }
+
+}
@@ -0,0 +1,744 @@
+package interpreter.jit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import interpreter.Visitor;
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.DumpCommand;
+import interpreter.command.ForCommand;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.PrintCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.Expr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.value.Value;
+
+// Compiles a hot while loop into a JVM class, so that HotSpot can compile
+// it further. Only loops made of Int, Float and Bool variables, constants
+// and operators, assignments, if, while and print are handled; anything
+// else makes compile return null and the loop stays interpreted. msc uses
+// the same code for whole runs of such commands.
+//
+// Each variable the loop uses gets two JVM locals: its value and whether
+// it has been initialized. Expressions leave their value on the JVM stack
+// and return its type. Operands are evaluated in the same order as in the
+// tree, so errors happen in the same order too.
+//
+// Disabled with -Dmsi.jit=false.
+public class LoopCompiler implements Visitor<Type> {
+
+    // Iterations a loop runs in the tree interpreter before it is compiled.
+    public static final int THRESHOLD = 1000;
+
+    private static final boolean ENABLED = !"false".equals(System.getProperty("msi.jit"));
+
+    private static final AtomicInteger classes = new AtomicInteger();
+
+    private static final Type BOOL = BoolType.instance();
+    private static final Type INT = IntType.instance();
+    private static final Type FLOAT = FloatType.instance();
+
+    // JVM opcodes.
+    private static final int ICONST_0 = 0x03;
+    private static final int FCONST_0 = 0x0b;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int FLOAD = 0x17;
+    private static final int ALOAD = 0x19;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int IALOAD = 0x2e;
+    private static final int AALOAD = 0x32;
+    private static final int BALOAD = 0x33;
+    private static final int ISTORE = 0x36;
+    private static final int FSTORE = 0x38;
+    private static final int ASTORE = 0x3a;
+    private static final int IASTORE = 0x4f;
+    private static final int BASTORE = 0x54;
+    private static final int POP = 0x57;
+    private static final int IADD = 0x60;
+    private static final int FADD = 0x62;
+    private static final int ISUB = 0x64;
+    private static final int FSUB = 0x66;
+    private static final int IMUL = 0x68;
+    private static final int FMUL = 0x6a;
+    private static final int IDIV = 0x6c;
+    private static final int FDIV = 0x6e;
+    private static final int INEG = 0x74;
+    private static final int FNEG = 0x76;
+    private static final int IXOR = 0x82;
+    private static final int I2F = 0x86;
+    private static final int F2I = 0x8b;
+    private static final int FCMPL = 0x95;
+    private static final int FCMPG = 0x96;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IF_ICMPEQ = 0x9f;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPLT = 0xa1;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int IF_ICMPGT = 0xa3;
+    private static final int IF_ICMPLE = 0xa4;
+    private static final int GOTO = 0xa7;
+    private static final int RETURN = 0xb1;
+    private static final int GETSTATIC = 0xb2;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int ATHROW = 0xbf;
+
+    // Locals of run: this, values, defined, variables, the exception being
+    // rethrown, then the pairs of each variable.
+    private static final int VALUES = 1;
+    private static final int DEFINED = 2;
+    private static final int VARIABLES = 3;
+    private static final int THROWN = 4;
+    private static final int FIRST = 5;
+
+    // Kept well under the size HotSpot refuses to compile.
+    private static final int MAX_CODE = 8000;
+
+    private static final String BASE = "interpreter/jit/LoopCode";
+    private static final String RUN = "([I[Z[Linterpreter/expr/Variable;)V";
+
+    private ClassFile file;
+    private Map<Variable, Integer> variables;
+    private byte[] code;
+    private int size;
+    private int depth;
+    private int maxDepth;
+    private List<Integer> labels;
+    private List<int[]> jumps;
+
+    // Thrown to give up on a loop.
+    private static class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private LoopCompiler() {
+        this.file = new ClassFile();
+        this.variables = new IdentityHashMap<Variable, Integer>();
+        this.code = new byte[256];
+        this.size = 0;
+        this.depth = 0;
+        this.maxDepth = 0;
+        this.labels = new ArrayList<Integer>();
+        this.jumps = new ArrayList<int[]>();
+    }
+
+    public static CompiledLoop compile(WhileCommand cmd) {
+        if (!ENABLED)
+            return null;
+
+        GeneratedClass generated = generate(cmd, "interpreter/jit/Loop" + classes.incrementAndGet());
+        if (generated == null)
+            return null;
+
+        try {
+            Class<?> c = new Loader().define(generated.getName(), generated.getBytes());
+            LoopCode code = (LoopCode) c.getDeclaredConstructor().newInstance();
+            return new CompiledLoop(code, generated.getVariables());
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    // The class for any command this compiler handles, not only a loop, or
+    // null if it has something else. Used by msc, which writes the classes
+    // to a jar instead of loading them.
+    public static GeneratedClass generate(Command cmd, String name) {
+        LoopCompiler compiler = new LoopCompiler();
+        try {
+            return compiler.generateClass(cmd, name);
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    private GeneratedClass generateClass(Command cmd, String name) {
+        // The code goes first, since the variables are only known after it.
+        int start = label();
+        int end = label();
+        int handler = label();
+        mark(start);
+        cmd.accept(this);
+        mark(end);
+        epilogue();
+        op(RETURN, 0);
+
+        mark(handler);
+        depth = 1;
+        local(ASTORE, THROWN, -1);
+        epilogue();
+        local(ALOAD, THROWN, 1);
+        op(ATHROW, -1);
+        byte[] body = finish();
+        // A declaration without a value makes no code, and the class file
+        // does not allow an empty range.
+        int[] exceptions = at(start) < at(end) ? new int[] { at(start), at(end), at(handler), 0 } : new int[0];
+
+        // Then the prologue, which loads the variables the code turned out
+        // to use, in front of it.
+        code = new byte[256];
+        size = 0;
+        labels.clear();
+        jumps.clear();
+        prologue();
+        byte[] head = Arrays.copyOf(code, size);
+        int offset = head.length;
+
+        code = new byte[head.length + body.length];
+        System.arraycopy(head, 0, code, 0, head.length);
+        System.arraycopy(body, 0, code, head.length, body.length);
+        size = code.length;
+        if (size > MAX_CODE || FIRST + 2 * variables.size() > 255)
+            throw new Unsupported();
+
+        for (int i = 0; i < exceptions.length && i < 3; i++)
+            exceptions[i] += offset;
+
+        byte[] init = { (byte) ALOAD_0, (byte) INVOKESPECIAL, 0, 0, (byte) RETURN };
+        int superInit = file.methodRef(BASE, "<init>", "()V");
+        init[2] = (byte) (superInit >> 8);
+        init[3] = (byte) superInit;
+        file.method(ClassFile.PUBLIC, "<init>", "()V", init, 1, 1, new int[0]);
+        file.method(ClassFile.PUBLIC, "run", RUN, code, maxDepth + 1, FIRST + 2 * variables.size(), exceptions);
+
+        byte[] bytes = file.toBytes(ClassFile.PUBLIC | ClassFile.FINAL | ClassFile.SUPER, name, BASE);
+
+        Variable[] vars = new Variable[variables.size()];
+        for (Map.Entry<Variable, Integer> entry : variables.entrySet())
+            vars[entry.getValue()] = entry.getKey();
+
+        return new GeneratedClass(name.replace('/', '.'), bytes, vars);
+    }
+
+    // Jumps are relative, so the body can be moved behind the prologue as
+    // long as they are resolved first.
+    private byte[] finish() {
+        for (int[] jump : jumps) {
+            int target = at(jump[1]);
+            int delta = target - jump[0];
+            if (delta < Short.MIN_VALUE || delta > Short.MAX_VALUE)
+                throw new Unsupported();
+
+            code[jump[0] + 1] = (byte) (delta >> 8);
+            code[jump[0] + 2] = (byte) delta;
+        }
+
+        return Arrays.copyOf(code, size);
+    }
+
+    private void prologue() {
+        for (Map.Entry<Variable, Integer> entry : variables.entrySet()) {
+            int i = entry.getValue();
+            local(ALOAD, VALUES, 1);
+            push(i);
+            op(IALOAD, -1);
+            if (entry.getKey().getType() == FLOAT) {
+                invoke(INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F", 0);
+                local(FSTORE, value(i), -1);
+            } else {
+                local(ISTORE, value(i), -1);
+            }
+
+            local(ALOAD, DEFINED, 1);
+            push(i);
+            op(BALOAD, -1);
+            local(ISTORE, flag(i), -1);
+        }
+    }
+
+    private void epilogue() {
+        for (Map.Entry<Variable, Integer> entry : variables.entrySet()) {
+            int i = entry.getValue();
+            local(ALOAD, VALUES, 1);
+            push(i);
+            if (entry.getKey().getType() == FLOAT) {
+                local(FLOAD, value(i), 1);
+                invoke(INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I", 0);
+            } else {
+                local(ILOAD, value(i), 1);
+            }
+            op(IASTORE, -3);
+
+            local(ALOAD, DEFINED, 1);
+            push(i);
+            local(ILOAD, flag(i), 1);
+            op(BASTORE, -3);
+        }
+    }
+
+    public Type visit(AssignCommand cmd) {
+        if (cmd.getLhs() == null) {
+            cmd.getRhs().accept(this);
+            op(POP, -1);
+            return null;
+        }
+
+        if (!(cmd.getLhs() instanceof Variable))
+            throw new Unsupported();
+
+        Variable var = (Variable) cmd.getLhs();
+        if (var.isConstant())
+            throw new Unsupported();
+
+        store(var, cmd.getRhs());
+        return null;
+    }
+
+    public Type visit(BlocksCommand cmd) {
+        for (Command c : cmd.getCommands())
+            c.accept(this);
+
+        return null;
+    }
+
+    public Type visit(DumpCommand cmd) {
+        throw new Unsupported();
+    }
+
+    public Type visit(ForCommand cmd) {
+        throw new Unsupported();
+    }
+
+    public Type visit(IfCommand cmd) {
+        int otherwise = label();
+        jumpUnless(cmd.getExpr(), otherwise);
+        cmd.getThen().accept(this);
+        if (cmd.getElse() == null) {
+            mark(otherwise);
+        } else {
+            int end = label();
+            jump(GOTO, end, 0);
+            mark(otherwise);
+            cmd.getElse().accept(this);
+            mark(end);
+        }
+
+        return null;
+    }
+
+    public Type visit(InitializeCommand cmd) {
+        store(cmd.getVariable(), cmd.getExpr());
+        return null;
+    }
+
+    // Prints like PrintCommand, which prints the data of the Value.
+    public Type visit(PrintCommand cmd) {
+        getOut();
+        Type type = cmd.getExpr().accept(this);
+        String descriptor = type == INT ? "(I)V" : type == FLOAT ? "(F)V" : "(Z)V";
+        invoke(INVOKEVIRTUAL, "java/io/PrintStream", "print", descriptor, -2);
+        if (cmd.isNewline()) {
+            getOut();
+            invoke(INVOKEVIRTUAL, "java/io/PrintStream", "println", "()V", -1);
+        }
+
+        return null;
+    }
+
+    public Type visit(WhileCommand cmd) {
+        int loop = label();
+        int end = label();
+        mark(loop);
+        jumpUnless(cmd.getExpr(), end);
+        cmd.getBody().accept(this);
+        jump(GOTO, loop, 0);
+        mark(end);
+        return null;
+    }
+
+    public Type visit(AccessExpr expr) {
+        throw new Unsupported();
+    }
+
+    public Type visit(ActionExpr expr) {
+        throw new Unsupported();
+    }
+
+    public Type visit(ArrayExpr expr) {
+        throw new Unsupported();
+    }
+
+    public Type visit(BinaryExpr expr) {
+        BinaryExpr.Op op = expr.getOp();
+        if (isComparison(op)) {
+            int yes = label();
+            int end = label();
+            jump(compare(expr), yes, -2);
+            push(0);
+            jump(GOTO, end, 0);
+            depth--;
+            mark(yes);
+            push(1);
+            mark(end);
+            return BOOL;
+        }
+
+        if (op == BinaryExpr.Op.And || op == BinaryExpr.Op.Or) {
+            // The jumps of a condition, landing on a 1 or a 0.
+            int no = label();
+            int end = label();
+            jumpUnless(expr, no);
+            push(1);
+            jump(GOTO, end, 0);
+            depth--;
+            mark(no);
+            push(0);
+            mark(end);
+            return BOOL;
+        }
+
+        Type type = expr.getLeft().accept(this);
+        if (expr.getRight().accept(this) != type || type == BOOL)
+            throw new Unsupported();
+
+        // Add to Div, in the order of the JVM's int and float opcodes.
+        int[] ints = { IADD, ISUB, IMUL, IDIV };
+        int[] floats = { FADD, FSUB, FMUL, FDIV };
+        int i = op.ordinal() - BinaryExpr.Op.Add.ordinal();
+        op(type == INT ? ints[i] : floats[i], -1);
+        return type;
+    }
+
+    public Type visit(CastExpr expr) {
+        Type type = expr.getExpr().accept(this);
+        if (expr.getOp() == CastExpr.Op.ToInt && type == INT)
+            return INT;
+        if (expr.getOp() == CastExpr.Op.ToInt && type == FLOAT) {
+            op(F2I, 0);
+            return INT;
+        }
+        if (expr.getOp() == CastExpr.Op.ToFloat && type == FLOAT)
+            return FLOAT;
+        if (expr.getOp() == CastExpr.Op.ToFloat && type == INT) {
+            op(I2F, 0);
+            return FLOAT;
+        }
+
+        throw new Unsupported();
+    }
+
+    public Type visit(ConditionalExpr expr) {
+        throw new Unsupported();
+    }
+
+    public Type visit(ConstExpr expr) {
+        Value value = expr.getValue();
+        if (value.type == INT && value.data instanceof Integer) {
+            push(((Integer) value.data).intValue());
+        } else if (value.type == FLOAT && value.data instanceof Float) {
+            float f = ((Float) value.data).floatValue();
+            if (Float.floatToRawIntBits(f) == 0)
+                op(FCONST_0, 1);
+            else
+                ldc(file.floatConst(f));
+        } else if (value.type == BOOL && value.data instanceof Boolean) {
+            push(((Boolean) value.data).booleanValue() ? 1 : 0);
+        } else {
+            throw new Unsupported();
+        }
+
+        return value.type;
+    }
+
+    public Type visit(DictExpr expr) {
+        throw new Unsupported();
+    }
+
+    public Type visit(FunctionExpr expr) {
+        throw new Unsupported();
+    }
+
+    public Type visit(UnaryExpr expr) {
+        Type type = expr.getExpr().accept(this);
+        if (expr.getOp() == UnaryExpr.Op.Neg && type == INT)
+            op(INEG, 0);
+        else if (expr.getOp() == UnaryExpr.Op.Neg && type == FLOAT)
+            op(FNEG, 0);
+        else if (expr.getOp() == UnaryExpr.Op.Not && type == BOOL) {
+            push(1);
+            op(IXOR, -1);
+        } else
+            throw new Unsupported();
+
+        return type;
+    }
+
+    // Reading a variable that was never written throws the error
+    // Variable.expr would.
+    public Type visit(Variable var) {
+        int i = variable(var);
+        int ok = label();
+        local(ILOAD, flag(i), 1);
+        jump(IFNE, ok, -1);
+        local(ALOAD, VARIABLES, 1);
+        push(i);
+        op(AALOAD, -1);
+        invoke(INVOKESTATIC, BASE, "uninitialized",
+                "(Linterpreter/expr/Variable;)Ljava/lang/RuntimeException;", 0);
+        op(ATHROW, -1);
+        mark(ok);
+        local(var.getType() == FLOAT ? FLOAD : ILOAD, value(i), 1);
+        return var.getType();
+    }
+
+    private void store(Variable var, Expr expr) {
+        int i = variable(var);
+        if (expr.accept(this) != var.getType())
+            throw new Unsupported();
+
+        local(var.getType() == FLOAT ? FSTORE : ISTORE, value(i), -1);
+        push(1);
+        local(ISTORE, flag(i), -1);
+    }
+
+    // Jumps to the label when the condition is false. The operands of &&
+    // and || each get their own jump, so the right one is skipped when the
+    // left one settles the result.
+    private void jumpUnless(Expr cond, int label) {
+        BinaryExpr.Op op = cond instanceof BinaryExpr ? ((BinaryExpr) cond).getOp() : null;
+        if (op == BinaryExpr.Op.And) {
+            jumpUnless(((BinaryExpr) cond).getLeft(), label);
+            jumpUnless(((BinaryExpr) cond).getRight(), label);
+        } else if (op == BinaryExpr.Op.Or) {
+            int taken = label();
+            jumpIf(((BinaryExpr) cond).getLeft(), taken);
+            jumpUnless(((BinaryExpr) cond).getRight(), label);
+            mark(taken);
+        } else if (op != null && isComparison(op)) {
+            jump(negate(compare((BinaryExpr) cond)), label, -2);
+        } else {
+            if (cond.accept(this) != BOOL)
+                throw new Unsupported();
+
+            jump(IFEQ, label, -1);
+        }
+    }
+
+    // Jumps to the label when the condition is true.
+    private void jumpIf(Expr cond, int label) {
+        BinaryExpr.Op op = cond instanceof BinaryExpr ? ((BinaryExpr) cond).getOp() : null;
+        if (op == BinaryExpr.Op.And) {
+            int skipped = label();
+            jumpUnless(((BinaryExpr) cond).getLeft(), skipped);
+            jumpIf(((BinaryExpr) cond).getRight(), label);
+            mark(skipped);
+        } else if (op == BinaryExpr.Op.Or) {
+            jumpIf(((BinaryExpr) cond).getLeft(), label);
+            jumpIf(((BinaryExpr) cond).getRight(), label);
+        } else if (op != null && isComparison(op)) {
+            jump(compare((BinaryExpr) cond), label, -2);
+        } else {
+            if (cond.accept(this) != BOOL)
+                throw new Unsupported();
+
+            jump(IFNE, label, -1);
+        }
+    }
+
+    // Emits the operands of a comparison and returns the if_icmp taken when
+    // it holds. Floats are compared with the fcmp that makes NaN fail and
+    // its result with 0, and their equality follows Float.equals like the
+    // tree's does.
+    private int compare(BinaryExpr expr) {
+        BinaryExpr.Op op = expr.getOp();
+        boolean equality = op == BinaryExpr.Op.Equal || op == BinaryExpr.Op.NotEqual;
+
+        Type type = expr.getLeft().accept(this);
+        if (type == FLOAT && equality)
+            invoke(INVOKESTATIC, "java/lang/Float", "floatToIntBits", "(F)I", 0);
+        if (expr.getRight().accept(this) != type)
+            throw new Unsupported();
+        if (type == FLOAT && equality)
+            invoke(INVOKESTATIC, "java/lang/Float", "floatToIntBits", "(F)I", 0);
+
+        if (type == BOOL && !equality)
+            throw new Unsupported();
+
+        if (type == INT || type == BOOL || equality) {
+            switch (op) {
+                case Equal:
+                    return IF_ICMPEQ;
+                case NotEqual:
+                    return IF_ICMPNE;
+                case LowerThan:
+                    return IF_ICMPLT;
+                case LowerEqual:
+                    return IF_ICMPLE;
+                case GreaterThan:
+                    return IF_ICMPGT;
+                default:
+                    return IF_ICMPGE;
+            }
+        }
+
+        switch (op) {
+            case LowerThan:
+                op(FCMPG, -1);
+                push(0);
+                return IF_ICMPLT;
+            case LowerEqual:
+                op(FCMPG, -1);
+                push(0);
+                return IF_ICMPLE;
+            case GreaterThan:
+                op(FCMPL, -1);
+                push(0);
+                return IF_ICMPGT;
+            default:
+                op(FCMPL, -1);
+                push(0);
+                return IF_ICMPGE;
+        }
+    }
+
+    private static boolean isComparison(BinaryExpr.Op op) {
+        return op.compareTo(BinaryExpr.Op.Equal) >= 0 && op.compareTo(BinaryExpr.Op.GreaterEqual) <= 0;
+    }
+
+    private static int negate(int jump) {
+        switch (jump) {
+            case IF_ICMPEQ:
+                return IF_ICMPNE;
+            case IF_ICMPNE:
+                return IF_ICMPEQ;
+            case IF_ICMPLT:
+                return IF_ICMPGE;
+            case IF_ICMPGE:
+                return IF_ICMPLT;
+            case IF_ICMPGT:
+                return IF_ICMPLE;
+            default:
+                return IF_ICMPGT;
+        }
+    }
+
+    private int variable(Variable var) {
+        Type type = var.getType();
+        if (type != INT && type != FLOAT && type != BOOL)
+            throw new Unsupported();
+
+        Integer i = variables.get(var);
+        if (i == null) {
+            i = variables.size();
+            variables.put(var, i);
+        }
+
+        return i;
+    }
+
+    private static int value(int i) {
+        return FIRST + 2 * i;
+    }
+
+    private static int flag(int i) {
+        return FIRST + 2 * i + 1;
+    }
+
+    private void getOut() {
+        int index = file.fieldRef("java/lang/System", "out", "Ljava/io/PrintStream;");
+        op(GETSTATIC, 1);
+        u2(index);
+    }
+
+    private void invoke(int opcode, String owner, String name, String descriptor, int effect) {
+        int index = file.methodRef(owner, name, descriptor);
+        op(opcode, effect);
+        u2(index);
+    }
+
+    private void push(int n) {
+        if (n >= -1 && n <= 5) {
+            op(ICONST_0 + n, 1);
+        } else if (n >= Byte.MIN_VALUE && n <= Byte.MAX_VALUE) {
+            op(BIPUSH, 1);
+            u1(n);
+        } else if (n >= Short.MIN_VALUE && n <= Short.MAX_VALUE) {
+            op(SIPUSH, 1);
+            u2(n);
+        } else {
+            ldc(file.intConst(n));
+        }
+    }
+
+    private void ldc(int index) {
+        if (index < 256) {
+            op(LDC, 1);
+            u1(index);
+        } else {
+            op(LDC_W, 1);
+            u2(index);
+        }
+    }
+
+    private void local(int opcode, int index, int effect) {
+        op(opcode, effect);
+        u1(index);
+    }
+
+    private int label() {
+        labels.add(-1);
+        return labels.size() - 1;
+    }
+
+    private void mark(int label) {
+        labels.set(label, size);
+    }
+
+    private int at(int label) {
+        return labels.get(label);
+    }
+
+    private void jump(int opcode, int label, int effect) {
+        jumps.add(new int[] { size, label });
+        op(opcode, effect);
+        u2(0);
+    }
+
+    private void op(int opcode, int effect) {
+        u1(opcode);
+        depth += effect;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private void u1(int b) {
+        if (size == code.length)
+            code = Arrays.copyOf(code, size * 2);
+
+        code[size++] = (byte) b;
+    }
+
+    private void u2(int s) {
+        u1(s >> 8);
+        u1(s);
+    }
+
+}
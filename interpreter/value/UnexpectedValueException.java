@@ -0,0 +1,20 @@
+package interpreter.value;
+
+// Thrown by the unboxed evaluation methods of Expr when the result is not of
+// the type asked for. It carries the result as a Value so that the caller
+// can go on with it without evaluating anything twice. Misses are rare, so
+// it skips the stack trace.
+public class UnexpectedValueException extends Exception {
+
+    private final Value value;
+
+    public UnexpectedValueException(Value value) {
+        super(null, null, false, false);
+        this.value = value;
+    }
+
+    public Value getValue() {
+        return value;
+    }
+
+}
@@ -0,0 +1,144 @@
+package lexical;
+
+public class Keywords {
+
+    private Keywords() {
+    }
+
+    // Decides on the length and first character of the word, then compares
+    // the remaining bytes of the single candidate left.
+    public static Token.Type classify(SourceBuffer source, int offset, int length) {
+        int first = source.get(offset);
+
+        switch (length) {
+            case 2:
+                if (first == 'i') {
+                    switch (source.get(offset + 1)) {
+                        case 'f':
+                            return Token.Type.IF;
+                        case 'n':
+                            return Token.Type.IN;
+                        default:
+                            break;
+                    }
+                }
+                break;
+            case 3:
+                switch (first) {
+                    case 'v':
+                        return rest(source, offset, "var", Token.Type.VAR);
+                    case 'l':
+                        return rest(source, offset, "let", Token.Type.LET);
+                    case 'f':
+                        return rest(source, offset, "for", Token.Type.FOR);
+                    case 'I':
+                        return rest(source, offset, "Int", Token.Type.INT);
+                    default:
+                        break;
+                }
+                break;
+            case 4:
+                switch (first) {
+                    case 'd':
+                        return rest(source, offset, "dump", Token.Type.DUMP);
+                    case 'e':
+                        return rest(source, offset, "else", Token.Type.ELSE);
+                    case 'B':
+                        return rest(source, offset, "Bool", Token.Type.BOOL);
+                    case 'C':
+                        return rest(source, offset, "Char", Token.Type.CHAR);
+                    case 'D':
+                        return rest(source, offset, "Dict", Token.Type.DICT);
+                    case 't':
+                        return rest(source, offset, "true", Token.Type.TRUE);
+                    case 'r':
+                        return rest(source, offset, "read", Token.Type.READ);
+                    case 'k':
+                        return rest(source, offset, "keys", Token.Type.KEYS);
+                    default:
+                        break;
+                }
+                break;
+            case 5:
+                switch (first) {
+                    case 'p':
+                        return rest(source, offset, "print", Token.Type.PRINT);
+                    case 'w':
+                        return rest(source, offset, "while", Token.Type.WHILE);
+                    case 'F':
+                        return rest(source, offset, "Float", Token.Type.FLOAT);
+                    case 'A':
+                        return rest(source, offset, "Array", Token.Type.ARRAY);
+                    case 'f':
+                        return rest(source, offset, "false", Token.Type.FALSE);
+                    case 't':
+                        return rest(source, offset, "toInt", Token.Type.TO_INT);
+                    case 'c':
+                        return rest(source, offset, "count", Token.Type.COUNT);
+                    case 'e':
+                        return rest(source, offset, "empty", Token.Type.EMPTY);
+                    default:
+                        break;
+                }
+                break;
+            case 6:
+                switch (first) {
+                    case 'S':
+                        return rest(source, offset, "String", Token.Type.STRING);
+                    case 'r':
+                        return rest(source, offset, "random", Token.Type.RANDOM);
+                    case 'v':
+                        return rest(source, offset, "values", Token.Type.VALUES);
+                    case 'a':
+                        return rest(source, offset, "append", Token.Type.APPEND);
+                    case 't':
+                        switch (source.get(offset + 2)) {
+                            case 'B':
+                                return rest(source, offset, "toBool", Token.Type.TO_BOOL);
+                            case 'C':
+                                return rest(source, offset, "toChar", Token.Type.TO_CHAR);
+                            default:
+                                break;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                break;
+            case 7:
+                switch (first) {
+                    case 'p':
+                        return rest(source, offset, "println", Token.Type.PRINTLN);
+                    case 't':
+                        return rest(source, offset, "toFloat", Token.Type.TO_FLOAT);
+                    default:
+                        break;
+                }
+                break;
+            case 8:
+                switch (first) {
+                    case 't':
+                        return rest(source, offset, "toString", Token.Type.TO_STRING);
+                    case 'c':
+                        return rest(source, offset, "contains", Token.Type.CONTAINS);
+                    default:
+                        break;
+                }
+                break;
+            default:
+                break;
+        }
+
+        return Token.Type.NAME;
+    }
+
+    private static Token.Type rest(SourceBuffer source, int offset, String word, Token.Type type) {
+        for (int i = 1; i < word.length(); i++) {
+            if (source.get(offset + i) != word.charAt(i))
+                return Token.Type.NAME;
+        }
+
+        return type;
+    }
+
+}
@@ -1,98 +1,39 @@
 package lexical;
 
 import java.io.InputStream;
-import java.io.PushbackInputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Path;
 
 import error.InternalException;
-import interpreter.type.primitive.CharType;
-import interpreter.type.primitive.FloatType;
-import interpreter.type.primitive.IntType;
-import interpreter.type.primitive.StringType;
-import interpreter.value.Value;
 
-public class LexicalAnalysis implements AutoCloseable {
+public class LexicalAnalysis implements AutoCloseable, TokenSource {
 
     private int line;
-    private PushbackInputStream input;
-    private static Map<String, Token.Type> keywords;
+    private int position;
+    private InputStream input;
+    private SourceBuffer source;
 
-    static {
-        keywords = new HashMap<String, Token.Type>();
-
-        // SYMBOLS
-        keywords.put(".", Token.Type.DOT);
-        keywords.put(":", Token.Type.COLON);
-        keywords.put(";", Token.Type.SEMICOLON);
-        keywords.put(",", Token.Type.COMMA);
-        keywords.put("(", Token.Type.OPEN_PAR);
-        keywords.put(")", Token.Type.CLOSE_PAR);
-        keywords.put("[", Token.Type.OPEN_BRA);
-        keywords.put("]", Token.Type.CLOSE_BRA);
-        keywords.put("{", Token.Type.OPEN_CUR);
-        keywords.put("}", Token.Type.CLOSE_CUR);
-
-        // OPERATORS
-        keywords.put("=", Token.Type.ASSIGN);
-        keywords.put("?", Token.Type.TERNARY);
-        keywords.put("&&", Token.Type.AND);
-        keywords.put("||", Token.Type.OR);
-        keywords.put("<", Token.Type.LOWER_THAN);
-        keywords.put(">", Token.Type.GREATER_THAN);
-        keywords.put("<=", Token.Type.LOWER_EQUAL);
-        keywords.put(">=", Token.Type.GREATER_EQUAL);
-        keywords.put("==", Token.Type.EQUALS);
-        keywords.put("!=", Token.Type.NOT_EQUALS);
-        keywords.put("+", Token.Type.ADD);
-        keywords.put("-", Token.Type.SUB);
-        keywords.put("*", Token.Type.MUL);
-        keywords.put("/", Token.Type.DIV);
-        keywords.put("!", Token.Type.NOT);
+    public LexicalAnalysis(InputStream is) {
+        input = is;
+        source = SourceBuffer.read(is);
+        position = 0;
+        line = 1;
+    }
 
-        // KEYWORDS
-        keywords.put("var", Token.Type.VAR);
-        keywords.put("let", Token.Type.LET);
-        keywords.put("print", Token.Type.PRINT);
-        keywords.put("println", Token.Type.PRINTLN);
-        keywords.put("dump", Token.Type.DUMP);
-        keywords.put("if", Token.Type.IF);
-        keywords.put("else", Token.Type.ELSE);
-        keywords.put("while", Token.Type.WHILE);
-        keywords.put("for", Token.Type.FOR);
-        keywords.put("in", Token.Type.IN);
-        keywords.put("Bool", Token.Type.BOOL);
-        keywords.put("Int", Token.Type.INT);
-        keywords.put("Float", Token.Type.FLOAT);
-        keywords.put("Char", Token.Type.CHAR);
-        keywords.put("String", Token.Type.STRING);
-        keywords.put("Array", Token.Type.ARRAY);
-        keywords.put("Dict", Token.Type.DICT);
-        keywords.put("false", Token.Type.FALSE);
-        keywords.put("true", Token.Type.TRUE);
-        keywords.put("read", Token.Type.READ);
-        keywords.put("random", Token.Type.RANDOM);
-        keywords.put("toBool", Token.Type.TO_BOOL);
-        keywords.put("toInt", Token.Type.TO_INT);
-        keywords.put("toFloat", Token.Type.TO_FLOAT);
-        keywords.put("toChar", Token.Type.TO_CHAR);
-        keywords.put("toString", Token.Type.TO_STRING);
-        keywords.put("count", Token.Type.COUNT);
-        keywords.put("empty", Token.Type.EMPTY);
-        keywords.put("keys", Token.Type.KEYS);
-        keywords.put("values", Token.Type.VALUES);
-        keywords.put("append", Token.Type.APPEND);
-        keywords.put("contains", Token.Type.CONTAINS);
+    public LexicalAnalysis(Path path) {
+        this(SourceBuffer.map(path), 0, 1);
     }
 
-    public LexicalAnalysis(InputStream is) {
-        input = new PushbackInputStream(is);
-        line = 1;
+    public LexicalAnalysis(SourceBuffer source, int position, int line) {
+        this.input = null;
+        this.source = source;
+        this.position = position;
+        this.line = line;
     }
 
     public void close() {
         try {
-            input.close();
+            if (input != null)
+                input.close();
         } catch (Exception e) {
             throw new InternalException("Unable to close file");
         }
@@ -102,8 +43,15 @@ public class LexicalAnalysis implements AutoCloseable {
         return this.line;
     }
 
+    public int getPosition() {
+        return this.position;
+    }
+
     public Token nextToken() {
-        Token token = new Token("", Token.Type.END_OF_FILE, null);
+        Token.Type type = Token.Type.END_OF_FILE;
+        int start = position;
+        int end = position;
+        int first = -1;
 
         int state = 1;
         while (state != 14 && state != 15) {
@@ -113,6 +61,7 @@ public class LexicalAnalysis implements AutoCloseable {
 
             switch (state) {
                 case 1:
+                    start = end = (c == -1) ? position : position - 1;
                     if (c == ' ' || c == '\t' || c == '\r') {
                         state = 1;
                     } else if (c == '\n') {
@@ -121,36 +70,40 @@ public class LexicalAnalysis implements AutoCloseable {
                     } else if (c == '/') {
                         state = 2;
                     } else if (c == '=' || c == '!' || c == '<' || c == '>') {
-                        token.lexeme += (char) c;
+                        first = c;
+                        end = position;
                         state = 5;
                     } else if (c == '&') {
-                        token.lexeme += (char) c;
+                        end = position;
                         state = 6;
                     } else if (c == '|') {
-                        token.lexeme += (char) c;
+                        end = position;
                         state = 7;
                     } else if (c == '.' || c == ',' || c == ':' || c == ';' ||
                             c == '?' || c == '+' || c == '-' || c == '*' ||
                             c == '(' || c == ')' || c == '{' || c == '}' ||
                             c == '[' || c == ']') {
-                        token.lexeme += (char) c;
+                        type = symbol(c);
+                        end = position;
                         state = 14;
                     } else if (c == '_' || Character.isLetter(c)) {
-                        token.lexeme += (char) c;
+                        end = position;
                         state = 8;
                     } else if (Character.isDigit(c)) {
-                        token.lexeme += (char) c;
+                        end = position;
                         state = 9;
                     } else if (c == '\'') {
+                        start = end = position;
                         state = 11;
                     } else if (c == '"') {
+                        start = end = position;
                         state = 13;
                     } else if (c == -1) {
-                        token.type = Token.Type.END_OF_FILE;
+                        type = Token.Type.END_OF_FILE;
                         state = 15;
                     } else {
-                        token.lexeme += (char) c;
-                        token.type = Token.Type.INVALID_TOKEN;
+                        end = position;
+                        type = Token.Type.INVALID_TOKEN;
                         state = 15;
                     }
 
@@ -160,7 +113,8 @@ public class LexicalAnalysis implements AutoCloseable {
                         state = 3;
                     } else {
                         ungetc(c);
-                        token.lexeme = "/";
+                        type = Token.Type.DIV;
+                        end = start + 1;
                         state = 14;
                     }
                     break;
@@ -168,7 +122,7 @@ public class LexicalAnalysis implements AutoCloseable {
                     if (c == '*') {
                         state = 4;
                     } else if (c == -1) {
-                        token.type = Token.Type.UNEXPECTED_EOF;
+                        type = Token.Type.UNEXPECTED_EOF;
                         state = 15;
                     }
                     break;
@@ -178,7 +132,7 @@ public class LexicalAnalysis implements AutoCloseable {
                     } else if (c == '*') {
                         state = 4;
                     } else if (c == -1) {
-                        token.type = Token.Type.UNEXPECTED_EOF;
+                        type = Token.Type.UNEXPECTED_EOF;
                         state = 15;
                     } else {
                         state = 3;
@@ -186,117 +140,118 @@ public class LexicalAnalysis implements AutoCloseable {
                     break;
                 case 5:
                     if (c == '=') {
-                        token.lexeme += (char) c;
+                        type = relational(first, true);
+                        end = position;
                         state = 14;
                     } else {
                         ungetc(c);
+                        type = relational(first, false);
                         state = 14;
                     }
 
                     break;
                 case 6:
                     if (c == '&') {
-                        token.lexeme += (char) c;
+                        type = Token.Type.AND;
+                        end = position;
                         state = 14;
                     } else {
                         ungetc(c);
                         state = 15;
-                        token.type = Token.Type.INVALID_TOKEN;
+                        type = Token.Type.INVALID_TOKEN;
                     }
 
                     break;
                 case 7:
                     if (c == '|') {
-                        token.lexeme += (char) c;
+                        type = Token.Type.OR;
+                        end = position;
                         state = 14;
                     } else {
                         ungetc(c);
                         state = 15;
-                        token.type = Token.Type.INVALID_TOKEN;
+                        type = Token.Type.INVALID_TOKEN;
                     }
                     break;
                 case 8:
                     if (c == '_' || Character.isLetter(c) || Character.isDigit(c)) {
-                        token.lexeme += (char) c;
+                        end = position;
                         state = 8;
                     } else {
                         ungetc(c);
+                        type = Keywords.classify(source, start, end - start);
                         state = 14;
                     }
 
                     break;
                 case 9:
                     if (Character.isDigit(c)) {
-                        token.lexeme += (char) c;
+                        end = position;
                         state = 9;
                     } else if (c == '.') {
-                        token.lexeme += (char) c;
+                        end = position;
                         state = 10;
                     } else {
                         ungetc(c);
-                        token.type = Token.Type.INTEGER_LITERAL;
-                        token.literal = new Value(IntType.instance(), toInt(token.lexeme));
+                        type = Token.Type.INTEGER_LITERAL;
                         state = 15;
                     }
 
                     break;
                 case 10:
                     if (Character.isDigit(c)) {
-                        token.lexeme += (char) c;
+                        end = position;
                         state = 10;
                     } else {
                         ungetc(c);
-                        token.type = Token.Type.FLOAT_LITERAL;
-                        token.literal = new Value(FloatType.instance(), toFloat(token.lexeme));
+                        type = Token.Type.FLOAT_LITERAL;
                         state = 15;
                     }
                     break;
                 case 11:
                     if (c != '\'') {
                         if (c == -1) {
-                            token.type = Token.Type.UNEXPECTED_EOF;
+                            type = Token.Type.UNEXPECTED_EOF;
                             state = 15;
                         } else {
                             if (c == '\n')
                                 line++;
 
-                            token.lexeme += (char) c;
+                            end = position;
                             state = 12;
                         }
                     } else {
-                        token.lexeme += (char) c;
-                        token.type = Token.Type.INVALID_TOKEN;
+                        end = position;
+                        type = Token.Type.INVALID_TOKEN;
                         state = 15;
                     }
 
                     break;
                 case 12:
                     if (c == -1) {
-                        token.type = Token.Type.UNEXPECTED_EOF;
+                        type = Token.Type.UNEXPECTED_EOF;
                         state = 15;
                     } else if (c == '\'') {
-                        token.type = Token.Type.CHAR_LITERAL;
-                        token.literal = new Value(CharType.instance(), token.lexeme.charAt(0));
+                        type = Token.Type.CHAR_LITERAL;
                         state = 15;
                     } else {
-                        token.type = Token.Type.INVALID_TOKEN;
+                        type = Token.Type.INVALID_TOKEN;
                         state = 15;
                     }
 
                     break;
                 case 13: // L ?
                     if (c == -1) {
-                        token.type = Token.Type.UNEXPECTED_EOF;
+                        type = Token.Type.UNEXPECTED_EOF;
                         state = 15;
                     } else if (c != '"') {
-                        token.lexeme += (char) c;
+                        end = position;
                         state = 13;
                     } else if (c == '"') {
-                        token.type = Token.Type.STRING_LITERAL;
-                        token.literal = new Value(StringType.instance(), token.lexeme);
+                        type = Token.Type.STRING_LITERAL;
                         state = 15;
                     } else {
-                        token.type = Token.Type.INVALID_TOKEN;
+                        type = Token.Type.INVALID_TOKEN;
                         state = 15;
                     }
                     break;
@@ -305,46 +260,72 @@ public class LexicalAnalysis implements AutoCloseable {
             }
         }
 
-        if (state == 14)
-            token.type = keywords.containsKey(token.lexeme) ? keywords.get(token.lexeme) : Token.Type.NAME;
+        if (type.spelling != null)
+            return Token.of(type);
 
-        token.line = this.line;
-
-        return token;
+        return new Token(type, source, start, end - start);
     }
 
-    private int getc() {
-        try {
-            return input.read();
-        } catch (Exception e) {
-            throw new InternalException("Unable to read file");
+    private static Token.Type symbol(int c) {
+        switch (c) {
+            case '.':
+                return Token.Type.DOT;
+            case ',':
+                return Token.Type.COMMA;
+            case ':':
+                return Token.Type.COLON;
+            case ';':
+                return Token.Type.SEMICOLON;
+            case '?':
+                return Token.Type.TERNARY;
+            case '+':
+                return Token.Type.ADD;
+            case '-':
+                return Token.Type.SUB;
+            case '*':
+                return Token.Type.MUL;
+            case '(':
+                return Token.Type.OPEN_PAR;
+            case ')':
+                return Token.Type.CLOSE_PAR;
+            case '{':
+                return Token.Type.OPEN_CUR;
+            case '}':
+                return Token.Type.CLOSE_CUR;
+            case '[':
+                return Token.Type.OPEN_BRA;
+            case ']':
+                return Token.Type.CLOSE_BRA;
+            default:
+                throw new InternalException("Unreachable");
         }
     }
 
-    private void ungetc(int c) {
-        if (c != -1) {
-            try {
-                input.unread(c);
-            } catch (Exception e) {
-                throw new InternalException("Unable to ungetc");
-            }
+    private static Token.Type relational(int first, boolean equal) {
+        switch (first) {
+            case '=':
+                return equal ? Token.Type.EQUALS : Token.Type.ASSIGN;
+            case '!':
+                return equal ? Token.Type.NOT_EQUALS : Token.Type.NOT;
+            case '<':
+                return equal ? Token.Type.LOWER_EQUAL : Token.Type.LOWER_THAN;
+            case '>':
+                return equal ? Token.Type.GREATER_EQUAL : Token.Type.GREATER_THAN;
+            default:
+                throw new InternalException("Unreachable");
         }
     }
 
-    private int toInt(String lexeme) {
-        try {
-            return Integer.parseInt(lexeme);
-        } catch (Exception e) {
-            return 0;
-        }
+    private int getc() {
+        if (position < source.length())
+            return source.get(position++);
+
+        return -1;
     }
 
-    private float toFloat(String lexeme) {
-        try {
-            return Float.parseFloat(lexeme);
-        } catch (Exception e) {
-            return 0.0f;
-        }
+    private void ungetc(int c) {
+        if (c != -1)
+            position--;
     }
 
 }
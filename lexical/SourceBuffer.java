@@ -0,0 +1,77 @@
+package lexical;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+import error.InternalException;
+
+public class SourceBuffer {
+
+    private final ByteBuffer buffer;
+    private final int length;
+    private final SymbolTable symbols;
+
+    private SourceBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.length = buffer.limit();
+        this.symbols = new SymbolTable();
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int get(int index) {
+        return buffer.get(index) & 0xff;
+    }
+
+    public int commonPrefix(SourceBuffer other) {
+        int n = Math.min(length, other.length);
+        int i = buffer.slice(0, n).mismatch(other.buffer.slice(0, n));
+        return i == -1 ? n : i;
+    }
+
+    public int commonSuffix(SourceBuffer other, int limit) {
+        int i = 0;
+        while (i < limit && get(length - 1 - i) == other.get(other.length - 1 - i))
+            i++;
+
+        return i;
+    }
+
+    public void digest(MessageDigest md) {
+        md.update(buffer.slice(0, length));
+    }
+
+    public String slice(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    public String symbol(int offset, int length) {
+        return symbols.intern(this, offset, length);
+    }
+
+    public static SourceBuffer map(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new SourceBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (Exception e) {
+            throw new InternalException("Unable to open file");
+        }
+    }
+
+    public static SourceBuffer read(InputStream is) {
+        try {
+            return new SourceBuffer(ByteBuffer.wrap(is.readAllBytes()));
+        } catch (Exception e) {
+            throw new InternalException("Unable to read file");
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package lexical;
+
+public class SymbolTable {
+
+    private String[] symbols;
+    private int[] hashes;
+    private int size;
+
+    public SymbolTable() {
+        symbols = new String[64];
+        hashes = new int[64];
+        size = 0;
+    }
+
+    public String intern(SourceBuffer source, int offset, int length) {
+        int hash = hash(source, offset, length);
+        int mask = symbols.length - 1;
+
+        int i = hash & mask;
+        while (symbols[i] != null) {
+            if (hashes[i] == hash && same(symbols[i], source, offset, length))
+                return symbols[i];
+
+            i = (i + 1) & mask;
+        }
+
+        String symbol = source.slice(offset, length);
+        symbols[i] = symbol;
+        hashes[i] = hash;
+
+        if (++size * 2 > symbols.length)
+            grow();
+
+        return symbol;
+    }
+
+    private void grow() {
+        String[] oldSymbols = symbols;
+        int[] oldHashes = hashes;
+
+        symbols = new String[oldSymbols.length * 2];
+        hashes = new int[oldHashes.length * 2];
+        int mask = symbols.length - 1;
+
+        for (int j = 0; j < oldSymbols.length; j++) {
+            if (oldSymbols[j] == null)
+                continue;
+
+            int i = oldHashes[j] & mask;
+            while (symbols[i] != null)
+                i = (i + 1) & mask;
+
+            symbols[i] = oldSymbols[j];
+            hashes[i] = oldHashes[j];
+        }
+    }
+
+    private static int hash(SourceBuffer source, int offset, int length) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < length; i++)
+            h = (h ^ source.get(offset + i)) * 0x01000193;
+
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean same(String symbol, SourceBuffer source, int offset, int length) {
+        if (symbol.length() != length)
+            return false;
+
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != source.get(offset + i))
+                return false;
+        }
+
+        return true;
+    }
+
+}
@@ -1,109 +1,195 @@
 package lexical;
 
+import interpreter.type.primitive.CharType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.type.primitive.StringType;
 import interpreter.value.Value;
 
 public class Token {
 
     public static enum Type {
         // Specials.
-        INVALID_TOKEN,
-        UNEXPECTED_EOF,
-        END_OF_FILE,
-
-        // Symbols.
-        DOT,           // .
-        COLON,         // :
-        SEMICOLON,     // ;
-        COMMA,         // ,
-        OPEN_PAR,      // (
-        CLOSE_PAR,     // )
-        OPEN_BRA,      // [
-        CLOSE_BRA,     // ]
-        OPEN_CUR,      // {
-        CLOSE_CUR,     // }
+        INVALID_TOKEN(null),
+        UNEXPECTED_EOF(""),
+        END_OF_FILE(""),
+        DOT("."),
+        COLON(":"),
+        SEMICOLON(";"),
+        COMMA(","),
+        OPEN_PAR("("),
+        CLOSE_PAR(")"),
+        OPEN_BRA("["),
+        CLOSE_BRA("]"),
+        OPEN_CUR("{"),
+        CLOSE_CUR("}"),
 
         // Operators.
-        ASSIGN,        // =
-        TERNARY,       // ?
-        AND,           // &&
-        OR,            // ||
-        LOWER_THAN,    // <
-        GREATER_THAN,  // >
-        LOWER_EQUAL,   // <=
-        GREATER_EQUAL, // >=
-        EQUALS,        // ==
-        NOT_EQUALS,    // !=
-        ADD,           // +
-        SUB,           // -
-        MUL,           // *
-        DIV,           // /
-        NOT,           // !
+        ASSIGN("="),
+        TERNARY("?"),
+        AND("&&"),
+        OR("||"),
+        LOWER_THAN("<"),
+        GREATER_THAN(">"),
+        LOWER_EQUAL("<="),
+        GREATER_EQUAL(">="),
+        EQUALS("=="),
+        NOT_EQUALS("!="),
+        ADD("+"),
+        SUB("-"),
+        MUL("*"),
+        DIV("/"),
+        NOT("!"),
 
         // Keywords.
-        VAR,           // var
-        LET,           // let
-        PRINT,         // print
-        PRINTLN,       // println
-        DUMP,          // dump
-        IF,            // if
-        ELSE,          // else
-        WHILE,         // while
-        FOR,           // for
-        IN,            // in
-        BOOL,          // Bool
-        INT,           // Int
-        FLOAT,         // Float
-        CHAR,          // Char
-        STRING,        // String
-        ARRAY,         // Array
-        DICT,          // Dict
-        FALSE,         // false
-        TRUE,          // true
-        READ,          // read
-        RANDOM,        // random
-        TO_BOOL,       // toBool
-        TO_INT,        // toInt
-        TO_FLOAT,      // toFloat
-        TO_CHAR,       // toChar
-        TO_STRING,     // toString 
-        COUNT,         // count
-        EMPTY,         // empty
-        KEYS,          // keys
-        VALUES,        // values
-        APPEND,        // append
-        CONTAINS,      // contains
+        VAR("var"),
+        LET("let"),
+        PRINT("print"),
+        PRINTLN("println"),
+        DUMP("dump"),
+        IF("if"),
+        ELSE("else"),
+        WHILE("while"),
+        FOR("for"),
+        IN("in"),
+        BOOL("Bool"),
+        INT("Int"),
+        FLOAT("Float"),
+        CHAR("Char"),
+        STRING("String"),
+        ARRAY("Array"),
+        DICT("Dict"),
+        FALSE("false"),
+        TRUE("true"),
+        READ("read"),
+        RANDOM("random"),
+        TO_BOOL("toBool"),
+        TO_INT("toInt"),
+        TO_FLOAT("toFloat"),
+        TO_CHAR("toChar"),
+        TO_STRING("toString"),
+        COUNT("count"),
+        EMPTY("empty"),
+        KEYS("keys"),
+        VALUES("values"),
+        APPEND("append"),
+        CONTAINS("contains"),
 
         // Others.
-        NAME,              // identifier
-        INTEGER_LITERAL,   // integer literal
-        FLOAT_LITERAL,     // float literal
-        CHAR_LITERAL,      // char literal
-        STRING_LITERAL     // string literal
+        NAME(null),            // identifier
+        INTEGER_LITERAL(null), // integer literal
+        FLOAT_LITERAL(null),   // float literal
+        CHAR_LITERAL(null),    // char literal
+        STRING_LITERAL(null);  // string literal
+
+        public final String spelling;
+
+        private Type(String spelling) {
+            this.spelling = spelling;
+        }
 
     };
 
-    public String lexeme;
-    public Type type;
-    public int line;
-    public Value literal;
+    private static final Token[] fixed;
+
+    static {
+        Type[] types = Type.values();
+        fixed = new Token[types.length];
+        for (Type type : types) {
+            if (type.spelling != null)
+                fixed[type.ordinal()] = new Token(type, type.spelling);
+        }
+    }
+
+    public final Type type;
+
+    private final SourceBuffer source;
+    private final int offset;
+    private final int length;
+    private String lexeme;
+    private Value literal;
 
-    public Token(String lexeme, Type type, Value literal) {
-        this.lexeme = lexeme;
+    private Token(Type type, String spelling) {
         this.type = type;
-        this.line = 0;
-        this.literal = literal;
+        this.source = null;
+        this.offset = 0;
+        this.length = spelling.length();
+        this.lexeme = spelling;
+        this.literal = null;
+    }
+
+    public Token(Type type, SourceBuffer source, int offset, int length) {
+        this.type = type;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.lexeme = null;
+        this.literal = null;
+    }
+
+    // Tokens whose type has a fixed spelling carry no position of their own,
+    // so every occurrence can share one immutable instance.
+    public static Token of(Type type) {
+        return fixed[type.ordinal()];
+    }
+
+    public String getLexeme() {
+        if (lexeme == null)
+            lexeme = type == Type.NAME ? source.symbol(offset, length) : source.slice(offset, length);
+
+        return lexeme;
+    }
+
+    public Value getLiteral() {
+        if (literal == null) {
+            switch (type) {
+                case INTEGER_LITERAL:
+                    literal = new Value(IntType.instance(), toInt());
+                    break;
+                case FLOAT_LITERAL:
+                    literal = new Value(FloatType.instance(), toFloat());
+                    break;
+                case CHAR_LITERAL:
+                    literal = new Value(CharType.instance(), (char) source.get(offset));
+                    break;
+                case STRING_LITERAL:
+                    literal = new Value(StringType.instance(), getLexeme());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return literal;
+    }
+
+    private int toInt() {
+        long n = 0;
+        for (int i = 0; i < length; i++) {
+            n = n * 10 + (source.get(offset + i) - '0');
+            if (n > Integer.MAX_VALUE)
+                return 0;
+        }
+
+        return (int) n;
+    }
+
+    private float toFloat() {
+        try {
+            return Float.parseFloat(getLexeme());
+        } catch (Exception e) {
+            return 0.0f;
+        }
     }
 
     public String toString() {
         return new StringBuffer()
             .append("(\"")
-            .append(this.lexeme)
+            .append(this.getLexeme())
             .append("\", ")
             .append(this.type)
             .append(", ")
-            .append(this.line)
-            .append(", ")
-            .append(this.literal)
+            .append(this.getLiteral())
             .append(")")
             .toString();
     }
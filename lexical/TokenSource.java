@@ -0,0 +1,10 @@
+package lexical;
+
+public interface TokenSource {
+
+    Token nextToken();
+
+    // Line reached after the last token handed out.
+    int getLine();
+
+}
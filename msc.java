@@ -0,0 +1,58 @@
+import java.nio.file.Paths;
+
+import error.LanguageException;
+import interpreter.aot.AotCompiler;
+import interpreter.command.Command;
+import lexical.LexicalAnalysis;
+import optimizer.Optimizer;
+import semantic.SemanticAnalysis;
+import syntatic.SyntaticAnalysis;
+
+public class msc {
+    public static void main(String[] args) {
+        try {
+            String filename = null;
+            String output = null;
+
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-o") && i + 1 < args.length && output == null) {
+                    output = args[++i];
+                } else if (filename == null && !args[i].startsWith("-")) {
+                    filename = args[i];
+                } else {
+                    usage();
+                    return;
+                }
+            }
+
+            if (filename == null) {
+                usage();
+                return;
+            }
+
+            if (output == null) {
+                int dot = filename.lastIndexOf('.');
+                output = (dot > filename.lastIndexOf('/') ? filename.substring(0, dot) : filename) + ".jar";
+            }
+
+            Command cmd;
+            try (LexicalAnalysis l = new LexicalAnalysis(Paths.get(filename))) {
+                SyntaticAnalysis s = new SyntaticAnalysis(l);
+                cmd = s.process();
+                new SemanticAnalysis().process(cmd);
+            } catch (LanguageException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+
+            AotCompiler.compile(new Optimizer().optimize(cmd), Paths.get(output));
+        } catch (Exception e) {
+            System.err.println("Internal error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java msc [-o output.jar] [miniSwift file]");
+    }
+}
@@ -1,28 +1,72 @@
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 
 import error.LanguageException;
 import interpreter.Interpreter;
 import interpreter.command.Command;
+import interpreter.ir.Builder;
 import lexical.LexicalAnalysis;
+import lexical.SourceBuffer;
+import optimizer.Optimizer;
+import semantic.SemanticAnalysis;
+import syntatic.IncrementalAnalysis;
+import syntatic.ParseCache;
 import syntatic.SyntaticAnalysis;
 
 public class msi {
     public static void main(String[] args) {
         try {
-            switch (args.length) {
-                case 0:
-                    runPrompt();
-                    break;
-                case 1:
-                    runFile(args[0]);
-                    break;
-                default:
-                    System.out.println("Usage: java msi [miniSwift file]");
-                    break;
+            boolean watch = false;
+            boolean cache = true;
+            boolean stream = false;
+            boolean dump = false;
+            Interpreter.Engine engine = Interpreter.Engine.Tree;
+            String filename = null;
+
+            for (String arg : args) {
+                if (arg.equals("--watch")) {
+                    watch = true;
+                } else if (arg.equals("--no-cache")) {
+                    cache = false;
+                } else if (arg.equals("--stream")) {
+                    stream = true;
+                } else if (arg.equals("--dump-ir")) {
+                    dump = true;
+                } else if (arg.equals("--engine=tree")) {
+                    engine = Interpreter.Engine.Tree;
+                } else if (arg.equals("--engine=bytecode")) {
+                    engine = Interpreter.Engine.Bytecode;
+                } else if (arg.equals("--engine=closure")) {
+                    engine = Interpreter.Engine.Closure;
+                } else if (arg.equals("--engine=ir")) {
+                    engine = Interpreter.Engine.Ir;
+                } else if (filename == null && !arg.startsWith("--")) {
+                    filename = arg;
+                } else {
+                    usage();
+                    return;
+                }
+            }
+
+            if (filename == null) {
+                if (watch || dump)
+                    usage();
+                else
+                    runPrompt(engine);
+            } else if (dump) {
+                dumpFile(filename);
+            } else if (watch) {
+                watchFile(filename, engine);
+            } else if (stream) {
+                streamFile(filename, engine);
+            } else {
+                runFile(filename, cache, engine);
             }
         } catch (Exception e) {
             System.err.println("Internal error: " + e.getMessage());
@@ -30,9 +74,19 @@ public class msi {
         }
     }
 
-    private static void runPrompt() throws Exception {
+    private static void usage() {
+        System.out.println("Usage: java msi [--watch] [--no-cache] [--stream] [--dump-ir]"
+                + " [--engine=tree|bytecode|closure|ir] [miniSwift file]");
+    }
+
+    private static void runPrompt(Interpreter.Engine engine) throws Exception {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
+
+        // Variables declared on one line stay visible on the next ones, and
+        // what the optimizer learnt of them stays known.
+        Interpreter interpreter = new Interpreter(engine);
+        Optimizer optimizer = new Optimizer(interpreter.getGlobals());
         for (;;) {
             System.out.print("> ");
             String line = reader.readLine();
@@ -41,32 +95,118 @@ public class msi {
                 break;
             }
 
-            run(new ByteArrayInputStream(line.getBytes()));
+            run(new LexicalAnalysis(new ByteArrayInputStream(line.getBytes())), interpreter, optimizer);
+        }
+    }
+
+    private static void runFile(String filename, boolean cached, Interpreter.Engine engine) throws Exception {
+        if (!cached) {
+            run(new LexicalAnalysis(Paths.get(filename)), new Interpreter(engine), new Optimizer());
+            return;
+        }
+
+        // Reuses the tree of a previous run of the same text when there is one.
+        SourceBuffer source = SourceBuffer.map(Paths.get(filename));
+        ParseCache cache = ParseCache.instance();
+        try {
+            Command cmd = cache.load(source);
+            if (cmd == null) {
+                SyntaticAnalysis s = new SyntaticAnalysis(new LexicalAnalysis(source, 0, 1));
+                cmd = s.process();
+                cache.store(source, cmd);
+            }
+
+            new SemanticAnalysis().process(cmd);
+            cmd = new Optimizer().optimize(cmd);
+            new Interpreter(engine).interpret(cmd);
+        } catch (LanguageException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // Writes the graph the optimized program is lowered to, without running
+    // it.
+    private static void dumpFile(String filename) throws Exception {
+        try (LexicalAnalysis l = new LexicalAnalysis(Paths.get(filename))) {
+            Command cmd = new SyntaticAnalysis(l).process();
+            new SemanticAnalysis().process(cmd);
+            System.out.print(Builder.build(new Optimizer().optimize(cmd)));
+        } catch (LanguageException e) {
+            System.out.println(e.getMessage());
         }
     }
 
-    private static void runFile(String filename) throws Exception {
-        run(new FileInputStream(filename));
+    // Runs each top-level command as soon as it is parsed, so output starts
+    // before the whole file is read and finished commands can be collected.
+    // A syntax or type error is only reported once execution reaches it.
+    private static void streamFile(String filename, Interpreter.Engine engine) throws Exception {
+        try (LexicalAnalysis l = new LexicalAnalysis(Paths.get(filename))) {
+            Interpreter interpreter = new Interpreter(engine);
+            SyntaticAnalysis s = new SyntaticAnalysis(l, interpreter.getGlobals());
+            SemanticAnalysis a = new SemanticAnalysis();
+            Optimizer o = new Optimizer(interpreter.getGlobals());
+            Command cmd;
+            while ((cmd = s.next()) != null) {
+                a.process(cmd);
+                interpreter.interpret(o.optimize(cmd));
+            }
+        } catch (LanguageException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // Runs the file again every time it changes on disk, re-analysing only the
+    // parts that were edited.
+    private static void watchFile(String filename, Interpreter.Engine engine) throws Exception {
+        Path path = Paths.get(filename);
+        IncrementalAnalysis analysis = new IncrementalAnalysis();
+        FileTime modified = null;
+
+        for (;;) {
+            FileTime time = Files.getLastModifiedTime(path);
+            if (!time.equals(modified)) {
+                modified = time;
+
+                SourceBuffer source;
+                try (InputStream is = Files.newInputStream(path)) {
+                    source = SourceBuffer.read(is);
+                }
+
+                try {
+                    // A fresh interpreter, so no value survives from the last run.
+                    Command cmd = analysis.update(source);
+                    new SemanticAnalysis().process(cmd);
+                    cmd = new Optimizer().optimize(cmd);
+                    new Interpreter(engine).interpret(cmd);
+                } catch (LanguageException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+
+            Thread.sleep(200);
+        }
     }
 
-    private static void run(InputStream is) {
-        try (LexicalAnalysis l = new LexicalAnalysis(is)) {
+    private static void run(LexicalAnalysis lexer, Interpreter interpreter, Optimizer optimizer) {
+        try (LexicalAnalysis l = lexer) {
             // O código a seguir é usado apenas para testar o analisador léxico.
             // TODO: depois de pronto, comentar o código abaixo.
             // Token lex;
             // do {
             //     lex = l.nextToken();
-            //     System.out.printf("%02d: (\"%s\", %s, %s)\n", lex.line,
-            //         lex.lexeme, lex.type, lex.literal);
+            //     System.out.printf("%02d: (\"%s\", %s, %s)\n", l.getLine(),
+            //         lex.getLexeme(), lex.type, lex.getLiteral());
             // } while (lex.type != END_OF_FILE &&
             //          lex.type != INVALID_TOKEN &&
             //          lex.type != UNEXPECTED_EOF);
 
             // O código a seguir é dado para testar o interpretador.
             // TODO: descomentar depois que o analisador léxico estiver OK.
-            SyntaticAnalysis s = new SyntaticAnalysis(l);
+            SyntaticAnalysis s = new SyntaticAnalysis(l, interpreter.getGlobals());
             Command cmd = s.process();
-            Interpreter.interpret(cmd);
+            new SemanticAnalysis().process(cmd);
+            cmd = optimizer.optimize(cmd);
+            interpreter.interpret(cmd);
         } catch (LanguageException e) {
             System.out.println(e.getMessage());
         }
@@ -0,0 +1,285 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.ForCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.Expr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.SetExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.primitive.IntType;
+import interpreter.type.primitive.StringType;
+import interpreter.type.composed.ArrayType;
+
+// Marks the reads s[i] of a while loop as in bounds when i counts up from
+// zero to the size of s:
+//
+//     var i : Int = 0
+//     while i < s.count() {
+//         ... s[i] ...
+//         i = i + 1
+//     }
+//
+// i starts at a constant that is not negative, assigned in the same block
+// before the loop with nothing that may write it in between, and the loop
+// only adds one to it, once per iteration at most: so it is never negative
+// and never wraps around. Until that addition, i is what the condition saw,
+// below the size of s. s is a string or an array and is not assigned in the
+// loop; neither can get shorter, so the reads of s[i] before the addition
+// are in bounds. Those after it keep their checks, and so do the writes.
+// So are the reads in the condition to the right of i < s.count() &&,
+// which && only evaluates when the bound holds.
+class BoundsChecks extends Rewriter {
+
+    @Override
+    public Object visit(BlocksCommand cmd) {
+        Set<Variable> counters = FlowRewriter.newSet();
+        List<Command> cmds = new ArrayList<Command>();
+        boolean changed = false;
+        for (Command c : cmd.getCommands()) {
+            Command n = command(c);
+            if (n instanceof WhileCommand)
+                n = mark((WhileCommand) n, counters);
+
+            cmds.add(n);
+            changed |= n != c;
+
+            for (Variable var : Usage.of(c).writes)
+                counters.remove(var);
+
+            Variable var = startsAtZero(c);
+            if (var != null)
+                counters.add(var);
+        }
+
+        return changed ? new BlocksCommand(cmd.getLine(), cmds) : cmd;
+    }
+
+    // The variable a command sets to an Int that is not negative, if any.
+    private static Variable startsAtZero(Command cmd) {
+        if (!(cmd instanceof AssignCommand) || !(((AssignCommand) cmd).getLhs() instanceof Variable))
+            return null;
+
+        Expr rhs = ((AssignCommand) cmd).getRhs();
+        if (!(rhs instanceof ConstExpr))
+            return null;
+
+        Object data = ((ConstExpr) rhs).getValue().data;
+        Variable var = (Variable) ((AssignCommand) cmd).getLhs();
+        if (var.getType() != IntType.instance() || !(data instanceof Integer) || ((Integer) data).intValue() < 0)
+            return null;
+
+        return var;
+    }
+
+    private static boolean isCount(Expr expr, Variable base) {
+        if (!(expr instanceof FunctionExpr))
+            return false;
+
+        FunctionExpr function = (FunctionExpr) expr;
+        return function.getOp() == FunctionExpr.Op.Count && function.getExpr() == base;
+    }
+
+    // The bounds a condition implies: each pair is a counter below the size
+    // of a variable.
+    private static void bounds(Expr cond, List<Variable[]> pairs) {
+        if (!(cond instanceof BinaryExpr))
+            return;
+
+        BinaryExpr binary = (BinaryExpr) cond;
+        Expr below = null;
+        Expr above = null;
+        if (binary.getOp() == BinaryExpr.Op.And) {
+            bounds(binary.getLeft(), pairs);
+            bounds(binary.getRight(), pairs);
+            return;
+        } else if (binary.getOp() == BinaryExpr.Op.LowerThan) {
+            below = binary.getLeft();
+            above = binary.getRight();
+        } else if (binary.getOp() == BinaryExpr.Op.GreaterThan) {
+            below = binary.getRight();
+            above = binary.getLeft();
+        } else {
+            return;
+        }
+
+        if (below instanceof Variable && above instanceof FunctionExpr
+                && ((FunctionExpr) above).getExpr() instanceof Variable) {
+            Variable counter = (Variable) below;
+            Variable base = (Variable) ((FunctionExpr) above).getExpr();
+            Type type = base.getType();
+            if (isCount(above, base) && (type == StringType.instance() || type instanceof ArrayType))
+                pairs.add(new Variable[] { counter, base });
+        }
+    }
+
+    private WhileCommand mark(WhileCommand loop, Set<Variable> counters) {
+        List<Variable[]> pairs = new ArrayList<Variable[]>();
+        bounds(loop.getExpr(), pairs);
+
+        Command body = loop.getBody();
+        List<Variable[]> valid = new ArrayList<Variable[]>();
+        for (Variable[] pair : pairs) {
+            Variable counter = pair[0];
+            Variable base = pair[1];
+            if (!counters.contains(counter) || !new Steps(counter, base).check(loop))
+                continue;
+
+            body = new Mark(counter, base).command(body);
+            valid.add(pair);
+        }
+
+        Expr cond = guarded(loop.getExpr(), valid);
+        if (cond == loop.getExpr() && body == loop.getBody())
+            return loop;
+
+        return new WhileCommand(loop.getLine(), cond, body);
+    }
+
+    // Marks the reads to the right of each bound of an && chain.
+    private static Expr guarded(Expr cond, List<Variable[]> valid) {
+        if (!(cond instanceof BinaryExpr) || ((BinaryExpr) cond).getOp() != BinaryExpr.Op.And)
+            return cond;
+
+        BinaryExpr binary = (BinaryExpr) cond;
+        Expr left = guarded(binary.getLeft(), valid);
+        List<Variable[]> pairs = new ArrayList<Variable[]>();
+        bounds(left, pairs);
+
+        Expr right = binary.getRight();
+        for (Variable[] pair : pairs) {
+            for (Variable[] other : valid) {
+                if (pair[0] == other[0] && pair[1] == other[1])
+                    right = new Mark(pair[0], pair[1]).expr(right);
+            }
+        }
+        right = guarded(right, valid);
+
+        if (left == binary.getLeft() && right == binary.getRight())
+            return cond;
+
+        return new BinaryExpr(binary.getLine(), left, BinaryExpr.Op.And, right);
+    }
+
+    private static boolean isStep(AssignCommand cmd, Variable counter) {
+        if (cmd.getLhs() != counter || !(cmd.getRhs() instanceof BinaryExpr))
+            return false;
+
+        BinaryExpr binary = (BinaryExpr) cmd.getRhs();
+        if (binary.getOp() != BinaryExpr.Op.Add)
+            return false;
+
+        return binary.getLeft() == counter && isOne(binary.getRight())
+                || binary.getRight() == counter && isOne(binary.getLeft());
+    }
+
+    private static boolean isOne(Expr expr) {
+        return expr instanceof ConstExpr && Integer.valueOf(1).equals(((ConstExpr) expr).getValue().data);
+    }
+
+    // Whether a loop assigns the counter only by one i = i + 1, outside the
+    // loops it contains, and never assigns the base.
+    private static class Steps extends Rewriter {
+        private final Variable counter;
+        private final Variable base;
+        private int steps;
+        private int depth;
+        private boolean other;
+
+        Steps(Variable counter, Variable base) {
+            this.counter = counter;
+            this.base = base;
+        }
+
+        boolean check(WhileCommand loop) {
+            command(loop.getBody());
+            return steps == 1 && !other;
+        }
+
+        private void assigned(SetExpr lhs) {
+            if (lhs == base || lhs == counter)
+                other = true;
+        }
+
+        @Override
+        public Object visit(AssignCommand cmd) {
+            if (depth == 0 && isStep(cmd, counter))
+                steps++;
+            else
+                assigned(cmd.getLhs());
+
+            return super.visit(cmd);
+        }
+
+        @Override
+        public Object visit(InitializeCommand cmd) {
+            assigned(cmd.getVariable());
+            return super.visit(cmd);
+        }
+
+        @Override
+        public Object visit(ForCommand cmd) {
+            assigned(cmd.getVariable());
+            depth++;
+            try {
+                return super.visit(cmd);
+            } finally {
+                depth--;
+            }
+        }
+
+        @Override
+        public Object visit(WhileCommand cmd) {
+            depth++;
+            try {
+                return super.visit(cmd);
+            } finally {
+                depth--;
+            }
+        }
+    }
+
+    // Marks base[counter] in the commands that run before the step. Once the
+    // step is passed, in whichever branch, nothing after it is marked.
+    private static class Mark extends Rewriter {
+        private final Variable counter;
+        private final Variable base;
+        private boolean stepped;
+
+        Mark(Variable counter, Variable base) {
+            this.counter = counter;
+            this.base = base;
+        }
+
+        @Override
+        public Object visit(AssignCommand cmd) {
+            if (isStep(cmd, counter)) {
+                stepped = true;
+                return cmd;
+            }
+
+            return super.visit(cmd);
+        }
+
+        @Override
+        public Object visit(AccessExpr expr) {
+            AccessExpr ret = (AccessExpr) super.visit(expr);
+            if (stepped || ret.isInBounds() || ret.getBase() != base || ret.getIndex() != counter)
+                return ret;
+
+            return new AccessExpr(ret.getLine(), ret.getBase(), ret.getIndex(), true);
+        }
+    }
+
+}
@@ -0,0 +1,331 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.DumpCommand;
+import interpreter.command.ForCommand;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.PrintCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.DictItem;
+import interpreter.expr.Expr;
+import interpreter.expr.ExprTypes;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+
+// Evaluates an expression repeated within one command once, into a variable
+// assigned just before the command, which every copy then reads. Only the
+// expression of the command itself is looked at: the target of an
+// assignment is written, and the condition of a while runs again on every
+// iteration.
+//
+// The copy that runs first must run whenever the command does, so it is not
+// in a branch of a conditional nor on the right of && or ||. An expression
+// that may fail, such as an element read, moves to before the command only
+// if nothing that may fail or has an effect runs before it, so errors keep
+// their order. Nothing is written while an expression is evaluated except by
+// append, which changes an array in place: with one in the command, no
+// expression reading or making an array or a dict is shared.
+class CommonSubexpressions extends FlowRewriter {
+
+    CommonSubexpressions(Simplification simplification) {
+        super(simplification);
+    }
+
+    @Override
+    public Object visit(AssignCommand cmd) {
+        Statement s = new Statement(cmd.getRhs());
+        if (s.moved.isEmpty())
+            return super.visit(cmd);
+
+        return s.before((Command) super.visit(new AssignCommand(cmd.getLine(), s.expr, cmd.getLhs())));
+    }
+
+    @Override
+    public Object visit(DumpCommand cmd) {
+        Statement s = new Statement(cmd.getExpr());
+        if (s.moved.isEmpty())
+            return super.visit(cmd);
+
+        return s.before((Command) super.visit(new DumpCommand(cmd.getLine(), s.expr)));
+    }
+
+    @Override
+    public Object visit(ForCommand cmd) {
+        Statement s = new Statement(cmd.getExpr());
+        if (s.moved.isEmpty())
+            return super.visit(cmd);
+
+        return s.before((Command) super.visit(new ForCommand(cmd.getLine(), cmd.getVariable(), s.expr,
+                cmd.getBody())));
+    }
+
+    @Override
+    public Object visit(IfCommand cmd) {
+        Statement s = new Statement(cmd.getExpr());
+        if (s.moved.isEmpty())
+            return super.visit(cmd);
+
+        return s.before((Command) super.visit(new IfCommand(cmd.getLine(), s.expr, cmd.getThen(),
+                cmd.getElse())));
+    }
+
+    @Override
+    public Object visit(InitializeCommand cmd) {
+        Statement s = new Statement(cmd.getExpr());
+        if (s.moved.isEmpty())
+            return super.visit(cmd);
+
+        return s.before((Command) super.visit(new InitializeCommand(cmd.getLine(), cmd.getVariable(), s.expr)));
+    }
+
+    @Override
+    public Object visit(PrintCommand cmd) {
+        Statement s = new Statement(cmd.getExpr());
+        if (s.moved.isEmpty())
+            return super.visit(cmd);
+
+        return s.before((Command) super.visit(new PrintCommand(cmd.getLine(), s.expr, cmd.isNewline())));
+    }
+
+    // Two trees that compute the same thing: same operators on the same
+    // variables and constants.
+    static boolean same(Expr a, Expr b) {
+        if (a == b)
+            return true;
+
+        if (a == null || b == null || a.getClass() != b.getClass())
+            return false;
+
+        if (a instanceof ConstExpr) {
+            ConstExpr ca = (ConstExpr) a;
+            ConstExpr cb = (ConstExpr) b;
+            return ca.getValue().type.match(cb.getValue().type)
+                    && ca.getValue().data.equals(cb.getValue().data);
+        } else if (a instanceof BinaryExpr) {
+            BinaryExpr ba = (BinaryExpr) a;
+            BinaryExpr bb = (BinaryExpr) b;
+            return ba.getOp() == bb.getOp() && same(ba.getLeft(), bb.getLeft()) && same(ba.getRight(), bb.getRight());
+        } else if (a instanceof UnaryExpr) {
+            UnaryExpr ua = (UnaryExpr) a;
+            UnaryExpr ub = (UnaryExpr) b;
+            return ua.getOp() == ub.getOp() && same(ua.getExpr(), ub.getExpr());
+        } else if (a instanceof CastExpr) {
+            CastExpr ca = (CastExpr) a;
+            CastExpr cb = (CastExpr) b;
+            return ca.getOp() == cb.getOp() && same(ca.getExpr(), cb.getExpr());
+        } else if (a instanceof ConditionalExpr) {
+            ConditionalExpr ca = (ConditionalExpr) a;
+            ConditionalExpr cb = (ConditionalExpr) b;
+            return same(ca.getCond(), cb.getCond()) && same(ca.getTrueExpr(), cb.getTrueExpr())
+                    && same(ca.getFalseExpr(), cb.getFalseExpr());
+        } else if (a instanceof FunctionExpr) {
+            FunctionExpr fa = (FunctionExpr) a;
+            FunctionExpr fb = (FunctionExpr) b;
+            return fa.getOp() == fb.getOp() && same(fa.getExpr(), fb.getExpr()) && same(fa.getArg(), fb.getArg());
+        } else if (a instanceof AccessExpr) {
+            AccessExpr aa = (AccessExpr) a;
+            AccessExpr ab = (AccessExpr) b;
+            return same(aa.getBase(), ab.getBase()) && same(aa.getIndex(), ab.getIndex());
+        } else {
+            // Variables are compared by identity; anything else makes a new
+            // value or has an effect each time.
+            return false;
+        }
+    }
+
+    // The expression of one command, with the evaluations it shares and the
+    // assignments that make them, in the order they run.
+    private class Statement {
+        Expr expr;
+        final List<Command> moved;
+
+        // Its nodes in the order they finish evaluating, each with the index
+        // of the first node of its subtree and whether it may not run.
+        private final List<Expr> nodes;
+        private final List<Integer> starts;
+        private final List<Boolean> conditional;
+        private boolean appends;
+
+        Statement(Expr expr) {
+            this.expr = expr;
+            this.moved = new ArrayList<Command>();
+            this.nodes = new ArrayList<Expr>();
+            this.starts = new ArrayList<Integer>();
+            this.conditional = new ArrayList<Boolean>();
+
+            Expr shared;
+            while ((shared = next()) != null) {
+                Variable var = temporary(shared);
+
+                Statement inner = new Statement(shared);
+                moved.addAll(inner.moved);
+                moved.add(new AssignCommand(shared.getLine(), inner.expr, var));
+
+                this.expr = new Replace(shared, var).expr(this.expr);
+            }
+        }
+
+        Command before(Command cmd) {
+            List<Command> cmds = new ArrayList<Command>(moved);
+            cmds.add(cmd);
+            return new BlocksCommand(cmd.getLine(), cmds);
+        }
+
+        // The first expression, by where it first finishes, that can be
+        // shared; null if there is none.
+        private Expr next() {
+            nodes.clear();
+            starts.clear();
+            conditional.clear();
+            appends = false;
+            walk(expr, false);
+
+            for (int i = 0; i < nodes.size(); i++) {
+                Expr node = nodes.get(i);
+                if (!candidate(i) || seenBefore(i))
+                    continue;
+
+                int copies = 1;
+                for (int j = i + 1; j < nodes.size(); j++) {
+                    if (starts.get(j) > i && same(node, nodes.get(j)))
+                        copies++;
+                }
+
+                if (copies > 1 && !conditional.get(i) && movable(i))
+                    return node;
+            }
+
+            return null;
+        }
+
+        private boolean seenBefore(int i) {
+            for (int j = 0; j < i; j++) {
+                if (same(nodes.get(i), nodes.get(j)))
+                    return true;
+            }
+
+            return false;
+        }
+
+        private void walk(Expr node, boolean cond) {
+            int start = nodes.size();
+
+            if (node instanceof BinaryExpr) {
+                BinaryExpr binary = (BinaryExpr) node;
+                boolean lazy = binary.getOp() == BinaryExpr.Op.And || binary.getOp() == BinaryExpr.Op.Or;
+                walk(binary.getLeft(), cond);
+                walk(binary.getRight(), cond || lazy);
+            } else if (node instanceof UnaryExpr) {
+                walk(((UnaryExpr) node).getExpr(), cond);
+            } else if (node instanceof CastExpr) {
+                walk(((CastExpr) node).getExpr(), cond);
+            } else if (node instanceof ConditionalExpr) {
+                ConditionalExpr c = (ConditionalExpr) node;
+                walk(c.getCond(), cond);
+                walk(c.getTrueExpr(), true);
+                walk(c.getFalseExpr(), true);
+            } else if (node instanceof FunctionExpr) {
+                FunctionExpr function = (FunctionExpr) node;
+                appends |= function.getOp() == FunctionExpr.Op.Append;
+                walk(function.getExpr(), cond);
+                if (function.getArg() != null)
+                    walk(function.getArg(), cond);
+            } else if (node instanceof AccessExpr) {
+                walk(((AccessExpr) node).getBase(), cond);
+                walk(((AccessExpr) node).getIndex(), cond);
+            } else if (node instanceof ArrayExpr) {
+                for (Expr item : ((ArrayExpr) node).getItems())
+                    walk(item, cond);
+            } else if (node instanceof DictExpr) {
+                for (DictItem item : ((DictExpr) node).getItems()) {
+                    walk(item.key, cond);
+                    walk(item.value, cond);
+                }
+            }
+
+            nodes.add(node);
+            starts.add(start);
+            conditional.add(cond);
+        }
+
+        // An expression worth a variable, of a known type, that computes a
+        // value without making a new one or having an effect.
+        private boolean candidate(int i) {
+            Expr node = nodes.get(i);
+            if (node instanceof ConstExpr || node instanceof Variable || types.typeOf(node) == ExprTypes.UNKNOWN)
+                return false;
+
+            for (int j = starts.get(i); j <= i; j++) {
+                Expr n = nodes.get(j);
+                if (n instanceof ActionExpr || n instanceof ArrayExpr || n instanceof DictExpr
+                        || n instanceof FunctionExpr && ((FunctionExpr) n).getOp() == FunctionExpr.Op.Append)
+                    return false;
+            }
+
+            return true;
+        }
+
+        private boolean movable(int i) {
+            boolean fails = false;
+            for (int j = starts.get(i); j <= i; j++) {
+                Expr n = nodes.get(j);
+                fails |= mayFail(n);
+
+                if (appends && holdsShared(n))
+                    return false;
+            }
+
+            if (!fails)
+                return true;
+
+            for (int j = 0; j < starts.get(i); j++) {
+                Expr n = nodes.get(j);
+                if (mayFail(n) || n instanceof ActionExpr
+                        || n instanceof FunctionExpr && ((FunctionExpr) n).getOp() == FunctionExpr.Op.Append)
+                    return false;
+            }
+
+            return true;
+        }
+
+        // Whether the value of n may be an array or a dict, which an append
+        // in the same expression can change.
+        private boolean holdsShared(Expr n) {
+            Type type = types.typeOf(n);
+            return type == ExprTypes.UNKNOWN || type.getCategory() == Type.Category.Array
+                    || type.getCategory() == Type.Category.Dict;
+        }
+    }
+
+    // Puts a variable in place of every copy of an expression.
+    private static class Replace extends Rewriter {
+        private final Expr shared;
+        private final Variable var;
+
+        Replace(Expr shared, Variable var) {
+            this.shared = shared;
+            this.var = var;
+        }
+
+        @Override
+        protected Expr expr(Expr expr) {
+            return same(expr, shared) ? var : super.expr(expr);
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+package optimizer;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import interpreter.command.Command;
+import interpreter.command.InitializeCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.Expr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.SetExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.CharType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.type.primitive.StringType;
+import interpreter.value.Value;
+
+// Evaluates the expressions whose operands are all constants, and replaces
+// the reads of a let initialized with a constant by that constant. An
+// expression is folded by running the operation it would run, so the result
+// is the same to the bit; one that fails (a division by zero, an index out of
+// bounds) is left in the tree to fail at run time, at its own line.
+//
+// A let is only known after its initialization and in the code that runs
+// after it: what is learnt inside a branch or a loop body is forgotten when
+// leaving it, so a read that may come before the initialization still finds
+// the variable uninitialized. A let a for also writes is never known, in
+// this tree or in the ones given after it.
+class ConstantFolding extends Rewriter {
+
+    private Map<Variable, Value> constants;
+    private final Set<Variable> iterated;
+
+    ConstantFolding() {
+        this.constants = new IdentityHashMap<Variable, Value>();
+        this.iterated = Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+    }
+
+    Command rewrite(Command cmd) {
+        iterated.addAll(Usage.of(cmd).iterated);
+        constants.keySet().removeAll(iterated);
+        return command(cmd);
+    }
+
+    // Only the primitive values are shared by every evaluation: the others
+    // are mutable. A value whose data does not suit its type is not folded
+    // either, as the engines that unbox constants would not expect it.
+    static boolean foldable(Value value) {
+        if (value.type == IntType.instance())
+            return value.data instanceof Integer;
+        else if (value.type == FloatType.instance())
+            return value.data instanceof Float;
+        else if (value.type == BoolType.instance())
+            return value.data instanceof Boolean;
+        else if (value.type == CharType.instance())
+            return value.data instanceof Character;
+        else if (value.type == StringType.instance())
+            return value.data instanceof String;
+        else
+            return false;
+    }
+
+    private static Value value(Expr expr) {
+        return expr instanceof ConstExpr ? ((ConstExpr) expr).getValue() : null;
+    }
+
+    // The constant for a value the operation has been run on, or the
+    // rewritten node when there is none.
+    private static Expr fold(Expr expr, Value value) {
+        return value != null && foldable(value) ? new ConstExpr(expr.getLine(), value) : expr;
+    }
+
+    @Override
+    protected Command branch(Command cmd) {
+        Map<Variable, Value> outer = constants;
+        constants = new IdentityHashMap<Variable, Value>(outer);
+        try {
+            return command(cmd);
+        } finally {
+            constants = outer;
+        }
+    }
+
+    @Override
+    public Object visit(InitializeCommand cmd) {
+        Command ret = (Command) super.visit(cmd);
+
+        Value value = value(((InitializeCommand) ret).getExpr());
+        if (value != null && foldable(value) && cmd.getVariable().isConstant()
+                && !iterated.contains(cmd.getVariable())
+                && cmd.getVariable().getType().match(value.type))
+            constants.put(cmd.getVariable(), value);
+
+        return ret;
+    }
+
+    @Override
+    public Object visit(AccessExpr expr) {
+        Expr base = expr(expr.getBase());
+        Expr index = expr(expr.getIndex());
+
+        Value baseValue = value(base);
+        Value indexValue = value(index);
+        if (baseValue != null && indexValue != null) {
+            Expr folded = fold(expr, get(expr.getLine(), baseValue, indexValue));
+            if (folded != expr)
+                return folded;
+        }
+
+        if (!(base instanceof SetExpr))
+            base = expr.getBase();
+
+        if (base == expr.getBase() && index == expr.getIndex())
+            return expr;
+
+        return new AccessExpr(expr.getLine(), (SetExpr) base, index, expr.isInBounds());
+    }
+
+    private static Value get(int line, Value base, Value index) {
+        try {
+            return AccessExpr.get(line, base, index);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Object visit(BinaryExpr expr) {
+        Expr ret = (Expr) super.visit(expr);
+        BinaryExpr binary = (BinaryExpr) ret;
+
+        // A constant that settles && or || leaves the right operand out, as
+        // it is never evaluated.
+        Value left = value(binary.getLeft());
+        if (left != null && left.type == BoolType.instance() && left.data instanceof Boolean
+                && (expr.getOp() == BinaryExpr.Op.And || expr.getOp() == BinaryExpr.Op.Or)
+                && BinaryExpr.settles(expr.getLine(), expr.getOp(), left))
+            return binary.getLeft();
+
+        Value right = value(binary.getRight());
+        if (left == null || right == null)
+            return ret;
+
+        Value value;
+        try {
+            value = BinaryExpr.apply(expr.getLine(), expr.getOp(), left, right);
+        } catch (RuntimeException e) {
+            return ret;
+        }
+
+        return fold(ret, value);
+    }
+
+    @Override
+    public Object visit(CastExpr expr) {
+        Expr ret = (Expr) super.visit(expr);
+
+        Value inner = value(((CastExpr) ret).getExpr());
+        if (inner == null)
+            return ret;
+
+        Value value;
+        try {
+            value = CastExpr.apply(expr.getOp(), inner);
+        } catch (RuntimeException e) {
+            return ret;
+        }
+
+        return fold(ret, value);
+    }
+
+    // A constant condition leaves only the branch it picks.
+    @Override
+    public Object visit(ConditionalExpr expr) {
+        Expr ret = (Expr) super.visit(expr);
+        ConditionalExpr conditional = (ConditionalExpr) ret;
+
+        Value cond = value(conditional.getCond());
+        if (cond == null || cond.type != BoolType.instance() || !(cond.data instanceof Boolean))
+            return ret;
+
+        return ((Boolean) cond.data).booleanValue() ? conditional.getTrueExpr() : conditional.getFalseExpr();
+    }
+
+    @Override
+    public Object visit(FunctionExpr expr) {
+        Expr ret = (Expr) super.visit(expr);
+        FunctionExpr function = (FunctionExpr) ret;
+
+        Value base = value(function.getExpr());
+        Value arg = function.getArg() == null ? null : value(function.getArg());
+        if (base == null || function.getArg() != null && arg == null)
+            return ret;
+
+        Value value;
+        try {
+            value = FunctionExpr.apply(expr.getLine(), expr.getOp(), base, arg);
+        } catch (RuntimeException e) {
+            return ret;
+        }
+
+        return fold(ret, value);
+    }
+
+    @Override
+    public Object visit(UnaryExpr expr) {
+        Expr ret = (Expr) super.visit(expr);
+
+        Value inner = value(((UnaryExpr) ret).getExpr());
+        if (inner == null)
+            return ret;
+
+        Value value;
+        try {
+            value = UnaryExpr.apply(expr.getLine(), expr.getOp(), inner);
+        } catch (RuntimeException e) {
+            return ret;
+        }
+
+        return fold(ret, value);
+    }
+
+    @Override
+    public Object visit(Variable var) {
+        Value value = constants.get(var);
+        return value == null ? var : new ConstExpr(var.getLine(), value);
+    }
+
+}
@@ -0,0 +1,209 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.DictItem;
+import interpreter.expr.Expr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.SetExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.primitive.BoolType;
+
+// Removes the code that does nothing: the branch of an if whose condition is
+// a constant that is never taken, a while whose condition is false, and the
+// blocks nested in blocks, whose commands are put in the outer one.
+//
+// When the tree is the whole program, the assignments and lets of variables
+// that are never read are removed too, and so are the expressions evaluated
+// only for a value no one reads, as long as they can neither fail nor have an
+// effect. Removing one may leave others unread, so this is repeated until
+// nothing changes. A tree run in a frame shared with other trees may have its
+// variables read by the next ones, so there they are all kept.
+class DeadCode extends FlowRewriter {
+
+    private final Set<Variable> reads;
+
+    private DeadCode(Simplification simplification, Set<Variable> reads) {
+        super(simplification);
+        this.reads = reads;
+    }
+
+    static Command eliminate(Command cmd, boolean program, Simplification simplification) {
+        Command last;
+        do {
+            last = cmd;
+            cmd = new DeadCode(simplification, program ? Usage.of(cmd).reads : null).command(cmd);
+        } while (program && cmd != last);
+
+        return cmd;
+    }
+
+    // The nodes of a tree, including those of the targets of assignments.
+    static int size(Command cmd) {
+        Size size = new Size();
+        size.command(cmd);
+        return size.count;
+    }
+
+    private static Command nothing(int line) {
+        return new BlocksCommand(line, new ArrayList<Command>());
+    }
+
+    private static Boolean constant(Expr expr) {
+        if (expr instanceof ConstExpr) {
+            ConstExpr c = (ConstExpr) expr;
+            if (c.getValue().type == BoolType.instance() && c.getValue().data instanceof Boolean)
+                return (Boolean) c.getValue().data;
+        }
+
+        return null;
+    }
+
+    // Whether what is assigned here may be read: a variable always, unless
+    // the whole program is known, and an element always.
+    private boolean read(SetExpr lhs) {
+        return lhs != null && (reads == null || !(lhs instanceof Variable) || reads.contains(lhs));
+    }
+
+    // Whether evaluating expr only computes a value.
+    private boolean pure(Expr expr) {
+        if (mayFail(expr))
+            return false;
+
+        if (expr instanceof ConstExpr || expr instanceof Variable) {
+            return true;
+        } else if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            return pure(binary.getLeft()) && pure(binary.getRight());
+        } else if (expr instanceof UnaryExpr) {
+            return pure(((UnaryExpr) expr).getExpr());
+        } else if (expr instanceof CastExpr) {
+            return pure(((CastExpr) expr).getExpr());
+        } else if (expr instanceof ConditionalExpr) {
+            ConditionalExpr cond = (ConditionalExpr) expr;
+            return pure(cond.getCond()) && pure(cond.getTrueExpr()) && pure(cond.getFalseExpr());
+        } else if (expr instanceof FunctionExpr) {
+            FunctionExpr function = (FunctionExpr) expr;
+            if (function.getOp() == FunctionExpr.Op.Append)
+                return false;
+
+            return pure(function.getExpr()) && (function.getArg() == null || pure(function.getArg()));
+        } else if (expr instanceof ArrayExpr) {
+            for (Expr item : ((ArrayExpr) expr).getItems()) {
+                if (!pure(item))
+                    return false;
+            }
+
+            return true;
+        } else if (expr instanceof DictExpr) {
+            for (DictItem item : ((DictExpr) expr).getItems()) {
+                if (!pure(item.key) || !pure(item.value))
+                    return false;
+            }
+
+            return true;
+        } else {
+            // read() and random are actions.
+            return false;
+        }
+    }
+
+    @Override
+    public Object visit(AssignCommand cmd) {
+        if (!read(cmd.getLhs()) && pure(cmd.getRhs()))
+            return nothing(cmd.getLine());
+
+        return super.visit(cmd);
+    }
+
+    @Override
+    public Object visit(InitializeCommand cmd) {
+        if (reads != null && !reads.contains(cmd.getVariable()) && pure(cmd.getExpr()))
+            return nothing(cmd.getLine());
+
+        return super.visit(cmd);
+    }
+
+    @Override
+    public Object visit(BlocksCommand cmd) {
+        BlocksCommand rewritten = (BlocksCommand) super.visit(cmd);
+
+        List<Command> cmds = new ArrayList<Command>();
+        boolean nested = false;
+        for (Command c : rewritten.getCommands()) {
+            if (c instanceof BlocksCommand) {
+                cmds.addAll(((BlocksCommand) c).getCommands());
+                nested = true;
+            } else {
+                cmds.add(c);
+            }
+        }
+
+        return nested ? new BlocksCommand(cmd.getLine(), cmds) : rewritten;
+    }
+
+    @Override
+    public Object visit(IfCommand cmd) {
+        Boolean taken = constant(cmd.getExpr());
+        if (taken == null)
+            return super.visit(cmd);
+
+        Command branch = taken ? cmd.getThen() : cmd.getElse();
+        return branch == null ? nothing(cmd.getLine()) : command(branch);
+    }
+
+    @Override
+    public Object visit(WhileCommand cmd) {
+        if (Boolean.FALSE.equals(constant(cmd.getExpr())))
+            return nothing(cmd.getLine());
+
+        return super.visit(cmd);
+    }
+
+    // Counts the nodes it goes through.
+    private static class Size extends Rewriter {
+        int count;
+
+        @Override
+        protected Command command(Command cmd) {
+            if (cmd != null)
+                count++;
+
+            return super.command(cmd);
+        }
+
+        @Override
+        protected Expr expr(Expr expr) {
+            count++;
+            return super.expr(expr);
+        }
+
+        @Override
+        protected SetExpr target(SetExpr lhs) {
+            count++;
+            if (lhs instanceof AccessExpr) {
+                target(((AccessExpr) lhs).getBase());
+                expr(((AccessExpr) lhs).getIndex());
+            }
+
+            return lhs;
+        }
+    }
+
+}
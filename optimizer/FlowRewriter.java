@@ -0,0 +1,173 @@
+package optimizer;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+import interpreter.command.AssignCommand;
+import interpreter.command.Command;
+import interpreter.command.ForCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.Expr;
+import interpreter.expr.ExprTypes;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.primitive.IntType;
+
+// A Rewriter for the passes that move evaluations around. It follows the
+// order commands run in to know which variables are sure to have a value at
+// the node being rewritten, tells the expressions that may fail, and makes
+// the variables that hold the values moved. Which operands may have data
+// that does not suit their type is told by the Simplification the tree went
+// through.
+abstract class FlowRewriter extends Rewriter {
+
+    protected ExprTypes types;
+    private final Simplification simplification;
+    private Set<Variable> initialized;
+    private int nextSlot;
+
+    protected FlowRewriter(Simplification simplification) {
+        this.simplification = simplification;
+        this.types = new ExprTypes();
+        this.initialized = newSet();
+    }
+
+    protected static Set<Variable> newSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+    }
+
+    // The variables made here take the slots from the given one on, after
+    // those of every variable of the tree. The types kept of its nodes and
+    // the variables any pass made for it, which take those slots, are
+    // dropped once it is rewritten, as the same rewriter may be given any
+    // number of trees.
+    Command rewrite(Command cmd, int slots) {
+        nextSlot = Math.max(slots, Usage.of(cmd).slots);
+        try {
+            return command(cmd);
+        } finally {
+            types = new ExprTypes();
+            Iterator<Variable> i = initialized.iterator();
+            while (i.hasNext()) {
+                if (i.next().getSlot() >= slots)
+                    i.remove();
+            }
+        }
+    }
+
+    // A variable for the value of expr. It is assigned before anything reads
+    // it, so it counts as initialized from here on.
+    protected Variable temporary(Expr expr) {
+        int slot = nextSlot++;
+        Variable var = new Variable(expr.getLine(), "$" + slot, types.typeOf(expr), false, slot);
+        initialized.add(var);
+        return var;
+    }
+
+    protected boolean isInitialized(Variable var) {
+        return initialized.contains(var);
+    }
+
+    // Whether evaluating this node, its operands aside, may raise an error:
+    // reading an element or a variable that may have no value, an Int
+    // division by anything but a nonzero constant, an operation on a type
+    // only known at run time, or one on an operand whose data may not suit
+    // its type.
+    protected boolean mayFail(Expr expr) {
+        Type type = types.typeOf(expr);
+        if (type == ExprTypes.UNKNOWN || expr instanceof AccessExpr)
+            return true;
+
+        if (expr instanceof Variable)
+            return !isInitialized((Variable) expr);
+
+        if (!soundOperands(expr))
+            return true;
+
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            if (binary.getOp() == BinaryExpr.Op.Div && type == IntType.instance()) {
+                Expr right = binary.getRight();
+                return !(right instanceof ConstExpr && ((ConstExpr) right).getValue().data instanceof Integer
+                        && ((Integer) ((ConstExpr) right).getValue().data).intValue() != 0);
+            }
+        }
+
+        return false;
+    }
+
+    private boolean soundOperands(Expr expr) {
+        if (expr instanceof BinaryExpr) {
+            BinaryExpr binary = (BinaryExpr) expr;
+            return simplification.sound(binary.getLeft()) && simplification.sound(binary.getRight());
+        } else if (expr instanceof UnaryExpr) {
+            return simplification.sound(((UnaryExpr) expr).getExpr());
+        } else if (expr instanceof CastExpr) {
+            return simplification.sound(((CastExpr) expr).getExpr());
+        } else if (expr instanceof ConditionalExpr) {
+            return simplification.sound(((ConditionalExpr) expr).getCond());
+        } else if (expr instanceof FunctionExpr) {
+            FunctionExpr function = (FunctionExpr) expr;
+            return simplification.sound(function.getExpr())
+                    && (function.getArg() == null || simplification.sound(function.getArg()));
+        } else {
+            return true;
+        }
+    }
+
+    @Override
+    protected Command branch(Command cmd) {
+        return branch(cmd, null);
+    }
+
+    // A branch that starts by giving var a value.
+    protected Command branch(Command cmd, Variable var) {
+        Set<Variable> outer = initialized;
+        initialized = newSet();
+        initialized.addAll(outer);
+        if (var != null)
+            initialized.add(var);
+
+        try {
+            return command(cmd);
+        } finally {
+            initialized = outer;
+        }
+    }
+
+    @Override
+    public Object visit(AssignCommand cmd) {
+        Object ret = super.visit(cmd);
+        if (cmd.getLhs() instanceof Variable)
+            initialized.add((Variable) cmd.getLhs());
+
+        return ret;
+    }
+
+    @Override
+    public Object visit(InitializeCommand cmd) {
+        Object ret = super.visit(cmd);
+        initialized.add(cmd.getVariable());
+        return ret;
+    }
+
+    @Override
+    public Object visit(ForCommand cmd) {
+        Expr expr = expr(cmd.getExpr());
+        Command body = branch(cmd.getBody(), cmd.getVariable());
+        if (expr == cmd.getExpr() && body == cmd.getBody())
+            return cmd;
+
+        return new ForCommand(cmd.getLine(), cmd.getVariable(), expr, body);
+    }
+
+}
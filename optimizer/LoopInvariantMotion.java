@@ -0,0 +1,136 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.ForCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.Expr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+
+// Moves the expressions of a loop that give the same value on every
+// iteration to just before it: each is evaluated once into a variable of its
+// own, which the loop reads instead. Inner loops are done first, so an
+// expression can move out of several loops.
+//
+// Only expressions that cannot fail are moved, since the loop may not run
+// them at all. read() and random give a new value each time and are never
+// moved. Arrays and dicts are shared, so while the loop changes one in place
+// no expression reading or making one is moved either. An expression giving
+// an array or a dict is never moved at all: each iteration makes a new one,
+// and a moved one would be shared by all of them.
+class LoopInvariantMotion extends FlowRewriter {
+
+    LoopInvariantMotion(Simplification simplification) {
+        super(simplification);
+    }
+
+    @Override
+    public Object visit(ForCommand cmd) {
+        ForCommand loop = (ForCommand) super.visit(cmd);
+
+        Usage usage = Usage.of(loop.getBody());
+        usage.writes.add(loop.getVariable());
+
+        Hoist hoist = new Hoist(usage);
+        Command body = hoist.command(loop.getBody());
+        if (hoist.moved.isEmpty())
+            return loop;
+
+        return hoist.before(new ForCommand(cmd.getLine(), cmd.getVariable(), loop.getExpr(), body));
+    }
+
+    @Override
+    public Object visit(WhileCommand cmd) {
+        WhileCommand loop = (WhileCommand) super.visit(cmd);
+
+        Usage usage = Usage.of(loop);
+
+        Hoist hoist = new Hoist(usage);
+        Expr cond = hoist.expr(loop.getExpr());
+        Command body = hoist.command(loop.getBody());
+        if (hoist.moved.isEmpty())
+            return loop;
+
+        return hoist.before(new WhileCommand(cmd.getLine(), cond, body));
+    }
+
+    // Replaces the largest invariant expressions of one loop by variables,
+    // keeping the assignments that give them their values.
+    private class Hoist extends Rewriter {
+        private final Usage loop;
+        private final List<Command> moved;
+
+        Hoist(Usage loop) {
+            this.loop = loop;
+            this.moved = new ArrayList<Command>();
+        }
+
+        Command before(Command cmd) {
+            List<Command> cmds = new ArrayList<Command>(moved);
+            cmds.add(cmd);
+            return new BlocksCommand(cmd.getLine(), cmds);
+        }
+
+        @Override
+        protected Expr expr(Expr expr) {
+            if (expr instanceof ConstExpr || expr instanceof Variable || isShared(expr) || !invariant(expr))
+                return super.expr(expr);
+
+            Variable var = temporary(expr);
+            moved.add(new AssignCommand(expr.getLine(), expr, var));
+            return var;
+        }
+
+        // A new array or dict would be shared by the iterations.
+        private boolean isShared(Expr expr) {
+            Type.Category category = types.typeOf(expr).getCategory();
+            return category == Type.Category.Array || category == Type.Category.Dict;
+        }
+
+        private boolean invariant(Expr expr) {
+            if (mayFail(expr))
+                return false;
+
+            // The loop may change an array or dict this reads.
+            Type.Category category = types.typeOf(expr).getCategory();
+            if (loop.mutates && (category == Type.Category.Array || category == Type.Category.Dict))
+                return false;
+
+            if (expr instanceof ConstExpr) {
+                return true;
+            } else if (expr instanceof Variable) {
+                return !loop.writes.contains(expr);
+            } else if (expr instanceof BinaryExpr) {
+                BinaryExpr binary = (BinaryExpr) expr;
+                return invariant(binary.getLeft()) && invariant(binary.getRight());
+            } else if (expr instanceof UnaryExpr) {
+                return invariant(((UnaryExpr) expr).getExpr());
+            } else if (expr instanceof CastExpr) {
+                return invariant(((CastExpr) expr).getExpr());
+            } else if (expr instanceof ConditionalExpr) {
+                ConditionalExpr cond = (ConditionalExpr) expr;
+                return invariant(cond.getCond()) && invariant(cond.getTrueExpr()) && invariant(cond.getFalseExpr());
+            } else if (expr instanceof FunctionExpr) {
+                FunctionExpr function = (FunctionExpr) expr;
+                if (function.getOp() == FunctionExpr.Op.Append)
+                    return false;
+
+                return invariant(function.getExpr()) && (function.getArg() == null || invariant(function.getArg()));
+            } else {
+                return false;
+            }
+        }
+    }
+
+}
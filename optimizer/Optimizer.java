@@ -0,0 +1,78 @@
+package optimizer;
+
+import interpreter.Environment;
+import interpreter.command.Command;
+
+// The passes run on a checked tree before it is interpreted or compiled. The
+// tree given is left as it was; the optimized one shares the parts no pass
+// changed. Top-level commands given one at a time, as msi --stream does,
+// should go through the same Optimizer, so what is learnt from one is used
+// in the next.
+//
+// Passes may add variables of their own. They take slots after those of the
+// variables declared so far in globals, when the tree runs in a frame shared
+// with other trees, or else after those of the tree. Only a tree given
+// without globals is taken as the whole program, whose variables are not read
+// anywhere else.
+//
+// The passes walk the tree recursively. A tree nested too deep for them is
+// run as given, and so is every tree after it, as what the passes learnt of
+// the variables from the one they gave up on may be incomplete.
+//
+// Disabled with -Dmsi.optimize=false. With -Dmsi.optimize.stats=true, the
+// number of nodes dead code elimination removed is written to stderr.
+public class Optimizer {
+
+    private static final boolean ENABLED = !"false".equals(System.getProperty("msi.optimize"));
+    private static final boolean STATS = Boolean.getBoolean("msi.optimize.stats");
+
+    private final Environment globals;
+    private final ConstantFolding folding;
+    private final Simplification simplification;
+    private final BoundsChecks bounds;
+    private final CommonSubexpressions common;
+    private final LoopInvariantMotion motion;
+    private boolean tooDeep;
+
+    public Optimizer() {
+        this(null);
+    }
+
+    public Optimizer(Environment globals) {
+        this.globals = globals;
+        this.folding = new ConstantFolding();
+        this.simplification = new Simplification();
+        this.bounds = new BoundsChecks();
+        this.common = new CommonSubexpressions(simplification);
+        this.motion = new LoopInvariantMotion(simplification);
+    }
+
+    public Command optimize(Command cmd) {
+        if (!ENABLED || tooDeep)
+            return cmd;
+
+        try {
+            return passes(cmd);
+        } catch (StackOverflowError e) {
+            tooDeep = true;
+            return cmd;
+        }
+    }
+
+    private Command passes(Command cmd) {
+        int slots = globals == null ? 0 : globals.size();
+        cmd = folding.rewrite(cmd);
+        cmd = simplification.rewrite(cmd);
+
+        int size = STATS ? DeadCode.size(cmd) : 0;
+        cmd = DeadCode.eliminate(cmd, globals == null, simplification);
+        if (STATS)
+            System.err.println("Dead code: " + (size - DeadCode.size(cmd)) + " of " + size + " nodes removed");
+
+        cmd = bounds.command(cmd);
+        cmd = common.rewrite(cmd, slots);
+        cmd = motion.rewrite(cmd, slots);
+        return cmd;
+    }
+
+}
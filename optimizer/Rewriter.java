@@ -0,0 +1,221 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import interpreter.Visitor;
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.DumpCommand;
+import interpreter.command.ForCommand;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.PrintCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.DictItem;
+import interpreter.expr.Expr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.SetExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+
+// Copies a tree bottom-up. Each visit returns the node to put in place of the
+// one visited: the same object when none of its children changed, a new one
+// with the same line otherwise, so the tree given is never modified and can
+// still be cached or run again. A pass overrides the visits of the nodes it
+// rewrites, calling the ones here to rewrite the children first.
+abstract class Rewriter implements Visitor<Object> {
+
+    protected Command command(Command cmd) {
+        return cmd == null ? null : (Command) cmd.accept(this);
+    }
+
+    // A command that may run any number of times, including none: the body
+    // of a loop or a branch of an if.
+    protected Command branch(Command cmd) {
+        return command(cmd);
+    }
+
+    protected Expr expr(Expr expr) {
+        return (Expr) expr.accept(this);
+    }
+
+    // The target of an assignment. Its variable is written, not read, so it is
+    // kept; the indexes on the way to it are rewritten.
+    protected SetExpr target(SetExpr lhs) {
+        if (!(lhs instanceof AccessExpr))
+            return lhs;
+
+        AccessExpr access = (AccessExpr) lhs;
+        SetExpr base = target(access.getBase());
+        Expr index = expr(access.getIndex());
+        if (base == access.getBase() && index == access.getIndex())
+            return lhs;
+
+        return new AccessExpr(access.getLine(), base, index);
+    }
+
+    public Object visit(AssignCommand cmd) {
+        Expr rhs = expr(cmd.getRhs());
+        SetExpr lhs = cmd.getLhs() == null ? null : target(cmd.getLhs());
+        if (rhs == cmd.getRhs() && lhs == cmd.getLhs())
+            return cmd;
+
+        return new AssignCommand(cmd.getLine(), rhs, lhs);
+    }
+
+    public Object visit(BlocksCommand cmd) {
+        List<Command> cmds = new ArrayList<Command>();
+        boolean changed = false;
+        for (Command c : cmd.getCommands()) {
+            Command n = command(c);
+            cmds.add(n);
+            changed |= n != c;
+        }
+
+        return changed ? new BlocksCommand(cmd.getLine(), cmds) : cmd;
+    }
+
+    public Object visit(DumpCommand cmd) {
+        Expr expr = expr(cmd.getExpr());
+        return expr == cmd.getExpr() ? cmd : new DumpCommand(cmd.getLine(), expr);
+    }
+
+    public Object visit(ForCommand cmd) {
+        Expr expr = expr(cmd.getExpr());
+        Command body = branch(cmd.getBody());
+        if (expr == cmd.getExpr() && body == cmd.getBody())
+            return cmd;
+
+        return new ForCommand(cmd.getLine(), cmd.getVariable(), expr, body);
+    }
+
+    public Object visit(IfCommand cmd) {
+        Expr expr = expr(cmd.getExpr());
+        Command thenCmds = branch(cmd.getThen());
+        Command elseCmds = branch(cmd.getElse());
+        if (expr == cmd.getExpr() && thenCmds == cmd.getThen() && elseCmds == cmd.getElse())
+            return cmd;
+
+        return new IfCommand(cmd.getLine(), expr, thenCmds, elseCmds);
+    }
+
+    public Object visit(InitializeCommand cmd) {
+        Expr expr = expr(cmd.getExpr());
+        return expr == cmd.getExpr() ? cmd : new InitializeCommand(cmd.getLine(), cmd.getVariable(), expr);
+    }
+
+    public Object visit(PrintCommand cmd) {
+        Expr expr = expr(cmd.getExpr());
+        return expr == cmd.getExpr() ? cmd : new PrintCommand(cmd.getLine(), expr, cmd.isNewline());
+    }
+
+    public Object visit(WhileCommand cmd) {
+        Expr expr = expr(cmd.getExpr());
+        Command body = branch(cmd.getBody());
+        if (expr == cmd.getExpr() && body == cmd.getBody())
+            return cmd;
+
+        return new WhileCommand(cmd.getLine(), expr, body);
+    }
+
+    // A base rewritten into something that cannot be assigned, such as a
+    // constant, is left as it was. A read known to be in bounds stays so, as
+    // its base and index keep their values.
+    public Object visit(AccessExpr expr) {
+        Expr base = expr(expr.getBase());
+        Expr index = expr(expr.getIndex());
+        if (!(base instanceof SetExpr))
+            base = expr.getBase();
+
+        if (base == expr.getBase() && index == expr.getIndex())
+            return expr;
+
+        return new AccessExpr(expr.getLine(), (SetExpr) base, index, expr.isInBounds());
+    }
+
+    public Object visit(ActionExpr expr) {
+        return expr;
+    }
+
+    public Object visit(ArrayExpr expr) {
+        List<Expr> items = new ArrayList<Expr>();
+        boolean changed = false;
+        for (Expr item : expr.getItems()) {
+            Expr n = expr(item);
+            items.add(n);
+            changed |= n != item;
+        }
+
+        return changed ? new ArrayExpr(expr.getLine(), expr.getType(), items) : expr;
+    }
+
+    public Object visit(BinaryExpr expr) {
+        Expr left = expr(expr.getLeft());
+        Expr right = expr(expr.getRight());
+        if (left == expr.getLeft() && right == expr.getRight())
+            return expr;
+
+        return new BinaryExpr(expr.getLine(), left, expr.getOp(), right);
+    }
+
+    public Object visit(CastExpr expr) {
+        Expr inner = expr(expr.getExpr());
+        return inner == expr.getExpr() ? expr : new CastExpr(expr.getLine(), expr.getOp(), inner);
+    }
+
+    public Object visit(ConditionalExpr expr) {
+        Expr cond = expr(expr.getCond());
+        Expr trueExpr = expr(expr.getTrueExpr());
+        Expr falseExpr = expr(expr.getFalseExpr());
+        if (cond == expr.getCond() && trueExpr == expr.getTrueExpr() && falseExpr == expr.getFalseExpr())
+            return expr;
+
+        return new ConditionalExpr(expr.getLine(), cond, trueExpr, falseExpr);
+    }
+
+    public Object visit(ConstExpr expr) {
+        return expr;
+    }
+
+    public Object visit(DictExpr expr) {
+        List<DictItem> items = new ArrayList<DictItem>();
+        boolean changed = false;
+        for (DictItem item : expr.getItems()) {
+            Expr key = expr(item.key);
+            Expr value = expr(item.value);
+            items.add(new DictItem(key, value));
+            changed |= key != item.key || value != item.value;
+        }
+
+        return changed ? new DictExpr(expr.getLine(), expr.getType(), items) : expr;
+    }
+
+    public Object visit(FunctionExpr expr) {
+        Expr base = expr(expr.getExpr());
+        Expr arg = expr.getArg() == null ? null : expr(expr.getArg());
+        if (base == expr.getExpr() && arg == expr.getArg())
+            return expr;
+
+        return new FunctionExpr(expr.getLine(), expr.getOp(), base, arg);
+    }
+
+    public Object visit(UnaryExpr expr) {
+        Expr inner = expr(expr.getExpr());
+        return inner == expr.getExpr() ? expr : new UnaryExpr(expr.getLine(), inner, expr.getOp());
+    }
+
+    public Object visit(Variable var) {
+        return var;
+    }
+
+}
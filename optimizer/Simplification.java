@@ -0,0 +1,381 @@
+package optimizer;
+
+import java.util.Set;
+
+import interpreter.command.AssignCommand;
+import interpreter.command.Command;
+import interpreter.command.ForCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.DictItem;
+import interpreter.expr.Expr;
+import interpreter.expr.ExprTypes;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.composed.ArrayType;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.CharType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.type.primitive.StringType;
+import interpreter.value.Value;
+
+// Rewrites arithmetic and logic by identities that hold for every value of
+// the type, to the bit but for the payload of a NaN, which no operation of the
+// language can tell: x + 0, x * 1 and x / 1 become x, x * 2 becomes x + x,
+// x * -1 and 0 - x become -x, -(-x) becomes x and !(!b) becomes b. Int
+// arithmetic wraps, so all of these hold for it. For Float they are limited
+// to what IEEE 754 keeps exact: x + 0.0 is +0.0 when x is -0.0, so only
+// x + -0.0 and x - 0.0 are dropped, and x / c becomes x * (1 / c) only when c
+// is a power of two whose inverse is a normal float.
+//
+// An operation also checks the data of its operands. A loop variable can
+// hold an element of another type, and toFloat of a value that is not a
+// number gives data that is no float: an operation on such data fails. So
+// an operand is only kept without its operation when its data is sure to
+// suit its type: a constant, the result of another operation, or a variable
+// nothing of the kind can reach.
+class Simplification extends Rewriter {
+
+    private ExprTypes types;
+    private final Set<Variable> tainted;
+
+    // Whether an element of an array or a dict may not suit its type.
+    private boolean elements;
+
+    Simplification() {
+        this.tainted = FlowRewriter.newSet();
+    }
+
+    // Variables tainted by earlier trees stay so, as they share the frame;
+    // the types kept of the nodes of the last tree are dropped.
+    Command rewrite(Command cmd) {
+        types = new ExprTypes();
+        Taint taint = new Taint();
+        do {
+            taint.changed = false;
+            taint.command(cmd);
+        } while (taint.changed);
+
+        return command(cmd);
+    }
+
+    private static boolean isInt(Expr expr, int n) {
+        if (!(expr instanceof ConstExpr))
+            return false;
+
+        Value value = ((ConstExpr) expr).getValue();
+        return value.type == IntType.instance() && value.data instanceof Integer
+                && ((Integer) value.data).intValue() == n;
+    }
+
+    // Compares the bits, so -0.0 is not 0.0.
+    private static boolean isFloat(Expr expr, float f) {
+        Float value = floatOf(expr);
+        return value != null && Float.floatToRawIntBits(value.floatValue()) == Float.floatToRawIntBits(f);
+    }
+
+    private static Float floatOf(Expr expr) {
+        if (!(expr instanceof ConstExpr))
+            return null;
+
+        Value value = ((ConstExpr) expr).getValue();
+        return value.type == FloatType.instance() && value.data instanceof Float ? (Float) value.data : null;
+    }
+
+    private static boolean isBool(Expr expr, boolean b) {
+        if (!(expr instanceof ConstExpr))
+            return false;
+
+        Value value = ((ConstExpr) expr).getValue();
+        return value.type == BoolType.instance() && Boolean.valueOf(b).equals(value.data);
+    }
+
+    private static boolean isString(Expr expr, String s) {
+        if (!(expr instanceof ConstExpr))
+            return false;
+
+        Value value = ((ConstExpr) expr).getValue();
+        return value.type == StringType.instance() && s.equals(value.data);
+    }
+
+    // The inverse of f when x / f and x * (1 / f) round alike for every x.
+    private static Float inverse(Float f) {
+        if (f == null || f.floatValue() == 0.0f || Float.isInfinite(f) || Float.isNaN(f))
+            return null;
+
+        int exponent = Math.getExponent(f.floatValue());
+        if (Math.abs(f.floatValue()) != Math.scalb(1.0f, exponent) || exponent <= Float.MIN_EXPONENT
+                || -exponent <= Float.MIN_EXPONENT || -exponent > Float.MAX_EXPONENT)
+            return null;
+
+        return Float.valueOf(1.0f / f.floatValue());
+    }
+
+    // Whether the data of every value of expr suits its type, as far as the
+    // trees given so far tell.
+    boolean sound(Expr expr) {
+        if (expr instanceof ConstExpr) {
+            Value value = ((ConstExpr) expr).getValue();
+            return ConstantFolding.foldable(value);
+        } else if (expr instanceof Variable) {
+            return !tainted.contains(expr);
+        } else if (expr instanceof BinaryExpr || expr instanceof UnaryExpr) {
+            return true;
+        } else if (expr instanceof CastExpr) {
+            CastExpr cast = (CastExpr) expr;
+            if (cast.getOp() != CastExpr.Op.ToFloat)
+                return true;
+
+            Type type = types.typeOf(cast.getExpr());
+            return type == IntType.instance() || type == FloatType.instance() || type == CharType.instance();
+        } else if (expr instanceof ConditionalExpr) {
+            ConditionalExpr cond = (ConditionalExpr) expr;
+            return sound(cond.getTrueExpr()) && sound(cond.getFalseExpr());
+        } else if (expr instanceof AccessExpr) {
+            // The characters of a string are made as they are read.
+            AccessExpr access = (AccessExpr) expr;
+            return types.typeOf(access.getBase()) == StringType.instance() || !elements;
+        } else if (expr instanceof FunctionExpr) {
+            FunctionExpr.Op op = ((FunctionExpr) expr).getOp();
+            return op == FunctionExpr.Op.Count || op == FunctionExpr.Op.Empty || op == FunctionExpr.Op.Contains;
+        } else {
+            return false;
+        }
+    }
+
+    private BinaryExpr twice(BinaryExpr expr, Expr x) {
+        return new BinaryExpr(expr.getLine(), x, BinaryExpr.Op.Add, x);
+    }
+
+    private UnaryExpr negate(BinaryExpr expr, Expr x) {
+        return new UnaryExpr(expr.getLine(), x, UnaryExpr.Op.Neg);
+    }
+
+    @Override
+    public Object visit(BinaryExpr expr) {
+        Expr ret = (Expr) super.visit(expr);
+        BinaryExpr binary = (BinaryExpr) ret;
+        Expr l = binary.getLeft();
+        Expr r = binary.getRight();
+
+        Type type = types.typeOf(binary);
+        if (type == ExprTypes.UNKNOWN || !sound(l) || !sound(r))
+            return ret;
+
+        if (type == IntType.instance()) {
+            switch (binary.getOp()) {
+                case Add:
+                    if (isInt(r, 0))
+                        return l;
+                    if (isInt(l, 0))
+                        return r;
+                    break;
+                case Sub:
+                    if (isInt(r, 0))
+                        return l;
+                    if (isInt(l, 0))
+                        return negate(binary, r);
+                    break;
+                case Mul:
+                    if (isInt(r, 1))
+                        return l;
+                    if (isInt(l, 1))
+                        return r;
+                    if (isInt(r, -1))
+                        return negate(binary, l);
+                    if (isInt(l, -1))
+                        return negate(binary, r);
+                    if (isInt(r, 2) && l instanceof Variable)
+                        return twice(binary, l);
+                    if (isInt(l, 2) && r instanceof Variable)
+                        return twice(binary, r);
+                    break;
+                case Div:
+                    if (isInt(r, 1))
+                        return l;
+                    break;
+                default:
+                    break;
+            }
+        } else if (type == FloatType.instance()) {
+            switch (binary.getOp()) {
+                case Add:
+                    if (isFloat(r, -0.0f))
+                        return l;
+                    if (isFloat(l, -0.0f))
+                        return r;
+                    break;
+                case Sub:
+                    if (isFloat(r, 0.0f))
+                        return l;
+                    break;
+                case Mul:
+                    if (isFloat(r, 1.0f))
+                        return l;
+                    if (isFloat(l, 1.0f))
+                        return r;
+                    if (isFloat(r, -1.0f))
+                        return negate(binary, l);
+                    if (isFloat(l, -1.0f))
+                        return negate(binary, r);
+                    if (isFloat(r, 2.0f) && l instanceof Variable)
+                        return twice(binary, l);
+                    if (isFloat(l, 2.0f) && r instanceof Variable)
+                        return twice(binary, r);
+                    break;
+                case Div:
+                    if (isFloat(r, 1.0f))
+                        return l;
+
+                    Float inverse = inverse(floatOf(r));
+                    if (inverse != null)
+                        return new BinaryExpr(binary.getLine(), l, BinaryExpr.Op.Mul,
+                                new ConstExpr(r.getLine(), new Value(FloatType.instance(), inverse)));
+                    break;
+                default:
+                    break;
+            }
+        } else if (type == BoolType.instance()) {
+            switch (binary.getOp()) {
+                case And:
+                    if (isBool(r, true))
+                        return l;
+                    if (isBool(l, true))
+                        return r;
+                    break;
+                case Or:
+                    if (isBool(r, false))
+                        return l;
+                    if (isBool(l, false))
+                        return r;
+                    break;
+                default:
+                    break;
+            }
+        } else if (type == StringType.instance() && binary.getOp() == BinaryExpr.Op.Add) {
+            if (isString(r, ""))
+                return l;
+            if (isString(l, ""))
+                return r;
+        }
+
+        return ret;
+    }
+
+    @Override
+    public Object visit(UnaryExpr expr) {
+        Expr ret = (Expr) super.visit(expr);
+        UnaryExpr unary = (UnaryExpr) ret;
+        if (!(unary.getExpr() instanceof UnaryExpr))
+            return ret;
+
+        UnaryExpr inner = (UnaryExpr) unary.getExpr();
+        Type type = types.typeOf(unary);
+        if (inner.getOp() != unary.getOp() || type == ExprTypes.UNKNOWN || !type.match(types.typeOf(inner))
+                || !sound(inner.getExpr()))
+            return ret;
+
+        if (unary.getOp() == UnaryExpr.Op.Neg
+                ? type == IntType.instance() || type == FloatType.instance()
+                : type == BoolType.instance())
+            return inner.getExpr();
+
+        return ret;
+    }
+
+    // Finds the variables whose data may not suit their type: the loop
+    // variables given elements of another type, and those assigned a value
+    // that is not sound. An array or a dict is shared, so once one of them
+    // may hold such data, or an element that is not sound is put in one, no
+    // element is taken as sound. Run until nothing changes, as one may taint
+    // another.
+    private class Taint extends Rewriter {
+        boolean changed;
+
+        private void taint(Variable var) {
+            changed |= tainted.add(var);
+
+            Type.Category category = var.getType().getCategory();
+            if (category == Type.Category.Array || category == Type.Category.Dict)
+                taintElements();
+        }
+
+        private void taintElements() {
+            changed |= !elements;
+            elements = true;
+        }
+
+        @Override
+        public Object visit(AssignCommand cmd) {
+            if (!sound(cmd.getRhs())) {
+                if (cmd.getLhs() instanceof Variable)
+                    taint((Variable) cmd.getLhs());
+                else if (cmd.getLhs() != null)
+                    taintElements();
+            }
+
+            return super.visit(cmd);
+        }
+
+        @Override
+        public Object visit(ArrayExpr expr) {
+            for (Expr item : expr.getItems()) {
+                if (!sound(item))
+                    taintElements();
+            }
+
+            return super.visit(expr);
+        }
+
+        @Override
+        public Object visit(DictExpr expr) {
+            for (DictItem item : expr.getItems()) {
+                if (!sound(item.key) || !sound(item.value))
+                    taintElements();
+            }
+
+            return super.visit(expr);
+        }
+
+        @Override
+        public Object visit(FunctionExpr expr) {
+            if (expr.getOp() == FunctionExpr.Op.Append && !sound(expr.getArg()))
+                taintElements();
+
+            return super.visit(expr);
+        }
+
+        @Override
+        public Object visit(InitializeCommand cmd) {
+            if (!sound(cmd.getExpr()))
+                taint(cmd.getVariable());
+
+            return super.visit(cmd);
+        }
+
+        @Override
+        public Object visit(ForCommand cmd) {
+            Type collection = types.typeOf(cmd.getExpr());
+            Type element = ExprTypes.UNKNOWN;
+            if (collection instanceof ArrayType)
+                element = ((ArrayType) collection).getInnerType();
+            else if (collection == StringType.instance())
+                element = CharType.instance();
+
+            if (element == ExprTypes.UNKNOWN || !cmd.getVariable().getType().match(element))
+                taint(cmd.getVariable());
+
+            return super.visit(cmd);
+        }
+    }
+
+}
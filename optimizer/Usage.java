@@ -0,0 +1,108 @@
+package optimizer;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import interpreter.command.Command;
+import interpreter.command.ForCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.Expr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.SetExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+
+// The variables a tree reads and writes, found by walking it without
+// changing anything. An append, or an assignment to an element of an array
+// or a dict, changes a value in place instead of a variable: it is recorded
+// apart, since other variables may hold the same value.
+class Usage extends Rewriter {
+
+    final Set<Variable> reads;
+    final Set<Variable> writes;
+    boolean mutates;
+
+    // The variables a for writes, which are written even when declared with
+    // let.
+    final Set<Variable> iterated;
+
+    // One past the highest slot of a variable in the tree.
+    int slots;
+
+    private Usage() {
+        this.reads = Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+        this.writes = Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+        this.iterated = Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+    }
+
+    static Usage of(Command cmd) {
+        Usage usage = new Usage();
+        usage.command(cmd);
+        return usage;
+    }
+
+    static Usage of(Expr expr) {
+        Usage usage = new Usage();
+        usage.expr(expr);
+        return usage;
+    }
+
+    private void write(Variable var) {
+        writes.add(var);
+        slots = Math.max(slots, var.getSlot() + 1);
+    }
+
+    // The variable a target ends at is written; an element of a string is
+    // stored back into it, and any other element is changed in place.
+    @Override
+    protected SetExpr target(SetExpr lhs) {
+        if (lhs instanceof AccessExpr) {
+            AccessExpr access = (AccessExpr) lhs;
+            expr(access.getBase());
+            expr(access.getIndex());
+            if (root(lhs).getType().getCategory() != Type.Category.String)
+                mutates = true;
+        }
+
+        write(root(lhs));
+        return lhs;
+    }
+
+    static Variable root(SetExpr lhs) {
+        while (lhs instanceof AccessExpr)
+            lhs = ((AccessExpr) lhs).getBase();
+
+        return (Variable) lhs;
+    }
+
+    @Override
+    public Object visit(ForCommand cmd) {
+        write(cmd.getVariable());
+        iterated.add(cmd.getVariable());
+        return super.visit(cmd);
+    }
+
+    @Override
+    public Object visit(InitializeCommand cmd) {
+        write(cmd.getVariable());
+        return super.visit(cmd);
+    }
+
+    @Override
+    public Object visit(FunctionExpr expr) {
+        if (expr.getOp() == FunctionExpr.Op.Append)
+            mutates = true;
+
+        return super.visit(expr);
+    }
+
+    @Override
+    public Object visit(Variable var) {
+        reads.add(var);
+        slots = Math.max(slots, var.getSlot() + 1);
+        return var;
+    }
+
+}
@@ -0,0 +1,484 @@
+package semantic;
+
+import static error.LanguageException.Error.ConstantAssignment;
+import static error.LanguageException.Error.InvalidOperation;
+import static error.LanguageException.Error.InvalidType;
+import static error.LanguageException.Error.TooDeep;
+
+import error.LanguageException;
+import interpreter.Visitor;
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.DumpCommand;
+import interpreter.command.ForCommand;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.PrintCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.DictItem;
+import interpreter.expr.Expr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.SetExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.Type.Category;
+import interpreter.type.composed.ArrayType;
+import interpreter.type.composed.DictType;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.CharType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.type.primitive.PrimitiveType;
+import interpreter.type.primitive.StringType;
+
+// Checks the types of a tree before it runs. Each expression is given the
+// type its values have at run time, and each operation is checked on those
+// types with the error, at the line, that evaluating it would raise; checks
+// are made in evaluation order, so the first error reported is the one a run
+// would stop at. Errors that depend on values (an uninitialized variable, an
+// index out of bounds, a missing key) are still found by the run.
+//
+// A conditional whose branches have different types has no type (null), and
+// the checks that would need it are left to the run. The operators whose
+// operand types are known are specialized for them, so they start in the
+// form the interpreter would otherwise pick on their first evaluation.
+public class SemanticAnalysis implements Visitor<Type> {
+
+    private static final Type BOOL = BoolType.instance();
+    private static final Type INT = IntType.instance();
+    private static final Type FLOAT = FloatType.instance();
+    private static final Type CHAR = CharType.instance();
+    private static final Type STRING = StringType.instance();
+
+    private int tooDeep;
+
+    public SemanticAnalysis() {
+    }
+
+    // An expression nested too deep to be checked is an error at the line of
+    // the outermost one. The error is only made once the stack is unwound, as
+    // making it may load classes.
+    public void process(Command cmd) {
+        tooDeep = cmd.getLine();
+        try {
+            cmd.accept(this);
+        } catch (StackOverflowError e) {
+            throw LanguageException.instance(tooDeep, TooDeep);
+        }
+    }
+
+    private Type check(Expr expr) {
+        try {
+            return expr.accept(this);
+        } catch (StackOverflowError e) {
+            tooDeep = expr.getLine();
+            throw e;
+        }
+    }
+
+    private static Category category(Type type) {
+        return type == null ? null : type.getCategory();
+    }
+
+    private static LanguageException invalidType(int line, Type type) {
+        return LanguageException.instance(line, InvalidType, type.toString());
+    }
+
+    private static LanguageException invalidOperation(int line) {
+        return LanguageException.instance(line, InvalidOperation);
+    }
+
+    public Type visit(AssignCommand cmd) {
+        Type type = check(cmd.getRhs());
+        if (cmd.getLhs() != null)
+            store(cmd.getLhs(), type);
+
+        return null;
+    }
+
+    public Type visit(BlocksCommand cmd) {
+        for (Command c : cmd.getCommands())
+            c.accept(this);
+
+        return null;
+    }
+
+    public Type visit(DumpCommand cmd) {
+        check(cmd.getExpr());
+        return null;
+    }
+
+    public Type visit(ForCommand cmd) {
+        Category category = category(check(cmd.getExpr()));
+
+        if (category != null && category != Category.Array && category != Category.String)
+            throw invalidOperation(cmd.getLine());
+
+        Type varType = cmd.getVariable().getType();
+        if (category == Category.String && varType.getCategory() != Category.Char)
+            throw invalidType(cmd.getLine(), varType);
+
+        cmd.getBody().accept(this);
+        return null;
+    }
+
+    public Type visit(IfCommand cmd) {
+        condition(cmd.getLine(), check(cmd.getExpr()));
+
+        cmd.getThen().accept(this);
+        if (cmd.getElse() != null)
+            cmd.getElse().accept(this);
+
+        return null;
+    }
+
+    public Type visit(InitializeCommand cmd) {
+        Type type = check(cmd.getExpr());
+        Variable var = cmd.getVariable();
+
+        if (type != null && !var.getType().match(type))
+            throw invalidType(var.getLine(), type);
+
+        return null;
+    }
+
+    public Type visit(PrintCommand cmd) {
+        check(cmd.getExpr());
+        return null;
+    }
+
+    public Type visit(WhileCommand cmd) {
+        condition(cmd.getLine(), check(cmd.getExpr()));
+
+        cmd.getBody().accept(this);
+        return null;
+    }
+
+    // The condition of an if or a while.
+    private void condition(int line, Type type) {
+        if (type != null && !type.match(BOOL))
+            throw invalidType(line, type);
+    }
+
+    // An assignment of a value of this type to lhs. An element of a string is
+    // written by storing the changed string into its base in turn.
+    private void store(SetExpr lhs, Type type) {
+        if (lhs instanceof Variable) {
+            Variable var = (Variable) lhs;
+            if (var.isConstant())
+                throw LanguageException.instance(var.getLine(), ConstantAssignment, var.getName());
+
+            if (type != null && !var.getType().match(type))
+                throw invalidType(var.getLine(), type);
+
+            return;
+        }
+
+        AccessExpr access = (AccessExpr) lhs;
+        int line = access.getLine();
+        Type base = check(access.getBase());
+        Type index = check(access.getIndex());
+
+        if (base == null)
+            return;
+
+        switch (base.getCategory()) {
+            case String:
+                if (index != null && !index.match(INT))
+                    throw invalidType(line, index);
+
+                if (type != null && !type.match(CHAR))
+                    throw invalidType(line, type);
+
+                store(access.getBase(), STRING);
+                break;
+
+            case Array:
+                if (index != null && !index.match(INT))
+                    throw invalidType(line, index);
+
+                if (type != null && !type.match(((ArrayType) base).getInnerType()))
+                    throw invalidOperation(line);
+
+                break;
+
+            case Dict:
+                if (index != null && !index.match(((DictType) base).getKeyType()))
+                    throw invalidType(line, index);
+
+                if (type != null && !type.match(((DictType) base).getValueType()))
+                    throw invalidOperation(line);
+
+                break;
+
+            default:
+                throw invalidType(line, base);
+        }
+    }
+
+    public Type visit(AccessExpr expr) {
+        int line = expr.getLine();
+        Type base = check(expr.getBase());
+        Type index = check(expr.getIndex());
+
+        if (base == null)
+            return null;
+
+        switch (base.getCategory()) {
+            case String:
+                if (index != null && !index.match(INT))
+                    throw invalidType(line, index);
+
+                return CHAR;
+
+            case Array:
+                if (index != null && !index.match(INT))
+                    throw invalidType(line, index);
+
+                return ((ArrayType) base).getInnerType();
+
+            case Dict:
+                if (index != null && !index.match(((DictType) base).getKeyType()))
+                    throw invalidType(line, index);
+
+                return ((DictType) base).getValueType();
+
+            default:
+                throw invalidType(line, base);
+        }
+    }
+
+    public Type visit(ActionExpr expr) {
+        return expr.getOp() == ActionExpr.Op.Read ? STRING : FLOAT;
+    }
+
+    public Type visit(ArrayExpr expr) {
+        Category inner = expr.getType().getInnerType().getCategory();
+
+        for (Expr item : expr.getItems()) {
+            Type type = check(item);
+            if (type != null && type.getCategory() != inner)
+                throw invalidType(expr.getLine(), type);
+        }
+
+        return expr.getType();
+    }
+
+    public Type visit(BinaryExpr expr) {
+        Type left = check(expr.getLeft());
+        Type right = check(expr.getRight());
+        Type type = binary(expr.getLine(), expr.getOp(), left, right);
+
+        if (left instanceof PrimitiveType && right instanceof PrimitiveType)
+            expr.specialize(left, right);
+
+        return type;
+    }
+
+    // The checks of BinaryExpr.apply. The left operand picks the rule, and
+    // the right one is then checked against it: first its category, then
+    // its type.
+    private static Type binary(int line, BinaryExpr.Op op, Type left, Type right) {
+        if (left == null)
+            return null;
+
+        Category category = left.getCategory();
+        switch (op) {
+            case And:
+            case Or:
+                if (category != Category.Bool)
+                    throw invalidOperation(line);
+
+                operand(line, left, right, Category.Bool);
+                return BOOL;
+
+            case Equal:
+            case NotEqual:
+                if (right != null && !left.match(right))
+                    throw invalidType(line, right);
+
+                return BOOL;
+
+            case LowerThan:
+            case LowerEqual:
+            case GreaterThan:
+            case GreaterEqual:
+                if (category != Category.Int && category != Category.Float && category != Category.Char
+                        && category != Category.String) {
+                    if (op == BinaryExpr.Op.LowerThan || op == BinaryExpr.Op.LowerEqual)
+                        throw invalidType(line, left);
+                    else
+                        throw invalidOperation(line);
+                }
+
+                operand(line, left, right, Category.Int, Category.Float, Category.Char, Category.String);
+                return BOOL;
+
+            case Add:
+                if (category == Category.Bool)
+                    throw invalidOperation(line);
+
+                operand(line, left, right, Category.Int, Category.Float, Category.Char, Category.String,
+                        Category.Array, Category.Dict);
+                return left;
+
+            case Sub:
+            default:
+                if (category != Category.Int && category != Category.Float) {
+                    if (op == BinaryExpr.Op.Sub)
+                        throw invalidOperation(line);
+                    else
+                        throw invalidType(line, left);
+                }
+
+                operand(line, left, right, Category.Int, Category.Float);
+                return left;
+        }
+    }
+
+    private static void operand(int line, Type left, Type right, Category... allowed) {
+        if (right == null)
+            return;
+
+        boolean found = false;
+        for (Category c : allowed)
+            found |= right.getCategory() == c;
+
+        if (!found)
+            throw invalidOperation(line);
+
+        if (!left.match(right))
+            throw invalidType(line, right);
+    }
+
+    public Type visit(CastExpr expr) {
+        Type type = check(expr.getExpr());
+        if (type instanceof PrimitiveType)
+            expr.specialize(type);
+
+        switch (expr.getOp()) {
+            case ToBool:
+                return BOOL;
+            case ToInt:
+                return INT;
+            case ToFloat:
+                return FLOAT;
+            case ToChar:
+                return CHAR;
+            default:
+                return STRING;
+        }
+    }
+
+    public Type visit(ConditionalExpr expr) {
+        Type cond = check(expr.getCond());
+        if (cond != null && cond.getCategory() != Category.Bool)
+            throw invalidOperation(expr.getLine());
+
+        Type trueType = check(expr.getTrueExpr());
+        Type falseType = check(expr.getFalseExpr());
+
+        return trueType != null && falseType != null && trueType.match(falseType) ? trueType : null;
+    }
+
+    public Type visit(ConstExpr expr) {
+        return expr.getValue().type;
+    }
+
+    public Type visit(DictExpr expr) {
+        DictType dict = expr.getType();
+
+        for (DictItem item : expr.getItems()) {
+            Type key = check(item.key);
+            Type value = check(item.value);
+
+            if (key != null && !key.equals(dict.getKeyType()))
+                throw invalidType(expr.getLine(), key);
+
+            if (value != null && !value.equals(dict.getValueType()))
+                throw invalidType(expr.getLine(), value);
+        }
+
+        return dict;
+    }
+
+    // A function on a value it is not defined for reports the type of that
+    // value, as reading an element of it does.
+    public Type visit(FunctionExpr expr) {
+        int line = expr.getLine();
+        Type base = check(expr.getExpr());
+        Type arg = expr.getArg() == null ? null : check(expr.getArg());
+
+        if (base == null)
+            return null;
+
+        Category category = base.getCategory();
+        switch (expr.getOp()) {
+            case Count:
+                if (category != Category.String && category != Category.Array)
+                    throw invalidType(line, base);
+
+                return INT;
+
+            case Empty:
+                if (category != Category.String && category != Category.Array && category != Category.Dict)
+                    throw invalidType(line, base);
+
+                return BOOL;
+
+            case Keys:
+                if (category != Category.Dict)
+                    throw invalidType(line, base);
+
+                return ArrayType.instance(((DictType) base).getKeyType());
+
+            case Values:
+                if (category != Category.Dict)
+                    throw invalidType(line, base);
+
+                return ArrayType.instance(((DictType) base).getValueType());
+
+            case Append:
+            case Contains:
+            default:
+                if (category != Category.Array)
+                    throw invalidType(line, base);
+
+                if (arg != null && !arg.match(((ArrayType) base).getInnerType()))
+                    throw invalidType(line, arg);
+
+                return expr.getOp() == FunctionExpr.Op.Append ? base : BOOL;
+        }
+    }
+
+    public Type visit(UnaryExpr expr) {
+        Type type = check(expr.getExpr());
+        if (type == null)
+            return null;
+
+        if (expr.getOp() == UnaryExpr.Op.Not) {
+            if (!BOOL.match(type))
+                throw invalidType(expr.getLine(), type);
+        } else if (type.getCategory() != Category.Int && type.getCategory() != Category.Float) {
+            throw invalidType(expr.getLine(), type);
+        }
+
+        expr.specialize(type);
+        return type;
+    }
+
+    public Type visit(Variable var) {
+        return var.getType();
+    }
+
+}
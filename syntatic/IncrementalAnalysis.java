@@ -0,0 +1,550 @@
+package syntatic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import interpreter.Environment;
+import interpreter.Visitor;
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.DumpCommand;
+import interpreter.command.ForCommand;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.PrintCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.DictItem;
+import interpreter.expr.Expr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import lexical.LexicalAnalysis;
+import lexical.SourceBuffer;
+import lexical.Token;
+import lexical.TokenSource;
+
+// Front end for a script that is edited and run again. The token stream and
+// the top-level commands of the previous version are kept; on update only the
+// tokens around the edited range are lexed again, and only the top-level
+// commands that read those tokens are parsed again.
+public class IncrementalAnalysis {
+
+    private SourceBuffer source;
+
+    // Token i was scanned from starts[i] up to ends[i], leaving the lexer at
+    // line lines[i]. The lexer may have peeked at the byte at ends[i].
+    private Token[] tokens;
+    private int[] starts;
+    private int[] ends;
+    private int[] lines;
+    private int count;
+
+    // Top-level command k spans the tokens [first.get(k), first.get(k + 1)),
+    // where the last entry is the index of END_OF_FILE. Null when the commands
+    // have to be parsed from scratch.
+    private List<Command> cmds;
+    private List<Integer> first;
+    private List<List<Variable>> globals;
+    private List<List<Variable>> declared;
+
+    // Frame slots handed out to the variables of the current commands.
+    private int slots;
+
+    // Where the last relex caught up with the old token stream: old token
+    // resumeOld is new token resumeNew, lineDelta lines further down.
+    private int resumeOld;
+    private int resumeNew;
+    private int lineDelta;
+
+    private int relexed;
+    private int reparsed;
+
+    public IncrementalAnalysis() {
+        this.source = null;
+        this.count = 0;
+        this.cmds = null;
+        this.slots = 0;
+    }
+
+    // Size of the frame needed to run the tree of the last update.
+    public int getSlots() {
+        return slots;
+    }
+
+    // Tokens lexed and top-level commands parsed by the last update.
+    public int getRelexed() {
+        return relexed;
+    }
+
+    public int getReparsed() {
+        return reparsed;
+    }
+
+    public Command update(SourceBuffer next) {
+        int damaged = relex(next);
+        return reparse(damaged);
+    }
+
+    // Returns the index of the first token that was lexed again.
+    private int relex(SourceBuffer next) {
+        SourceBuffer old = source;
+        source = next;
+
+        if (old == null) {
+            lex(0, 0, 1, -1, 0);
+            return 0;
+        }
+
+        int prefix = next.commonPrefix(old);
+        int suffix = next.commonSuffix(old, Math.min(next.length(), old.length()) - prefix);
+
+        // The first token whose scan, lookahead included, reaches the edit.
+        int i = 0;
+        while (i < count - 1 && ends[i] < prefix)
+            i++;
+
+        int position = i == 0 ? 0 : ends[i - 1];
+        int line = i == 0 ? 1 : lines[i - 1];
+        lex(i, position, line, next.length() - suffix, next.length() - old.length());
+
+        return i;
+    }
+
+    private void lex(int from, int position, int line, int resync, int delta) {
+        int capacity = Math.max(16, count + 16);
+        Token[] newTokens = new Token[capacity];
+        int[] newStarts = new int[capacity];
+        int[] newEnds = new int[capacity];
+        int[] newLines = new int[capacity];
+
+        if (from > 0) {
+            System.arraycopy(tokens, 0, newTokens, 0, from);
+            System.arraycopy(starts, 0, newStarts, 0, from);
+            System.arraycopy(ends, 0, newEnds, 0, from);
+            System.arraycopy(lines, 0, newLines, 0, from);
+        }
+
+        LexicalAnalysis lex = new LexicalAnalysis(source, position, line);
+        int n = from;
+        relexed = 0;
+        resumeOld = -1;
+        resumeNew = -1;
+        lineDelta = 0;
+
+        for (;;) {
+            int start = lex.getPosition();
+
+            // Past the edit, lexing from an old token boundary yields the old
+            // tokens again, shifted by the change in length and line count.
+            int j = resync >= 0 && start >= resync ? boundary(start - delta) : -1;
+            if (j >= 0) {
+                resumeOld = j;
+                resumeNew = n;
+                lineDelta = lex.getLine() - lines[j - 1];
+
+                int rest = count - j;
+                if (n + rest > newTokens.length) {
+                    newTokens = Arrays.copyOf(newTokens, n + rest);
+                    newStarts = Arrays.copyOf(newStarts, n + rest);
+                    newEnds = Arrays.copyOf(newEnds, n + rest);
+                    newLines = Arrays.copyOf(newLines, n + rest);
+                }
+
+                System.arraycopy(tokens, j, newTokens, n, rest);
+                for (int k = 0; k < rest; k++) {
+                    newStarts[n + k] = starts[j + k] + delta;
+                    newEnds[n + k] = ends[j + k] + delta;
+                    newLines[n + k] = lines[j + k] + lineDelta;
+                }
+
+                n += rest;
+                break;
+            }
+
+            Token token = lex.nextToken();
+            if (n == newTokens.length) {
+                newTokens = Arrays.copyOf(newTokens, n * 2);
+                newStarts = Arrays.copyOf(newStarts, n * 2);
+                newEnds = Arrays.copyOf(newEnds, n * 2);
+                newLines = Arrays.copyOf(newLines, n * 2);
+            }
+
+            newTokens[n] = token;
+            newStarts[n] = start;
+            newEnds[n] = lex.getPosition();
+            newLines[n] = lex.getLine();
+            n++;
+            relexed++;
+
+            if (token.type == Token.Type.END_OF_FILE)
+                break;
+        }
+
+        tokens = newTokens;
+        starts = newStarts;
+        ends = newEnds;
+        lines = newLines;
+        count = n;
+    }
+
+    // Index of the old token whose scan started at position, or -1.
+    private int boundary(int position) {
+        int lo = 0;
+        int hi = count - 2;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] < position)
+                lo = mid + 1;
+            else if (ends[mid] > position)
+                hi = mid - 1;
+            else
+                return mid + 1;
+        }
+
+        return -1;
+    }
+
+    private Command reparse(int damaged) {
+        List<Command> oldCmds = cmds;
+        List<Integer> oldFirst = first;
+        List<List<Variable>> oldGlobals = globals;
+        List<List<Variable>> oldDeclared = declared;
+
+        // Stays null if parsing fails, so the next update starts afresh.
+        cmds = null;
+
+        List<Command> newCmds = new ArrayList<Command>();
+        List<Integer> newFirst = new ArrayList<Integer>();
+        List<List<Variable>> newGlobals = new ArrayList<List<Variable>>();
+        List<List<Variable>> newDeclared = new ArrayList<List<Variable>>();
+        // Reused variables keep their slots, new ones are numbered after them.
+        RecyclingEnvironment environment = new RecyclingEnvironment(oldCmds != null ? slots : 0);
+
+        // Commands whose tokens, and the token after them, precede the edit.
+        int kept = 0;
+        int start = 0;
+        int[] recycledBefore = null;
+        if (oldCmds != null) {
+            while (kept < oldCmds.size() && oldFirst.get(kept + 1) < damaged)
+                kept++;
+
+            for (int k = 0; k < kept; k++) {
+                newCmds.add(oldCmds.get(k));
+                newFirst.add(oldFirst.get(k));
+                newGlobals.add(oldGlobals.get(k));
+                newDeclared.add(oldDeclared.get(k));
+                for (Variable v : oldGlobals.get(k))
+                    environment.define(v);
+            }
+
+            recycledBefore = new int[oldCmds.size() + 1];
+            for (int k = kept; k < oldCmds.size(); k++) {
+                environment.recycled.addAll(oldGlobals.get(k));
+                recycledBefore[k + 1] = recycledBefore[k] + oldGlobals.get(k).size();
+            }
+
+            start = oldFirst.get(kept);
+        }
+
+        Replay replay = new Replay(start);
+        SyntaticAnalysis s = new SyntaticAnalysis(replay, environment);
+        reparsed = 0;
+
+        for (;;) {
+            int index = replay.current();
+
+            // Once the parser stands on an old command boundary behind the
+            // edit, and the globals declared so far are the old ones, the
+            // remaining old commands are still valid.
+            if (oldCmds != null && resumeOld >= 0 && index >= resumeNew && !environment.mismatch) {
+                int m = Collections.binarySearch(oldFirst, index - resumeNew + resumeOld);
+                if (m > kept && m < oldCmds.size() && recycledBefore[m] == environment.reused) {
+                    for (int k = m; k < oldCmds.size(); k++) {
+                        Command cmd = oldCmds.get(k);
+                        if (lineDelta != 0) {
+                            cmd.accept(new LineShifter(lineDelta));
+                            for (Variable v : oldDeclared.get(k))
+                                v.shiftLine(lineDelta);
+                        }
+
+                        newCmds.add(cmd);
+                        newFirst.add(oldFirst.get(k) - resumeOld + resumeNew);
+                        newGlobals.add(oldGlobals.get(k));
+                        newDeclared.add(oldDeclared.get(k));
+                    }
+
+                    break;
+                }
+            }
+
+            int before = s.getDeclarations().size();
+            int globalsBefore = environment.log.size();
+
+            Command cmd = s.next();
+            if (cmd == null)
+                break;
+
+            newCmds.add(cmd);
+            newFirst.add(index);
+            newGlobals.add(new ArrayList<Variable>(
+                    environment.log.subList(globalsBefore, environment.log.size())));
+            newDeclared.add(new ArrayList<Variable>(
+                    s.getDeclarations().subList(before, s.getDeclarations().size())));
+            reparsed++;
+        }
+
+        newFirst.add(count - 1);
+
+        cmds = newCmds;
+        first = newFirst;
+        globals = newGlobals;
+        declared = newDeclared;
+        slots = environment.size();
+
+        return new BlocksCommand(lines[0], new ArrayList<Command>(cmds));
+    }
+
+    private class Replay implements TokenSource {
+
+        private int index;
+
+        public Replay(int start) {
+            this.index = start - 1;
+        }
+
+        // Index of the token the parser is looking at.
+        public int current() {
+            return index;
+        }
+
+        @Override
+        public Token nextToken() {
+            if (index < count - 1)
+                index++;
+
+            return tokens[index];
+        }
+
+        @Override
+        public int getLine() {
+            return lines[index];
+        }
+
+    }
+
+    // Global scope that hands back the variables of the replaced commands when
+    // they are declared again with the same name, type and constness, so that
+    // commands kept after the edit still refer to the right variables.
+    private static class RecyclingEnvironment extends Environment {
+
+        private final Deque<Variable> recycled = new ArrayDeque<Variable>();
+        private final List<Variable> log = new ArrayList<Variable>();
+        private boolean mismatch = false;
+        private int reused = 0;
+
+        public RecyclingEnvironment(int size) {
+            super(size);
+        }
+
+        @Override
+        protected Variable create(int line, String name, Type type, boolean constant) {
+            Variable var;
+            Variable old = mismatch ? null : recycled.peek();
+            if (old != null && old.getName().equals(name) && old.getType().equals(type)
+                    && old.isConstant() == constant) {
+                recycled.poll();
+                old.shiftLine(line - old.getLine());
+                reused++;
+                var = old;
+            } else {
+                mismatch = true;
+                var = super.create(line, name, type, constant);
+            }
+
+            log.add(var);
+            return var;
+        }
+
+    }
+
+    private static class LineShifter implements Visitor<Void> {
+
+        private final int delta;
+
+        public LineShifter(int delta) {
+            this.delta = delta;
+        }
+
+        private void shift(Command cmd) {
+            if (cmd != null)
+                cmd.accept(this);
+        }
+
+        private void shift(Expr expr) {
+            if (expr != null)
+                expr.accept(this);
+        }
+
+        @Override
+        public Void visit(AssignCommand cmd) {
+            cmd.shiftLine(delta);
+            shift(cmd.getRhs());
+            shift(cmd.getLhs());
+            return null;
+        }
+
+        @Override
+        public Void visit(BlocksCommand cmd) {
+            cmd.shiftLine(delta);
+            for (Command c : cmd.getCommands())
+                shift(c);
+            return null;
+        }
+
+        @Override
+        public Void visit(DumpCommand cmd) {
+            cmd.shiftLine(delta);
+            shift(cmd.getExpr());
+            return null;
+        }
+
+        @Override
+        public Void visit(ForCommand cmd) {
+            cmd.shiftLine(delta);
+            shift(cmd.getExpr());
+            shift(cmd.getBody());
+            return null;
+        }
+
+        @Override
+        public Void visit(IfCommand cmd) {
+            cmd.shiftLine(delta);
+            shift(cmd.getExpr());
+            shift(cmd.getThen());
+            shift(cmd.getElse());
+            return null;
+        }
+
+        @Override
+        public Void visit(InitializeCommand cmd) {
+            cmd.shiftLine(delta);
+            shift(cmd.getExpr());
+            return null;
+        }
+
+        @Override
+        public Void visit(PrintCommand cmd) {
+            cmd.shiftLine(delta);
+            shift(cmd.getExpr());
+            return null;
+        }
+
+        @Override
+        public Void visit(WhileCommand cmd) {
+            cmd.shiftLine(delta);
+            shift(cmd.getExpr());
+            shift(cmd.getBody());
+            return null;
+        }
+
+        @Override
+        public Void visit(AccessExpr expr) {
+            expr.shiftLine(delta);
+            shift(expr.getBase());
+            shift(expr.getIndex());
+            return null;
+        }
+
+        @Override
+        public Void visit(ActionExpr expr) {
+            expr.shiftLine(delta);
+            return null;
+        }
+
+        @Override
+        public Void visit(ArrayExpr expr) {
+            expr.shiftLine(delta);
+            for (Expr item : expr.getItems())
+                shift(item);
+            return null;
+        }
+
+        @Override
+        public Void visit(BinaryExpr expr) {
+            expr.shiftLine(delta);
+            shift(expr.getLeft());
+            shift(expr.getRight());
+            return null;
+        }
+
+        @Override
+        public Void visit(CastExpr expr) {
+            expr.shiftLine(delta);
+            shift(expr.getExpr());
+            return null;
+        }
+
+        @Override
+        public Void visit(ConditionalExpr expr) {
+            expr.shiftLine(delta);
+            shift(expr.getCond());
+            shift(expr.getTrueExpr());
+            shift(expr.getFalseExpr());
+            return null;
+        }
+
+        @Override
+        public Void visit(ConstExpr expr) {
+            expr.shiftLine(delta);
+            return null;
+        }
+
+        @Override
+        public Void visit(DictExpr expr) {
+            expr.shiftLine(delta);
+            for (DictItem item : expr.getItems()) {
+                shift(item.key);
+                shift(item.value);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(FunctionExpr expr) {
+            expr.shiftLine(delta);
+            shift(expr.getExpr());
+            shift(expr.getArg());
+            return null;
+        }
+
+        @Override
+        public Void visit(UnaryExpr expr) {
+            expr.shiftLine(delta);
+            shift(expr.getExpr());
+            return null;
+        }
+
+        // Variables are shared between commands; their lines are moved along
+        // with the command that declares them.
+        @Override
+        public Void visit(Variable expr) {
+            return null;
+        }
+
+    }
+
+}
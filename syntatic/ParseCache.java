@@ -0,0 +1,282 @@
+package syntatic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import error.InternalException;
+import interpreter.Environment;
+import interpreter.command.Command;
+import lexical.Keywords;
+import lexical.LexicalAnalysis;
+import lexical.SourceBuffer;
+import lexical.Token;
+
+// Keeps the trees produced by SyntaticAnalysis on disk, one file per source
+// text. Entries are named after a SHA-256 of the interpreter build and the
+// source, so an edited script or a rebuilt front end never finds a stale
+// tree. A missing, damaged or mismatching entry is treated as a miss.
+// Every store prunes the directory: entries unused for MAX_AGE go, then the
+// least recently used ones until the rest fits in the size limit.
+public class ParseCache {
+
+    private static final int MAGIC = 0x4d534943; // "MSIC"
+    private static final int FORMAT = 3;
+
+    private static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+    private static final long TMP_AGE = 60L * 60 * 1000;
+    private static final long DEFAULT_LIMIT = 64L * 1024 * 1024;
+
+    // The classes whose code decides what tree a source text turns into.
+    private static final Class<?>[] FRONT_END = {
+        LexicalAnalysis.class, Keywords.class, Token.class, SyntaticAnalysis.class,
+        Environment.class, TreeWriter.class, TreeReader.class, ParseCache.class
+    };
+
+    private static byte[] build;
+
+    private Path directory;
+    private long limit;
+
+    public ParseCache(Path directory, long limit) {
+        this.directory = directory;
+        this.limit = limit;
+    }
+
+    // Uses -Dmsi.cache=<dir> when given, ~/.cache/msi otherwise, and holds at
+    // most -Dmsi.cache.size=<megabytes> of entries, 64 by default.
+    public static ParseCache instance() {
+        long limit = DEFAULT_LIMIT;
+        String size = System.getProperty("msi.cache.size");
+        if (size != null) {
+            try {
+                limit = Long.parseLong(size) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                throw new InternalException("Invalid cache size: " + size);
+            }
+        }
+
+        String dir = System.getProperty("msi.cache");
+        if (dir != null)
+            return new ParseCache(Paths.get(dir), limit);
+
+        return new ParseCache(Paths.get(System.getProperty("user.home"), ".cache", "msi"), limit);
+    }
+
+    public Command load(SourceBuffer source) {
+        byte[] key = key(source);
+        Path path = directory.resolve(name(key));
+        if (!Files.isRegularFile(path))
+            return null;
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT)
+                throw new IOException("Unknown format");
+
+            byte[] stored = new byte[key.length];
+            in.get(stored);
+            if (!Arrays.equals(stored, key))
+                throw new IOException("Key mismatch");
+
+            int length = in.getInt();
+            int checksum = in.getInt();
+            if (length != in.remaining())
+                throw new IOException("Truncated entry");
+
+            CRC32 crc = new CRC32();
+            crc.update(in.slice());
+            if ((int) crc.getValue() != checksum)
+                throw new IOException("Checksum mismatch");
+
+            Command cmd = new TreeReader(in).read();
+            touch(path);
+            return cmd;
+        } catch (Exception e) {
+            discard(path);
+            return null;
+        }
+    }
+
+    // Best effort: a cache that cannot be written just stays empty.
+    public void store(SourceBuffer source, Command cmd) {
+        byte[] key = key(source);
+        Path tmp = null;
+
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(payload)) {
+                new TreeWriter(out).write(cmd);
+            }
+
+            byte[] tree = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(tree);
+
+            ByteArrayOutputStream entry = new ByteArrayOutputStream(tree.length + key.length + 16);
+            try (DataOutputStream out = new DataOutputStream(entry)) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.write(key);
+                out.writeInt(tree.length);
+                out.writeInt((int) crc.getValue());
+                out.write(tree);
+            }
+
+            // Written aside and renamed, so readers never see half an entry.
+            Files.createDirectories(directory);
+            tmp = Files.createTempFile(directory, "entry", ".tmp");
+            Files.write(tmp, entry.toByteArray());
+            Files.move(tmp, directory.resolve(name(key)),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception | StackOverflowError e) {
+            if (tmp != null)
+                discard(tmp);
+        }
+
+        prune();
+    }
+
+    // Also best effort: entries another process removes first are skipped.
+    public void prune() {
+        List<Entry> entries = new ArrayList<Entry>();
+        long now = System.currentTimeMillis();
+        long total = 0;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path path : files) {
+                String file = path.getFileName().toString();
+                try {
+                    long modified = Files.getLastModifiedTime(path).toMillis();
+                    if (file.endsWith(".tmp")) {
+                        // Left behind by a writer that died before the rename.
+                        if (now - modified > TMP_AGE)
+                            discard(path);
+                    } else if (file.endsWith(".ast")) {
+                        if (now - modified > MAX_AGE) {
+                            discard(path);
+                        } else {
+                            Entry entry = new Entry(path, modified, Files.size(path));
+                            entries.add(entry);
+                            total += entry.size;
+                        }
+                    }
+                } catch (IOException e) {
+                    // Gone already.
+                }
+            }
+        } catch (IOException e) {
+            return;
+        }
+
+        if (total <= limit)
+            return;
+
+        Collections.sort(entries);
+        for (Entry entry : entries) {
+            if (total <= limit)
+                break;
+
+            discard(entry.path);
+            total -= entry.size;
+        }
+    }
+
+    private static byte[] key(SourceBuffer source) {
+        MessageDigest md = sha256();
+        md.update(build());
+        source.digest(md);
+        return md.digest();
+    }
+
+    private static String name(byte[] key) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : key)
+            sb.append(String.format("%02x", b & 0xff));
+
+        return sb.append(".ast").toString();
+    }
+
+    // Fingerprint of the running front end: the bytes of its class files.
+    private static synchronized byte[] build() {
+        if (build == null) {
+            MessageDigest md = sha256();
+            md.update(ByteBuffer.allocate(4).putInt(FORMAT).array());
+
+            for (Class<?> c : FRONT_END) {
+                String resource = c.getSimpleName() + ".class";
+                try (InputStream is = c.getResourceAsStream(resource)) {
+                    if (is == null)
+                        throw new InternalException("Unable to find " + resource);
+
+                    md.update(is.readAllBytes());
+                } catch (IOException e) {
+                    throw new InternalException("Unable to read " + resource);
+                }
+            }
+
+            build = md.digest();
+        }
+
+        return build;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalException("SHA-256 not available");
+        }
+    }
+
+    // Hits refresh the time, so pruning drops the least recently used first.
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // The entry just looks older than it is.
+        }
+    }
+
+    private static void discard(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Nothing else to do.
+        }
+    }
+
+    private static class Entry implements Comparable<Entry> {
+
+        final Path path;
+        final long modified;
+        final long size;
+
+        Entry(Path path, long modified, long size) {
+            this.path = path;
+            this.modified = modified;
+            this.size = size;
+        }
+
+        public int compareTo(Entry other) {
+            return Long.compare(modified, other.modified);
+        }
+
+    }
+
+}
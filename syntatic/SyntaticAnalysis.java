@@ -5,12 +5,12 @@ import static error.LanguageException.Error.UnexpectedEOF;
 import static error.LanguageException.Error.UnexpectedLexeme;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import error.InternalException;
 import error.LanguageException;
 import interpreter.Environment;
-import interpreter.Interpreter;
 import interpreter.command.AssignCommand;
 import interpreter.command.BlocksCommand;
 import interpreter.command.Command;
@@ -45,21 +45,98 @@ import interpreter.type.primitive.IntType;
 import interpreter.type.primitive.PrimitiveType;
 import interpreter.type.primitive.StringType;
 import interpreter.value.Value;
-import lexical.LexicalAnalysis;
 import lexical.Token;
+import lexical.TokenSource;
 
 public class SyntaticAnalysis {
 
-    private LexicalAnalysis lex;
+    // FIRST sets of the grammar.
+    private static final TokenSet FIRST_BOOL = TokenSet.of(Token.Type.FALSE, Token.Type.TRUE);
+    private static final TokenSet FIRST_CONST = FIRST_BOOL.union(TokenSet.of(
+            Token.Type.INTEGER_LITERAL, Token.Type.FLOAT_LITERAL,
+            Token.Type.CHAR_LITERAL, Token.Type.STRING_LITERAL));
+    private static final TokenSet FIRST_ACTION = TokenSet.of(Token.Type.READ, Token.Type.RANDOM);
+    private static final TokenSet FIRST_CAST = TokenSet.of(Token.Type.TO_BOOL, Token.Type.TO_INT,
+            Token.Type.TO_FLOAT, Token.Type.TO_CHAR, Token.Type.TO_STRING);
+    private static final TokenSet FIRST_RVALUE = FIRST_CONST.union(FIRST_ACTION).union(FIRST_CAST)
+            .union(TokenSet.of(Token.Type.ARRAY, Token.Type.DICT, Token.Type.NAME));
+    private static final TokenSet FIRST_EXPR = FIRST_RVALUE.union(TokenSet.of(
+            Token.Type.NOT, Token.Type.SUB, Token.Type.OPEN_PAR));
+    private static final TokenSet FIRST_DECL = TokenSet.of(Token.Type.VAR, Token.Type.LET);
+    private static final TokenSet FIRST_PRINT = TokenSet.of(Token.Type.PRINT, Token.Type.PRINTLN);
+    private static final TokenSet FIRST_CMD = FIRST_EXPR.union(FIRST_DECL).union(FIRST_PRINT)
+            .union(TokenSet.of(Token.Type.OPEN_CUR, Token.Type.DUMP, Token.Type.IF,
+                    Token.Type.WHILE, Token.Type.FOR));
+    private static final TokenSet FIRST_PRIMITIVE = TokenSet.of(Token.Type.BOOL, Token.Type.INT,
+            Token.Type.FLOAT, Token.Type.CHAR, Token.Type.STRING);
+    private static final TokenSet FIRST_COMPOSED = TokenSet.of(Token.Type.ARRAY, Token.Type.DICT);
+    private static final TokenSet FIRST_FNOARGS = TokenSet.of(Token.Type.COUNT, Token.Type.EMPTY,
+            Token.Type.KEYS, Token.Type.VALUES);
+    private static final TokenSet FIRST_FONEARG = TokenSet.of(Token.Type.APPEND, Token.Type.CONTAINS);
+
+    private static final TokenSet PREFIX_OPS = TokenSet.of(Token.Type.NOT, Token.Type.SUB);
+
+    // Binary operators by token type, and their precedence levels.
+    private static final int COND = 1;
+    private static final int REL = 2;
+    private static final int ARITH = 3;
+    private static final int TERM = 4;
+
+    private static final BinaryExpr.Op[] BINARY_OPS = new BinaryExpr.Op[Token.Type.values().length];
+    private static final int[] PRECEDENCE = new int[BinaryExpr.Op.values().length];
+
+    static {
+        binary(Token.Type.AND, BinaryExpr.Op.And, COND);
+        binary(Token.Type.OR, BinaryExpr.Op.Or, COND);
+        binary(Token.Type.LOWER_THAN, BinaryExpr.Op.LowerThan, REL);
+        binary(Token.Type.GREATER_THAN, BinaryExpr.Op.GreaterThan, REL);
+        binary(Token.Type.LOWER_EQUAL, BinaryExpr.Op.LowerEqual, REL);
+        binary(Token.Type.GREATER_EQUAL, BinaryExpr.Op.GreaterEqual, REL);
+        binary(Token.Type.EQUALS, BinaryExpr.Op.Equal, REL);
+        binary(Token.Type.NOT_EQUALS, BinaryExpr.Op.NotEqual, REL);
+        binary(Token.Type.ADD, BinaryExpr.Op.Add, ARITH);
+        binary(Token.Type.SUB, BinaryExpr.Op.Sub, ARITH);
+        binary(Token.Type.MUL, BinaryExpr.Op.Mul, TERM);
+        binary(Token.Type.DIV, BinaryExpr.Op.Div, TERM);
+    }
+
+    private static void binary(Token.Type type, BinaryExpr.Op op, int precedence) {
+        BINARY_OPS[type.ordinal()] = op;
+        PRECEDENCE[op.ordinal()] = precedence;
+    }
+
+    private TokenSource lex;
     private Token current;
     private Token previous;
+    private int currentLine;
+    private int previousLine;
     private Environment environment;
+    private List<Variable> declarations;
 
-    public SyntaticAnalysis(LexicalAnalysis lex) {
+    // Expression parser stacks, shared by nested calls to procExpr.
+    private Expr[] operands;
+    private int operandCount;
+    private Object[] operators;
+    private int[] operatorLines;
+    private int operatorCount;
+
+    public SyntaticAnalysis(TokenSource lex) {
+        this(lex, new Environment());
+    }
+
+    public SyntaticAnalysis(TokenSource lex, Environment environment) {
         this.lex = lex;
         this.current = lex.nextToken();
+        this.currentLine = lex.getLine();
         this.previous = null;
-        this.environment = Interpreter.globals;
+        this.previousLine = 0;
+        this.environment = environment;
+        this.declarations = new ArrayList<Variable>();
+        this.operands = new Expr[16];
+        this.operandCount = 0;
+        this.operators = new Object[16];
+        this.operatorLines = new int[16];
+        this.operatorCount = 0;
     }
 
     public Command process() {
@@ -68,10 +145,27 @@ public class SyntaticAnalysis {
         return cmd;
     }
 
+    // Parses a single top-level command, or returns null once the input is
+    // exhausted. Used by front ends that handle the program command by command.
+    public Command next() {
+        if (check(FIRST_CMD))
+            return procCmd();
+
+        eat(Token.Type.END_OF_FILE);
+        return null;
+    }
+
+    // Every variable declared so far, in source order, nested scopes included.
+    public List<Variable> getDeclarations() {
+        return declarations;
+    }
+
     private void advance() {
         // System.out.println("Found " + current);
         previous = current;
+        previousLine = currentLine;
         current = lex.nextToken();
+        currentLine = lex.getLine();
     }
 
     private void eat(Token.Type type) {
@@ -83,16 +177,24 @@ public class SyntaticAnalysis {
         }
     }
 
-    private boolean check(Token.Type... types) {
-        for (Token.Type type : types) {
-            if (current.type == type)
-                return true;
-        }
+    private boolean check(Token.Type type) {
+        return current.type == type;
+    }
+
+    private boolean check(TokenSet types) {
+        return types.contains(current.type);
+    }
 
-        return false;
+    private boolean match(Token.Type type) {
+        if (check(type)) {
+            advance();
+            return true;
+        } else {
+            return false;
+        }
     }
 
-    private boolean match(Token.Type... types) {
+    private boolean match(TokenSet types) {
         if (check(types)) {
             advance();
             return true;
@@ -102,37 +204,24 @@ public class SyntaticAnalysis {
     }
 
     private void reportError() {
-        int line = current.line;
+        int line = currentLine;
         switch (current.type) {
             case INVALID_TOKEN:
-                throw LanguageException.instance(line, InvalidLexeme, current.lexeme);
+                throw LanguageException.instance(line, InvalidLexeme, current.getLexeme());
             case UNEXPECTED_EOF:
             case END_OF_FILE:
                 throw LanguageException.instance(line, UnexpectedEOF);
             default:
-                throw LanguageException.instance(line, UnexpectedLexeme, current.lexeme);
+                throw LanguageException.instance(line, UnexpectedLexeme, current.getLexeme());
         }
     }
 
     // <code> ::= { <cmd> }
     private BlocksCommand procCode() {
-        int line = current.line;
+        int line = currentLine;
         List<Command> cmds = new ArrayList<Command>();
 
-        while (check(Token.Type.OPEN_CUR,
-                Token.Type.VAR, Token.Type.LET,
-                Token.Type.PRINT, Token.Type.PRINTLN,
-                Token.Type.DUMP, Token.Type.IF,
-                Token.Type.WHILE, Token.Type.FOR,
-                Token.Type.NOT, Token.Type.SUB,
-                Token.Type.OPEN_PAR, Token.Type.FALSE,
-                Token.Type.TRUE, Token.Type.INTEGER_LITERAL,
-                Token.Type.FLOAT_LITERAL, Token.Type.CHAR_LITERAL,
-                Token.Type.STRING_LITERAL, Token.Type.READ,
-                Token.Type.RANDOM, Token.Type.TO_BOOL,
-                Token.Type.TO_INT, Token.Type.TO_FLOAT,
-                Token.Type.TO_CHAR, Token.Type.TO_STRING,
-                Token.Type.ARRAY, Token.Type.DICT, Token.Type.NAME)) {
+        while (check(FIRST_CMD)) {
             Command cmd = procCmd();
             if (cmd != null)
                 cmds.add(cmd);
@@ -150,9 +239,9 @@ public class SyntaticAnalysis {
 
         if (check(Token.Type.OPEN_CUR)) {
             cmd = procBlock();
-        } else if (check(Token.Type.VAR, Token.Type.LET)) {
+        } else if (check(FIRST_DECL)) {
             cmd = procDecl();
-        } else if (check(Token.Type.PRINT, Token.Type.PRINTLN)) {
+        } else if (check(FIRST_PRINT)) {
             cmd = procPrint();
         } else if (check(Token.Type.DUMP)) {
             cmd = procDump();
@@ -162,15 +251,7 @@ public class SyntaticAnalysis {
             cmd = procWhile();
         } else if (check(Token.Type.FOR)) {
             cmd = procFor();
-        } else if (check(Token.Type.NOT, Token.Type.SUB,
-                Token.Type.OPEN_PAR, Token.Type.FALSE,
-                Token.Type.TRUE, Token.Type.INTEGER_LITERAL,
-                Token.Type.FLOAT_LITERAL, Token.Type.CHAR_LITERAL,
-                Token.Type.STRING_LITERAL, Token.Type.READ,
-                Token.Type.RANDOM, Token.Type.TO_BOOL,
-                Token.Type.TO_INT, Token.Type.TO_FLOAT,
-                Token.Type.TO_CHAR, Token.Type.TO_STRING,
-                Token.Type.ARRAY, Token.Type.DICT, Token.Type.NAME)) {
+        } else if (check(FIRST_EXPR)) {
             cmd = procAssign();
         } else {
             reportError();
@@ -215,17 +296,18 @@ public class SyntaticAnalysis {
     // <expr> ] } [';']
     private BlocksCommand procVar() {
         eat(Token.Type.VAR);
-        int bline = previous.line;
+        int bline = previousLine;
 
         Token name = procName();
+        int nline = previousLine;
         eat(Token.Type.COLON);
         Type type = procType();
 
-        Variable v = this.environment.declare(name, type, false);
+        Variable v = declare(name, nline, type, false);
 
         Expr expr;
 
-        int line = previous.line;
+        int line = previousLine;
         List<Command> cmds = new ArrayList<Command>();
         AssignCommand acmd;
 
@@ -239,14 +321,15 @@ public class SyntaticAnalysis {
         while (match(Token.Type.COMMA)) {
 
             name = procName();
+            nline = previousLine;
             eat(Token.Type.COLON);
             type = procType();
 
-            v = this.environment.declare(name, type, false);
+            v = declare(name, nline, type, false);
 
             if (match(Token.Type.ASSIGN)) {
                 expr = procExpr();
-                line = previous.line;
+                line = previousLine;
                 acmd = new AssignCommand(line, expr, v);
                 cmds.add(acmd);
             }
@@ -262,16 +345,17 @@ public class SyntaticAnalysis {
     // } [';']
     private BlocksCommand procLet() {
         eat(Token.Type.LET);
-        int bline = previous.line;
+        int bline = previousLine;
 
         Token name = procName();
+        int nline = previousLine;
         eat(Token.Type.COLON);
         Type type = procType();
 
-        Variable v = this.environment.declare(name, type, true);
+        Variable v = declare(name, nline, type, true);
 
         eat(Token.Type.ASSIGN);
-        int line = previous.line;
+        int line = previousLine;
         Expr expr = procExpr();
 
         List<Command> cmds = new ArrayList<Command>();
@@ -280,15 +364,16 @@ public class SyntaticAnalysis {
 
         while (match(Token.Type.COMMA)) {
             name = procName();
+            nline = previousLine;
             eat(Token.Type.COLON);
             type = procType();
 
-            v = this.environment.declare(name, type, true);
+            v = declare(name, nline, type, true);
 
             eat(Token.Type.ASSIGN);
 
             expr = procExpr();
-            line = previous.line;
+            line = previousLine;
 
             icmd = new InitializeCommand(line, v, expr);
             cmds.add(icmd);
@@ -303,12 +388,12 @@ public class SyntaticAnalysis {
     // <print> ::= (print | println) '(' <expr> ')' [';']
     private PrintCommand procPrint() {
         boolean newline = false;
-        if (match(Token.Type.PRINT, Token.Type.PRINTLN)) {
+        if (match(FIRST_PRINT)) {
             newline = (previous.type == Token.Type.PRINTLN);
         } else {
             reportError();
         }
-        int line = previous.line;
+        int line = previousLine;
 
         eat(Token.Type.OPEN_PAR);
         Expr expr = procExpr();
@@ -323,7 +408,7 @@ public class SyntaticAnalysis {
     // <dump> ::= dump '(' <expr> ')' [';']
     private DumpCommand procDump() {
         eat(Token.Type.DUMP);
-        int line = previous.line;
+        int line = previousLine;
         eat(Token.Type.OPEN_PAR);
         Expr expr = procExpr();
         eat(Token.Type.CLOSE_PAR);
@@ -336,7 +421,7 @@ public class SyntaticAnalysis {
     // <if> ::= if <expr> <cmd> [ else <cmd> ]
     private IfCommand procIf() {
         eat(Token.Type.IF);
-        int line = previous.line;
+        int line = previousLine;
 
         Expr expr = procExpr();
         Command thenCmd = procCmd();
@@ -354,7 +439,7 @@ public class SyntaticAnalysis {
     // <while> ::= while <expr> <cmd>
     private WhileCommand procWhile() {
         eat(Token.Type.WHILE);
-        int line = previous.line;
+        int line = previousLine;
 
         Expr expr = procExpr();
         Command cmd = procCmd();
@@ -369,7 +454,7 @@ public class SyntaticAnalysis {
         eat(Token.Type.FOR);
 
         Token name = null;
-        int line = previous.line;
+        int line = previousLine;
         Type type = null;
 
         Environment old = environment;
@@ -378,15 +463,16 @@ public class SyntaticAnalysis {
         Variable v = null;
         if (check(Token.Type.NAME)) {
             name = procName();
-            v = this.environment.get(name);
-        } else if (match(Token.Type.VAR, Token.Type.LET)) {
+            v = this.environment.get(name, previousLine);
+        } else if (match(FIRST_DECL)) {
             boolean varOuLet = previous.type == Token.Type.VAR;
 
             name = procName();
+            int nline = previousLine;
             eat(Token.Type.COLON);
             type = procType();
 
-            v = this.environment.declare(name, type, varOuLet);
+            v = declare(name, nline, type, varOuLet);
 
         } else {
             reportError();
@@ -404,13 +490,13 @@ public class SyntaticAnalysis {
 
     // <assign> ::= [ <expr> '=' ] <expr> [ ';' ]
     private AssignCommand procAssign() {
-        int line = current.line;
+        int line = currentLine;
         Expr rhs = procExpr();
 
         SetExpr lhs = null;
         if (match(Token.Type.ASSIGN)) {
             if (!(rhs instanceof SetExpr))
-                throw LanguageException.instance(previous.line, LanguageException.Error.InvalidOperation);
+                throw LanguageException.instance(previousLine, LanguageException.Error.InvalidOperation);
 
             lhs = (SetExpr) rhs;
             rhs = procExpr();
@@ -424,10 +510,9 @@ public class SyntaticAnalysis {
 
     // <type> ::= <primitive> | <composed>
     private Type procType() {
-        if (check(Token.Type.BOOL, Token.Type.INT, Token.Type.FLOAT,
-                Token.Type.CHAR, Token.Type.STRING)) {
+        if (check(FIRST_PRIMITIVE)) {
             return procPrimitive();
-        } else if (check(Token.Type.ARRAY, Token.Type.DICT)) {
+        } else if (check(FIRST_COMPOSED)) {
             return procComposed();
         } else {
             reportError();
@@ -440,8 +525,7 @@ public class SyntaticAnalysis {
 
         PrimitiveType ptype = null;
 
-        if (match(Token.Type.BOOL, Token.Type.INT,
-                Token.Type.FLOAT, Token.Type.CHAR, Token.Type.STRING)) {
+        if (match(FIRST_PRIMITIVE)) {
 
             switch (previous.type) {
 
@@ -518,222 +602,149 @@ public class SyntaticAnalysis {
         return dtype;
     }
 
-    // <expr> ::= <cond> [ '?' <expr> ':' <expr> ]
+    // <expr>   ::= <cond> [ '?' <expr> ':' <expr> ]
+    // <cond>   ::= <rel> { ( '&&' | '||' ) <rel> }
+    // <rel>    ::= <arith> [ ( '<' | '>' | '<=' | '>=' | '==' | '!=' ) <arith> ]
+    // <arith>  ::= <term> { ( '+' | '-' ) <term> }
+    // <term>   ::= <prefix> { ( '*' | '/' ) <prefix> }
+    // <prefix> ::= [ '!' | '-' ] <factor>
+    // <factor> ::= ( '(' <expr> ')' | <rvalue> ) <function>
+    //
+    // Parsed by precedence climbing over explicit stacks. Parentheses and
+    // ternaries push a marker instead of recursing, so deeply nested
+    // expressions do not grow the Java stack.
     private Expr procExpr() {
+        int operandBase = operandCount;
+        int operatorBase = operatorCount;
 
-        Expr condExpr = procCond();
-
-        if (match(Token.Type.TERNARY)) {
-
-            int line = previous.line;
-
-            Expr trueExpr = procExpr();
-
-            eat(Token.Type.COLON);
-
-            Expr falseExpr = procExpr();
-
-            ConditionalExpr condExprStrong = new ConditionalExpr(line, condExpr, trueExpr, falseExpr);
-
-            return condExprStrong;
-        }
-
-        return condExpr;
-    }
-
-    // <cond> ::= <rel> { ( '&&' | '||' ) <rel> }
-    private Expr procCond() {
-
-        Expr leftExpr = procRel();
-
-        BinaryExpr.Op op = null;
-        int line = -1;
-
-        while (match(Token.Type.AND, Token.Type.OR)) {
-
-            switch (previous.type) {
-                case AND:
-                    op = BinaryExpr.Op.And;
-                    break;
-
-                case OR:
-                    op = BinaryExpr.Op.Or;
-                    break;
+        for (;;) {
+            // An operand is expected.
+            if (match(PREFIX_OPS))
+                pushOperator(previous.type == Token.Type.NOT ? UnaryExpr.Op.Not : UnaryExpr.Op.Neg, previousLine);
 
-                default:
-                    throw new InternalError("Unreachable");
+            if (match(Token.Type.OPEN_PAR)) {
+                pushOperator(Token.Type.OPEN_PAR, previousLine);
+                continue;
             }
 
-            line = previous.line;
-
-            Expr rightExpr = procRel();
-
-            if (op != null)
-                leftExpr = new BinaryExpr(line, leftExpr, op, rightExpr);
-        }
-
-        return leftExpr;
-    }
-
-    // <rel> ::= <arith> [ ( '<' | '>' | '<=' | '>=' | '==' | '!=' ) <arith> ]
-    private Expr procRel() {
-
-        Expr leftExpr = procArith();
-
-        if (match(Token.Type.LOWER_THAN, Token.Type.GREATER_THAN,
-                Token.Type.LOWER_EQUAL, Token.Type.GREATER_EQUAL,
-                Token.Type.EQUALS, Token.Type.NOT_EQUALS)) {
-            int line = previous.line;
-
-            BinaryExpr.Op op;
-            switch (previous.type) {
-                case LOWER_THAN:
-                    op = BinaryExpr.Op.LowerThan;
-                    break;
-
-                case GREATER_THAN:
-                    op = BinaryExpr.Op.GreaterThan;
-                    break;
-
-                case LOWER_EQUAL:
-                    op = BinaryExpr.Op.LowerEqual;
-                    break;
-
-                case GREATER_EQUAL:
-                    op = BinaryExpr.Op.GreaterEqual;
-                    break;
-
-                case EQUALS:
-                    op = BinaryExpr.Op.Equal;
+            pushOperand(procFunction(procRValue()));
+            applyPrefix(operatorBase);
+
+            // An operator is expected.
+            boolean end = false;
+            for (;;) {
+                if (!end) {
+                    BinaryExpr.Op op = BINARY_OPS[current.type.ordinal()];
+                    if (op != null) {
+                        if (reduce(operatorBase, PRECEDENCE[op.ordinal()])) {
+                            advance();
+                            pushOperator(op, previousLine);
+                            break;
+                        }
+                    } else if (check(Token.Type.TERNARY)) {
+                        reduce(operatorBase, COND);
+                        advance();
+                        pushOperator(Token.Type.TERNARY, previousLine);
+                        break;
+                    }
+                }
+
+                // The innermost <expr> ends here.
+                end = false;
+                reduce(operatorBase, COND);
+                if (operatorCount == operatorBase) {
+                    if (operandCount != operandBase + 1)
+                        throw new InternalException("Unbalanced expression stack");
+
+                    return popOperand();
+                }
+
+                int line = operatorLines[operatorCount - 1];
+                Object marker = popOperator();
+                if (marker == Token.Type.OPEN_PAR) {
+                    eat(Token.Type.CLOSE_PAR);
+                    pushOperand(procFunction(popOperand()));
+                    applyPrefix(operatorBase);
+                } else if (marker == Token.Type.TERNARY) {
+                    eat(Token.Type.COLON);
+                    pushOperator(Token.Type.COLON, line);
                     break;
-
-                case NOT_EQUALS:
-                    op = BinaryExpr.Op.NotEqual;
-                    break;
-
-                default:
-                    throw new InternalError("Unreachable");
+                } else {
+                    Expr falseExpr = popOperand();
+                    Expr trueExpr = popOperand();
+                    Expr condExpr = popOperand();
+                    pushOperand(new ConditionalExpr(line, condExpr, trueExpr, falseExpr));
+
+                    // A ternary also ends the <expr> that contains it.
+                    end = true;
+                }
             }
-
-            Expr right = procArith();
-            leftExpr = new BinaryExpr(line, leftExpr, op, right);
         }
-
-        return leftExpr;
     }
 
-    // <arith> ::= <term> { ( '+' | '-' ) <term> }
-    private Expr procArith() {
-
-        Expr leftExpr = procTerm();
-
-        while (match(Token.Type.ADD, Token.Type.SUB)) {
-
-            BinaryExpr.Op op = null;
-
-            switch (previous.type) {
-                case ADD:
-                    op = BinaryExpr.Op.Add;
-                    break;
-
-                case SUB:
-                    op = BinaryExpr.Op.Sub;
-                    break;
-
-                default:
-                    throw new InternalError("Unreachable");
-
-            }
-
-            int line = previous.line;
-
-            Expr rightExpr = procTerm();
-
-            if (op != null)
-                leftExpr = new BinaryExpr(line, leftExpr, op, rightExpr);
+    // Builds the binary expressions whose operators bind at least as tightly
+    // as the given precedence. Returns false when an operator of that
+    // precedence may not follow, since <rel> takes a single operator.
+    private boolean reduce(int operatorBase, int precedence) {
+        while (operatorCount > operatorBase
+                && operators[operatorCount - 1] instanceof BinaryExpr.Op) {
+            BinaryExpr.Op op = (BinaryExpr.Op) operators[operatorCount - 1];
+            int level = PRECEDENCE[op.ordinal()];
+            if (level < precedence)
+                break;
+
+            int line = operatorLines[operatorCount - 1];
+            popOperator();
+
+            Expr right = popOperand();
+            Expr left = popOperand();
+            pushOperand(new BinaryExpr(line, left, op, right));
+
+            if (level == REL && precedence == REL)
+                return false;
         }
 
-        return leftExpr;
+        return true;
     }
 
-    // <term> ::= <prefix> { ( '*' | '/' ) <prefix> }
-    private Expr procTerm() {
-
-        Expr leftExpr = procPrefix();
-
-        BinaryExpr.Op op = null;
-        int line = -1;
-
-        while (match(Token.Type.MUL, Token.Type.DIV)) {
-
-            switch (previous.type) {
-                case MUL:
-                    op = BinaryExpr.Op.Mul;
-                    break;
-
-                case DIV:
-                    op = BinaryExpr.Op.Div;
-                    break;
-
-                default:
-                    throw new InternalError("Unreachable");
-            }
-
-            line = previous.line;
-
-            Expr rightExpr = procPrefix();
-
-            if (op != null)
-                leftExpr = new BinaryExpr(line, leftExpr, op, rightExpr);
+    // Applies a pending '!' or '-' to the factor just completed.
+    private void applyPrefix(int operatorBase) {
+        if (operatorCount > operatorBase
+                && operators[operatorCount - 1] instanceof UnaryExpr.Op) {
+            int line = operatorLines[operatorCount - 1];
+            UnaryExpr.Op op = (UnaryExpr.Op) popOperator();
+            pushOperand(new UnaryExpr(line, popOperand(), op));
         }
-
-        return leftExpr;
     }
 
-    // <prefix> ::= [ '!' | '-' ] <factor>
-    private Expr procPrefix() {
-
-        UnaryExpr.Op op = null;
-        int line = -1;
-
-        if (match(Token.Type.NOT, Token.Type.SUB)) {
-            switch (previous.type) {
-                case NOT:
-                    op = UnaryExpr.Op.Not;
-                    break;
-                case SUB:
-                    op = UnaryExpr.Op.Neg;
-                    break;
-                default:
-                    throw new InternalError("Unreachable");
-            }
+    private void pushOperand(Expr expr) {
+        if (operandCount == operands.length)
+            operands = Arrays.copyOf(operands, operandCount * 2);
 
-            line = previous.line;
-        }
-
-        Expr expr = procFactor();
-
-        if (op != null)
-            expr = new UnaryExpr(line, expr, op);
+        operands[operandCount++] = expr;
+    }
 
+    private Expr popOperand() {
+        Expr expr = operands[--operandCount];
+        operands[operandCount] = null;
         return expr;
     }
 
-    // <factor> ::= ( '(' <expr> ')' | <rvalue> ) <function>
-    private Expr procFactor() {
-
-        Expr expr;
-
-        if (match(Token.Type.OPEN_PAR)) {
-            expr = procExpr();
-            eat(Token.Type.CLOSE_PAR);
-        } else {
-            expr = procRValue();
+    private void pushOperator(Object op, int line) {
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, operatorCount * 2);
+            operatorLines = Arrays.copyOf(operatorLines, operatorCount * 2);
         }
 
-        expr  = procFunction(expr);
+        operators[operatorCount] = op;
+        operatorLines[operatorCount] = line;
+        operatorCount++;
+    }
 
-        return expr;
+    private Object popOperator() {
+        Object op = operators[--operatorCount];
+        operators[operatorCount] = null;
+        return op;
     }
 
     // <rvalue> ::= <const> | <action> | <cast> | <array> | <dict> | <lvalue>
@@ -741,14 +752,11 @@ public class SyntaticAnalysis {
 
         Expr expr = null;
 
-        if (check(Token.Type.FALSE, Token.Type.TRUE,
-                Token.Type.INTEGER_LITERAL, Token.Type.FLOAT_LITERAL,
-                Token.Type.CHAR_LITERAL, Token.Type.STRING_LITERAL)) {
+        if (check(FIRST_CONST)) {
             expr = procConst();
-        } else if (check(Token.Type.READ, Token.Type.RANDOM)) {
+        } else if (check(FIRST_ACTION)) {
             expr = procAction();
-        } else if (check(Token.Type.TO_BOOL, Token.Type.TO_INT,
-                Token.Type.TO_FLOAT, Token.Type.TO_CHAR, Token.Type.TO_STRING)) {
+        } else if (check(FIRST_CAST)) {
             expr = procCast();
         } else if (check(Token.Type.ARRAY)) {
             expr = procArray();
@@ -768,7 +776,7 @@ public class SyntaticAnalysis {
 
         Value value = null;
 
-        if (check(Token.Type.FALSE, Token.Type.TRUE)) {
+        if (check(FIRST_BOOL)) {
             value = procBool();
         } else if (check(Token.Type.INTEGER_LITERAL)) {
             value = procInt();
@@ -782,7 +790,7 @@ public class SyntaticAnalysis {
             reportError();
         }
 
-        ConstExpr cexpr = new ConstExpr(previous.line, value);
+        ConstExpr cexpr = new ConstExpr(previousLine, value);
         return cexpr;
     }
 
@@ -791,7 +799,7 @@ public class SyntaticAnalysis {
 
         Value value = null;
 
-        if (match(Token.Type.FALSE, Token.Type.TRUE)) {
+        if (match(FIRST_BOOL)) {
             switch (previous.type) {
                 case FALSE:
                     value = new Value(BoolType.instance(), false);
@@ -814,7 +822,7 @@ public class SyntaticAnalysis {
 
         ActionExpr.Op op = null;
 
-        if (match(Token.Type.READ, Token.Type.RANDOM)) {
+        if (match(FIRST_ACTION)) {
             switch (previous.type) {
                 case READ:
                     op = ActionExpr.Op.Read;
@@ -829,7 +837,7 @@ public class SyntaticAnalysis {
             reportError();
         }
 
-        int line = previous.line;
+        int line = previousLine;
 
         eat(Token.Type.OPEN_PAR);
         eat(Token.Type.CLOSE_PAR);
@@ -843,8 +851,7 @@ public class SyntaticAnalysis {
 
         CastExpr.Op op = null;
 
-        if (match(Token.Type.TO_BOOL, Token.Type.TO_INT, Token.Type.TO_FLOAT, Token.Type.TO_CHAR,
-                Token.Type.TO_STRING)) {
+        if (match(FIRST_CAST)) {
             switch (previous.type) {
                 case TO_BOOL:
                     op = CastExpr.Op.ToBool;
@@ -873,7 +880,7 @@ public class SyntaticAnalysis {
             reportError();
         }
 
-        int line = previous.line;
+        int line = previousLine;
 
         eat(Token.Type.OPEN_PAR);
         Expr expr = procExpr();
@@ -886,7 +893,7 @@ public class SyntaticAnalysis {
     // <array> ::= <arraytype> '(' [ <expr> { ',' <expr> } ] ')'
     private ArrayExpr procArray() {
 
-        int line = current.line;
+        int line = currentLine;
 
         ArrayType atype = procArrayType();
 
@@ -912,7 +919,7 @@ public class SyntaticAnalysis {
     // <dict> ::= <dictype> '(' [ <expr> ':' <expr> { ',' <expr> ':' <expr> } ] ')'
     private DictExpr procDict() {
 
-        int line = current.line;
+        int line = currentLine;
 
         DictType dtype = procDictType();
 
@@ -949,10 +956,10 @@ public class SyntaticAnalysis {
     private SetExpr procLValue() {
 
         Token name = procName();
-        SetExpr sexpr = this.environment.get(name);
+        SetExpr sexpr = this.environment.get(name, previousLine);
 
         while (match(Token.Type.OPEN_BRA)) {
-            int line = previous.line;
+            int line = previousLine;
 
             Expr index = procExpr();
             eat(Token.Type.CLOSE_BRA);
@@ -968,9 +975,9 @@ public class SyntaticAnalysis {
 
         while (match(Token.Type.DOT)) {
 
-            if (check(Token.Type.COUNT, Token.Type.EMPTY, Token.Type.KEYS, Token.Type.VALUES))
+            if (check(FIRST_FNOARGS))
                 expr = procFNoArgs(expr);
-            else if (check(Token.Type.APPEND, Token.Type.CONTAINS))
+            else if (check(FIRST_FONEARG))
                 expr = procFOneArg(expr);
             else
                 reportError();
@@ -984,9 +991,9 @@ public class SyntaticAnalysis {
 
         FunctionExpr.Op op = null;
 
-        int line = current.line;
+        int line = currentLine;
 
-        if (match(Token.Type.COUNT, Token.Type.EMPTY, Token.Type.KEYS, Token.Type.VALUES)) {
+        if (match(FIRST_FNOARGS)) {
 
             switch (previous.type) {
                 case COUNT:
@@ -1025,9 +1032,9 @@ public class SyntaticAnalysis {
 
         FunctionExpr.Op op = null;
 
-        int line = current.line;
+        int line = currentLine;
 
-        if (match(Token.Type.APPEND, Token.Type.CONTAINS)) {
+        if (match(FIRST_FONEARG)) {
 
             switch (previous.type) {
                 case APPEND:
@@ -1055,31 +1062,37 @@ public class SyntaticAnalysis {
         return fexExpr;
     }
 
+    private Variable declare(Token name, int line, Type type, boolean constant) {
+        Variable v = this.environment.declare(name, line, type, constant);
+        declarations.add(v);
+        return v;
+    }
+
     private Token procName() {
         eat(Token.Type.NAME);
         return previous;
     }
 
     private Value procInt() {
-        Value v = current.literal;
+        Value v = current.getLiteral();
         eat(Token.Type.INTEGER_LITERAL);
         return v;
     }
 
     private Value procFloat() {
-        Value v = current.literal;
+        Value v = current.getLiteral();
         eat(Token.Type.FLOAT_LITERAL);
         return v;
     }
 
     private Value procChar() {
-        Value v = current.literal;
+        Value v = current.getLiteral();
         eat(Token.Type.CHAR_LITERAL);
         return v;
     }
 
     private Value procString() {
-        Value v = current.literal;
+        Value v = current.getLiteral();
         eat(Token.Type.STRING_LITERAL);
         return v;
     }
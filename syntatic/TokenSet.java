@@ -0,0 +1,43 @@
+package syntatic;
+
+import error.InternalException;
+import lexical.Token;
+
+// A fixed set of token types packed into two words. Token.Type has more than
+// 64 constants, so membership picks the word by ordinal and tests one bit.
+public class TokenSet {
+
+    private final long low;
+    private final long high;
+
+    private TokenSet(long low, long high) {
+        this.low = low;
+        this.high = high;
+    }
+
+    public boolean contains(Token.Type type) {
+        int bit = type.ordinal();
+        return (((bit < 64 ? low : high) >>> bit) & 1L) != 0;
+    }
+
+    public TokenSet union(TokenSet other) {
+        return new TokenSet(low | other.low, high | other.high);
+    }
+
+    public static TokenSet of(Token.Type... types) {
+        long low = 0;
+        long high = 0;
+        for (Token.Type type : types) {
+            int bit = type.ordinal();
+            if (bit < 64)
+                low |= 1L << bit;
+            else if (bit < 128)
+                high |= 1L << bit;
+            else
+                throw new InternalException("Too many token types");
+        }
+
+        return new TokenSet(low, high);
+    }
+
+}
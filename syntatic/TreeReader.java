@@ -0,0 +1,327 @@
+package syntatic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.DumpCommand;
+import interpreter.command.ForCommand;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.PrintCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.DictItem;
+import interpreter.expr.Expr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.SetExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.composed.ArrayType;
+import interpreter.type.composed.DictType;
+import interpreter.type.primitive.BoolType;
+import interpreter.type.primitive.CharType;
+import interpreter.type.primitive.FloatType;
+import interpreter.type.primitive.IntType;
+import interpreter.type.primitive.StringType;
+import interpreter.value.Value;
+
+// Rebuilds a tree written by TreeWriter. Any inconsistency in the input is
+// reported as an IOException so that a damaged cache entry is just a miss.
+public class TreeReader {
+
+    private ByteBuffer in;
+    private List<Variable> variables;
+    private Object[] stack;
+    private int size;
+
+    public TreeReader(ByteBuffer in) {
+        this.in = in;
+        this.variables = new ArrayList<Variable>();
+        this.stack = new Object[64];
+        this.size = 0;
+    }
+
+    public Command read() throws IOException {
+        try {
+            return (Command) readTree();
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed tree", e);
+        }
+    }
+
+    private Object readTree() throws IOException {
+        for (;;) {
+            int tag = tag();
+            switch (tag) {
+                case TreeWriter.NULL:
+                    push(null);
+                    break;
+                case TreeWriter.NEW_VARIABLE: {
+                    int line = number();
+                    String name = string();
+                    Type type = type();
+                    boolean constant = flag();
+                    int slot = number();
+                    Variable var = new Variable(line, name, type, constant, slot);
+                    variables.add(var);
+                    push(var);
+                    break;
+                }
+                case TreeWriter.VARIABLE:
+                    push(variables.get(number()));
+                    break;
+                case TreeWriter.CONST: {
+                    int line = number();
+                    push(new ConstExpr(line, value()));
+                    break;
+                }
+                case TreeWriter.ACCESS: {
+                    Expr index = (Expr) pop();
+                    SetExpr base = (SetExpr) pop();
+                    push(new AccessExpr(number(), base, index));
+                    break;
+                }
+                case TreeWriter.ACCESS_IN_BOUNDS: {
+                    Expr index = (Expr) pop();
+                    SetExpr base = (SetExpr) pop();
+                    push(new AccessExpr(number(), base, index, true));
+                    break;
+                }
+                case TreeWriter.ACTION: {
+                    int line = number();
+                    push(new ActionExpr(line, ActionExpr.Op.values()[tag()]));
+                    break;
+                }
+                case TreeWriter.ARRAY: {
+                    int line = number();
+                    ArrayType type = (ArrayType) type();
+                    List<Expr> items = new ArrayList<Expr>();
+                    for (Object node : popAll(number()))
+                        items.add((Expr) node);
+
+                    push(new ArrayExpr(line, type, items));
+                    break;
+                }
+                case TreeWriter.BINARY: {
+                    Expr right = (Expr) pop();
+                    Expr left = (Expr) pop();
+                    int line = number();
+                    push(new BinaryExpr(line, left, BinaryExpr.Op.values()[tag()], right));
+                    break;
+                }
+                case TreeWriter.CAST: {
+                    Expr expr = (Expr) pop();
+                    int line = number();
+                    push(new CastExpr(line, CastExpr.Op.values()[tag()], expr));
+                    break;
+                }
+                case TreeWriter.CONDITIONAL: {
+                    Expr falseExpr = (Expr) pop();
+                    Expr trueExpr = (Expr) pop();
+                    Expr cond = (Expr) pop();
+                    push(new ConditionalExpr(number(), cond, trueExpr, falseExpr));
+                    break;
+                }
+                case TreeWriter.DICT: {
+                    int line = number();
+                    DictType type = (DictType) type();
+                    List<Object> nodes = popAll(number() * 2);
+                    List<DictItem> items = new ArrayList<DictItem>();
+                    for (int i = 0; i < nodes.size(); i += 2)
+                        items.add(new DictItem((Expr) nodes.get(i), (Expr) nodes.get(i + 1)));
+
+                    push(new DictExpr(line, type, items));
+                    break;
+                }
+                case TreeWriter.FUNCTION: {
+                    Expr arg = (Expr) pop();
+                    Expr expr = (Expr) pop();
+                    int line = number();
+                    push(new FunctionExpr(line, FunctionExpr.Op.values()[tag()], expr, arg));
+                    break;
+                }
+                case TreeWriter.UNARY: {
+                    Expr expr = (Expr) pop();
+                    int line = number();
+                    push(new UnaryExpr(line, expr, UnaryExpr.Op.values()[tag()]));
+                    break;
+                }
+                case TreeWriter.ASSIGN: {
+                    SetExpr lhs = (SetExpr) pop();
+                    Expr rhs = (Expr) pop();
+                    push(new AssignCommand(number(), rhs, lhs));
+                    break;
+                }
+                case TreeWriter.BLOCKS: {
+                    int line = number();
+                    List<Command> cmds = new ArrayList<Command>();
+                    for (Object node : popAll(number()))
+                        cmds.add((Command) node);
+
+                    push(new BlocksCommand(line, cmds));
+                    break;
+                }
+                case TreeWriter.DUMP: {
+                    Expr expr = (Expr) pop();
+                    push(new DumpCommand(number(), expr));
+                    break;
+                }
+                case TreeWriter.FOR: {
+                    Command body = (Command) pop();
+                    Expr expr = (Expr) pop();
+                    Variable var = (Variable) pop();
+                    push(new ForCommand(number(), var, expr, body));
+                    break;
+                }
+                case TreeWriter.IF: {
+                    Command elseCmd = (Command) pop();
+                    Command thenCmd = (Command) pop();
+                    Expr expr = (Expr) pop();
+                    push(new IfCommand(number(), expr, thenCmd, elseCmd));
+                    break;
+                }
+                case TreeWriter.INITIALIZE: {
+                    Expr expr = (Expr) pop();
+                    Variable var = (Variable) pop();
+                    push(new InitializeCommand(number(), var, expr));
+                    break;
+                }
+                case TreeWriter.PRINT: {
+                    Expr expr = (Expr) pop();
+                    int line = number();
+                    push(new PrintCommand(line, expr, flag()));
+                    break;
+                }
+                case TreeWriter.WHILE: {
+                    Command body = (Command) pop();
+                    Expr expr = (Expr) pop();
+                    push(new WhileCommand(number(), expr, body));
+                    break;
+                }
+                case TreeWriter.END:
+                    if (size != 1)
+                        throw new IOException("Malformed tree");
+
+                    return pop();
+                default:
+                    throw new IOException("Unknown tag " + tag);
+            }
+        }
+    }
+
+    private void push(Object node) {
+        if (size == stack.length)
+            stack = Arrays.copyOf(stack, size * 2);
+
+        stack[size++] = node;
+    }
+
+    private Object pop() throws IOException {
+        if (size == 0)
+            throw new IOException("Malformed tree");
+
+        Object node = stack[--size];
+        stack[size] = null;
+        return node;
+    }
+
+    // Pops the last n nodes, oldest first.
+    private List<Object> popAll(int n) throws IOException {
+        if (n < 0 || n > size)
+            throw new IOException("Malformed tree");
+
+        List<Object> nodes = new ArrayList<Object>(n);
+        for (int i = size - n; i < size; i++) {
+            nodes.add(stack[i]);
+            stack[i] = null;
+        }
+        size -= n;
+
+        return nodes;
+    }
+
+    private Type type() throws IOException {
+        int category = tag();
+        if (category >= Type.Category.values().length)
+            throw new IOException("Unknown type " + category);
+
+        switch (Type.Category.values()[category]) {
+            case Bool:
+                return BoolType.instance();
+            case Int:
+                return IntType.instance();
+            case Float:
+                return FloatType.instance();
+            case Char:
+                return CharType.instance();
+            case String:
+                return StringType.instance();
+            case Array:
+                return ArrayType.instance(type());
+            default:
+                Type key = type();
+                Type value = type();
+                return DictType.instance(key, value);
+        }
+    }
+
+    private Value value() throws IOException {
+        Type type = type();
+        switch (type.getCategory()) {
+            case Bool:
+                return new Value(type, flag());
+            case Int:
+                return new Value(type, in.getInt());
+            case Float:
+                return new Value(type, in.getFloat());
+            case Char:
+                return new Value(type, in.getChar());
+            case String:
+                return new Value(type, string());
+            default:
+                throw new IOException("Invalid constant");
+        }
+    }
+
+    private int tag() {
+        return in.get() & 0xff;
+    }
+
+    private boolean flag() {
+        return in.get() != 0;
+    }
+
+    private String string() throws IOException {
+        byte[] bytes = new byte[number()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int number() throws IOException {
+        int n = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = tag();
+            n |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return n;
+        }
+
+        throw new IOException("Malformed number");
+    }
+
+}
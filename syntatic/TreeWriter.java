@@ -0,0 +1,348 @@
+package syntatic;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import error.InternalException;
+import interpreter.Visitor;
+import interpreter.command.AssignCommand;
+import interpreter.command.BlocksCommand;
+import interpreter.command.Command;
+import interpreter.command.DumpCommand;
+import interpreter.command.ForCommand;
+import interpreter.command.IfCommand;
+import interpreter.command.InitializeCommand;
+import interpreter.command.PrintCommand;
+import interpreter.command.WhileCommand;
+import interpreter.expr.AccessExpr;
+import interpreter.expr.ActionExpr;
+import interpreter.expr.ArrayExpr;
+import interpreter.expr.BinaryExpr;
+import interpreter.expr.CastExpr;
+import interpreter.expr.ConditionalExpr;
+import interpreter.expr.ConstExpr;
+import interpreter.expr.DictExpr;
+import interpreter.expr.DictItem;
+import interpreter.expr.Expr;
+import interpreter.expr.FunctionExpr;
+import interpreter.expr.UnaryExpr;
+import interpreter.expr.Variable;
+import interpreter.type.Type;
+import interpreter.type.composed.ArrayType;
+import interpreter.type.composed.DictType;
+import interpreter.value.Value;
+
+// Writes a syntax tree in post-order: the children of a node come first and
+// the node itself is a tag followed by its own fields, so TreeReader can
+// rebuild the tree with a stack instead of recursion. A variable is written
+// in full the first time it is referenced and by index afterwards.
+public class TreeWriter implements Visitor<Void> {
+
+    static final int NULL = 0;
+    static final int NEW_VARIABLE = 1;
+    static final int VARIABLE = 2;
+    static final int CONST = 3;
+    static final int ACCESS = 4;
+    static final int ACTION = 5;
+    static final int ARRAY = 6;
+    static final int BINARY = 7;
+    static final int CAST = 8;
+    static final int CONDITIONAL = 9;
+    static final int DICT = 10;
+    static final int FUNCTION = 11;
+    static final int UNARY = 12;
+    static final int ASSIGN = 13;
+    static final int BLOCKS = 14;
+    static final int DUMP = 15;
+    static final int FOR = 16;
+    static final int IF = 17;
+    static final int INITIALIZE = 18;
+    static final int PRINT = 19;
+    static final int WHILE = 20;
+    static final int END = 21;
+    static final int ACCESS_IN_BOUNDS = 22;
+
+    private DataOutputStream out;
+    private Map<Variable, Integer> variables;
+
+    public TreeWriter(DataOutputStream out) {
+        this.out = out;
+        this.variables = new IdentityHashMap<Variable, Integer>();
+    }
+
+    public void write(Command cmd) throws IOException {
+        try {
+            cmd.accept(this);
+            tag(END);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void node(Command cmd) {
+        if (cmd == null)
+            tag(NULL);
+        else
+            cmd.accept(this);
+    }
+
+    private void node(Expr expr) {
+        if (expr == null)
+            tag(NULL);
+        else
+            expr.accept(this);
+    }
+
+    public Void visit(AssignCommand cmd) {
+        node(cmd.getRhs());
+        node(cmd.getLhs());
+        tag(ASSIGN);
+        number(cmd.getLine());
+        return null;
+    }
+
+    public Void visit(BlocksCommand cmd) {
+        for (Command c : cmd.getCommands())
+            node(c);
+
+        tag(BLOCKS);
+        number(cmd.getLine());
+        number(cmd.getCommands().size());
+        return null;
+    }
+
+    public Void visit(DumpCommand cmd) {
+        node(cmd.getExpr());
+        tag(DUMP);
+        number(cmd.getLine());
+        return null;
+    }
+
+    public Void visit(ForCommand cmd) {
+        node(cmd.getVariable());
+        node(cmd.getExpr());
+        node(cmd.getBody());
+        tag(FOR);
+        number(cmd.getLine());
+        return null;
+    }
+
+    public Void visit(IfCommand cmd) {
+        node(cmd.getExpr());
+        node(cmd.getThen());
+        node(cmd.getElse());
+        tag(IF);
+        number(cmd.getLine());
+        return null;
+    }
+
+    public Void visit(InitializeCommand cmd) {
+        node(cmd.getVariable());
+        node(cmd.getExpr());
+        tag(INITIALIZE);
+        number(cmd.getLine());
+        return null;
+    }
+
+    public Void visit(PrintCommand cmd) {
+        node(cmd.getExpr());
+        tag(PRINT);
+        number(cmd.getLine());
+        tag(cmd.isNewline() ? 1 : 0);
+        return null;
+    }
+
+    public Void visit(WhileCommand cmd) {
+        node(cmd.getExpr());
+        node(cmd.getBody());
+        tag(WHILE);
+        number(cmd.getLine());
+        return null;
+    }
+
+    public Void visit(AccessExpr expr) {
+        node(expr.getBase());
+        node(expr.getIndex());
+        tag(expr.isInBounds() ? ACCESS_IN_BOUNDS : ACCESS);
+        number(expr.getLine());
+        return null;
+    }
+
+    public Void visit(ActionExpr expr) {
+        tag(ACTION);
+        number(expr.getLine());
+        tag(expr.getOp().ordinal());
+        return null;
+    }
+
+    public Void visit(ArrayExpr expr) {
+        for (Expr item : expr.getItems())
+            node(item);
+
+        tag(ARRAY);
+        number(expr.getLine());
+        type(expr.getType());
+        number(expr.getItems().size());
+        return null;
+    }
+
+    public Void visit(BinaryExpr expr) {
+        node(expr.getLeft());
+        node(expr.getRight());
+        tag(BINARY);
+        number(expr.getLine());
+        tag(expr.getOp().ordinal());
+        return null;
+    }
+
+    public Void visit(CastExpr expr) {
+        node(expr.getExpr());
+        tag(CAST);
+        number(expr.getLine());
+        tag(expr.getOp().ordinal());
+        return null;
+    }
+
+    public Void visit(ConditionalExpr expr) {
+        node(expr.getCond());
+        node(expr.getTrueExpr());
+        node(expr.getFalseExpr());
+        tag(CONDITIONAL);
+        number(expr.getLine());
+        return null;
+    }
+
+    public Void visit(ConstExpr expr) {
+        tag(CONST);
+        number(expr.getLine());
+        value(expr.getValue());
+        return null;
+    }
+
+    public Void visit(DictExpr expr) {
+        for (DictItem item : expr.getItems()) {
+            node(item.key);
+            node(item.value);
+        }
+
+        tag(DICT);
+        number(expr.getLine());
+        type(expr.getType());
+        number(expr.getItems().size());
+        return null;
+    }
+
+    public Void visit(FunctionExpr expr) {
+        node(expr.getExpr());
+        node(expr.getArg());
+        tag(FUNCTION);
+        number(expr.getLine());
+        tag(expr.getOp().ordinal());
+        return null;
+    }
+
+    public Void visit(UnaryExpr expr) {
+        node(expr.getExpr());
+        tag(UNARY);
+        number(expr.getLine());
+        tag(expr.getOp().ordinal());
+        return null;
+    }
+
+    public Void visit(Variable var) {
+        Integer index = variables.get(var);
+        if (index != null) {
+            tag(VARIABLE);
+            number(index);
+        } else {
+            variables.put(var, variables.size());
+
+            tag(NEW_VARIABLE);
+            number(var.getLine());
+            string(var.getName());
+            type(var.getType());
+            tag(var.isConstant() ? 1 : 0);
+            number(var.getSlot());
+        }
+
+        return null;
+    }
+
+    private void type(Type type) {
+        tag(type.getCategory().ordinal());
+        switch (type.getCategory()) {
+            case Array:
+                type(((ArrayType) type).getInnerType());
+                break;
+            case Dict:
+                type(((DictType) type).getKeyType());
+                type(((DictType) type).getValueType());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void value(Value value) {
+        type(value.type);
+        try {
+            switch (value.type.getCategory()) {
+                case Bool:
+                    out.writeBoolean((Boolean) value.data);
+                    break;
+                case Int:
+                    out.writeInt((Integer) value.data);
+                    break;
+                case Float:
+                    out.writeFloat((Float) value.data);
+                    break;
+                case Char:
+                    out.writeChar((Character) value.data);
+                    break;
+                case String:
+                    string((String) value.data);
+                    break;
+                default:
+                    throw new InternalException("Unrecheable");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void string(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        number(bytes.length);
+        try {
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void tag(int tag) {
+        try {
+            out.writeByte(tag);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Unsigned variable-length integer, seven bits per byte.
+    private void number(int n) {
+        try {
+            while ((n & ~0x7f) != 0) {
+                out.writeByte((n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            out.writeByte(n);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}